@@ -0,0 +1,120 @@
+//@formatter:off
+/*
+ * TextCanvasBenchmark
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Micro benchmarks for the basic canvas operations on large canvases.
+ * <p>
+ * Run with <code>mvn -P jmh test-compile exec:exec -Djmh.args=TextCanvasBenchmark</code>
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class TextCanvasBenchmark {
+
+    /**
+     * Canvas dimensions <i>width</i>x<i>height</i>
+     */
+    @Param({ "1000x1000", "10000x1000" })
+    public String size;
+
+    /**
+     * Type of the canvas storage
+     */
+    @Param({ "DENSE", "COMPACT", "OFF_HEAP" })
+    public CanvasStorage storage;
+
+    private TextCanvas canvas;
+
+    private int width;
+
+    private int height;
+
+    @Setup
+    public void setup() {
+        String[] dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+        canvas = new TextCanvas(new CanvasFormat(width, height), CanvasBoundCheckStrategy.ERROR, storage);
+        for (int y = 0; y < height; y = y + 10) {
+            for (int x = 0; x < width - 20; x = x + 25) {
+                canvas.setCursor(x, y);
+                canvas.drawBox(DefaultBoxStyle.THIN, 20, 5, "node " + x + "/" + y);
+            }
+        }
+    }
+
+    @Benchmark
+    public TextCanvas fillSquare() {
+        canvas.setCursor(0, 0);
+        canvas.fillSquare(width, height, '#');
+        return canvas;
+    }
+
+    @Benchmark
+    public TextCanvas drawBox() {
+        canvas.setCursor(0, 0);
+        canvas.drawBox(DefaultBoxStyle.THIN, width, height, "label");
+        return canvas;
+    }
+
+    @Benchmark
+    public TextCanvas drawLine() {
+        for (int y = 5; y < height - 5; y = y + 10) {
+            canvas.drawLine(0, y, width - 1, y + 4, DefaultConnectorEndType.RIGHT_PLAIN, DefaultConnectorEndType.LEFT_PLAIN, LineGlyphSet.ASCII);
+        }
+        return canvas;
+    }
+
+    @Benchmark
+    public String export() {
+        return canvas.export();
+    }
+
+    @Benchmark
+    public OutputStream exportToStream() throws IOException {
+        OutputStream os = OutputStream.nullOutputStream();
+        canvas.export(os, StandardCharsets.UTF_8);
+        return os;
+    }
+
+}
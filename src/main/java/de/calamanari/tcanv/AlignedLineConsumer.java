@@ -0,0 +1,47 @@
+//@formatter:off
+/*
+ * AlignedLineConsumer
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+/**
+ * An {@link AlignedLineConsumer} receives the lines of a text aligned by {@link TextAlignment#apply(String, int, int, AlignedLineConsumer)} without any
+ * padded copies of the lines being created.
+ * <p>
+ * Each line consists of <code>offset</code> space characters, the visible part <code>[from, to)</code> of the source text and further space characters up
+ * to the <code>length</code> of the line. Empty lines (padding) have <code>from == to</code>.
+ * <p>
+ * Offset and length are measured in cells: the visible part takes {@link DisplayWidth#of(CharSequence, int, int)} cells, which is <code>to - from</code>
+ * for Latin-1 text.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+@FunctionalInterface
+public interface AlignedLineConsumer {
+
+    /**
+     * @param lineIdx index of the line, <code>0 &lt;= lineIdx &lt; height</code>
+     * @param text source text
+     * @param from index of the first visible character in the source text (inclusive)
+     * @param to end of the visible characters in the source text (exclusive)
+     * @param offset number of space characters before the visible characters
+     * @param length total length of the line including all space characters
+     */
+    void accept(int lineIdx, String text, int from, int to, int offset, int length);
+
+}
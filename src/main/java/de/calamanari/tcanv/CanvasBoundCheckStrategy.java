@@ -34,6 +34,14 @@ public enum CanvasBoundCheckStrategy {
     /**
      * If the coordinates to write content are outside the canvas, raise an exception.
      */
-    ERROR;
+    ERROR,
+
+    /**
+     * Content outside the canvas gets cut off, so shapes and text partially outside the canvas remain visible.
+     * <p>
+     * In contrast to {@link #IGNORE} this includes text and filled areas starting left of the canvas. This is meant for rendering a viewport of a larger
+     * diagram.
+     */
+    CLIP;
 
 }
\ No newline at end of file
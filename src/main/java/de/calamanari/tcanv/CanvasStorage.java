@@ -0,0 +1,129 @@
+//@formatter:off
+/*
+ * CanvasStorage
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+
+/**
+ * The {@link CanvasStorage} determines how a {@link TextCanvas} keeps its characters in memory. The drawing behavior is the same for all options.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public enum CanvasStorage {
+
+    /**
+     * All characters are stored in a single contiguous array (default).
+     * <p>
+     * This is the fastest option for small and medium-sized canvases, but the memory consumption is proportional to the area of the canvas.
+     * <p>
+     * <b>Note:</b> The number of cells (<code>width x height</code>) is limited to {@link #MAX_ARRAY_CELLS}. Larger canvases created without specifying the
+     * storage automatically use {@link #OFF_HEAP} instead.
+     */
+    DENSE,
+
+    /**
+     * All characters are stored in a single contiguous byte array (one byte per cell), rows containing characters outside the Latin-1 range automatically fall
+     * back to two bytes per cell.
+     * <p>
+     * This option halves the memory consumption compared to {@link #DENSE} for typical diagrams (ASCII glyphs and labels) and exports faster. Like
+     * {@link #DENSE} the number of cells is limited to {@link #MAX_ARRAY_CELLS}.
+     */
+    COMPACT,
+
+    /**
+     * The canvas is divided into tiles which are allocated on the first write of a non-blank character, missing tiles are treated as blank.
+     * <p>
+     * This option is meant for huge canvases that stay mostly blank (e.g., diagrams of wide trees), the memory consumption is roughly proportional to the
+     * content drawn on the canvas.
+     */
+    SPARSE,
+
+    /**
+     * All characters are stored outside the Java heap in a single contiguous memory segment which will be released when the canvas is no longer reachable.
+     * <p>
+     * This option is meant for huge canvases that would otherwise put pressure on the heap and the garbage collector.
+     * 
+     * @see TextCanvas#TextCanvas(CanvasFormat, CanvasBoundCheckStrategy, java.lang.foreign.Arena)
+     */
+    OFF_HEAP,
+
+    /**
+     * All characters are stored in a memory-mapped temporary file, so the operating system can page out parts of the canvas.
+     * <p>
+     * This option is meant for canvases that are too large to be kept in memory.
+     */
+    MAPPED_FILE;
+
+    /**
+     * Maximum number of cells (<code>width x height</code>) of a canvas with {@link #DENSE} or {@link #COMPACT} storage (capacity of a single array)
+     */
+    public static final long MAX_ARRAY_CELLS = Integer.MAX_VALUE - 8L;
+
+    /**
+     * @param format dimensions of the canvas, not null
+     * @return true if a canvas of the given dimensions can be created with this storage, false if the number of cells exceeds {@link #MAX_ARRAY_CELLS} for
+     *         {@link #DENSE} or {@link #COMPACT}
+     */
+    public boolean supports(CanvasFormat format) {
+        return !(this == DENSE || this == COMPACT) || (long) format.width() * format.height() <= MAX_ARRAY_CELLS;
+    }
+
+    /**
+     * Tells whether different threads may write to different cells of a canvas with this storage at the same time without any synchronization (e.g.,
+     * through views, see {@link TextCanvas#createView()}).
+     * <p>
+     * This is not the case for {@link #COMPACT} (a row may switch to two bytes per cell) and {@link #SPARSE} (tiles are allocated on the first write).
+     * 
+     * @return true if writing to distinct cells concurrently is safe
+     */
+    public boolean supportsConcurrentWrites() {
+        return this == DENSE || this == OFF_HEAP || this == MAPPED_FILE;
+    }
+
+    /**
+     * @param format dimensions of the canvas
+     * @return new buffer for the given dimensions (content undefined)
+     * @throws UncheckedIOException if the temporary file for {@link #MAPPED_FILE} could not be created
+     */
+    CellBuffer createCellBuffer(CanvasFormat format) {
+        switch (this) {
+        case DENSE:
+            return new DenseCellBuffer(format.width(), format.height());
+        case COMPACT:
+            return new CompactCellBuffer(format.width(), format.height());
+        case SPARSE:
+            return new TiledCellBuffer(format.width(), format.height());
+        case OFF_HEAP:
+            return SegmentCellBuffer.allocate(Arena.ofAuto(), format.width(), format.height());
+        case MAPPED_FILE:
+            try {
+                return SegmentCellBuffer.map(format.width(), format.height());
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException("Unable to create memory-mapped canvas storage for " + format, ex);
+            }
+        default:
+            throw new IllegalStateException("not implemented");
+        }
+    }
+
+}
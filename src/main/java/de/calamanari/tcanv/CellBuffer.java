@@ -0,0 +1,111 @@
+//@formatter:off
+/*
+ * CellBuffer
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+/**
+ * A {@link CellBuffer} holds the characters (cells) of a {@link TextCanvas}, see {@link CanvasStorage}.
+ * <p>
+ * Besides single cell access it provides operations on horizontal spans of a row (fill, copy, export) which are the building blocks for the canvas operations.
+ * Blank cells contain the space character.
+ * <p>
+ * <b>Note:</b> Implementations do not perform any bound checks, it is the caller's responsibility to pass valid coordinates.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+interface CellBuffer {
+
+    /**
+     * @return number of cells per row
+     */
+    int width();
+
+    /**
+     * @return number of rows
+     */
+    int height();
+
+    /**
+     * @param x
+     * @param y
+     * @return character at the given position
+     */
+    char get(int x, int y);
+
+    /**
+     * @param x
+     * @param y
+     * @param ch character to be placed at the given position
+     */
+    void set(int x, int y, char ch);
+
+    /**
+     * Resets all cells to blank
+     */
+    void clear();
+
+    /**
+     * Fills a horizontal span of a row with the given character
+     *
+     * @param x start position
+     * @param y row
+     * @param length number of cells to be filled
+     * @param ch
+     */
+    void fillSpan(int x, int y, int length, char ch);
+
+    /**
+     * Copies the characters of the given string into a horizontal span of a row
+     *
+     * @param x start position
+     * @param y row
+     * @param s source
+     * @param fromIdx first character of the source (incl.)
+     * @param toIdx end of the range in the source (excl.)
+     */
+    void copySpan(int x, int y, String s, int fromIdx, int toIdx);
+
+    /**
+     * Copies the given characters into a horizontal span of a row
+     *
+     * @param x start position
+     * @param y row
+     * @param src source
+     * @param offset first character of the source to be copied
+     * @param length number of characters to be copied
+     */
+    void copySpan(int x, int y, char[] src, int offset, int length);
+
+    /**
+     * Copies the full row into the given array
+     *
+     * @param y row
+     * @param dest target array, length &gt;= {@link #width()}
+     */
+    void copyRow(int y, char[] dest);
+
+    /**
+     * Appends the full row to the given builder
+     *
+     * @param y row
+     * @param sb target
+     */
+    void appendRow(int y, StringBuilder sb);
+
+}
@@ -0,0 +1,64 @@
+//@formatter:off
+/*
+ * CharConflictResolver
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+import java.util.function.BinaryOperator;
+
+/**
+ * A {@link CharConflictResolver} decides which character to write if there is already a character at the position on the canvas.
+ * <p>
+ * In contrast to a plain {@link BinaryOperator BinaryOperator&lt;Character&gt;} this function works on primitive characters, so drawing connectors does not
+ * box any characters. For compatibility reasons every {@link CharConflictResolver} is a {@link BinaryOperator BinaryOperator&lt;Character&gt;}, see also
+ * {@link #of(BinaryOperator)}.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+@FunctionalInterface
+public interface CharConflictResolver extends BinaryOperator<Character> {
+
+    /**
+     * @param existingChar character found on the canvas
+     * @param updateChar character to be written
+     * @return the character decided to be written
+     */
+    char resolve(char existingChar, char updateChar);
+
+    @Override
+    default Character apply(Character existingChar, Character updateChar) {
+        return resolve(existingChar, updateChar);
+    }
+
+    /**
+     * Adapter for existing resolution functions
+     * 
+     * @param conflictResolver resolution function, not null
+     * @return the given instance if it is already a {@link CharConflictResolver}, otherwise an adapter delegating to the given function
+     */
+    static CharConflictResolver of(BinaryOperator<Character> conflictResolver) {
+        if (conflictResolver == null) {
+            throw new IllegalArgumentException("expected: conflictResolver != null, given: null");
+        }
+        if (conflictResolver instanceof CharConflictResolver charConflictResolver) {
+            return charConflictResolver;
+        }
+        return conflictResolver::apply;
+    }
+
+}
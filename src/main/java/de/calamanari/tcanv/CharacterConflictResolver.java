@@ -19,14 +19,12 @@
 
 package de.calamanari.tcanv;
 
-import java.util.function.BinaryOperator;
-
 /**
  * Default implementations for resolving conflicts between an existing character and a character to be written.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
-public enum CharacterConflictResolver implements BinaryOperator<Character> {
+public enum CharacterConflictResolver implements CharConflictResolver {
 
     /**
      * Writes the character to be written ignoring the existing character.
@@ -39,7 +37,7 @@ public enum CharacterConflictResolver implements BinaryOperator<Character> {
     PRESERVE;
 
     @Override
-    public Character apply(Character existingChar, Character updateChar) {
+    public char resolve(char existingChar, char updateChar) {
         if (this == PRESERVE && !Character.isWhitespace(existingChar)) {
             return existingChar;
         }
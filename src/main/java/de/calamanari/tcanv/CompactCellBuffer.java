@@ -0,0 +1,251 @@
+//@formatter:off
+/*
+ * CompactCellBuffer
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The {@link CompactCellBuffer} holds the characters of a {@link TextCanvas} in a single contiguous byte array (row-major, one byte per cell, Latin-1).
+ * <p>
+ * As soon as a character outside the Latin-1 range gets written into a row, this particular row will be converted into a separate char array (wide row) which
+ * replaces the bytes of this row until the buffer gets cleared. Because the glyphs of the default styles and most labels are ASCII, this buffer usually needs
+ * only half the memory of a {@link DenseCellBuffer}.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class CompactCellBuffer implements CellBuffer {
+
+    /**
+     * highest character that can be stored in a single byte
+     */
+    private static final char MAX_LATIN_1 = 0xFF;
+
+    /**
+     * All cells of the canvas, row by row (only valid for rows without a wide row)
+     */
+    private final byte[] cells;
+
+    /**
+     * Rows with characters outside the Latin-1 range, lazily created, <code>null</code> entries mean the row is stored in {@link #cells}
+     */
+    private char[][] wideRows = null;
+
+    /**
+     * number of cells per row (stride)
+     */
+    private final int width;
+
+    /**
+     * number of rows
+     */
+    private final int height;
+
+    /**
+     * @param width number of cells per row
+     * @param height number of rows
+     * @throws IllegalArgumentException if the dimensions are not positive or the total number of cells exceeds the capacity of a single array
+     */
+    CompactCellBuffer(int width, int height) {
+        if (width <= 0 || height <= 0 || (long) width * height > CanvasStorage.MAX_ARRAY_CELLS) {
+            throw new IllegalArgumentException(String.format("expected: width > 0, height > 0, width * height <= %d, given: width=%d, height=%d",
+                    CanvasStorage.MAX_ARRAY_CELLS, width, height));
+        }
+        this.width = width;
+        this.height = height;
+        this.cells = new byte[width * height];
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    /**
+     * @return number of rows currently stored as wide rows
+     */
+    int numberOfWideRows() {
+        int res = 0;
+        if (wideRows != null) {
+            for (char[] wideRow : wideRows) {
+                res = res + (wideRow == null ? 0 : 1);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return position of the cell in the array
+     */
+    private int index(int x, int y) {
+        return (y * width) + x;
+    }
+
+    /**
+     * @param y
+     * @return wide row or null if the row is stored in {@link #cells}
+     */
+    private char[] wideRow(int y) {
+        return wideRows == null ? null : wideRows[y];
+    }
+
+    /**
+     * Converts the given row into a wide row
+     *
+     * @param y
+     * @return new wide row
+     */
+    private char[] widen(int y) {
+        if (wideRows == null) {
+            wideRows = new char[height][];
+        }
+        char[] wideRow = new char[width];
+        int startIdx = index(0, y);
+        for (int x = 0; x < width; x++) {
+            wideRow[x] = (char) (cells[startIdx + x] & 0xFF);
+        }
+        wideRows[y] = wideRow;
+        return wideRow;
+    }
+
+    @Override
+    public char get(int x, int y) {
+        char[] wideRow = wideRow(y);
+        return wideRow == null ? (char) (cells[index(x, y)] & 0xFF) : wideRow[x];
+    }
+
+    @Override
+    public void set(int x, int y, char ch) {
+        char[] wideRow = wideRow(y);
+        if (wideRow == null && ch <= MAX_LATIN_1) {
+            cells[index(x, y)] = (byte) ch;
+        }
+        else {
+            if (wideRow == null) {
+                wideRow = widen(y);
+            }
+            wideRow[x] = ch;
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(cells, (byte) ' ');
+        wideRows = null;
+    }
+
+    @Override
+    public void fillSpan(int x, int y, int length, char ch) {
+        char[] wideRow = wideRow(y);
+        if (wideRow == null && ch <= MAX_LATIN_1) {
+            int startIdx = index(x, y);
+            Arrays.fill(cells, startIdx, startIdx + length, (byte) ch);
+        }
+        else {
+            if (wideRow == null) {
+                wideRow = widen(y);
+            }
+            Arrays.fill(wideRow, x, x + length, ch);
+        }
+    }
+
+    @Override
+    public void copySpan(int x, int y, String s, int fromIdx, int toIdx) {
+        char[] wideRow = wideRow(y);
+        if (wideRow == null) {
+            int destIdx = index(x, y);
+            for (int i = fromIdx; i < toIdx; i++) {
+                char ch = s.charAt(i);
+                if (ch > MAX_LATIN_1) {
+                    // from here on the characters go into the wide row
+                    wideRow = widen(y);
+                    x = x + (i - fromIdx);
+                    fromIdx = i;
+                    break;
+                }
+                cells[destIdx++] = (byte) ch;
+            }
+        }
+        if (wideRow != null) {
+            s.getChars(fromIdx, toIdx, wideRow, x);
+        }
+    }
+
+    @Override
+    public void copySpan(int x, int y, char[] src, int offset, int length) {
+        char[] wideRow = wideRow(y);
+        if (wideRow == null) {
+            int destIdx = index(x, y);
+            for (int i = 0; i < length; i++) {
+                char ch = src[offset + i];
+                if (ch > MAX_LATIN_1) {
+                    // from here on the characters go into the wide row
+                    wideRow = widen(y);
+                    x = x + i;
+                    offset = offset + i;
+                    length = length - i;
+                    break;
+                }
+                cells[destIdx++] = (byte) ch;
+            }
+        }
+        if (wideRow != null) {
+            System.arraycopy(src, offset, wideRow, x, length);
+        }
+    }
+
+    @Override
+    public void copyRow(int y, char[] dest) {
+        char[] wideRow = wideRow(y);
+        if (wideRow == null) {
+            int startIdx = index(0, y);
+            for (int x = 0; x < width; x++) {
+                dest[x] = (char) (cells[startIdx + x] & 0xFF);
+            }
+        }
+        else {
+            System.arraycopy(wideRow, 0, dest, 0, width);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Rows stored as bytes are turned into Latin-1 strings without any conversion (compact strings).
+     */
+    @Override
+    public void appendRow(int y, StringBuilder sb) {
+        char[] wideRow = wideRow(y);
+        if (wideRow == null) {
+            sb.append(new String(cells, index(0, y), width, StandardCharsets.ISO_8859_1));
+        }
+        else {
+            sb.append(new String(wideRow));
+        }
+    }
+
+}
@@ -0,0 +1,520 @@
+//@formatter:off
+/*
+ * ConnectorBatch
+ * Copyright 2026 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ConnectorBatch} collects the line segments and single cells of many connectors as connectivity masks (see {@link LineGlyphSet}) to resolve them
+ * row by row in a single pass.
+ * <p>
+ * Horizontal spans get sorted by row, vertical spans by their upper end. During the sweep over the rows the masks of all spans touching a row get combined
+ * (bitwise OR) in a row buffer, so overlapping spans and junctions get merged before any cell of the canvas is visited. Afterwards every affected cell of the
+ * row will be handed over exactly once.
+ * <p>
+ * Line segments (see {@link #addHorizontalLine(int, int, int, int, int, int)}) additionally leave <i>arms</i> at both of their ends. A later segment starting
+ * at the same cell in the same direction only adds the part beyond the arm, because the combined masks are the same. This way the shared parts of many
+ * connectors from the same point (e.g., the stem and the bus of a parent with many children) get recorded only once.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class ConnectorBatch {
+
+    /**
+     * Receiver of the combined masks of a row
+     */
+    @FunctionalInterface
+    interface RowMaskConsumer {
+
+        /**
+         * @param y row
+         * @param masks combined connectivity by horizontal position, only cells with a mask other than 0 are affected
+         * @param fromX first affected cell (incl.)
+         * @param toX last affected cell (incl.)
+         */
+        void accept(int y, byte[] masks, int fromX, int toX);
+
+    }
+
+    /**
+     * number of ints per span: fixed coordinate, start, end, start mask, inner mask, end mask
+     */
+    private static final int SPAN_SIZE = 6;
+
+    /**
+     * no arm found
+     */
+    private static final int NO_ARM = Integer.MIN_VALUE;
+
+    /**
+     * arm direction
+     */
+    private static final int ARM_RIGHT = 1;
+
+    /**
+     * arm direction
+     */
+    private static final int ARM_LEFT = 2;
+
+    /**
+     * arm direction
+     */
+    private static final int ARM_DOWN = 3;
+
+    /**
+     * arm direction
+     */
+    private static final int ARM_UP = 4;
+
+    /**
+     * horizontal spans (y, fromX, toX, masks)
+     */
+    private int[] horizontalSpans = new int[16 * SPAN_SIZE];
+
+    /**
+     * number of horizontal spans
+     */
+    private int horizontalCount = 0;
+
+    /**
+     * vertical spans (x, fromY, toY, masks)
+     */
+    private int[] verticalSpans = new int[16 * SPAN_SIZE];
+
+    /**
+     * number of vertical spans
+     */
+    private int verticalCount = 0;
+
+    /**
+     * bounding box of all cells
+     */
+    private long minX = Long.MAX_VALUE;
+
+    /**
+     * bounding box of all cells
+     */
+    private long minY = Long.MAX_VALUE;
+
+    /**
+     * bounding box of all cells
+     */
+    private long maxX = Long.MIN_VALUE;
+
+    /**
+     * bounding box of all cells
+     */
+    private long maxY = Long.MIN_VALUE;
+
+    /**
+     * hash table of the arms: anchor cell (y in the upper 32 bits, x in the lower 32 bits)
+     */
+    private long[] armAnchors = new long[64];
+
+    /**
+     * hash table of the arms: direction and masks of the segment, 0 marks an empty slot
+     */
+    private int[] armTypes = new int[64];
+
+    /**
+     * hash table of the arms: position of the far end of the arm
+     */
+    private int[] armExtents = new int[64];
+
+    /**
+     * number of arms in the hash table
+     */
+    private int armCount = 0;
+
+    /**
+     * Adds a horizontal span
+     * 
+     * @param fromX left end
+     * @param toX right end, &gt;= fromX
+     * @param y
+     * @param startMask connectivity of the left end
+     * @param innerMask connectivity of the cells between the ends
+     * @param endMask connectivity of the right end
+     */
+    void addHorizontal(int fromX, int toX, int y, int startMask, int innerMask, int endMask) {
+        horizontalSpans = add(horizontalSpans, horizontalCount, y, fromX, toX, startMask, innerMask, endMask);
+        horizontalCount++;
+        updateBounds(fromX, y, toX, y);
+    }
+
+    /**
+     * Adds a vertical span
+     * 
+     * @param x
+     * @param fromY upper end
+     * @param toY lower end, &gt;= fromY
+     * @param startMask connectivity of the upper end
+     * @param innerMask connectivity of the cells between the ends
+     * @param endMask connectivity of the lower end
+     */
+    void addVertical(int x, int fromY, int toY, int startMask, int innerMask, int endMask) {
+        verticalSpans = add(verticalSpans, verticalCount, x, fromY, toY, startMask, innerMask, endMask);
+        verticalCount++;
+        updateBounds(x, fromY, x, toY);
+    }
+
+    /**
+     * Adds a horizontal line segment, only the part not yet covered by an arm starting at one of its ends will be recorded.
+     * 
+     * @param fromX left end
+     * @param toX right end, &gt;= fromX
+     * @param y
+     * @param startMask connectivity of the left end
+     * @param innerMask connectivity of the cells between the ends
+     * @param endMask connectivity of the right end
+     */
+    void addHorizontalLine(int fromX, int toX, int y, int startMask, int innerMask, int endMask) {
+        if (fromX == toX) {
+            addHorizontal(fromX, toX, y, startMask, innerMask, endMask);
+            return;
+        }
+        int masks = packMasks(startMask, innerMask, endMask);
+        int extent = findArm(fromX, y, ARM_RIGHT, masks);
+        if (extent != NO_ARM) {
+            if (extent < toX) {
+                addHorizontal(extent, toX, y, startMask, innerMask, endMask);
+                putArm(fromX, y, ARM_RIGHT, masks, toX);
+            }
+            return;
+        }
+        extent = findArm(toX, y, ARM_LEFT, masks);
+        if (extent != NO_ARM) {
+            if (extent > fromX) {
+                addHorizontal(fromX, extent, y, startMask, innerMask, endMask);
+                putArm(toX, y, ARM_LEFT, masks, fromX);
+            }
+            return;
+        }
+        addHorizontal(fromX, toX, y, startMask, innerMask, endMask);
+        putArm(fromX, y, ARM_RIGHT, masks, toX);
+        putArm(toX, y, ARM_LEFT, masks, fromX);
+    }
+
+    /**
+     * Adds a vertical line segment, only the part not yet covered by an arm starting at one of its ends will be recorded.
+     * 
+     * @param x
+     * @param fromY upper end
+     * @param toY lower end, &gt;= fromY
+     * @param startMask connectivity of the upper end
+     * @param innerMask connectivity of the cells between the ends
+     * @param endMask connectivity of the lower end
+     */
+    void addVerticalLine(int x, int fromY, int toY, int startMask, int innerMask, int endMask) {
+        if (fromY == toY) {
+            addVertical(x, fromY, toY, startMask, innerMask, endMask);
+            return;
+        }
+        int masks = packMasks(startMask, innerMask, endMask);
+        int extent = findArm(x, fromY, ARM_DOWN, masks);
+        if (extent != NO_ARM) {
+            if (extent < toY) {
+                addVertical(x, extent, toY, startMask, innerMask, endMask);
+                putArm(x, fromY, ARM_DOWN, masks, toY);
+            }
+            return;
+        }
+        extent = findArm(x, toY, ARM_UP, masks);
+        if (extent != NO_ARM) {
+            if (extent > fromY) {
+                addVertical(x, fromY, extent, startMask, innerMask, endMask);
+                putArm(x, toY, ARM_UP, masks, fromY);
+            }
+            return;
+        }
+        addVertical(x, fromY, toY, startMask, innerMask, endMask);
+        putArm(x, fromY, ARM_DOWN, masks, toY);
+        putArm(x, toY, ARM_UP, masks, fromY);
+    }
+
+    /**
+     * @param startMask
+     * @param innerMask
+     * @param endMask
+     * @return masks in a single int (4 bits each)
+     */
+    private static int packMasks(int startMask, int innerMask, int endMask) {
+        return (startMask & LineGlyphSet.ALL) | ((innerMask & LineGlyphSet.ALL) << 4) | ((endMask & LineGlyphSet.ALL) << 8);
+    }
+
+    /**
+     * @param anchor
+     * @param type
+     * @param capacity power of two
+     * @return start position in the hash table
+     */
+    private static int armSlot(long anchor, int type, int capacity) {
+        return (int) (((anchor * 0x9E3779B97F4A7C15L) >>> 32) ^ (type * 0x27D4EB2D)) & (capacity - 1);
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @param direction
+     * @param masks packed masks of the segment, an arm with different masks does not count
+     * @return far end of the arm or {@link #NO_ARM}
+     */
+    private int findArm(int x, int y, int direction, int masks) {
+        long anchor = ((long) y << 32) | (x & 0xFFFFFFFFL);
+        int type = (direction << 12) | masks;
+        int capacity = armTypes.length;
+        for (int slot = armSlot(anchor, type, capacity); armTypes[slot] != 0; slot = (slot + 1) & (capacity - 1)) {
+            if (armTypes[slot] == type && armAnchors[slot] == anchor) {
+                return armExtents[slot];
+            }
+        }
+        return NO_ARM;
+    }
+
+    /**
+     * Adds or updates an arm
+     * 
+     * @param x
+     * @param y
+     * @param direction
+     * @param masks packed masks of the segment
+     * @param extent far end of the arm
+     */
+    private void putArm(int x, int y, int direction, int masks, int extent) {
+        if ((armCount + 1) * 2 > armTypes.length) {
+            growArms();
+        }
+        long anchor = ((long) y << 32) | (x & 0xFFFFFFFFL);
+        int type = (direction << 12) | masks;
+        int capacity = armTypes.length;
+        int slot = armSlot(anchor, type, capacity);
+        while (armTypes[slot] != 0 && (armTypes[slot] != type || armAnchors[slot] != anchor)) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+        if (armTypes[slot] == 0) {
+            armCount++;
+        }
+        armAnchors[slot] = anchor;
+        armTypes[slot] = type;
+        armExtents[slot] = extent;
+    }
+
+    /**
+     * Doubles the capacity of the arm hash table
+     */
+    private void growArms() {
+        long[] oldAnchors = armAnchors;
+        int[] oldTypes = armTypes;
+        int[] oldExtents = armExtents;
+        int capacity = oldTypes.length * 2;
+        armAnchors = new long[capacity];
+        armTypes = new int[capacity];
+        armExtents = new int[capacity];
+        for (int i = 0; i < oldTypes.length; i++) {
+            if (oldTypes[i] != 0) {
+                int slot = armSlot(oldAnchors[i], oldTypes[i], capacity);
+                while (armTypes[slot] != 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                armAnchors[slot] = oldAnchors[i];
+                armTypes[slot] = oldTypes[i];
+                armExtents[slot] = oldExtents[i];
+            }
+        }
+    }
+
+    /**
+     * Adds a single cell
+     * 
+     * @param x
+     * @param y
+     * @param mask connectivity of the cell
+     */
+    void addCell(int x, int y, int mask) {
+        addHorizontal(x, x, y, mask, mask, mask);
+    }
+
+    /**
+     * @param spans
+     * @param count number of spans in the array
+     * @param fixed coordinate of the row or column
+     * @param start
+     * @param end
+     * @param startMask
+     * @param innerMask
+     * @param endMask
+     * @return array (possibly grown) with the new span
+     */
+    private static int[] add(int[] spans, int count, int fixed, int start, int end, int startMask, int innerMask, int endMask) {
+        int idx = count * SPAN_SIZE;
+        if (idx + SPAN_SIZE > spans.length) {
+            spans = Arrays.copyOf(spans, spans.length * 2);
+        }
+        spans[idx] = fixed;
+        spans[idx + 1] = start;
+        spans[idx + 2] = end;
+        spans[idx + 3] = startMask;
+        spans[idx + 4] = innerMask;
+        spans[idx + 5] = endMask;
+        return spans;
+    }
+
+    /**
+     * @param x1
+     * @param y1
+     * @param x2
+     * @param y2
+     */
+    private void updateBounds(int x1, int y1, int x2, int y2) {
+        minX = Math.min(minX, x1);
+        minY = Math.min(minY, y1);
+        maxX = Math.max(maxX, x2);
+        maxY = Math.max(maxY, y2);
+    }
+
+    /**
+     * @param width of the canvas
+     * @param height of the canvas
+     * @return true if all cells of this batch are located inside the given area
+     */
+    boolean isInside(int width, int height) {
+        return (horizontalCount == 0 && verticalCount == 0) || (minX >= 0 && minY >= 0 && maxX < width && maxY < height);
+    }
+
+    /**
+     * Removes all spans
+     */
+    void clear() {
+        horizontalCount = 0;
+        verticalCount = 0;
+        minX = Long.MAX_VALUE;
+        minY = Long.MAX_VALUE;
+        maxX = Long.MIN_VALUE;
+        maxY = Long.MIN_VALUE;
+        if (armCount > 0) {
+            Arrays.fill(armTypes, 0);
+            armCount = 0;
+        }
+    }
+
+    /**
+     * @param spans
+     * @param count
+     * @param keyOffset position of the sort key inside the span
+     * @return sort keys (key in the upper 32 bits, span index in the lower 32 bits)
+     */
+    private static long[] createSortedKeys(int[] spans, int count, int keyOffset) {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) spans[i * SPAN_SIZE + keyOffset] << 32) | i;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Combines the masks of all spans row by row (clipped against the given area) and passes each row with at least one affected cell to the consumer, rows
+     * in ascending order.
+     * 
+     * @param width of the canvas
+     * @param height of the canvas
+     * @param consumer
+     */
+    void resolve(int width, int height, RowMaskConsumer consumer) {
+        if ((horizontalCount == 0 && verticalCount == 0) || maxX < 0 || maxY < 0 || minX >= width || minY >= height) {
+            return;
+        }
+        long[] horizontalKeys = createSortedKeys(horizontalSpans, horizontalCount, 0);
+        long[] verticalKeys = createSortedKeys(verticalSpans, verticalCount, 1);
+        int[] active = new int[verticalCount];
+        int activeCount = 0;
+        byte[] masks = new byte[width];
+        int hPos = 0;
+        int vPos = 0;
+        int y = (int) Math.max(0, minY);
+        while (y < height && (hPos < horizontalCount || vPos < verticalCount || activeCount > 0)) {
+            int fromX = width;
+            int toX = -1;
+
+            // horizontal spans above the current row are outside the canvas
+            while (hPos < horizontalCount && (int) (horizontalKeys[hPos] >> 32) < y) {
+                hPos++;
+            }
+            while (hPos < horizontalCount && (int) (horizontalKeys[hPos] >> 32) == y) {
+                int idx = (int) horizontalKeys[hPos] * SPAN_SIZE;
+                int start = horizontalSpans[idx + 1];
+                int end = horizontalSpans[idx + 2];
+                int clippedStart = Math.max(0, start);
+                int clippedEnd = Math.min(width - 1, end);
+                for (int x = clippedStart; x <= clippedEnd; x++) {
+                    masks[x] |= (byte) (x == start ? (x == end ? horizontalSpans[idx + 3] | horizontalSpans[idx + 5] : horizontalSpans[idx + 3])
+                            : (x == end ? horizontalSpans[idx + 5] : horizontalSpans[idx + 4]));
+                }
+                fromX = Math.min(fromX, clippedStart);
+                toX = Math.max(toX, clippedEnd);
+                hPos++;
+            }
+
+            while (vPos < verticalCount && (int) (verticalKeys[vPos] >> 32) <= y) {
+                active[activeCount] = (int) verticalKeys[vPos] * SPAN_SIZE;
+                activeCount++;
+                vPos++;
+            }
+            for (int i = activeCount - 1; i > -1; i--) {
+                int idx = active[i];
+                int x = verticalSpans[idx];
+                int start = verticalSpans[idx + 1];
+                int end = verticalSpans[idx + 2];
+                if (end < y) {
+                    active[i] = active[activeCount - 1];
+                    activeCount--;
+                }
+                else if (x >= 0 && x < width) {
+                    masks[x] |= (byte) (y == start ? (y == end ? verticalSpans[idx + 3] | verticalSpans[idx + 5] : verticalSpans[idx + 3])
+                            : (y == end ? verticalSpans[idx + 5] : verticalSpans[idx + 4]));
+                    fromX = Math.min(fromX, x);
+                    toX = Math.max(toX, x);
+                }
+            }
+
+            if (fromX <= toX) {
+                consumer.accept(y, masks, fromX, toX);
+                Arrays.fill(masks, fromX, toX + 1, (byte) 0);
+            }
+            y = nextRow(y, activeCount, hPos < horizontalCount ? (int) (horizontalKeys[hPos] >> 32) : Integer.MAX_VALUE,
+                    vPos < verticalCount ? (int) (verticalKeys[vPos] >> 32) : Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * @param y current row
+     * @param activeCount number of vertical spans covering the current row
+     * @param nextHorizontalY row of the next horizontal span
+     * @param nextVerticalY upper end of the next vertical span
+     * @return next row to be processed (rows without any span will be skipped)
+     */
+    private static int nextRow(int y, int activeCount, int nextHorizontalY, int nextVerticalY) {
+        if (activeCount > 0) {
+            return y + 1;
+        }
+        return Math.max(y + 1, Math.min(nextHorizontalY, nextVerticalY));
+    }
+
+}
@@ -19,12 +19,11 @@
 
 package de.calamanari.tcanv;
 
-import java.util.function.BinaryOperator;
-
 /**
  * A {@link ConnectorDescriptor} contains the meta data to connect two points, assuming a from-to relationship (e.g., to connect two boxes).
  * <p>
- * The constructor takes the coordinates and auto-selects the best fitting {@link ConnectorShape}. Hence, this class centralizes the logic to compute the path
+ * The constructor (or {@link #init(ConnectorEndType, int, int, ConnectorEndType, int, int, CharConflictResolver)}) takes the coordinates and auto-selects
+ * the best fitting {@link ConnectorShape}. Hence, this class centralizes the logic to compute the path
  * between two points.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
@@ -99,7 +98,14 @@ class ConnectorDescriptor {
     /**
      * Tells how to deal with existing characters
      */
-    BinaryOperator<Character> conflictResolver;
+    CharConflictResolver conflictResolver;
+
+    /**
+     * Creates an uninitialized descriptor to be configured with {@link #init(ConnectorEndType, int, int, ConnectorEndType, int, int, CharConflictResolver)}
+     */
+    ConnectorDescriptor() {
+        // scratch instance
+    }
 
     /**
      * @param fromEndType describes the start of the line to be drawn
@@ -112,7 +118,25 @@ class ConnectorDescriptor {
      *            the character decided to be written (not affecting explicit connector endpoints)
      */
     public ConnectorDescriptor(ConnectorEndType fromEndType, int fromX, int fromY, ConnectorEndType toEndType, int toX, int toY,
-            BinaryOperator<Character> conflictResolver) {
+            CharConflictResolver conflictResolver) {
+        init(fromEndType, fromX, fromY, toEndType, toX, toY, conflictResolver);
+    }
+
+    /**
+     * (Re-)initializes this descriptor, so a single instance can be reused for any number of connectors.
+     * 
+     * @param fromEndType describes the start of the line to be drawn
+     * @param fromX
+     * @param fromY
+     * @param toEndType describes the end of the line to be drawn
+     * @param toX
+     * @param toY
+     * @param conflictResolver resolution function to handle an existing character, takes the existing character and the proposed character as input, returns
+     *            the character decided to be written (not affecting explicit connector endpoints)
+     * @return this instance
+     */
+    ConnectorDescriptor init(ConnectorEndType fromEndType, int fromX, int fromY, ConnectorEndType toEndType, int toX, int toY,
+            CharConflictResolver conflictResolver) {
         this.fromEndType = fromEndType;
         this.fromX = fromX;
         this.fromY = fromY;
@@ -123,9 +147,12 @@ class ConnectorDescriptor {
         this.lineFromY = fromY;
         this.lineToX = toX;
         this.lineToY = toY;
+        this.suppressHorizontalLine = false;
+        this.suppressVerticalLine = false;
         this.shape = determineConnectorShape(fromX, fromY, toX, toY, fromEndType, toEndType);
         this.initLineDimensions();
         this.conflictResolver = conflictResolver;
+        return this;
     }
 
     /**
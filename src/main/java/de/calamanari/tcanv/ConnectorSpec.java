@@ -0,0 +1,71 @@
+//@formatter:off
+/*
+ * ConnectorSpec
+ * Copyright 2026 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+/**
+ * Description of a single connector line to be drawn with {@link TextCanvas#drawLines(java.util.Collection)}, see
+ * {@link TextCanvas#drawLine(int, int, int, int, ConnectorEndType, ConnectorEndType, CharConflictResolver)}
+ * 
+ * @param fromX horizontal position of the start point
+ * @param fromY vertical position of the start point
+ * @param toX horizontal position of the end point
+ * @param toY vertical position of the end point
+ * @param connectorFrom symbol at the start point, not null
+ * @param connectorTo symbol at the end point, not null
+ * @param conflictResolver resolution function to handle an existing character, not null
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public record ConnectorSpec(int fromX, int fromY, int toX, int toY, ConnectorEndType connectorFrom, ConnectorEndType connectorTo,
+        CharConflictResolver conflictResolver) {
+
+    /**
+     * @param fromX horizontal position of the start point
+     * @param fromY vertical position of the start point
+     * @param toX horizontal position of the end point
+     * @param toY vertical position of the end point
+     * @param connectorFrom symbol at the start point, not null
+     * @param connectorTo symbol at the end point, not null
+     * @param conflictResolver resolution function to handle an existing character, not null
+     * @throws IllegalArgumentException if any of the connector ends or the resolver was null
+     */
+    public ConnectorSpec {
+        if (connectorFrom == null || connectorTo == null || conflictResolver == null) {
+            throw new IllegalArgumentException(
+                    String.format("expected: connectorFrom != null, connectorTo != null, conflictResolver != null, given: connectorFrom=%s, connectorTo=%s, "
+                            + "conflictResolver=%s", connectorFrom, connectorTo, conflictResolver));
+        }
+    }
+
+    /**
+     * Creates a connector that overwrites any existing characters ({@link CharacterConflictResolver#OVERWRITE})
+     * 
+     * @param fromX horizontal position of the start point
+     * @param fromY vertical position of the start point
+     * @param toX horizontal position of the end point
+     * @param toY vertical position of the end point
+     * @param connectorFrom symbol at the start point, not null
+     * @param connectorTo symbol at the end point, not null
+     * @throws IllegalArgumentException if any of the connector ends was null
+     */
+    public ConnectorSpec(int fromX, int fromY, int toX, int toY, ConnectorEndType connectorFrom, ConnectorEndType connectorTo) {
+        this(fromX, fromY, toX, toY, connectorFrom, connectorTo, CharacterConflictResolver.OVERWRITE);
+    }
+
+}
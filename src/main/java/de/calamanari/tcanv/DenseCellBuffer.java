@@ -0,0 +1,127 @@
+//@formatter:off
+/*
+ * DenseCellBuffer
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+import java.util.Arrays;
+
+/**
+ * The {@link DenseCellBuffer} holds the characters of a {@link TextCanvas} in a single contiguous array (row-major, the stride is the width of the canvas).
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class DenseCellBuffer implements CellBuffer {
+
+    /**
+     * All cells of the canvas, row by row
+     */
+    private final char[] cells;
+
+    /**
+     * number of cells per row (stride)
+     */
+    private final int width;
+
+    /**
+     * number of rows
+     */
+    private final int height;
+
+    /**
+     * @param width number of cells per row
+     * @param height number of rows
+     * @throws IllegalArgumentException if the dimensions are not positive or the total number of cells exceeds the capacity of a single array
+     */
+    DenseCellBuffer(int width, int height) {
+        if (width <= 0 || height <= 0 || (long) width * height > CanvasStorage.MAX_ARRAY_CELLS) {
+            throw new IllegalArgumentException(String.format("expected: width > 0, height > 0, width * height <= %d, given: width=%d, height=%d",
+                    CanvasStorage.MAX_ARRAY_CELLS, width, height));
+        }
+        this.width = width;
+        this.height = height;
+        this.cells = new char[width * height];
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return position of the cell in the array
+     */
+    private int index(int x, int y) {
+        return (y * width) + x;
+    }
+
+    @Override
+    public char get(int x, int y) {
+        return cells[index(x, y)];
+    }
+
+    @Override
+    public void set(int x, int y, char ch) {
+        cells[index(x, y)] = ch;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(cells, ' ');
+    }
+
+    @Override
+    public void fillSpan(int x, int y, int length, char ch) {
+        int startIdx = index(x, y);
+        Arrays.fill(cells, startIdx, startIdx + length, ch);
+    }
+
+    @Override
+    public void copySpan(int x, int y, String s, int fromIdx, int toIdx) {
+        s.getChars(fromIdx, toIdx, cells, index(x, y));
+    }
+
+    @Override
+    public void copySpan(int x, int y, char[] src, int offset, int length) {
+        System.arraycopy(src, offset, cells, index(x, y), length);
+    }
+
+    @Override
+    public void copyRow(int y, char[] dest) {
+        System.arraycopy(cells, index(0, y), dest, 0, width);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The row is first turned into a string because the JDK compresses a char array into a Latin-1 string much faster than it appends the characters one by
+     * one to a builder.
+     */
+    @Override
+    public void appendRow(int y, StringBuilder sb) {
+        sb.append(new String(cells, index(0, y), width));
+    }
+
+}
@@ -0,0 +1,306 @@
+//@formatter:off
+/*
+ * DisplayWidth
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+
+package de.calamanari.tcanv;
+
+import java.text.Normalizer;
+
+/**
+ * {@link DisplayWidth} computes the number of cells (columns of a monospaced terminal) a text occupies on a {@link TextCanvas}.
+ * <p>
+ * A canvas keeps one character per cell, so the cell model follows what a canvas can represent:
+ * <ul>
+ * <li>Regular characters take a single cell.</li>
+ * <li>East Asian wide and full-width characters (e.g., CJK ideographs, Hangul syllables) take two cells, the second cell contains the
+ * {@link #WIDE_CHAR_CONTINUATION} which will be omitted when exporting the canvas.</li>
+ * <li>Supplementary characters (e.g., emojis) take two cells, one for each char of the surrogate pair.</li>
+ * <li>Zero-width characters (combining marks, variation selectors, joiners and other format characters) don't take any cell. When writing to a canvas, a
+ * combining mark will be attached to the character of the previous cell if both can be composed into a single character (e.g., <code>e&#92;u0301</code>
+ * becomes <code>&#92;u00e9</code>), otherwise it will be omitted.</li>
+ * </ul>
+ * Texts that only consist of Latin-1 characters (the common case) take one cell per character, this fast path is checked first.
+ * <p>
+ * <b>Note:</b> Sequences a terminal may render as a single glyph (e.g., emoji ZWJ sequences or flags) will be laid out as their individual characters.
+ * Rare narrow supplementary characters (e.g., mathematical letters) take two cells but may be rendered as a single column.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public final class DisplayWidth {
+
+    /**
+     * Content of the second cell of a wide character on a canvas (a Unicode noncharacter which never appears in regular text)
+     */
+    public static final char WIDE_CHAR_CONTINUATION = '\uFFFF';
+
+    /**
+     * All characters below this code point take a single cell
+     */
+    private static final int SINGLE_CELL_LIMIT = 0x300;
+
+    /**
+     * East Asian wide and full-width ranges in the BMP (first, last), sorted
+     */
+    private static final int[] WIDE_RANGES = { 0x1100, 0x115F, 0x231A, 0x231B, 0x2329, 0x232A, 0x23E9, 0x23EC, 0x23F0, 0x23F0, 0x23F3, 0x23F3, 0x25FD, 0x25FE,
+            0x2614, 0x2615, 0x2648, 0x2653, 0x267F, 0x267F, 0x2693, 0x2693, 0x26A1, 0x26A1, 0x26AA, 0x26AB, 0x26BD, 0x26BE, 0x26C4, 0x26C5, 0x26CE, 0x26CE,
+            0x26D4, 0x26D4, 0x26EA, 0x26EA, 0x26F2, 0x26F3, 0x26F5, 0x26F5, 0x26FA, 0x26FA, 0x26FD, 0x26FD, 0x2705, 0x2705, 0x270A, 0x270B, 0x2728, 0x2728,
+            0x274C, 0x274C, 0x274E, 0x274E, 0x2753, 0x2755, 0x2757, 0x2757, 0x2795, 0x2797, 0x27B0, 0x27B0, 0x27BF, 0x27BF, 0x2B1B, 0x2B1C, 0x2B50, 0x2B50,
+            0x2B55, 0x2B55, 0x2E80, 0x303E, 0x3041, 0x3247, 0x3250, 0x4DBF, 0x4E00, 0xA4C6, 0xA960, 0xA97C, 0xAC00, 0xD7A3, 0xF900, 0xFAFF, 0xFE10, 0xFE19,
+            0xFE30, 0xFE6B, 0xFF01, 0xFF60, 0xFFE0, 0xFFE6 };
+
+    /**
+     * One bit per BMP character: wide character
+     */
+    private static final long[] WIDE_BMP = new long[1024];
+
+    /**
+     * One bit per BMP character: zero-width character
+     */
+    private static final long[] ZERO_WIDTH_BMP = new long[1024];
+
+    static {
+        for (int i = 0; i < WIDE_RANGES.length; i = i + 2) {
+            for (int ch = WIDE_RANGES[i]; ch <= WIDE_RANGES[i + 1]; ch++) {
+                WIDE_BMP[ch >> 6] |= 1L << ch;
+            }
+        }
+        for (int ch = SINGLE_CELL_LIMIT; ch < 0x10000; ch++) {
+            if (isZeroWidthType(ch)) {
+                ZERO_WIDTH_BMP[ch >> 6] |= 1L << ch;
+                WIDE_BMP[ch >> 6] &= ~(1L << ch);
+            }
+        }
+    }
+
+    private DisplayWidth() {
+        // utility
+    }
+
+    /**
+     * @param codePoint
+     * @return true if the code point is a combining mark, a format character or a Hangul medial/final jamo
+     */
+    private static boolean isZeroWidthType(int codePoint) {
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.FORMAT
+                || (codePoint >= 0x1160 && codePoint <= 0x11FF);
+    }
+
+    /**
+     * @param codePoint
+     * @return number of cells the given code point occupies: 0, 1 or 2
+     */
+    public static int of(int codePoint) {
+        if (codePoint < SINGLE_CELL_LIMIT) {
+            return 1;
+        }
+        else if (codePoint < 0x10000) {
+            if ((ZERO_WIDTH_BMP[codePoint >> 6] & (1L << codePoint)) != 0) {
+                return 0;
+            }
+            return (WIDE_BMP[codePoint >> 6] & (1L << codePoint)) != 0 ? 2 : 1;
+        }
+        return isZeroWidthType(codePoint) ? 0 : 2;
+    }
+
+    /**
+     * @param s text, not null
+     * @return number of cells the text occupies
+     */
+    public static int of(CharSequence s) {
+        return of(s, 0, s.length());
+    }
+
+    /**
+     * @param s text, not null
+     * @param from first character (inclusive)
+     * @param to end of the range (exclusive)
+     * @return number of cells the given range of the text occupies
+     */
+    public static int of(CharSequence s, int from, int to) {
+        if (isLatin1(s, from, to)) {
+            return to - from;
+        }
+        int res = 0;
+        for (int i = from; i < to;) {
+            int codePoint = codePointAt(s, i, to);
+            res = res + of(codePoint);
+            i = i + Character.charCount(codePoint);
+        }
+        return res;
+    }
+
+    /**
+     * Tells whether the range only consists of Latin-1 characters, so every character takes a single cell.
+     * <p>
+     * The characters are combined without any branches per character, so the JIT can unroll (resp. vectorize) the loop.
+     * 
+     * @param s text
+     * @param from first character (inclusive)
+     * @param to end of the range (exclusive)
+     * @return true if all characters in the range are below <code>0x100</code>
+     */
+    static boolean isLatin1(CharSequence s, int from, int to) {
+        int acc = 0;
+        for (int i = from; i < to; i++) {
+            acc = acc | s.charAt(i);
+        }
+        return acc < 0x100;
+    }
+
+    /**
+     * @param s text
+     * @param from first character (inclusive)
+     * @param to end of the range (exclusive)
+     * @return true if all characters in the range are below <code>0x100</code>
+     */
+    static boolean isLatin1(char[] s, int from, int to) {
+        int acc = 0;
+        for (int i = from; i < to; i++) {
+            acc = acc | s[i];
+        }
+        return acc < 0x100;
+    }
+
+    /**
+     * @param ch
+     * @return true if the character is followed by a {@link #WIDE_CHAR_CONTINUATION} on a canvas
+     */
+    static boolean isWide(char ch) {
+        return ch >= SINGLE_CELL_LIMIT && (WIDE_BMP[ch >> 6] & (1L << ch)) != 0;
+    }
+
+    /**
+     * Like {@link Character#codePointAt(CharSequence, int)} but does not look beyond the end of the range
+     * 
+     * @param s
+     * @param idx
+     * @param to end of the range (exclusive)
+     * @return code point
+     */
+    private static int codePointAt(CharSequence s, int idx, int to) {
+        char ch = s.charAt(idx);
+        if (Character.isHighSurrogate(ch) && idx + 1 < to && Character.isLowSurrogate(s.charAt(idx + 1))) {
+            return Character.toCodePoint(ch, s.charAt(idx + 1));
+        }
+        return ch;
+    }
+
+    /**
+     * Determines the longest prefix of the given range that fits into the given number of cells, any zero-width characters following the prefix will be
+     * included. A wide character will not be split.
+     * 
+     * @param s text
+     * @param from first character (inclusive)
+     * @param to end of the range (exclusive)
+     * @param cells available cells
+     * @return end of the prefix (exclusive)
+     */
+    static int indexOfCells(CharSequence s, int from, int to, int cells) {
+        int used = 0;
+        int idx = from;
+        while (idx < to) {
+            int codePoint = codePointAt(s, idx, to);
+            int width = of(codePoint);
+            if (used + width > cells) {
+                break;
+            }
+            used = used + width;
+            idx = idx + Character.charCount(codePoint);
+        }
+        return idx;
+    }
+
+    /**
+     * @param s text
+     * @param from first character (inclusive)
+     * @param to end of the range (exclusive)
+     * @return end of the first code point incl. any zero-width characters following it
+     */
+    static int indexOfNextCluster(CharSequence s, int from, int to) {
+        int idx = from + Character.charCount(codePointAt(s, from, to));
+        while (idx < to) {
+            int codePoint = codePointAt(s, idx, to);
+            if (of(codePoint) > 0) {
+                break;
+            }
+            idx = idx + Character.charCount(codePoint);
+        }
+        return idx;
+    }
+
+    /**
+     * Converts the given range of the text into the cells of a canvas (see class comment), the number of cells is {@link #of(CharSequence, int, int)}.
+     * 
+     * @param s text
+     * @param from first character (inclusive)
+     * @param to end of the range (exclusive)
+     * @param dest target with sufficient capacity
+     * @param offset position of the first cell in the target
+     * @return number of cells written
+     */
+    public static int toCells(CharSequence s, int from, int to, char[] dest, int offset) {
+        if (s instanceof String str && isLatin1(str, from, to)) {
+            str.getChars(from, to, dest, offset);
+            return to - from;
+        }
+        int pos = offset;
+        for (int i = from; i < to;) {
+            int codePoint = codePointAt(s, i, to);
+            int width = of(codePoint);
+            if (width == 0) {
+                attachToPreviousCell(dest, offset, pos, codePoint);
+            }
+            else if (codePoint >= 0x10000) {
+                dest[pos++] = Character.highSurrogate(codePoint);
+                dest[pos++] = Character.lowSurrogate(codePoint);
+            }
+            else {
+                dest[pos++] = (char) codePoint;
+                if (width == 2) {
+                    dest[pos++] = WIDE_CHAR_CONTINUATION;
+                }
+            }
+            i = i + Character.charCount(codePoint);
+        }
+        return pos - offset;
+    }
+
+    /**
+     * Composes the zero-width character with the character of the previous cell if the result is a single character
+     * 
+     * @param dest cells
+     * @param offset first cell of the current text
+     * @param pos next cell to be written
+     * @param codePoint zero-width character to be attached
+     */
+    private static void attachToPreviousCell(char[] dest, int offset, int pos, int codePoint) {
+        int baseIdx = pos - 1;
+        if (baseIdx >= offset && dest[baseIdx] == WIDE_CHAR_CONTINUATION) {
+            baseIdx--;
+        }
+        if (baseIdx >= offset && Character.getType(codePoint) != Character.FORMAT && !Character.isSurrogate(dest[baseIdx])) {
+            String composed = Normalizer.normalize(new StringBuilder(3).append(dest[baseIdx]).appendCodePoint(codePoint), Normalizer.Form.NFC);
+            if (composed.length() == 1 && of(composed.charAt(0)) == of(dest[baseIdx])) {
+                dest[baseIdx] = composed.charAt(0);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+//@formatter:off
+/*
+ * LineGlyphSet
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+/**
+ * A {@link LineGlyphSet} maps the connectivity of a cell to the glyph to be displayed.
+ * <p>
+ * The connectivity of a cell is a 4-bit mask ({@link #UP}, {@link #DOWN}, {@link #LEFT}, {@link #RIGHT}) telling in which directions lines leave the cell.
+ * When lines cross or join, the masks get combined (bitwise OR), and the glyph is looked up from a precomputed table. Any glyph set can also decode its own
+ * glyphs and the ASCII line glyphs <code>'-'</code>, <code>'|'</code> and <code>'+'</code> back into masks.
+ * <p>
+ * A glyph set is also a {@link CharConflictResolver}: if both characters are line glyphs, the result is the glyph of the combined mask. A character that is
+ * not a line glyph replaces any existing character, unless the existing character is a full crossing. For {@link #ASCII} this is exactly the classic behavior
+ * ('|' and '-' make '+').
+ *
+ * @see TextCanvas#setLineGlyphSet(LineGlyphSet)
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public enum LineGlyphSet implements CharConflictResolver {
+
+    /**
+     * Classic lines: <code>- | +</code>
+     */
+    ASCII(" |||-+++-+++-+++"),
+
+    /**
+     * Unicode box-drawing characters (light): <code>&#x2500; &#x2502; &#x250c; &#x2510; &#x2514; &#x2518; &#x251c; &#x2524; &#x252c; &#x2534; &#x253c;</code>
+     */
+    UNICODE_LIGHT(" \u2502\u2502\u2502\u2500\u2518\u2510\u2524\u2500\u2514\u250c\u251c\u2500\u2534\u252c\u253c"),
+
+    /**
+     * Unicode box-drawing characters (heavy): <code>&#x2501; &#x2503; &#x250f; &#x2513; &#x2517; &#x251b; &#x2523; &#x252b; &#x2533; &#x253b; &#x254b;</code>
+     */
+    UNICODE_HEAVY(" \u2503\u2503\u2503\u2501\u251b\u2513\u252b\u2501\u2517\u250f\u2523\u2501\u253b\u2533\u254b"),
+
+    /**
+     * Unicode box-drawing characters (double): <code>&#x2550; &#x2551; &#x2554; &#x2557; &#x255a; &#x255d; &#x2560; &#x2563; &#x2566; &#x2569; &#x256c;</code>
+     */
+    UNICODE_DOUBLE(" \u2551\u2551\u2551\u2550\u255d\u2557\u2563\u2550\u255a\u2554\u2560\u2550\u2569\u2566\u256c");
+
+    /**
+     * Line leaving the cell upwards
+     */
+    public static final int UP = 1;
+
+    /**
+     * Line leaving the cell downwards
+     */
+    public static final int DOWN = 2;
+
+    /**
+     * Line leaving the cell to the left
+     */
+    public static final int LEFT = 4;
+
+    /**
+     * Line leaving the cell to the right
+     */
+    public static final int RIGHT = 8;
+
+    /**
+     * Lines leaving the cell in all directions (crossing)
+     */
+    public static final int ALL = UP | DOWN | LEFT | RIGHT;
+
+    /**
+     * first character of the Unicode box-drawing block
+     */
+    private static final char BOX_DRAWING_START = '\u2500';
+
+    /**
+     * glyph by mask
+     */
+    private final char[] glyphs;
+
+    /**
+     * mask by glyph (offset {@link #BOX_DRAWING_START}), all zero for {@link #ASCII}
+     */
+    private final byte[] boxDrawingMasks = new byte[128];
+
+    /**
+     * @param glyphs 16 characters, one per mask
+     */
+    private LineGlyphSet(String glyphs) {
+        this.glyphs = glyphs.toCharArray();
+        for (int mask = 0; mask < this.glyphs.length; mask++) {
+            char glyph = this.glyphs[mask];
+            if (glyph >= BOX_DRAWING_START && glyph < BOX_DRAWING_START + boxDrawingMasks.length) {
+                // single directions share the glyph of the full line, so the combination of all masks of a glyph is its mask
+                boxDrawingMasks[glyph - BOX_DRAWING_START] |= (byte) mask;
+            }
+        }
+    }
+
+    /**
+     * @param mask connectivity of the cell (combination of {@link #UP}, {@link #DOWN}, {@link #LEFT}, {@link #RIGHT})
+     * @return glyph to be displayed, a single direction is displayed as a full line, mask 0 is a space
+     */
+    public char glyph(int mask) {
+        return glyphs[mask & ALL];
+    }
+
+    /**
+     * @param ch character found on the canvas
+     * @return connectivity of the given glyph or 0 if the character is not a line glyph of this set (or an ASCII line glyph)
+     */
+    public int mask(char ch) {
+        switch (ch) {
+        case '|':
+            return UP | DOWN;
+        case '-':
+            return LEFT | RIGHT;
+        case '+':
+            return ALL;
+        default:
+            int idx = ch - BOX_DRAWING_START;
+            return (idx >= 0 && idx < boxDrawingMasks.length) ? boxDrawingMasks[idx] : 0;
+        }
+    }
+
+    /**
+     * Combines the connectivity of the existing character with the given mask
+     *
+     * @param existingChar character found on the canvas
+     * @param mask connectivity to be added
+     * @return glyph for the combined mask, if the existing character is not a line glyph, the result is the glyph of the given mask
+     */
+    public char join(char existingChar, int mask) {
+        return glyphs[(mask(existingChar) | mask) & ALL];
+    }
+
+    @Override
+    public char resolve(char existingChar, char updateChar) {
+        int updateMask = mask(updateChar);
+        int existingMask = mask(existingChar);
+        if (updateMask == 0) {
+            return existingMask == ALL ? existingChar : updateChar;
+        }
+        else if (existingMask == 0) {
+            return updateChar;
+        }
+        return glyphs[existingMask | updateMask];
+    }
+
+}
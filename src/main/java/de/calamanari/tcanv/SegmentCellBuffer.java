@@ -0,0 +1,216 @@
+//@formatter:off
+/*
+ * SegmentCellBuffer
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The {@link SegmentCellBuffer} keeps the characters of a {@link TextCanvas} outside the Java heap in a {@link MemorySegment} (row-major, two bytes per cell).
+ * <p>
+ * The segment either comes from an {@link Arena} or it is a memory-mapped temporary file, so the size of the canvas is neither limited by the capacity of a
+ * single array nor by the heap.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class SegmentCellBuffer implements CellBuffer {
+
+    /**
+     * Layout of a single cell
+     */
+    private static final ValueLayout.OfChar CELL = ValueLayout.JAVA_CHAR;
+
+    /**
+     * All cells of the canvas, row by row
+     */
+    private final MemorySegment cells;
+
+    /**
+     * number of cells per row (stride)
+     */
+    private final int width;
+
+    /**
+     * number of rows
+     */
+    private final int height;
+
+    /**
+     * Row buffer for the export, lazily created
+     */
+    private char[] rowBuffer = null;
+
+    /**
+     * @param cells memory for the cells, at least {@link #computeByteSize(int, int)} bytes
+     * @param width number of cells per row
+     * @param height number of rows
+     * @throws IllegalArgumentException if the dimensions are not positive or the segment is too small
+     */
+    SegmentCellBuffer(MemorySegment cells, int width, int height) {
+        if (width <= 0 || height <= 0 || cells == null || cells.byteSize() < computeByteSize(width, height)) {
+            throw new IllegalArgumentException(String.format(
+                    "expected: width > 0, height > 0, cells.byteSize() >= 2 * width * height, given: width=%d, height=%d, cells=%s", width, height, cells));
+        }
+        this.cells = cells;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Creates a new buffer with memory from the given arena, the buffer can only be used until the arena has been closed.
+     *
+     * @param arena memory source, not null
+     * @param width number of cells per row
+     * @param height number of rows
+     * @return new buffer (content undefined)
+     * @throws IllegalArgumentException if the dimensions are not positive
+     */
+    static SegmentCellBuffer allocate(Arena arena, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(String.format("expected: width > 0, height > 0, given: width=%d, height=%d", width, height));
+        }
+        return new SegmentCellBuffer(arena.allocate(computeByteSize(width, height), CELL.byteAlignment()), width, height);
+    }
+
+    /**
+     * Creates a new buffer backed by a memory-mapped temporary file. The file will be deleted as soon as possible (depends on the operating system), the
+     * mapping gets released when the buffer is no longer reachable.
+     *
+     * @param width number of cells per row
+     * @param height number of rows
+     * @return new buffer (content undefined)
+     * @throws IOException if the temporary file could not be created or mapped
+     * @throws IllegalArgumentException if the dimensions are not positive
+     */
+    static SegmentCellBuffer map(int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(String.format("expected: width > 0, height > 0, given: width=%d, height=%d", width, height));
+        }
+        Path file = Files.createTempFile("text-canvas-", ".cells");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+            // the mapping stays valid after closing the channel
+            return new SegmentCellBuffer(channel.map(MapMode.READ_WRITE, 0, computeByteSize(width, height), Arena.ofAuto()), width, height);
+        }
+    }
+
+    /**
+     * @param width
+     * @param height
+     * @return number of bytes required to store the cells
+     */
+    static long computeByteSize(int width, int height) {
+        return (long) width * height * CELL.byteSize();
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return position of the cell in the segment (bytes)
+     */
+    private long offset(int x, int y) {
+        return (((long) y * width) + x) * CELL.byteSize();
+    }
+
+    @Override
+    public char get(int x, int y) {
+        return cells.get(CELL, offset(x, y));
+    }
+
+    @Override
+    public void set(int x, int y, char ch) {
+        cells.set(CELL, offset(x, y), ch);
+    }
+
+    @Override
+    public void clear() {
+        fill(0, (long) width * height, ' ');
+    }
+
+    @Override
+    public void fillSpan(int x, int y, int length, char ch) {
+        fill(offset(x, y), length, ch);
+    }
+
+    /**
+     * Fills the given range with the character, the filled part of the range is copied over and over (doubling) to avoid per-cell writes.
+     *
+     * @param offset start in the segment (bytes)
+     * @param length number of cells
+     * @param ch
+     */
+    private void fill(long offset, long length, char ch) {
+        if (length <= 0) {
+            return;
+        }
+        cells.set(CELL, offset, ch);
+        long filled = 1;
+        while (filled < length) {
+            long chunk = Math.min(filled, length - filled);
+            MemorySegment.copy(cells, offset, cells, offset + (filled * CELL.byteSize()), chunk * CELL.byteSize());
+            filled = filled + chunk;
+        }
+    }
+
+    @Override
+    public void copySpan(int x, int y, String s, int fromIdx, int toIdx) {
+        long offset = offset(x, y);
+        for (int i = fromIdx; i < toIdx; i++) {
+            cells.set(CELL, offset, s.charAt(i));
+            offset = offset + CELL.byteSize();
+        }
+    }
+
+    @Override
+    public void copySpan(int x, int y, char[] src, int offset, int length) {
+        MemorySegment.copy(src, offset, cells, CELL, offset(x, y), length);
+    }
+
+    @Override
+    public void copyRow(int y, char[] dest) {
+        MemorySegment.copy(cells, CELL, offset(0, y), dest, 0, width);
+    }
+
+    @Override
+    public void appendRow(int y, StringBuilder sb) {
+        if (rowBuffer == null) {
+            rowBuffer = new char[width];
+        }
+        copyRow(y, rowBuffer);
+        sb.append(new String(rowBuffer));
+    }
+
+}
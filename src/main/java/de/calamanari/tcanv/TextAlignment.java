@@ -20,10 +20,13 @@
 package de.calamanari.tcanv;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Text alignment options, e.g. for labels
+ * <p>
+ * Widths and lengths of aligned lines are measured in cells, so wide characters count twice and zero-width characters don't count, see {@link DisplayWidth}.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
@@ -147,33 +150,102 @@ public enum TextAlignment {
     RIGHT_BOTTOM;
 
     /**
-     * Aligns the given string (padded with space characters) or truncates it if it is longer than <code>width</code>
+     * Computes the number of space characters before the visible text in a line of the given width
      * 
-     * @param s to be aligned
+     * @param textLength length of the visible (trimmed) text, <code>&lt;= width</code>
      * @param width
-     * @return given string potentially left and right-padded
+     * @return number of leading space characters
      */
-    private String alignLine(String s, int width) {
+    private int computeOffset(int textLength, int width) {
+        int space = width - textLength;
+        if (space < 2) {
+            return 0;
+        }
         switch (this) {
         case LEFT_TOP, LEFT_CENTER, LEFT_BOTTOM:
-            return leftAlign(s, width);
+            return 0;
         case CENTER_TOP, CENTER_CENTER, CENTER_BOTTOM:
-            return center(s, width);
+            return space / 2;
         case RIGHT_TOP, RIGHT_CENTER, RIGHT_BOTTOM:
-            return rightAlign(s, width);
+            return space;
         default:
             throw new IllegalStateException("not implemented");
         }
     }
 
     /**
-     * Splits the given string into lines using common separators
+     * Computes the length of a line with a visible text of the given length. A line will only be padded if more than a single space character is left.
      * 
-     * @param s
-     * @return lines split from the given string
+     * @param textLength length of the visible (trimmed) text, <code>&lt;= width</code>
+     * @param width
+     * @return length of the line
+     */
+    private static int computeLineLength(int textLength, int width) {
+        return width - textLength > 1 ? width : textLength;
+    }
+
+    /**
+     * Computes the number of empty lines above the text lines
+     * 
+     * @param numberOfLines number of text lines
+     * @param height
+     * @return number of empty lines to be placed above the text
+     */
+    private int computeLinesBefore(int numberOfLines, int height) {
+        int verticalSpace = height - numberOfLines;
+        switch (this) {
+        case LEFT_TOP, RIGHT_TOP, CENTER_TOP:
+            return 0;
+        case LEFT_CENTER, RIGHT_CENTER, CENTER_CENTER:
+            return verticalSpace > 1 ? verticalSpace / 2 : 0;
+        case LEFT_BOTTOM, RIGHT_BOTTOM, CENTER_BOTTOM:
+            return Math.max(0, verticalSpace);
+        default:
+            throw new IllegalStateException("not implemented");
+        }
+    }
+
+    /**
+     * Aligns the given string (padded with space characters) or truncates it if it is longer than <code>width</code>
+     * 
+     * @param s to be aligned
+     * @param width
+     * @return given string potentially left and right-padded
+     */
+    private String alignLine(String s, int width) {
+        s = s.trim();
+        int textLength = DisplayWidth.of(s);
+        if (textLength > width) {
+            int cut = DisplayWidth.indexOfCells(s, 0, s.length(), width);
+            // a wide character that does not fit anymore will be replaced with a space character
+            int missing = width - DisplayWidth.of(s, 0, cut);
+            return missing == 0 ? s.substring(0, cut) : s.substring(0, cut) + " ".repeat(missing);
+        }
+        return createLine(s, 0, s.length(), computeOffset(textLength, width), computeLineLength(textLength, width));
+    }
+
+    /**
+     * Creates a line from the visible part of the given text padded with space characters
+     * 
+     * @param text source
+     * @param from first visible character (inclusive)
+     * @param to end of the visible characters (exclusive)
+     * @param offset number of space characters before the visible characters
+     * @param length total length of the line in cells (see {@link DisplayWidth})
+     * @return line
      */
-    private static String[] splitLines(String s) {
-        return String.valueOf(s).split("\\r?\\n|\\r");
+    private static String createLine(String text, int from, int to, int offset, int length) {
+        if (from == to) {
+            return " ".repeat(length);
+        }
+        int textLength = DisplayWidth.of(text, from, to);
+        if (offset == 0 && textLength == length) {
+            return text.substring(from, to);
+        }
+        char[] line = new char[length - textLength + to - from];
+        Arrays.fill(line, ' ');
+        text.getChars(from, to, line, offset);
+        return new String(line);
     }
 
     /**
@@ -184,76 +256,164 @@ public enum TextAlignment {
      * @param width
      * @param height
      * @return list of aligned lines
-     * @throws NullPointerException if s was null
+     * @throws IllegalArgumentException if the width was negative
      */
     public List<String> apply(String s, int width, int height) {
-        List<String> formattedLines = splitLines(s, width, height);
+        List<String> res = new ArrayList<>(Math.max(0, height));
+        apply(s, width, height, (lineIdx, text, from, to, offset, length) -> res.add(createLine(text, from, to, offset, length)));
+        return res;
+    }
 
-        int verticalSpace = height - formattedLines.size();
-        switch (this) {
-        case LEFT_TOP, RIGHT_TOP, CENTER_TOP: {
-            while (formattedLines.size() < height) {
-                formattedLines.add(alignLine("", width));
-            }
-            break;
+    /**
+     * Aligns the given string like {@link #apply(String, int, int)} and writes the lines into the given buffer (row by row, <code>width</code> characters
+     * each, padded with space characters). Like on a canvas wide characters are followed by a {@link DisplayWidth#WIDE_CHAR_CONTINUATION}.
+     * 
+     * @param s
+     * @param width
+     * @param height
+     * @param buffer target, at least <code>width * height</code> characters
+     * @throws IllegalArgumentException if the width was negative or the buffer is too small
+     */
+    public void apply(String s, int width, int height, char[] buffer) {
+        if (height > 0 && (long) width * height > buffer.length) {
+            throw new IllegalArgumentException(
+                    String.format("expected: buffer.length >= width * height, given: buffer.length=%d, width=%d, height=%d", buffer.length, width, height));
         }
-        case LEFT_CENTER, RIGHT_CENTER, CENTER_CENTER: {
-            if (verticalSpace > 1) {
-                for (int i = 0; i < verticalSpace / 2; i++) {
-                    formattedLines.add(0, alignLine("", width));
-                }
-            }
-            while (formattedLines.size() < height) {
-                formattedLines.add(alignLine("", width));
-            }
-            break;
+        apply(s, width, height, (lineIdx, text, from, to, offset, length) -> {
+            int rowStart = lineIdx * width;
+            Arrays.fill(buffer, rowStart, rowStart + width, ' ');
+            DisplayWidth.toCells(text, from, to, buffer, rowStart + offset);
+        });
+    }
+
+    /**
+     * Aligns the given string like {@link #apply(String, int, int)} but passes the position of each line's visible text to the consumer instead of creating
+     * padded lines. Thus the caller can write the lines directly into its target (e.g., a canvas).
+     * <p>
+     * The consumer will be called exactly <code>height</code> times (top-down), <code>null</code> will be treated as the text <code>"null"</code>.
+     * 
+     * @param s
+     * @param width
+     * @param height
+     * @param consumer receives the lines
+     * @throws IllegalArgumentException if the width was negative
+     */
+    public void apply(String s, int width, int height, AlignedLineConsumer consumer) {
+        if (width < 0 && height > 0) {
+            throw new IllegalArgumentException(String.format("expected: width >= 0, given: width=%d", width));
         }
-        case LEFT_BOTTOM, RIGHT_BOTTOM, CENTER_BOTTOM: {
-            while (formattedLines.size() < height) {
-                formattedLines.add(0, alignLine("", width));
-            }
-            break;
+        String text = String.valueOf(s);
+        int numberOfLines = 0;
+        int linesBefore = 0;
+        if (this != LEFT_TOP && this != CENTER_TOP && this != RIGHT_TOP) {
+            numberOfLines = processLines(text, width, height, 0, null);
+            linesBefore = computeLinesBefore(numberOfLines, height);
         }
+        int emptyLineLength = computeLineLength(0, width);
+        for (int i = 0; i < linesBefore; i++) {
+            consumer.accept(i, text, 0, 0, 0, emptyLineLength);
+        }
+        numberOfLines = processLines(text, width, height, linesBefore, consumer);
+        for (int i = linesBefore + numberOfLines; i < height; i++) {
+            consumer.accept(i, text, 0, 0, 0, emptyLineLength);
         }
-        return formattedLines;
     }
 
     /**
-     * Creates a list of the effective lines of text to be written in an area of a defined width and height
+     * Scans the text line by line (separators: <code>\r\n</code>, <code>\n</code>, <code>\r</code>) and passes the trimmed lines to the consumer, lines
+     * longer than <code>width</code> cells (see {@link DisplayWidth}) will be wrapped. Like {@link String#split(String)} this method ignores any empty lines at the end of the text.
      * 
-     * @param s raw text (to be split)
-     * @param width number of characters available per line
-     * @param height number of lines available
-     * @return list of text lines to be printed (trimmed)
+     * @param text source
+     * @param width maximum length of a line
+     * @param height maximum number of lines
+     * @param firstLineIdx index of the first line to be reported to the consumer
+     * @param consumer receives the lines, <code>null</code> to only count the lines
+     * @return number of lines (<code>&lt;= height</code>)
      */
-    private List<String> splitLines(String s, int width, int height) {
-        List<String> formattedLines = new ArrayList<>();
-        for (String raw : splitLines(s)) {
-            String trimmed = raw.trim();
+    private int processLines(String text, int width, int height, int firstLineIdx, AlignedLineConsumer consumer) {
+        int end = text.length();
+        while (end > 0 && isLineSeparator(text.charAt(end - 1))) {
+            end--;
+        }
+        if (end == 0 && !text.isEmpty()) {
+            return 0;
+        }
+        int numberOfLines = 0;
+        int lineStart = 0;
+        while (numberOfLines < height && lineStart <= end) {
+            int lineEnd = lineStart;
+            int acc = 0;
+            while (lineEnd < end && !isLineSeparator(text.charAt(lineEnd))) {
+                acc = acc | text.charAt(lineEnd);
+                lineEnd++;
+            }
+            // Latin-1 lines take one cell per character, otherwise the lengths must be measured, see DisplayWidth
+            boolean latin1 = acc < 0x100;
+            int from = skipLeadingWhitespace(text, lineStart, lineEnd);
+            int to = skipTrailingWhitespace(text, from, lineEnd);
             boolean eol = false;
-            while (!eol && formattedLines.size() < height) {
-                String part = trimmed;
-                if (part.length() > width) {
-                    part = part.substring(0, width);
-                    if (trimmed.length() > width) {
-                        trimmed = trimmed.substring(width).trim();
-                        eol = trimmed.isEmpty();
-                    }
-                    else {
-                        eol = true;
+            while (!eol && numberOfLines < height) {
+                int partFrom = from;
+                int partTo = to;
+                int textLength = latin1 ? to - from : DisplayWidth.of(text, from, to);
+                if (textLength > width) {
+                    int cut = latin1 ? from + width : DisplayWidth.indexOfCells(text, from, to, width);
+                    int next = cut;
+                    if (cut == from && width > 0) {
+                        // a wide character that does not fit into a line at all will be skipped
+                        next = DisplayWidth.indexOfNextCluster(text, from, to);
                     }
+                    partTo = skipTrailingWhitespace(text, from, cut);
+                    from = skipLeadingWhitespace(text, next, to);
+                    eol = (from == to);
+                    textLength = latin1 ? partTo - partFrom : DisplayWidth.of(text, partFrom, partTo);
                 }
                 else {
                     eol = true;
                 }
-                part = alignLine(part, width);
-                formattedLines.add(part);
-            }
-            if (formattedLines.size() == height) {
-                break;
+                if (consumer != null) {
+                    consumer.accept(firstLineIdx + numberOfLines, text, partFrom, partTo, computeOffset(textLength, width),
+                            computeLineLength(textLength, width));
+                }
+                numberOfLines++;
             }
+            lineStart = (lineEnd + 1 < end && text.charAt(lineEnd) == '\r' && text.charAt(lineEnd + 1) == '\n') ? lineEnd + 2 : lineEnd + 1;
+        }
+        return numberOfLines;
+    }
+
+    /**
+     * @param ch
+     * @return true if the character is <code>\n</code> or <code>\r</code>
+     */
+    private static boolean isLineSeparator(char ch) {
+        return ch == '\n' || ch == '\r';
+    }
+
+    /**
+     * @param text
+     * @param from
+     * @param to
+     * @return index of the first character in the range that would not be removed by {@link String#trim()}, <code>to</code> if there is none
+     */
+    private static int skipLeadingWhitespace(String text, int from, int to) {
+        while (from < to && text.charAt(from) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * @param text
+     * @param from
+     * @param to
+     * @return end of the range without the characters that would be removed by {@link String#trim()}, <code>from</code> if there is none
+     */
+    private static int skipTrailingWhitespace(String text, int from, int to) {
+        while (to > from && text.charAt(to - 1) <= ' ') {
+            to--;
         }
-        return formattedLines;
+        return to;
     }
 
     /**
@@ -264,21 +424,20 @@ public enum TextAlignment {
      * @param width
      * @param height
      * @return int[maxLineWidth, numberOfLines]
-     * @throws NullPointerException if s was null
+     * @throws IllegalArgumentException if the width was negative
      */
     public static int[] computeTrimmedDimensions(String s, int width, int height) {
-        List<String> formattedLines = CENTER_CENTER.apply(s, width, height);
-        int maxLineWidth = 0;
-        int numberOfLines = 0;
-        for (String line : formattedLines) {
-            int len = line.trim().length();
-            if (len > 0) {
-                numberOfLines++;
-                maxLineWidth = Math.max(maxLineWidth, len);
-            }
+        if (width < 0 && height > 0) {
+            throw new IllegalArgumentException(String.format("expected: width >= 0, given: width=%d", width));
         }
-        return new int[] { maxLineWidth, numberOfLines };
-
+        int[] res = new int[2];
+        CENTER_CENTER.processLines(String.valueOf(s), width, height, 0, (lineIdx, text, from, to, offset, length) -> {
+            if (to > from) {
+                res[0] = Math.max(res[0], DisplayWidth.of(text, from, to));
+                res[1]++;
+            }
+        });
+        return res;
     }
 
     /**
@@ -288,20 +447,90 @@ public enum TextAlignment {
      * 
      * @param s
      * @return int[maxLineWidth, numberOfLines]
-     * @throws NullPointerException if s was null
      */
     public static int[] computeTrimmedDimensions(String s) {
-        String[] lines = splitLines(s);
-        int maxLineWidth = 0;
-        int numberOfLines = 0;
-        for (String line : lines) {
-            int len = line.trim().length();
-            if (len > 0) {
-                numberOfLines++;
-                maxLineWidth = Math.max(maxLineWidth, len);
+        long dimensions = measureTrimmedDimensions(s, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        return new int[] { trimmedWidth(dimensions), trimmedHeight(dimensions) };
+    }
+
+    /**
+     * Computes the same dimensions as {@link #computeTrimmedDimensions(String)} limited to the given maximum width and height in a single pass without
+     * allocating any memory.
+     * <p>
+     * The scan stops as soon as both limits have been reached, so only a small prefix of a huge text will be inspected if the dimensions of a box are limited.
+     * A limit of <code>0</code> means that the corresponding dimension is of no interest.
+     * 
+     * @param s text, <code>null</code> will be measured as <code>"null"</code>
+     * @param maxWidth limit for the width, <code>&gt;=0</code>
+     * @param maxHeight limit for the height (number of non-blank lines), <code>&gt;=0</code>
+     * @return packed dimensions, see {@link #trimmedWidth(long)} and {@link #trimmedHeight(long)}
+     * @throws IllegalArgumentException if any limit was negative
+     */
+    public static long measureTrimmedDimensions(String s, int maxWidth, int maxHeight) {
+        if (maxWidth < 0 || maxHeight < 0) {
+            throw new IllegalArgumentException(String.format("expected: maxWidth >= 0, maxHeight >= 0, given: maxWidth=%d, maxHeight=%d", maxWidth, maxHeight));
+        }
+        String text = String.valueOf(s);
+        int len = text.length();
+        int width = 0;
+        int height = 0;
+        // positions in cells (see DisplayWidth), for Latin-1 text they are equal to the character positions
+        int column = 0;
+        int lineFrom = -1;
+        int lineTo = -1;
+        for (int i = 0; i < len && (width < maxWidth || height < maxHeight); i++) {
+            char ch = text.charAt(i);
+            if (isLineSeparator(ch)) {
+                if (lineFrom >= 0) {
+                    width = Math.max(width, lineTo - lineFrom);
+                    height++;
+                    lineFrom = -1;
+                }
+                column = 0;
+            }
+            else if (ch > ' ') {
+                if (lineFrom < 0) {
+                    lineFrom = column;
+                }
+                if (ch < 0x300) {
+                    column++;
+                }
+                else {
+                    int codePoint = text.codePointAt(i);
+                    column = column + DisplayWidth.of(codePoint);
+                    i = i + Character.charCount(codePoint) - 1;
+                }
+                lineTo = column;
+                if (lineTo - lineFrom >= maxWidth && height + 1 >= maxHeight) {
+                    // the current line reaches both limits, no need to find its end
+                    break;
+                }
             }
+            else {
+                column++;
+            }
+        }
+        if (lineFrom >= 0) {
+            width = Math.max(width, lineTo - lineFrom);
+            height++;
         }
-        return new int[] { maxLineWidth, numberOfLines };
+        return (((long) Math.min(width, maxWidth)) << 32) | Math.min(height, maxHeight);
+    }
+
+    /**
+     * @param dimensions result of {@link #measureTrimmedDimensions(String, int, int)}
+     * @return maximum length of a trimmed line
+     */
+    public static int trimmedWidth(long dimensions) {
+        return (int) (dimensions >>> 32);
+    }
+
+    /**
+     * @param dimensions result of {@link #measureTrimmedDimensions(String, int, int)}
+     * @return number of non-blank lines
+     */
+    public static int trimmedHeight(long dimensions) {
+        return (int) dimensions;
     }
 
     /**
@@ -315,20 +544,7 @@ public enum TextAlignment {
      * @throws NullPointerException if s was null
      */
     public static final String center(String s, int width) {
-        s = s.trim();
-        int space = width - s.length();
-        if (space > 1) {
-            int spaceBefore = space / 2;
-            int spaceAfter = space - spaceBefore;
-            String format = "%" + spaceBefore + "s%s%" + spaceAfter + "s";
-            return String.format(format, "", s, "");
-        }
-        else if (space < 0) {
-            return s.substring(0, width);
-        }
-        else {
-            return s;
-        }
+        return CENTER_CENTER.alignLine(s, width);
     }
 
     /**
@@ -342,18 +558,7 @@ public enum TextAlignment {
      * @throws NullPointerException if s was null
      */
     public static final String leftAlign(String s, int width) {
-        s = s.trim();
-        int space = width - s.length();
-        if (space > 1) {
-            String format = "%s%" + space + "s";
-            return String.format(format, s, "");
-        }
-        else if (space < 0) {
-            return s.substring(0, width);
-        }
-        else {
-            return s;
-        }
+        return LEFT_CENTER.alignLine(s, width);
     }
 
     /**
@@ -367,18 +572,7 @@ public enum TextAlignment {
      * @throws NullPointerException if s was null
      */
     public static final String rightAlign(String s, int width) {
-        s = s.trim();
-        int space = width - s.length();
-        if (space > 1) {
-            String format = "%" + space + "s%s";
-            return String.format(format, "", s);
-        }
-        else if (space < 0) {
-            return s.substring(0, width);
-        }
-        else {
-            return s;
-        }
+        return RIGHT_CENTER.alignLine(s, width);
     }
 
-}
\ No newline at end of file
+}
@@ -19,21 +19,43 @@
 
 package de.calamanari.tcanv;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BinaryOperator;
 
 /**
  * {@link TextCanvas} is a simple character area for printing textual diagrams. It comes with rudimentary support for drawing boxes and lines.
+ * <p>
+ * Texts will be written according to their display width (see {@link DisplayWidth}): wide characters take two cells, the second cell contains the
+ * {@link DisplayWidth#WIDE_CHAR_CONTINUATION} which will be omitted on export, zero-width characters don't take any cell. Single characters (see
+ * {@link #write(char)}) are always written to a single cell.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
 public class TextCanvas {
 
     /**
-     * Array holding the characters of the canvas, <code>height x width</code>
+     * Storage holding the characters of the canvas, <code>height x width</code>
      */
-    private final char[][] canvas;
+    private final CellBuffer cells;
+
+    /**
+     * Type of the storage
+     */
+    private final CanvasStorage storage;
 
     /**
      * Dimensions of this canvas
@@ -45,6 +67,36 @@ public class TextCanvas {
      */
     private final CanvasBoundCheckStrategy cbcStrategy;
 
+    /**
+     * Glyphs for drawing lines, <code>null</code> for the classic mode
+     */
+    private LineGlyphSet lineGlyphSet = null;
+
+    /**
+     * Connectivity masks of the cells drawn with the {@link #lineGlyphSet} (see {@link LineGlyphSet}), lazily created per row
+     */
+    private byte[][] connectivity = null;
+
+    /**
+     * Reusable descriptor, so drawing a connector does not create any garbage
+     */
+    private final ConnectorDescriptor connectorScratch = new ConnectorDescriptor();
+
+    /**
+     * Reusable batch for {@link #drawLines(Collection)}, lazily created
+     */
+    private ConnectorBatch connectorBatch = null;
+
+    /**
+     * If not null, line segments, corners and connector ends will be recorded in this batch instead of being drawn
+     */
+    private ConnectorBatch recordingBatch = null;
+
+    /**
+     * Tells whether any {@link DisplayWidth#WIDE_CHAR_CONTINUATION} has been written since the last {@link #clear()}, shared with all views
+     */
+    private final AtomicBoolean wideCellsWritten;
+
     /**
      * Current horizontal cursor position
      */
@@ -56,23 +108,65 @@ public class TextCanvas {
     private int cursorY = 0;
 
     /**
-     * Creates a new canvas with the given dimensions.
+     * Creates a new canvas with the given dimensions and storage.
      * 
      * @param format dimensions of the canvas, not null
      * @param cbcStrategy, not null
-     * @throws IllegalArgumentException if the dimensions are wrong or the given strategy was null
+     * @param storage determines how the characters are kept in memory, not null
+     * @throws IllegalArgumentException if the dimensions are wrong, exceed the capacity of the storage (see {@link CanvasStorage#supports(CanvasFormat)}) or the
+     *             given strategy or storage was null
+     * @throws UncheckedIOException if the storage is {@link CanvasStorage#MAPPED_FILE} and the temporary file could not be created
      */
-    public TextCanvas(CanvasFormat format, CanvasBoundCheckStrategy cbcStrategy) {
-        if (format == null || cbcStrategy == null) {
+    public TextCanvas(CanvasFormat format, CanvasBoundCheckStrategy cbcStrategy, CanvasStorage storage) {
+        if (format == null || cbcStrategy == null || storage == null) {
             throw new IllegalArgumentException(
-                    String.format("expected: format != null, cbcStrategy != null, given: format=%s, cbcStrategy=%s", format, cbcStrategy));
+                    String.format("expected: format != null, cbcStrategy != null, storage != null, given: format=%s, cbcStrategy=%s, storage=%s", format,
+                            cbcStrategy, storage));
+        }
+        this.format = format;
+        this.storage = storage;
+        this.cells = storage.createCellBuffer(format);
+        this.cbcStrategy = cbcStrategy;
+        this.wideCellsWritten = new AtomicBoolean();
+        clear();
+    }
+
+    /**
+     * Creates a new canvas with the given dimensions ({@link CanvasStorage#OFF_HEAP}), the memory for the characters will be allocated from the given arena.
+     * <p>
+     * This allows callers to release the memory of huge canvases explicitly. <b>Important:</b> The canvas must not be used anymore after the arena has been
+     * closed.
+     * 
+     * @param format dimensions of the canvas, not null
+     * @param cbcStrategy, not null
+     * @param arena source of the memory, not null
+     * @throws IllegalArgumentException if the dimensions are wrong or the given strategy or arena was null
+     */
+    public TextCanvas(CanvasFormat format, CanvasBoundCheckStrategy cbcStrategy, Arena arena) {
+        if (format == null || cbcStrategy == null || arena == null) {
+            throw new IllegalArgumentException(String.format(
+                    "expected: format != null, cbcStrategy != null, arena != null, given: format=%s, cbcStrategy=%s, arena=%s", format, cbcStrategy, arena));
         }
         this.format = format;
-        this.canvas = new char[format.height()][format.width()];
+        this.storage = CanvasStorage.OFF_HEAP;
+        this.cells = SegmentCellBuffer.allocate(arena, format.width(), format.height());
         this.cbcStrategy = cbcStrategy;
+        this.wideCellsWritten = new AtomicBoolean();
         clear();
     }
 
+    /**
+     * Creates a new canvas with the given dimensions ({@link CanvasStorage#DENSE}, or {@link CanvasStorage#OFF_HEAP} if the number of cells exceeds
+     * {@link CanvasStorage#MAX_ARRAY_CELLS}).
+     * 
+     * @param format dimensions of the canvas, not null
+     * @param cbcStrategy, not null
+     * @throws IllegalArgumentException if the dimensions are wrong or the given strategy was null
+     */
+    public TextCanvas(CanvasFormat format, CanvasBoundCheckStrategy cbcStrategy) {
+        this(format, cbcStrategy, (format == null || CanvasStorage.DENSE.supports(format)) ? CanvasStorage.DENSE : CanvasStorage.OFF_HEAP);
+    }
+
     /**
      * Creates a new canvas of the given dimensions with {@link CanvasBoundCheckStrategy#ERROR}
      * 
@@ -105,13 +199,40 @@ public class TextCanvas {
         this(width, height, CanvasBoundCheckStrategy.ERROR);
     }
 
+    /**
+     * Creates a view sharing the characters with the given canvas
+     * 
+     * @param source canvas to be viewed
+     */
+    private TextCanvas(TextCanvas source) {
+        this.format = source.format;
+        this.storage = source.storage;
+        this.cells = source.cells;
+        this.cbcStrategy = source.cbcStrategy;
+        this.lineGlyphSet = source.lineGlyphSet;
+        this.wideCellsWritten = source.wideCellsWritten;
+    }
+
+    /**
+     * Creates a view of this canvas with its own cursor, anything written to the view will be written to this canvas and vice versa.
+     * <p>
+     * If the storage {@link CanvasStorage#supportsConcurrentWrites()}, multiple threads can write text into disjoint areas of the same canvas, each thread
+     * through its own view. <b>Important:</b> Line glyphs are joined per instance (see {@link #setLineGlyphSet(LineGlyphSet)}), so lines drawn through a view
+     * won't be joined with lines drawn through this canvas or any other view.
+     * 
+     * @return new view with the cursor at the upper left corner
+     */
+    public TextCanvas createView() {
+        return new TextCanvas(this);
+    }
+
     /**
      * Resets the canvas to its initial state (all blank)
      */
     public void clear() {
-        for (int y = 0; y < format.height(); y++) {
-            Arrays.fill(canvas[y], ' ');
-        }
+        cells.clear();
+        wideCellsWritten.set(false);
+        connectivity = null;
         setCursor(0, 0);
     }
 
@@ -142,6 +263,34 @@ public class TextCanvas {
         return format;
     }
 
+    /**
+     * @return the way this canvas keeps its characters in memory
+     */
+    public CanvasStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return glyph set for drawing lines or <code>null</code> if the canvas is in classic mode (default)
+     */
+    public LineGlyphSet getLineGlyphSet() {
+        return lineGlyphSet;
+    }
+
+    /**
+     * Sets the glyphs for drawing lines (see {@link #drawLine(int, int, int, int, ConnectorEndType, ConnectorEndType, CharConflictResolver)}).
+     * <p>
+     * In classic mode (<code>null</code>, default) lines are drawn with <code>'-'</code> and <code>'|'</code>, corners with <code>'+'</code>, and conflicts are
+     * left to the conflict resolver. With a {@link LineGlyphSet} every cell of a line gets a connectivity mask which will be joined with the mask of the line
+     * glyph already present at this position, so crossings, junctions and corners get the correct glyph of the set. The conflict resolver only decides if the
+     * existing character is not a line glyph.
+     * 
+     * @param lineGlyphSet glyphs for subsequent line drawing or <code>null</code> for the classic mode
+     */
+    public void setLineGlyphSet(LineGlyphSet lineGlyphSet) {
+        this.lineGlyphSet = lineGlyphSet;
+    }
+
     /**
      * Positions the cursor on the canvas
      * <p>
@@ -282,18 +431,20 @@ public class TextCanvas {
         if (!transparent) {
             fillSquare(width, height, ' ');
         }
+        // the label's padding does not need to be written if the area has just been filled
+        boolean blankBackground = !transparent && (leftUpperCornerX >= 0 || cbcStrategy == CanvasBoundCheckStrategy.CLIP);
         if (!style.suppressBorder()) {
             drawBoxBorder(style, width, height, leftUpperCornerX, leftUpperCornerY);
             if (label != null && !label.isBlank()) {
                 cursorX = leftUpperCornerX + 1;
                 cursorY = leftUpperCornerY + 1;
-                drawLabel(width - 2, height - 2, label, alignment, transparent);
+                drawLabel(width - 2, height - 2, label, alignment, transparent, blankBackground);
             }
         }
         else if (label != null && !label.isBlank()) {
             cursorX = leftUpperCornerX;
             cursorY = leftUpperCornerY;
-            drawLabel(width, height, label, alignment, transparent);
+            drawLabel(width, height, label, alignment, transparent, blankBackground);
         }
 
     }
@@ -308,68 +459,118 @@ public class TextCanvas {
      * @param leftUpperCornerY
      */
     private void drawBoxBorder(BoxStyle style, int width, int height, int leftUpperCornerX, int leftUpperCornerY) {
+        int rightX = leftUpperCornerX + width - 1;
+        int bottomY = leftUpperCornerY + height - 1;
         if (style.hasSideLine(BoxSide.TOP)) {
             cursorY = leftUpperCornerY;
             cursorX = leftUpperCornerX;
             write(style.cornerChar());
-            cursorX = leftUpperCornerX + width - 1;
+            cursorX = rightX;
             cursorY = leftUpperCornerY;
             write(style.cornerChar());
         }
         if (style.hasSideLine(BoxSide.BOTTOM)) {
             cursorX = leftUpperCornerX;
-            cursorY = leftUpperCornerY + height - 1;
+            cursorY = bottomY;
             write(style.cornerChar());
-            cursorX = leftUpperCornerX + width - 1;
-            cursorY = leftUpperCornerY + height - 1;
+            cursorX = rightX;
+            cursorY = bottomY;
             write(style.cornerChar());
         }
-
-        for (int x = leftUpperCornerX + 1; x < (leftUpperCornerX + width) - 1; x++) {
-            cursorX = x;
-            cursorY = leftUpperCornerY;
-            if (style.hasSideLine(BoxSide.TOP)) {
-                write(style.horizontalLineChar());
-            }
-            cursorX = x;
-            cursorY = leftUpperCornerY + height - 1;
-            if (style.hasSideLine(BoxSide.BOTTOM)) {
-                write(style.horizontalLineChar());
-            }
+        if (style.hasSideLine(BoxSide.TOP)) {
+            fill(leftUpperCornerX + 1, leftUpperCornerY, width - 2, 1, style.horizontalLineChar());
         }
-        for (int y = leftUpperCornerY + 1; y < (leftUpperCornerY + height) - 1; y++) {
-            cursorX = leftUpperCornerX;
-            cursorY = y;
-            if (style.hasSideLine(BoxSide.LEFT)) {
-                write(style.verticalLineChar());
-            }
-            cursorX = leftUpperCornerX + width - 1;
-            cursorY = y;
-            if (style.hasSideLine(BoxSide.RIGHT)) {
-                write(style.verticalLineChar());
-            }
+        if (style.hasSideLine(BoxSide.BOTTOM)) {
+            fill(leftUpperCornerX + 1, bottomY, width - 2, 1, style.horizontalLineChar());
+        }
+        if (style.hasSideLine(BoxSide.LEFT)) {
+            fill(leftUpperCornerX, leftUpperCornerY + 1, 1, height - 2, style.verticalLineChar());
+        }
+        if (style.hasSideLine(BoxSide.RIGHT)) {
+            fill(rightX, leftUpperCornerY + 1, 1, height - 2, style.verticalLineChar());
+        }
+        // the cursor ends up where drawing the border cell by cell (corners, columns of the horizontal lines, rows of the vertical lines) would leave it
+        if (height > 2) {
+            moveCursorBehind(rightX, bottomY - 1, style.hasSideLine(BoxSide.RIGHT));
+        }
+        else if (width > 2) {
+            moveCursorBehind(rightX - 1, bottomY, style.hasSideLine(BoxSide.BOTTOM));
+        }
+    }
+
+    /**
+     * Places the cursor at the given position and moves it by one if a character has been written to this cell
+     * 
+     * @param x
+     * @param y
+     * @param written true if a character has been written to the given position (unless it is outside the canvas)
+     */
+    private void moveCursorBehind(int x, int y, boolean written) {
+        cursorX = x;
+        cursorY = y;
+        if (written && isCursorPositionValid()) {
+            cursorX++;
         }
     }
 
     /**
      * Fills the specified rectangular area (current cursor position is the upper left corner) with the given character
+     * <p>
+     * <b>Note:</b> If the cursor is left of the canvas, nothing will be written (like {@link #write(String)}), unless the strategy is
+     * {@link CanvasBoundCheckStrategy#CLIP}. Afterwards the cursor is located behind the last character written to the lowest row.
      * 
      * @param width
      * @param height
      * @param ch to be repeated across the given area
+     * @throws IndexOutOfBoundsException if the area is not fully inside the canvas and the strategy is {@link CanvasBoundCheckStrategy#ERROR}, in this case
+     *             neither the canvas nor the cursor position will be changed
      */
     public void fillSquare(int width, int height, char ch) {
         int leftUpperCornerX = cursorX;
         int leftUpperCornerY = cursorY;
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < width; i++) {
-            sb.append(ch);
+        if (height > 0) {
+            if (!canWrite(width) || (cbcStrategy == CanvasBoundCheckStrategy.ERROR && (long) leftUpperCornerY + height > format.height())) {
+                throw new IndexOutOfBoundsException(createOutOfBoundsMessage(String.valueOf(ch).repeat(Math.max(0, width)), width));
+            }
+            if (leftUpperCornerX >= 0 || cbcStrategy == CanvasBoundCheckStrategy.CLIP) {
+                fill(leftUpperCornerX, leftUpperCornerY, width, height, ch);
+            }
+            cursorY = leftUpperCornerY + height - 1;
+            int skip = computeClippedLength(width);
+            cursorX = leftUpperCornerX + skip;
+            cursorX = cursorX + computeWritableLength(width - skip);
         }
-        String fillLine = sb.toString();
-        for (int y = leftUpperCornerY; y < leftUpperCornerY + height; y++) {
-            cursorY = y;
-            cursorX = leftUpperCornerX;
-            write(fillLine);
+    }
+
+    /**
+     * Fills the specified rectangular area with the given character. The area will be clipped against the canvas bounds.
+     * <p>
+     * <b>Note:</b> If width or height is &lt;=0 then this method ignores the request and behaves like a no-op. The cursor position remains unchanged.
+     * 
+     * @param x horizontal position of the upper left corner
+     * @param y vertical position of the upper left corner
+     * @param width
+     * @param height
+     * @param ch to be repeated across the given area
+     * @throws IndexOutOfBoundsException if the area is not fully inside the canvas and the strategy is {@link CanvasBoundCheckStrategy#ERROR}
+     */
+    public void fill(int x, int y, int width, int height, char ch) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        long endX = Math.min((long) x + width, format.width());
+        long endY = Math.min((long) y + height, format.height());
+        if (cbcStrategy == CanvasBoundCheckStrategy.ERROR && (x < 0 || y < 0 || endX - x < width || endY - y < height)) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Cannot fill outside canvas bounds (width=%d, height=%d) limit: area at (%d, %d), size %dx%d, char='%s'", format.width(),
+                            format.height(), x, y, width, height, ch));
+        }
+        int startX = Math.max(0, x);
+        int length = (int) (endX - startX);
+        if (length > 0) {
+            for (int row = Math.max(0, y); row < endY; row++) {
+                cells.fillSpan(startX, row, length, ch);
+            }
         }
     }
 
@@ -384,7 +585,7 @@ public class TextCanvas {
      * @param alignment label text alignment option
      */
     public void drawLabel(int width, int height, String label, TextAlignment alignment) {
-        drawLabel(width, height, label, alignment, false);
+        drawLabel(width, height, label, alignment, false, false);
     }
 
     /**
@@ -397,21 +598,130 @@ public class TextCanvas {
      * @param label
      * @param alignment label text alignment option
      * @param transparent if true, the space inside the label will not be cleaned.
+     * @param blankBackground if true, the area of the label only contains space characters, so the padding does not need to be written
      */
-    private void drawLabel(int width, int height, String label, TextAlignment alignment, boolean transparent) {
+    private void drawLabel(int width, int height, String label, TextAlignment alignment, boolean transparent, boolean blankBackground) {
         if (width <= 0 || height <= 0) {
             return;
         }
-        List<String> formattedLines = alignment.apply(label, width, height);
+        if (!transparent && cbcStrategy != CanvasBoundCheckStrategy.ERROR && !intersectsCanvas(cursorX, cursorY, width, height)) {
+            // nothing visible, the cursor ends up where writing the last (padded) line would leave it
+            cursorY = cursorY + height - 1;
+            cursorX = cursorX + computeClippedLength(width);
+            return;
+        }
         int leftUpperCornerX = cursorX;
         int leftUpperCornerY = cursorY;
-        for (int i = 0; i < formattedLines.size(); i++) {
-            cursorX = leftUpperCornerX;
-            cursorY = leftUpperCornerY + i;
-            write(formattedLines.get(i), transparent);
+        alignment.apply(label, width, height, (lineIdx, text, from, to, offset, length) -> writeAlignedLine(leftUpperCornerX, leftUpperCornerY + lineIdx, text,
+                from, to, offset, length, transparent, blankBackground));
+    }
+
+    /**
+     * Writes a line of a label (see {@link AlignedLineConsumer}) at the given position like {@link #write(String)} would write the padded line, but copies
+     * only the visible characters and fills the padding (if required). Afterwards the cursor is located behind the padded line (clipped).
+     * 
+     * @param x start of the line
+     * @param y row
+     * @param text source
+     * @param from first visible character (inclusive)
+     * @param to end of the visible characters (exclusive)
+     * @param offset number of space characters before the visible characters
+     * @param length total length of the padded line
+     * @param transparent if true, the padding and any surrounding whitespace will not be written
+     * @param blankBackground if true, the padding will not be written because the area only contains space characters
+     */
+    private void writeAlignedLine(int x, int y, String text, int from, int to, int offset, int length, boolean transparent, boolean blankBackground) {
+        cursorX = x;
+        cursorY = y;
+        if (!canWrite(length)) {
+            String line = " ".repeat(offset) + text.substring(from, to) + " ".repeat(length - offset - DisplayWidth.of(text, from, to));
+            throw new IndexOutOfBoundsException(createOutOfBoundsMessage(line, length));
+        }
+        if (!DisplayWidth.isLatin1(text, from, to)) {
+            writeAlignedCells(text, from, to, offset, length, transparent);
+            return;
+        }
+        int startIdx = 0;
+        int endIdx = length;
+        if (transparent) {
+            int visibleFrom = from;
+            int visibleTo = to;
+            while (visibleFrom < visibleTo && Character.isWhitespace(text.charAt(visibleFrom))) {
+                visibleFrom++;
+            }
+            while (visibleTo > visibleFrom && Character.isWhitespace(text.charAt(visibleTo - 1))) {
+                visibleTo--;
+            }
+            // a line without any visible characters moves the cursor behind the line
+            startIdx = visibleFrom == visibleTo ? length : offset + visibleFrom - from;
+            endIdx = visibleFrom == visibleTo ? 0 : offset + visibleTo - from;
+        }
+        cursorX = cursorX + startIdx;
+        int skip = computeClippedLength(endIdx - startIdx);
+        cursorX = cursorX + skip;
+        startIdx = startIdx + skip;
+        int writable = computeWritableLength(endIdx - startIdx);
+        if (writable > 0) {
+            int endOfWindow = startIdx + writable;
+            int textStartIdx = Math.max(startIdx, offset);
+            int textEndIdx = Math.min(endOfWindow, offset + to - from);
+            boolean fillPadding = !transparent && !blankBackground;
+            if (fillPadding) {
+                blankCutWideChar(cursorX, cursorY);
+            }
+            else if (textStartIdx < textEndIdx) {
+                blankCutWideChar(cursorX + textStartIdx - startIdx, cursorY);
+            }
+            if (textStartIdx < textEndIdx) {
+                if (fillPadding && textStartIdx > startIdx) {
+                    cells.fillSpan(cursorX, cursorY, textStartIdx - startIdx, ' ');
+                }
+                cells.copySpan(cursorX + textStartIdx - startIdx, cursorY, text, from + textStartIdx - offset, from + textEndIdx - offset);
+                if (fillPadding && endOfWindow > textEndIdx) {
+                    cells.fillSpan(cursorX + textEndIdx - startIdx, cursorY, endOfWindow - textEndIdx, ' ');
+                }
+            }
+            else if (fillPadding) {
+                cells.fillSpan(cursorX, cursorY, writable, ' ');
+            }
+            cursorX = cursorX + writable;
         }
     }
 
+    /**
+     * Writes a line of a label with characters outside the Latin-1 range (see {@link #writeAlignedLine(int, int, String, int, int, int, int, boolean, boolean)})
+     * by converting the padded line into cells first (see {@link DisplayWidth}).
+     * 
+     * @param text source
+     * @param from first visible character (inclusive)
+     * @param to end of the visible characters (exclusive)
+     * @param offset number of space characters before the visible characters
+     * @param length total length of the padded line in cells
+     * @param transparent if true, the padding and any surrounding whitespace will not be written
+     */
+    private void writeAlignedCells(String text, int from, int to, int offset, int length, boolean transparent) {
+        char[] line = new char[length];
+        Arrays.fill(line, ' ');
+        DisplayWidth.toCells(text, from, to, line, offset);
+        int startIdx = 0;
+        int endIdx = length;
+        if (transparent) {
+            while (startIdx < endIdx && Character.isWhitespace(line[startIdx])) {
+                startIdx++;
+            }
+            while (endIdx > startIdx && Character.isWhitespace(line[endIdx - 1])) {
+                endIdx--;
+            }
+            if (startIdx == endIdx) {
+                // a line without any visible characters moves the cursor behind the line
+                startIdx = length;
+                endIdx = 0;
+            }
+        }
+        cursorX = cursorX + startIdx;
+        writeCells(line, startIdx, endIdx - startIdx);
+    }
+
     /**
      * Draws a line connecting the given points printing the specified connector ends.
      * <p>
@@ -445,7 +755,139 @@ public class TextCanvas {
      */
     public void drawLine(int fromX, int fromY, int toX, int toY, ConnectorEndType connectorFrom, ConnectorEndType connectorTo,
             BinaryOperator<Character> conflictResolver) {
-        drawConnector(new ConnectorDescriptor(connectorFrom, fromX, fromY, connectorTo, toX, toY, conflictResolver));
+        drawLine(fromX, fromY, toX, toY, connectorFrom, connectorTo, CharConflictResolver.of(conflictResolver));
+    }
+
+    /**
+     * Draws a line connecting the given points printing the specified connector ends.
+     * <p>
+     * The actual form of the line will be derived from the positions and the connector ends. A conflict resolver determines what to print if there are existing
+     * characters on the path of the connector line.
+     * 
+     * @param fromX
+     * @param fromY
+     * @param toX
+     * @param toY
+     * @param connectorFrom
+     * @param connectorTo
+     * @param conflictResolver resolution function to handle an existing character, takes the existing character and the proposed character as input, returns
+     *            the character decided to be written (not affecting explicit connector endpoints)
+     */
+    public void drawLine(int fromX, int fromY, int toX, int toY, ConnectorEndType connectorFrom, ConnectorEndType connectorTo,
+            CharConflictResolver conflictResolver) {
+        drawConnector(connectorScratch.init(connectorFrom, fromX, fromY, connectorTo, toX, toY, conflictResolver));
+    }
+
+    /**
+     * Draws all the given connectors, same as calling {@link #drawLine(int, int, int, int, ConnectorEndType, ConnectorEndType, CharConflictResolver)} for each
+     * of them in the given order.
+     * <p>
+     * If all connectors use the same {@link LineGlyphSet} as conflict resolver (in classic mode {@link LineGlyphSet#ASCII}) and their ends are line glyphs, the
+     * result does not depend on the order of the connectors. In this case the connectors will be split into horizontal and vertical spans which get resolved
+     * row by row in a single pass, so every affected cell will be visited only once. Of line segments starting at the same cell in the same direction (e.g.,
+     * the stem and the bus of connectors from a common point) only the parts not yet covered will be recorded. Otherwise, or if the strategy is
+     * {@link CanvasBoundCheckStrategy#ERROR} and any connector exceeds the canvas, the connectors will be drawn one by one.
+     * <p>
+     * The cursor position remains unchanged.
+     * 
+     * @param connectors to be drawn, not null
+     * @throws IndexOutOfBoundsException if any connector exceeds the canvas and the strategy is {@link CanvasBoundCheckStrategy#ERROR}
+     */
+    public void drawLines(Collection<ConnectorSpec> connectors) {
+        int savedCursorX = cursorX;
+        int savedCursorY = cursorY;
+        try {
+            if (!isBatchable(connectors) || !drawBatch(connectors)) {
+                for (ConnectorSpec connector : connectors) {
+                    drawLine(connector.fromX(), connector.fromY(), connector.toX(), connector.toY(), connector.connectorFrom(), connector.connectorTo(),
+                            connector.conflictResolver());
+                }
+            }
+        }
+        finally {
+            cursorX = savedCursorX;
+            cursorY = savedCursorY;
+        }
+    }
+
+    /**
+     * @param connectors
+     * @return true if the result of drawing the connectors does not depend on their order
+     */
+    private boolean isBatchable(Collection<ConnectorSpec> connectors) {
+        CharConflictResolver commonResolver = null;
+        for (ConnectorSpec connector : connectors) {
+            CharConflictResolver resolver = connector.conflictResolver();
+            if (commonResolver == null) {
+                commonResolver = resolver;
+            }
+            if (resolver != commonResolver || !(lineGlyphSet == null ? resolver == LineGlyphSet.ASCII : resolver instanceof LineGlyphSet)
+                    || lineEndMask(connector.connectorFrom()) == 0 || lineEndMask(connector.connectorTo()) == 0) {
+                return false;
+            }
+        }
+        return commonResolver != null;
+    }
+
+    /**
+     * @param type
+     * @return connectivity of the connector end symbol or 0 if it is not a line glyph
+     */
+    private int lineEndMask(ConnectorEndType type) {
+        return (lineGlyphSet == null ? LineGlyphSet.ASCII : lineGlyphSet).mask(type.symbol());
+    }
+
+    /**
+     * Records the connectors in the {@link #connectorBatch} and resolves it
+     * 
+     * @param connectors batchable connectors
+     * @return true if the connectors have been drawn, false if they must be drawn one by one to report an out-of-bounds problem
+     */
+    private boolean drawBatch(Collection<ConnectorSpec> connectors) {
+        if (connectorBatch == null) {
+            connectorBatch = new ConnectorBatch();
+        }
+        ConnectorBatch batch = connectorBatch;
+        batch.clear();
+        CharConflictResolver resolver = null;
+        recordingBatch = batch;
+        try {
+            for (ConnectorSpec connector : connectors) {
+                resolver = connector.conflictResolver();
+                drawConnector(connectorScratch.init(connector.connectorFrom(), connector.fromX(), connector.fromY(), connector.connectorTo(), connector.toX(),
+                        connector.toY(), resolver));
+            }
+        }
+        finally {
+            recordingBatch = null;
+        }
+        if (cbcStrategy == CanvasBoundCheckStrategy.ERROR && !batch.isInside(format.width(), format.height())) {
+            return false;
+        }
+        CharConflictResolver conflictResolver = resolver;
+        batch.resolve(format.width(), format.height(), (y, masks, fromX, toX) -> drawRowMasks(y, masks, fromX, toX, conflictResolver));
+        return true;
+    }
+
+    /**
+     * Joins the combined connectivity of the affected cells of a row with the existing characters
+     * 
+     * @param y row
+     * @param masks connectivity by horizontal position
+     * @param fromX first affected cell
+     * @param toX last affected cell
+     * @param conflictResolver common resolver of the batch
+     */
+    private void drawRowMasks(int y, byte[] masks, int fromX, int toX, CharConflictResolver conflictResolver) {
+        for (int x = fromX; x <= toX; x++) {
+            int mask = masks[x];
+            if (mask != 0 && lineGlyphSet == null) {
+                cells.set(x, y, LineGlyphSet.ASCII.join(cells.get(x, y), mask));
+            }
+            else if (mask != 0) {
+                joinCell(x, y, mask, conflictResolver);
+            }
+        }
     }
 
     /**
@@ -518,9 +960,9 @@ public class TextCanvas {
             drawVerticalLine(descriptor.lineToX, descriptor.lineFromY, descriptor.lineToY, descriptor.conflictResolver);
         }
         if (!descriptor.suppressHorizontalLine || !descriptor.suppressVerticalLine) {
-            cursorX = descriptor.lineToX;
-            cursorY = descriptor.lineFromY;
-            write('+', descriptor.conflictResolver);
+            int mask = (descriptor.suppressHorizontalLine ? 0 : horizontalDirection(descriptor.lineToX, descriptor.lineFromX))
+                    | (descriptor.suppressVerticalLine ? 0 : verticalDirection(descriptor.lineFromY, descriptor.lineToY));
+            drawCorner(descriptor.lineToX, descriptor.lineFromY, mask, descriptor.conflictResolver);
         }
     }
 
@@ -544,12 +986,12 @@ public class TextCanvas {
             drawVerticalLine(midX, descriptor.lineFromY, descriptor.lineToY, descriptor.conflictResolver);
         }
         if (!descriptor.suppressHorizontalLine || !descriptor.suppressVerticalLine) {
-            cursorX = midX;
-            cursorY = descriptor.lineFromY;
-            write('+', descriptor.conflictResolver);
-            cursorX = midX;
-            cursorY = descriptor.lineToY;
-            write('+', descriptor.conflictResolver);
+            int hMaskFrom = descriptor.suppressHorizontalLine ? 0 : horizontalDirection(midX, descriptor.lineFromX);
+            int hMaskTo = descriptor.suppressHorizontalLine ? 0 : horizontalDirection(midX, descriptor.lineToX);
+            int vMaskFrom = descriptor.suppressVerticalLine ? 0 : verticalDirection(descriptor.lineFromY, descriptor.lineToY);
+            int vMaskTo = descriptor.suppressVerticalLine ? 0 : verticalDirection(descriptor.lineToY, descriptor.lineFromY);
+            drawCorner(midX, descriptor.lineFromY, hMaskFrom | vMaskFrom, descriptor.conflictResolver);
+            drawCorner(midX, descriptor.lineToY, hMaskTo | vMaskTo, descriptor.conflictResolver);
         }
     }
 
@@ -569,12 +1011,10 @@ public class TextCanvas {
         if (!descriptor.suppressVerticalLine) {
             drawVerticalLine(extX, descriptor.lineFromY, descriptor.lineToY, descriptor.conflictResolver);
         }
-        cursorX = extX;
-        cursorY = descriptor.lineFromY;
-        write('+', descriptor.conflictResolver);
-        cursorX = extX;
-        cursorY = descriptor.lineToY;
-        write('+', descriptor.conflictResolver);
+        drawCorner(extX, descriptor.lineFromY,
+                horizontalDirection(extX, descriptor.lineFromX) | verticalDirection(descriptor.lineFromY, descriptor.lineToY), descriptor.conflictResolver);
+        drawCorner(extX, descriptor.lineToY, horizontalDirection(extX, descriptor.lineToX) | verticalDirection(descriptor.lineToY, descriptor.lineFromY),
+                descriptor.conflictResolver);
     }
 
     /**
@@ -605,9 +1045,9 @@ public class TextCanvas {
             drawHorizontalLine(descriptor.lineFromX, descriptor.lineToX, descriptor.lineToY, descriptor.conflictResolver);
         }
         if (!descriptor.suppressHorizontalLine || !descriptor.suppressVerticalLine) {
-            cursorX = descriptor.lineFromX;
-            cursorY = descriptor.lineToY;
-            write('+', descriptor.conflictResolver);
+            int mask = (descriptor.suppressVerticalLine ? 0 : verticalDirection(descriptor.lineToY, descriptor.lineFromY))
+                    | (descriptor.suppressHorizontalLine ? 0 : horizontalDirection(descriptor.lineFromX, descriptor.lineToX));
+            drawCorner(descriptor.lineFromX, descriptor.lineToY, mask, descriptor.conflictResolver);
         }
     }
 
@@ -631,12 +1071,12 @@ public class TextCanvas {
             drawHorizontalLine(descriptor.lineFromX, descriptor.lineToX, midY, descriptor.conflictResolver);
         }
         if (!descriptor.suppressHorizontalLine || !descriptor.suppressVerticalLine) {
-            cursorX = descriptor.lineFromX;
-            cursorY = midY;
-            write('+', descriptor.conflictResolver);
-            cursorX = descriptor.lineToX;
-            cursorY = midY;
-            write('+', descriptor.conflictResolver);
+            int vMaskFrom = descriptor.suppressVerticalLine ? 0 : verticalDirection(midY, descriptor.lineFromY);
+            int vMaskTo = descriptor.suppressVerticalLine ? 0 : verticalDirection(midY, descriptor.lineToY);
+            int hMaskFrom = descriptor.suppressHorizontalLine ? 0 : horizontalDirection(descriptor.lineFromX, descriptor.lineToX);
+            int hMaskTo = descriptor.suppressHorizontalLine ? 0 : horizontalDirection(descriptor.lineToX, descriptor.lineFromX);
+            drawCorner(descriptor.lineFromX, midY, vMaskFrom | hMaskFrom, descriptor.conflictResolver);
+            drawCorner(descriptor.lineToX, midY, vMaskTo | hMaskTo, descriptor.conflictResolver);
         }
     }
 
@@ -656,16 +1096,14 @@ public class TextCanvas {
         if (!descriptor.suppressHorizontalLine) {
             drawHorizontalLine(descriptor.lineFromX, descriptor.lineToX, extY, descriptor.conflictResolver);
         }
-        cursorX = descriptor.lineFromX;
-        cursorY = extY;
-        write('+', descriptor.conflictResolver);
-        cursorX = descriptor.lineToX;
-        cursorY = extY;
-        write('+', descriptor.conflictResolver);
+        drawCorner(descriptor.lineFromX, extY,
+                verticalDirection(extY, descriptor.lineFromY) | horizontalDirection(descriptor.lineFromX, descriptor.lineToX), descriptor.conflictResolver);
+        drawCorner(descriptor.lineToX, extY, verticalDirection(extY, descriptor.lineToY) | horizontalDirection(descriptor.lineToX, descriptor.lineFromX),
+                descriptor.conflictResolver);
     }
 
     /**
-     * Prints a vertical line by repeating the character '-'.
+     * Prints a horizontal line by repeating the character '-'.
      * 
      * @param fromX (incl.)
      * @param toX (incl.)
@@ -673,101 +1111,306 @@ public class TextCanvas {
      * @param conflictResolver resolution function to handle an existing character, takes the existing character and the proposed character as input, returns
      *            the character decided to be written
      */
-    private void drawHorizontalLine(int fromX, int toX, int y, BinaryOperator<Character> conflictResolver) {
-        if (toX < fromX) {
-            int temp = fromX;
-            fromX = toX;
-            toX = temp;
-        }
-        cursorY = y;
-        cursorX = fromX;
-        drawHorizontalLine('-', (toX - fromX) + 1, conflictResolver);
+    private void drawHorizontalLine(int fromX, int toX, int y, CharConflictResolver conflictResolver) {
+        drawLineSegment(Math.min(fromX, toX), y, Math.abs(toX - fromX) + 1, false, conflictResolver);
     }
 
     /**
-     * Prints a horizontal line by repeating the given character length times starting from the current cursor position.
+     * Prints a vertical line by repeating the character '|'.
      * 
-     * @param lineChar
-     * @param length
+     * @param x
+     * @param fromY (incl.)
+     * @param toY (incl.)
      * @param conflictResolver resolution function to handle an existing character, takes the existing character and the proposed character as input, returns
      *            the character decided to be written
      */
-    private void drawHorizontalLine(char lineChar, int length, BinaryOperator<Character> conflictResolver) {
-        drawLine(lineChar, length, conflictResolver, false);
+    private void drawVerticalLine(int x, int fromY, int toY, CharConflictResolver conflictResolver) {
+        drawLineSegment(x, Math.min(fromY, toY), Math.abs(toY - fromY) + 1, true, conflictResolver);
     }
 
     /**
-     * Prints a vertical line by repeating the character '|'.
+     * Prints a line segment directly into the cells (row or column span) without moving the cursor cell by cell. Only the part of the segment inside the canvas
+     * will be visited. Afterwards the cursor is located at the last cell of the segment (behind it if this cell is inside the canvas), same as drawing the
+     * line cell by cell.
+     * <p>
+     * If the strategy is {@link CanvasBoundCheckStrategy#ERROR}, the cells up to the first cell outside the canvas will be drawn before the exception is thrown
+     * (same as drawing the line cell by cell).
      * 
-     * @param x
-     * @param fromY (incl.)
-     * @param toY (incl.)
+     * @param startX left or upper end of the segment
+     * @param startY left or upper end of the segment
+     * @param length number of cells
+     * @param vertical true to draw a vertical line
      * @param conflictResolver resolution function to handle an existing character, takes the existing character and the proposed character as input, returns
      *            the character decided to be written
      */
-    private void drawVerticalLine(int x, int fromY, int toY, BinaryOperator<Character> conflictResolver) {
-        if (toY < fromY) {
-            int temp = fromY;
-            fromY = toY;
-            toY = temp;
+    private void drawLineSegment(int startX, int startY, int length, boolean vertical, CharConflictResolver conflictResolver) {
+        if (recordingBatch != null) {
+            recordLineSegment(startX, startY, length, vertical);
+            return;
+        }
+        char lineChar = vertical ? '|' : '-';
+        int start = computeVisibleLineStart(startX, startY, length, vertical);
+        int end = computeVisibleLineEnd(startX, startY, length, vertical);
+        boolean clipped = (start > 0 || end < length);
+        if (clipped && cbcStrategy == CanvasBoundCheckStrategy.ERROR) {
+            // draw up to the first invalid cell, nothing if the first cell is invalid
+            end = (start > 0 ? 0 : end);
+            start = 0;
+        }
+        if (lineGlyphSet != null) {
+            drawJoinedLineSegment(startX, startY, length, start, end, vertical, conflictResolver);
+        }
+        else if (!vertical && conflictResolver == CharacterConflictResolver.OVERWRITE) {
+            // the span is empty (and its start may be located anywhere) if the segment is not visible
+            if (end > start) {
+                cells.fillSpan(startX + start, startY, end - start, lineChar);
+            }
+        }
+        else {
+            for (int i = start; i < end; i++) {
+                int x = vertical ? startX : startX + i;
+                int y = vertical ? startY + i : startY;
+                cells.set(x, y, conflictResolver.resolve(cells.get(x, y), lineChar));
+            }
+        }
+        if (length > 0) {
+            moveCursorBehind(vertical ? startX : startX + length - 1, vertical ? startY + length - 1 : startY, end == length && end > start);
+        }
+        if (clipped && cbcStrategy == CanvasBoundCheckStrategy.ERROR) {
+            cursorX = vertical ? startX : startX + end;
+            cursorY = vertical ? startY + end : startY;
+            assertCanWrite(lineGlyphSet == null ? lineChar : lineGlyphSet.glyph(LineGlyphSet.ALL));
         }
-        cursorY = fromY;
-        cursorX = x;
-        drawVerticalLine('|', (toY - fromY) + 1, conflictResolver);
     }
 
     /**
-     * Prints a vertical line by repeating the given character length times starting from the current cursor position.
+     * Adds the line segment to the {@link #recordingBatch}
      * 
-     * @param lineChar
-     * @param length
-     * @param conflictResolver resolution function to handle an existing character, takes the existing character and the proposed character as input, returns
-     *            the character decided to be written
+     * @param startX left or upper end of the segment
+     * @param startY left or upper end of the segment
+     * @param length number of cells
+     * @param vertical true for a vertical line
      */
-    private void drawVerticalLine(char lineChar, int length, BinaryOperator<Character> conflictResolver) {
-        drawLine(lineChar, length, conflictResolver, true);
+    private void recordLineSegment(int startX, int startY, int length, boolean vertical) {
+        int forward = vertical ? LineGlyphSet.DOWN : LineGlyphSet.RIGHT;
+        int backward = vertical ? LineGlyphSet.UP : LineGlyphSet.LEFT;
+        int startMask = forward | backward;
+        int endMask = forward | backward;
+        if (lineGlyphSet != null && length > 1) {
+            startMask = forward;
+            endMask = backward;
+        }
+        if (vertical) {
+            recordingBatch.addVerticalLine(startX, startY, startY + length - 1, startMask, forward | backward, endMask);
+        }
+        else {
+            recordingBatch.addHorizontalLine(startX, startX + length - 1, startY, startMask, forward | backward, endMask);
+        }
     }
 
     /**
-     * Prints a vertical line by repeating the given character length times starting from the current cursor position.
+     * Prints the given part of a line segment with glyphs from the {@link #lineGlyphSet}, the connectivity of each cell will be joined with the existing glyph.
      * 
-     * @param lineChar
-     * @param length
-     * @param conflictResolver resolution function to handle an existing character, takes the existing character and the proposed character as input, returns
-     *            the character decided to be written
-     * @param vertical true to draw a vertical line the character decided to be written
+     * @param startX left or upper end of the segment
+     * @param startY left or upper end of the segment
+     * @param length number of cells of the segment
+     * @param from index of the first cell to be drawn
+     * @param to index behind the last cell to be drawn
+     * @param vertical true to draw a vertical line
+     * @param conflictResolver resolution function to handle an existing character, takes the existing character and the joined glyph as input, returns the
+     *            character decided to be written
      */
-    private void drawLine(char lineChar, int length, BinaryOperator<Character> conflictResolver, boolean vertical) {
-        if (length > 0) {
-            int startX = cursorX;
-            int startY = cursorY;
-            for (int i = 0; i < length; i++) {
-                cursorX = vertical ? startX : startX + i;
-                cursorY = vertical ? startY + i : startY;
-                char currentChar = lineChar;
-                int existingChar = read(false);
-                if (existingChar > -1) {
-                    currentChar = conflictResolver.apply((char) existingChar, lineChar);
-                }
-                write(currentChar);
-            }
+    private void drawJoinedLineSegment(int startX, int startY, int length, int from, int to, boolean vertical, CharConflictResolver conflictResolver) {
+        int forward = vertical ? LineGlyphSet.DOWN : LineGlyphSet.RIGHT;
+        int backward = vertical ? LineGlyphSet.UP : LineGlyphSet.LEFT;
+        for (int i = from; i < to; i++) {
+            int mask = (i > 0 ? backward : 0) | (i < length - 1 ? forward : 0);
+            joinCell(vertical ? startX : startX + i, vertical ? startY + i : startY, mask == 0 ? forward | backward : mask, conflictResolver);
         }
     }
 
     /**
-     * Writes the connector symbol at the given coordinates
+     * Lines get clipped against the canvas bounds, so only the visible cells will be visited.
      * 
-     * @param x
-     * @param y
-     * @param type to obtain the symbol from
+     * @param startX first cell of the line
+     * @param startY first cell of the line
+     * @param length number of cells
+     * @param vertical true for a vertical line
+     * @return index of the first cell to be drawn, <code>length</code> if the line is not visible at all
      */
-    private void drawConnectorEnd(int x, int y, ConnectorEndType type, BinaryOperator<Character> conflictResolver) {
-        cursorX = x;
-        cursorY = y;
-        char currentChar = type.symbol();
+    private int computeVisibleLineStart(int startX, int startY, int length, boolean vertical) {
+        if (vertical) {
+            return (startX < 0 || startX >= format.width()) ? length : (int) Math.min(length, Math.max(0, -(long) startY));
+        }
+        else {
+            return (startY < 0 || startY >= format.height()) ? length : (int) Math.min(length, Math.max(0, -(long) startX));
+        }
+    }
+
+    /**
+     * Counterpart of {@link #computeVisibleLineStart(int, int, int, boolean)}
+     * 
+     * @param startX first cell of the line
+     * @param startY first cell of the line
+     * @param length number of cells
+     * @param vertical true for a vertical line
+     * @return index behind the last cell to be drawn
+     */
+    private int computeVisibleLineEnd(int startX, int startY, int length, boolean vertical) {
+        if (vertical) {
+            return (int) Math.max(0, Math.min(length, (long) format.height() - startY));
+        }
+        else {
+            return (int) Math.max(0, Math.min(length, (long) format.width() - startX));
+        }
+    }
+
+    /**
+     * @param x upper left corner
+     * @param y upper left corner
+     * @param width
+     * @param height
+     * @return true if at least one cell of the given area is located on the canvas
+     */
+    private boolean intersectsCanvas(int x, int y, int width, int height) {
+        return x < format.width() && y < format.height() && (long) x + width > 0 && (long) y + height > 0;
+    }
+
+    /**
+     * Draws the corner of a connector line. In classic mode (no {@link #lineGlyphSet}) this is always '+', otherwise the connectivity will be joined with the
+     * existing glyph.
+     * 
+     * @param x
+     * @param y
+     * @param mask connectivity of the corner, see {@link LineGlyphSet}
+     * @param conflictResolver
+     */
+    private void drawCorner(int x, int y, int mask, CharConflictResolver conflictResolver) {
+        if (recordingBatch != null) {
+            if (lineGlyphSet == null || mask != 0) {
+                recordingBatch.addCell(x, y, lineGlyphSet == null ? LineGlyphSet.ALL : mask);
+            }
+            return;
+        }
+        cursorX = x;
+        cursorY = y;
+        if (lineGlyphSet == null) {
+            write('+', conflictResolver);
+        }
+        else if (mask != 0) {
+            writeJoined(mask, conflictResolver);
+        }
+    }
+
+    /**
+     * Joins the connectivity of the cell at the current cursor position with the given mask and moves the cursor, see
+     * {@link #joinCell(int, int, int, CharConflictResolver)}
+     * 
+     * @param mask connectivity to be added
+     * @param conflictResolver resolution function to handle an existing character, takes the existing character and the glyph as input, returns the
+     *            character decided to be written
+     */
+    private void writeJoined(int mask, CharConflictResolver conflictResolver) {
+        if (isCursorPositionValid()) {
+            joinCell(cursorX, cursorY, mask, conflictResolver);
+            cursorX++;
+        }
+        else {
+            write(lineGlyphSet.glyph(mask));
+        }
+    }
+
+    /**
+     * Joins the connectivity of the given cell with the given mask and writes the resulting glyph of the {@link #lineGlyphSet}.
+     * <p>
+     * The mask of a cell drawn before is taken from the {@link #connectivity} (a single direction shares the glyph of the full line, so decoding the glyph would
+     * be ambiguous), any other character gets decoded. Only if the existing character is not a line glyph, the conflict resolver decides.
+     * 
+     * @param x valid position
+     * @param y valid position
+     * @param mask connectivity to be added
+     * @param conflictResolver resolution function to handle an existing character, takes the existing character and the glyph as input, returns the
+     *            character decided to be written
+     */
+    private void joinCell(int x, int y, int mask, CharConflictResolver conflictResolver) {
+        char existingChar = cells.get(x, y);
+        byte[] rowMasks = connectivityRow(y);
+        int existingMask = rowMasks[x];
+        if (existingMask == 0 || lineGlyphSet.glyph(existingMask) != existingChar) {
+            existingMask = lineGlyphSet.mask(existingChar);
+        }
+        int joinedMask = existingMask | mask;
+        char ch = lineGlyphSet.glyph(joinedMask);
+        if (existingMask == 0) {
+            ch = conflictResolver.resolve(existingChar, ch);
+        }
+        rowMasks[x] = (byte) (ch == lineGlyphSet.glyph(joinedMask) ? joinedMask : 0);
+        cells.set(x, y, ch);
+    }
+
+    /**
+     * @param y valid row index
+     * @return connectivity masks of the given row, created on demand
+     */
+    private byte[] connectivityRow(int y) {
+        if (connectivity == null) {
+            connectivity = new byte[format.height()][];
+        }
+        byte[] rowMasks = connectivity[y];
+        if (rowMasks == null) {
+            rowMasks = new byte[format.width()];
+            connectivity[y] = rowMasks;
+        }
+        return rowMasks;
+    }
+
+    /**
+     * @param x position of the cell
+     * @param towardsX position of the other end of the line
+     * @return {@link LineGlyphSet#LEFT}, {@link LineGlyphSet#RIGHT} or 0 if the positions are equal
+     */
+    private static int horizontalDirection(int x, int towardsX) {
+        if (towardsX == x) {
+            return 0;
+        }
+        return towardsX < x ? LineGlyphSet.LEFT : LineGlyphSet.RIGHT;
+    }
+
+    /**
+     * @param y position of the cell
+     * @param towardsY position of the other end of the line
+     * @return {@link LineGlyphSet#UP}, {@link LineGlyphSet#DOWN} or 0 if the positions are equal
+     */
+    private static int verticalDirection(int y, int towardsY) {
+        if (towardsY == y) {
+            return 0;
+        }
+        return towardsY < y ? LineGlyphSet.UP : LineGlyphSet.DOWN;
+    }
+
+    /**
+     * Writes the connector symbol at the given coordinates
+     * 
+     * @param x
+     * @param y
+     * @param type to obtain the symbol from
+     */
+    private void drawConnectorEnd(int x, int y, ConnectorEndType type, CharConflictResolver conflictResolver) {
+        if (recordingBatch != null) {
+            recordingBatch.addCell(x, y, lineEndMask(type));
+            return;
+        }
+        cursorX = x;
+        cursorY = y;
+        int mask = (lineGlyphSet == null ? 0 : lineGlyphSet.mask(type.symbol()));
+        if (mask != 0) {
+            writeJoined(mask, conflictResolver);
+            return;
+        }
+        char currentChar = type.symbol();
         int existingChar = read(false);
         if (existingChar > -1) {
-            currentChar = conflictResolver.apply((char) existingChar, currentChar);
+            currentChar = conflictResolver.resolve((char) existingChar, currentChar);
         }
         write(currentChar);
     }
@@ -778,72 +1421,195 @@ public class TextCanvas {
      * @param s to be written
      */
     public void write(String s) {
-        write(s, false);
+        if (s != null && !DisplayWidth.isLatin1(s, 0, s.length())) {
+            writeText(s, 0, s.length());
+            return;
+        }
+        assertCanWrite(s);
+        int skip = computeClippedLength(s.length());
+        cursorX = cursorX + skip;
+        int length = computeWritableLength(s.length() - skip);
+        if (length > 0) {
+            blankCutWideChar(cursorX, cursorY);
+            cells.copySpan(cursorX, cursorY, s, skip, skip + length);
+            cursorX = cursorX + length;
+        }
     }
 
     /**
-     * @param s
-     * @param transparent if true, any leading or training whitespace will not be written
+     * Writes the given range of the character sequence at the current cursor position and moves the cursor
+     * 
+     * @param cs source
+     * @param from first character to be written (incl.)
+     * @param to end of the range (excl.)
+     * @throws IndexOutOfBoundsException if the range is invalid or if the text would exceed the canvas and the strategy is
+     *             {@link CanvasBoundCheckStrategy#ERROR}
      */
-    private void write(String s, boolean transparent) {
-        assertCanWrite(s);
-        int startIdx = computeStartIdx(s, transparent);
-        int endIdx = computeEndIdx(s, transparent);
-        cursorX = cursorX + startIdx;
-        for (int i = startIdx; i < endIdx; i++) {
-            char ch = s.charAt(i);
-            if (!writeInternal(ch)) {
-                return;
+    public void write(CharSequence cs, int from, int to) {
+        Objects.checkFromToIndex(from, to, cs.length());
+        if (!DisplayWidth.isLatin1(cs, from, to)) {
+            writeText(cs, from, to);
+            return;
+        }
+        if (!canWrite(to - from)) {
+            throw new IndexOutOfBoundsException(createOutOfBoundsMessage(cs.subSequence(from, to).toString(), to - from));
+        }
+        int skip = computeClippedLength(to - from);
+        cursorX = cursorX + skip;
+        from = from + skip;
+        int length = computeWritableLength(to - from);
+        if (length > 0) {
+            blankCutWideChar(cursorX, cursorY);
+            if (cs instanceof String s) {
+                cells.copySpan(cursorX, cursorY, s, from, from + length);
+            }
+            else {
+                for (int i = 0; i < length; i++) {
+                    cells.set(cursorX + i, cursorY, cs.charAt(from + i));
+                }
             }
+            cursorX = cursorX + length;
         }
     }
 
     /**
-     * @param s
-     * @param transparent
-     * @return effective start (first character) of the trimmed version of the text
+     * Writes the given characters at the current cursor position and moves the cursor
+     * 
+     * @param src source
+     * @param off position of the first character to be written
+     * @param len number of characters to be written
+     * @throws IndexOutOfBoundsException if the range is invalid or if the text would exceed the canvas and the strategy is
+     *             {@link CanvasBoundCheckStrategy#ERROR}
      */
-    private int computeStartIdx(String s, boolean transparent) {
-        int startIdx = 0;
-        if (transparent) {
-            for (int i = 0; i < s.length(); i++) {
-                if (Character.isWhitespace(s.charAt(i))) {
-                    startIdx++;
-                }
-                else {
-                    break;
-                }
+    public void write(char[] src, int off, int len) {
+        Objects.checkFromIndexSize(off, len, src.length);
+        if (!DisplayWidth.isLatin1(src, off, off + len)) {
+            writeText(CharBuffer.wrap(src), off, off + len);
+            return;
+        }
+        if (!canWrite(len)) {
+            throw new IndexOutOfBoundsException(createOutOfBoundsMessage(new String(src, off, len), len));
+        }
+        int skip = computeClippedLength(len);
+        cursorX = cursorX + skip;
+        off = off + skip;
+        len = len - skip;
+        int length = computeWritableLength(len);
+        if (length > 0) {
+            blankCutWideChar(cursorX, cursorY);
+            cells.copySpan(cursorX, cursorY, src, off, length);
+            cursorX = cursorX + length;
+        }
+    }
+
+    /**
+     * Writes a text with characters outside the Latin-1 range according to its display width (see {@link DisplayWidth}) and moves the cursor
+     * 
+     * @param cs source
+     * @param from first character to be written (incl.)
+     * @param to end of the range (excl.)
+     */
+    private void writeText(CharSequence cs, int from, int to) {
+        int width = DisplayWidth.of(cs, from, to);
+        if (!canWrite(width)) {
+            throw new IndexOutOfBoundsException(createOutOfBoundsMessage(cs.subSequence(from, to).toString(), width));
+        }
+        char[] line = new char[width];
+        DisplayWidth.toCells(cs, from, to, line, 0);
+        writeCells(line, 0, width);
+    }
+
+    /**
+     * Writes the given cells at the current cursor position (clipped) and moves the cursor. A wide character (resp. surrogate pair) that would be cut by the
+     * bounds of the canvas will be replaced with space characters.
+     * 
+     * @param line cells, may be modified
+     * @param off position of the first cell to be written
+     * @param len number of cells to be written
+     */
+    private void writeCells(char[] line, int off, int len) {
+        int skip = computeClippedLength(len);
+        cursorX = cursorX + skip;
+        int length = computeWritableLength(len - skip);
+        if (length > 0) {
+            int start = off + skip;
+            int end = start + length;
+            if (line[start] == DisplayWidth.WIDE_CHAR_CONTINUATION
+                    || (start > off && Character.isLowSurrogate(line[start]) && Character.isHighSurrogate(line[start - 1]))) {
+                line[start] = ' ';
+            }
+            if (end < off + len && (DisplayWidth.isWide(line[end - 1]) || (Character.isHighSurrogate(line[end - 1]) && Character.isLowSurrogate(line[end])))) {
+                line[end - 1] = ' ';
+            }
+            if (!wideCellsWritten.get() && containsContinuation(line, start, end)) {
+                wideCellsWritten.set(true);
             }
+            blankCutWideChar(cursorX, cursorY);
+            cells.copySpan(cursorX, cursorY, line, start, length);
+            cursorX = cursorX + length;
         }
-        return startIdx;
     }
 
     /**
-     * @param s
-     * @param transparent
-     * @return effective end (last character) of the trimmed version of the text
+     * @param required number of characters to be written
+     * @return number of leading characters left of the canvas to be skipped if the strategy is {@link CanvasBoundCheckStrategy#CLIP}, otherwise 0
      */
-    private int computeEndIdx(String s, boolean transparent) {
-        int endIdx = s.length();
-        if (transparent) {
-            for (int i = s.length() - 1; i > -1; i--) {
-                if (Character.isWhitespace(s.charAt(i))) {
-                    endIdx--;
-                }
-                else {
-                    break;
-                }
+    private int computeClippedLength(int required) {
+        if (cbcStrategy == CanvasBoundCheckStrategy.CLIP && required > 0 && cursorX < 0 && cursorY >= 0 && cursorY < format.height()) {
+            return (int) Math.min(required, -(long) cursorX);
+        }
+        return 0;
+    }
+
+    /**
+     * @param required number of characters to be written
+     * @return number of characters that can be written at the current cursor position before reaching the right edge, 0 if the cursor is outside the canvas
+     */
+    private int computeWritableLength(int required) {
+        return (required > 0 && isCursorPositionValid()) ? Math.min(required, format.width() - cursorX) : 0;
+    }
+
+    /**
+     * Replaces the first half of a wide character with a space character if the given position contains its continuation and is about to be overwritten.
+     * The opposite case (the first half gets overwritten) will be handled on export, see {@link #removeContinuationCells(char[], int)}.
+     * 
+     * @param x position inside the canvas
+     * @param y row
+     */
+    private void blankCutWideChar(int x, int y) {
+        if (x > 0 && wideCellsWritten.get() && cells.get(x, y) == DisplayWidth.WIDE_CHAR_CONTINUATION && DisplayWidth.isWide(cells.get(x - 1, y))) {
+            cells.set(x - 1, y, ' ');
+        }
+    }
+
+    /**
+     * @param line cells
+     * @param from first cell (inclusive)
+     * @param to end of the range (exclusive)
+     * @return true if the range contains the continuation of a wide character
+     */
+    private static boolean containsContinuation(char[] line, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line[i] == DisplayWidth.WIDE_CHAR_CONTINUATION) {
+                return true;
             }
         }
-        return endIdx;
+        return false;
     }
 
     /**
      * Writes a single character at the current cursor position and moves the cursor
+     * <p>
+     * A wide character (see {@link DisplayWidth}) takes two cells like in {@link #write(String)}, any other character (including a single surrogate or a
+     * zero-width character) will be written to exactly one cell.
      * 
      * @param ch
      */
     public void write(char ch) {
+        if (DisplayWidth.isWide(ch)) {
+            writeText(String.valueOf(ch), 0, 1);
+            return;
+        }
         assertCanWrite(ch);
         writeInternal(ch);
     }
@@ -855,24 +1621,28 @@ public class TextCanvas {
      * @param conflictResolver resolution function to handle an existing character, takes the existing character and the proposed character as input, returns
      *            the character decided to be written
      */
-    private void write(char ch, BinaryOperator<Character> conflictResolver) {
+    private void write(char ch, CharConflictResolver conflictResolver) {
         int existingChar = read(false);
         if (existingChar > -1) {
-            ch = conflictResolver.apply((char) existingChar, ch);
+            ch = conflictResolver.resolve((char) existingChar, ch);
         }
         write(ch);
     }
 
     /**
      * Returns the character at the current cursor position and optionally moves the cursor by one
+     * <p>
+     * <b>Note:</b> The second cell of a wide character contains {@link DisplayWidth#WIDE_CHAR_CONTINUATION} (U+FFFF), which will be exported as nothing.
+     * When copying cells with {@link #write(char)}, such a cell must be skipped because writing the wide character already covers both cells.
      * 
      * @param moveCursor if true, increases the horizontal cursor position by one
-     * @return character at the current position or <code>-1</code> if the cursor position is outside the canvas
+     * @return character at the current position (may be {@link DisplayWidth#WIDE_CHAR_CONTINUATION}) or <code>-1</code> if the cursor position is outside
+     *         the canvas
      */
     public int read(boolean moveCursor) {
         int res = -1;
         if (isCursorPositionValid()) {
-            res = canvas[cursorY][cursorX];
+            res = cells.get(cursorX, cursorY);
             if (moveCursor) {
                 cursorX++;
             }
@@ -888,7 +1658,8 @@ public class TextCanvas {
      */
     private boolean writeInternal(char ch) {
         if (isCursorPositionValid()) {
-            canvas[cursorY][cursorX] = ch;
+            blankCutWideChar(cursorX, cursorY);
+            cells.set(cursorX, cursorY, ch);
             cursorX++;
             return true;
         }
@@ -903,23 +1674,40 @@ public class TextCanvas {
      * @param s candidate to be printed
      */
     private void assertCanWrite(String s) {
-        if (cbcStrategy != CanvasBoundCheckStrategy.IGNORE) {
-            int required = (s == null ? 4 : s.length());
-            if (cursorX < 0 || cursorX + required > format.width() || cursorY < 0 || cursorY >= format.height()) {
-                throw new IndexOutOfBoundsException(
-                        String.format("Cannot write outside canvas bounds (width=%d, height=%d) limit: cursor as (%d, %d), text='%s'(%d)", format.width(),
-                                format.height(), cursorX, cursorY, s, required));
-            }
+        int required = (s == null ? 4 : s.length());
+        if (!canWrite(required)) {
+            throw new IndexOutOfBoundsException(createOutOfBoundsMessage(s, required));
         }
     }
 
+    /**
+     * Checks whether the given number of characters can be written at the current cursor position according to the {@link CanvasBoundCheckStrategy}
+     * 
+     * @param required number of characters to be written
+     * @return true if the request does not violate the canvas bounds or if the strategy is not {@link CanvasBoundCheckStrategy#ERROR}
+     */
+    private boolean canWrite(int required) {
+        return cbcStrategy != CanvasBoundCheckStrategy.ERROR
+                || !(cursorX < 0 || cursorX + required > format.width() || cursorY < 0 || cursorY >= format.height());
+    }
+
+    /**
+     * @param s text that could not be written
+     * @param required number of characters
+     * @return error message
+     */
+    private String createOutOfBoundsMessage(String s, int required) {
+        return String.format("Cannot write outside canvas bounds (width=%d, height=%d) limit: cursor as (%d, %d), text='%s'(%d)", format.width(),
+                format.height(), cursorX, cursorY, s, required);
+    }
+
     /**
      * Depending on the {@link CanvasBoundCheckStrategy} this method throws an exception if the cursor is outside the canvas
      * 
      * @param ch candidate to be printed
      */
     private void assertCanWrite(char ch) {
-        if (cbcStrategy != CanvasBoundCheckStrategy.IGNORE && !isCursorPositionValid()) {
+        if (cbcStrategy == CanvasBoundCheckStrategy.ERROR && !isCursorPositionValid()) {
             throw new IndexOutOfBoundsException(String.format("Cannot write outside canvas bounds (width=%d, height=%d) limit: cursor as (%d, %d), char='%s'",
                     format.width(), format.height(), cursorX, cursorY, ch));
 
@@ -932,16 +1720,330 @@ public class TextCanvas {
      * @return string representation of this canvas for output
      */
     public String export() {
-        StringBuilder sb = new StringBuilder((format.height() * format.width()) + (canvas.length * 2));
-        for (char[] line : canvas) {
-            if (!sb.isEmpty()) {
-                sb.append("\n");
+        StringBuilder sb = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8L, (long) format.height() * (format.width() + 1)));
+        for (int y = 0; y < format.height(); y++) {
+            if (y > 0) {
+                sb.append('\n');
+            }
+            if (wideCellsWritten.get()) {
+                int rowStart = sb.length();
+                cells.appendRow(y, sb);
+                removeContinuationCells(sb, rowStart);
+            }
+            else {
+                cells.appendRow(y, sb);
             }
-            sb.append(new String(line));
         }
         return sb.toString();
     }
 
+    /**
+     * Writes the canvas row by row to the given target (rows separated by line breaks like {@link #export()}) without creating a string representation of the
+     * whole canvas.
+     * 
+     * @param out target, not null
+     * @throws IOException if writing to the target failed
+     */
+    public void export(Appendable out) throws IOException {
+        export(out, false);
+    }
+
+    /**
+     * Writes the canvas row by row to the given target (rows separated by line breaks like {@link #export()}) without creating a string representation of the
+     * whole canvas.
+     * 
+     * @param out target, not null
+     * @param trimTrailingWhitespace if true, any whitespace at the end of a row will be omitted
+     * @throws IOException if writing to the target failed
+     */
+    public void export(Appendable out, boolean trimTrailingWhitespace) throws IOException {
+        if (out instanceof Writer writer) {
+            export(writer, trimTrailingWhitespace);
+            return;
+        }
+        char[] rowBuffer = new char[format.width()];
+        CharBuffer rowView = CharBuffer.wrap(rowBuffer);
+        for (int y = 0; y < format.height(); y++) {
+            if (y > 0) {
+                out.append('\n');
+            }
+            int length = fetchRow(y, rowBuffer, trimTrailingWhitespace);
+            if (out instanceof StringBuilder sb) {
+                sb.append(rowBuffer, 0, length);
+            }
+            else {
+                out.append(rowView, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Writes the canvas row by row to the given writer (rows separated by line breaks like {@link #export()}) without creating a string representation of the
+     * whole canvas.
+     * <p>
+     * <b>Note:</b> The writer will neither be flushed nor closed.
+     * 
+     * @param writer target, not null
+     * @throws IOException if writing to the target failed
+     */
+    public void export(Writer writer) throws IOException {
+        export(writer, false);
+    }
+
+    /**
+     * Writes the canvas row by row to the given writer (rows separated by line breaks like {@link #export()}) without creating a string representation of the
+     * whole canvas.
+     * <p>
+     * <b>Note:</b> The writer will neither be flushed nor closed.
+     * 
+     * @param writer target, not null
+     * @param trimTrailingWhitespace if true, any whitespace at the end of a row will be omitted
+     * @throws IOException if writing to the target failed
+     */
+    public void export(Writer writer, boolean trimTrailingWhitespace) throws IOException {
+        char[] rowBuffer = new char[format.width()];
+        for (int y = 0; y < format.height(); y++) {
+            if (y > 0) {
+                writer.write('\n');
+            }
+            writer.write(rowBuffer, 0, fetchRow(y, rowBuffer, trimTrailingWhitespace));
+        }
+    }
+
+    /**
+     * Writes the canvas row by row to the given stream (rows separated by line breaks like {@link #export()}) without creating a string representation of the
+     * whole canvas.
+     * <p>
+     * <b>Note:</b> The stream will neither be flushed nor closed.
+     * 
+     * @param os target, not null
+     * @param charset encoding, not null
+     * @throws IOException if writing to the target failed
+     */
+    public void export(OutputStream os, Charset charset) throws IOException {
+        export(os, charset, false);
+    }
+
+    /**
+     * Writes the canvas row by row to the given stream (rows separated by line breaks like {@link #export()}) without creating a string representation of the
+     * whole canvas.
+     * <p>
+     * Rows that only contain ASCII-characters are directly written as bytes if the charset is ASCII-compatible (US-ASCII, ISO-8859-1 or UTF-8), which is the
+     * common case for diagrams. Any other row goes through the regular encoder of the charset.
+     * <p>
+     * <b>Note:</b> The stream will neither be flushed nor closed.
+     * 
+     * @param os target, not null
+     * @param charset encoding, not null
+     * @param trimTrailingWhitespace if true, any whitespace at the end of a row will be omitted
+     * @throws IOException if writing to the target failed
+     */
+    public void export(OutputStream os, Charset charset, boolean trimTrailingWhitespace) throws IOException {
+        if (!StandardCharsets.US_ASCII.equals(charset) && !StandardCharsets.ISO_8859_1.equals(charset) && !StandardCharsets.UTF_8.equals(charset)) {
+            // stateful encodings (e.g., UTF-16 with BOM) cannot be encoded row by row
+            Writer writer = new OutputStreamWriter(os, charset);
+            export(writer, trimTrailingWhitespace);
+            writer.flush();
+            return;
+        }
+        char[] rowBuffer = new char[format.width()];
+        byte[] byteBuffer = new byte[format.width() + 1];
+        for (int y = 0; y < format.height(); y++) {
+            int offset = 0;
+            if (y > 0) {
+                byteBuffer[0] = '\n';
+                offset = 1;
+            }
+            int length = fetchRow(y, rowBuffer, trimTrailingWhitespace);
+            int asciiLength = encodeAscii(rowBuffer, length, byteBuffer, offset);
+            if (asciiLength == length) {
+                os.write(byteBuffer, 0, offset + length);
+            }
+            else {
+                os.write(byteBuffer, 0, offset);
+                os.write(new String(rowBuffer, 0, length).getBytes(charset));
+            }
+        }
+    }
+
+    /**
+     * Writes the canvas row by row UTF-8 encoded to the given channel (rows separated by line breaks like {@link #export()}).
+     * <p>
+     * The characters are directly encoded from the storage into a single direct row buffer, so this method does not copy the canvas onto the heap (useful for
+     * {@link CanvasStorage#OFF_HEAP} or {@link CanvasStorage#MAPPED_FILE} in conjunction with a {@link java.nio.channels.FileChannel}).
+     * <p>
+     * <b>Note:</b> The channel will not be closed.
+     * 
+     * @param channel target, not null
+     * @throws IOException if writing to the target failed
+     */
+    public void export(WritableByteChannel channel) throws IOException {
+        export(channel, false);
+    }
+
+    /**
+     * Writes the canvas row by row UTF-8 encoded to the given channel (rows separated by line breaks like {@link #export()}).
+     * <p>
+     * The characters are directly encoded from the storage into a single direct row buffer, so this method does not copy the canvas onto the heap (useful for
+     * {@link CanvasStorage#OFF_HEAP} or {@link CanvasStorage#MAPPED_FILE} in conjunction with a {@link java.nio.channels.FileChannel}).
+     * <p>
+     * <b>Note:</b> The channel will not be closed.
+     * 
+     * @param channel target, not null
+     * @param trimTrailingWhitespace if true, any whitespace at the end of a row will be omitted
+     * @throws IOException if writing to the target failed
+     */
+    public void export(WritableByteChannel channel, boolean trimTrailingWhitespace) throws IOException {
+        // line break + max. 3 bytes per char (surrogate pairs take 4 bytes for 2 chars)
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE - 8L, format.width() * 3L + 1));
+        for (int y = 0; y < format.height(); y++) {
+            if (y > 0) {
+                byteBuffer.put((byte) '\n');
+            }
+            int length = format.width();
+            if (trimTrailingWhitespace) {
+                while (length > 0 && Character.isWhitespace(cells.get(length - 1, y))) {
+                    length--;
+                }
+            }
+            encodeUtf8(y, length, byteBuffer);
+            byteBuffer.flip();
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+            byteBuffer.clear();
+        }
+    }
+
+    /**
+     * Encodes the characters of a row into the given buffer, unpaired surrogates will be replaced with '?'.
+     * 
+     * @param y row
+     * @param length number of characters of the row to be encoded
+     * @param dest target buffer with sufficient capacity
+     */
+    private void encodeUtf8(int y, int length, ByteBuffer dest) {
+        for (int x = 0; x < length; x++) {
+            char ch = cells.get(x, y);
+            if (ch < 0x80) {
+                dest.put((byte) ch);
+            }
+            else if (ch < 0x800) {
+                dest.put((byte) (0xC0 | (ch >> 6)));
+                dest.put((byte) (0x80 | (ch & 0x3F)));
+            }
+            else if (ch == DisplayWidth.WIDE_CHAR_CONTINUATION) {
+                if (x == 0 || !DisplayWidth.isWide(cells.get(x - 1, y))) {
+                    dest.put((byte) ' ');
+                }
+            }
+            else if (!Character.isSurrogate(ch)) {
+                dest.put((byte) (0xE0 | (ch >> 12)));
+                dest.put((byte) (0x80 | ((ch >> 6) & 0x3F)));
+                dest.put((byte) (0x80 | (ch & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(ch) && x + 1 < length && Character.isLowSurrogate(cells.get(x + 1, y))) {
+                int codePoint = Character.toCodePoint(ch, cells.get(x + 1, y));
+                dest.put((byte) (0xF0 | (codePoint >> 18)));
+                dest.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                dest.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                dest.put((byte) (0x80 | (codePoint & 0x3F)));
+                x++;
+            }
+            else {
+                dest.put((byte) '?');
+            }
+        }
+    }
+
+    /**
+     * Copies the given row into the buffer
+     * 
+     * @param y row
+     * @param rowBuffer destination with the length of a row
+     * @param trimTrailingWhitespace if true, the returned length excludes any whitespace at the end of the row
+     * @return number of characters to be exported
+     */
+    private int fetchRow(int y, char[] rowBuffer, boolean trimTrailingWhitespace) {
+        cells.copyRow(y, rowBuffer);
+        int length = rowBuffer.length;
+        if (wideCellsWritten.get()) {
+            length = removeContinuationCells(rowBuffer, length);
+        }
+        if (trimTrailingWhitespace) {
+            while (length > 0 && Character.isWhitespace(rowBuffer[length - 1])) {
+                length--;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Removes the second cells of the wide characters from the row, any orphaned continuation (the wide character has been overwritten) will be replaced with
+     * a space character, so the row keeps its display width.
+     * 
+     * @param row characters of the row
+     * @param length number of characters
+     * @return new number of characters
+     */
+    private static int removeContinuationCells(char[] row, int length) {
+        int res = 0;
+        char prev = ' ';
+        for (int i = 0; i < length; i++) {
+            char ch = row[i];
+            if (ch != DisplayWidth.WIDE_CHAR_CONTINUATION) {
+                row[res++] = ch;
+            }
+            else if (!DisplayWidth.isWide(prev)) {
+                row[res++] = ' ';
+            }
+            prev = ch;
+        }
+        return res;
+    }
+
+    /**
+     * Removes the second cells of the wide characters from the row at the end of the builder, see {@link #removeContinuationCells(char[], int)}
+     * 
+     * @param sb builder
+     * @param rowStart start of the row
+     */
+    private static void removeContinuationCells(StringBuilder sb, int rowStart) {
+        int res = rowStart;
+        char prev = ' ';
+        for (int i = rowStart; i < sb.length(); i++) {
+            char ch = sb.charAt(i);
+            if (ch != DisplayWidth.WIDE_CHAR_CONTINUATION) {
+                sb.setCharAt(res++, ch);
+            }
+            else if (!DisplayWidth.isWide(prev)) {
+                sb.setCharAt(res++, ' ');
+            }
+            prev = ch;
+        }
+        sb.setLength(res);
+    }
+
+    /**
+     * Converts the characters into bytes as long as they are ASCII-characters
+     * 
+     * @param src characters
+     * @param length number of characters to be converted
+     * @param dest byte buffer
+     * @param offset start position in the byte buffer
+     * @return number of characters converted, if less than length the row contains a non-ASCII character
+     */
+    private static int encodeAscii(char[] src, int length, byte[] dest, int offset) {
+        for (int i = 0; i < length; i++) {
+            char ch = src[i];
+            if (ch > 0x7F) {
+                return i;
+            }
+            dest[offset + i] = (byte) ch;
+        }
+        return length;
+    }
+
     @Override
     public String toString() {
         return this.getClass().getSimpleName() + " [width=" + format.width() + ", height=" + format.height() + ", cbcStrategy=" + cbcStrategy + "]";
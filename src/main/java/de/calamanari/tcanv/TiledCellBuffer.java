@@ -0,0 +1,282 @@
+//@formatter:off
+/*
+ * TiledCellBuffer
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv;
+
+import java.util.Arrays;
+
+/**
+ * The {@link TiledCellBuffer} is a sparse {@link CellBuffer}. The canvas area is divided into tiles of {@value #TILE_WIDTH}x{@value #TILE_HEIGHT} cells which
+ * will be allocated on the first write of a non-blank character. Missing tiles are treated as blank.
+ * <p>
+ * The memory consumption is dominated by the number of tiles with content (plus a directory with one reference per tile), so for typical tree diagrams (mostly
+ * blank) this buffer needs only a fraction of the memory of a {@link DenseCellBuffer}.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class TiledCellBuffer implements CellBuffer {
+
+    /**
+     * number of cells per row of a tile
+     */
+    static final int TILE_WIDTH = 64;
+
+    /**
+     * number of rows of a tile
+     */
+    static final int TILE_HEIGHT = 16;
+
+    private static final int TILE_X_SHIFT = 6;
+
+    private static final int TILE_Y_SHIFT = 4;
+
+    private static final int TILE_X_MASK = TILE_WIDTH - 1;
+
+    private static final int TILE_Y_MASK = TILE_HEIGHT - 1;
+
+    /**
+     * blank tile row for exporting missing tiles
+     */
+    private static final char[] BLANK_TILE_ROW = createBlankTileRow();
+
+    /**
+     * Tile directory, row by row, <code>null</code> means blank tile
+     */
+    private final char[][] tiles;
+
+    /**
+     * number of cells per row
+     */
+    private final int width;
+
+    /**
+     * number of rows
+     */
+    private final int height;
+
+    /**
+     * number of tiles per row of tiles
+     */
+    private final int tilesPerRow;
+
+    /**
+     * Number of allocated tiles
+     */
+    private int numberOfTiles = 0;
+
+    /**
+     * Row buffer for the export, lazily created
+     */
+    private char[] rowBuffer = null;
+
+    /**
+     * @param width number of cells per row
+     * @param height number of rows
+     * @throws IllegalArgumentException if the dimensions are not positive or the number of tiles exceeds the capacity of the tile directory
+     */
+    TiledCellBuffer(int width, int height) {
+        long tilesPerRowL = (width + (long) TILE_X_MASK) >> TILE_X_SHIFT;
+        long tilesPerColumnL = (height + (long) TILE_Y_MASK) >> TILE_Y_SHIFT;
+        if (width <= 0 || height <= 0 || tilesPerRowL * tilesPerColumnL > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(String.format("expected: width > 0, height > 0, number of tiles <= %d, given: width=%d, height=%d",
+                    Integer.MAX_VALUE - 8, width, height));
+        }
+        this.width = width;
+        this.height = height;
+        this.tilesPerRow = (int) tilesPerRowL;
+        this.tiles = new char[(int) (tilesPerRowL * tilesPerColumnL)][];
+    }
+
+    /**
+     * @return a full row of blanks
+     */
+    private static char[] createBlankTileRow() {
+        char[] res = new char[TILE_WIDTH];
+        Arrays.fill(res, ' ');
+        return res;
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    /**
+     * @return number of tiles currently allocated
+     */
+    int numberOfTiles() {
+        return numberOfTiles;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return position of the tile in the directory
+     */
+    private int tileIndex(int x, int y) {
+        return ((y >> TILE_Y_SHIFT) * tilesPerRow) + (x >> TILE_X_SHIFT);
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return position of the cell inside its tile
+     */
+    private static int cellIndex(int x, int y) {
+        return ((y & TILE_Y_MASK) << TILE_X_SHIFT) + (x & TILE_X_MASK);
+    }
+
+    /**
+     * @param tileIdx
+     * @return existing or new (blank) tile
+     */
+    private char[] getOrCreateTile(int tileIdx) {
+        char[] tile = tiles[tileIdx];
+        if (tile == null) {
+            tile = new char[TILE_WIDTH * TILE_HEIGHT];
+            Arrays.fill(tile, ' ');
+            tiles[tileIdx] = tile;
+            numberOfTiles++;
+        }
+        return tile;
+    }
+
+    @Override
+    public char get(int x, int y) {
+        char[] tile = tiles[tileIndex(x, y)];
+        return tile == null ? ' ' : tile[cellIndex(x, y)];
+    }
+
+    @Override
+    public void set(int x, int y, char ch) {
+        int tileIdx = tileIndex(x, y);
+        if (ch != ' ' || tiles[tileIdx] != null) {
+            getOrCreateTile(tileIdx)[cellIndex(x, y)] = ch;
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(tiles, null);
+        numberOfTiles = 0;
+    }
+
+    @Override
+    public void fillSpan(int x, int y, int length, char ch) {
+        int endX = x + length;
+        while (x < endX) {
+            int segmentLength = Math.min(endX - x, TILE_WIDTH - (x & TILE_X_MASK));
+            int tileIdx = tileIndex(x, y);
+            if (ch != ' ' || tiles[tileIdx] != null) {
+                int startIdx = cellIndex(x, y);
+                Arrays.fill(getOrCreateTile(tileIdx), startIdx, startIdx + segmentLength, ch);
+            }
+            x = x + segmentLength;
+        }
+    }
+
+    @Override
+    public void copySpan(int x, int y, String s, int fromIdx, int toIdx) {
+        int endX = x + (toIdx - fromIdx);
+        while (x < endX) {
+            int segmentLength = Math.min(endX - x, TILE_WIDTH - (x & TILE_X_MASK));
+            int tileIdx = tileIndex(x, y);
+            if (tiles[tileIdx] != null || !isBlank(s, fromIdx, fromIdx + segmentLength)) {
+                s.getChars(fromIdx, fromIdx + segmentLength, getOrCreateTile(tileIdx), cellIndex(x, y));
+            }
+            fromIdx = fromIdx + segmentLength;
+            x = x + segmentLength;
+        }
+    }
+
+    @Override
+    public void copySpan(int x, int y, char[] src, int offset, int length) {
+        int endX = x + length;
+        while (x < endX) {
+            int segmentLength = Math.min(endX - x, TILE_WIDTH - (x & TILE_X_MASK));
+            int tileIdx = tileIndex(x, y);
+            if (tiles[tileIdx] != null || !isBlank(src, offset, offset + segmentLength)) {
+                System.arraycopy(src, offset, getOrCreateTile(tileIdx), cellIndex(x, y), segmentLength);
+            }
+            offset = offset + segmentLength;
+            x = x + segmentLength;
+        }
+    }
+
+    /**
+     * @param s
+     * @param fromIdx (incl.)
+     * @param toIdx (excl.)
+     * @return true if the given range only contains space characters
+     */
+    private static boolean isBlank(String s, int fromIdx, int toIdx) {
+        for (int i = fromIdx; i < toIdx; i++) {
+            if (s.charAt(i) != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param src
+     * @param fromIdx (incl.)
+     * @param toIdx (excl.)
+     * @return true if the given range only contains space characters
+     */
+    private static boolean isBlank(char[] src, int fromIdx, int toIdx) {
+        for (int i = fromIdx; i < toIdx; i++) {
+            if (src[i] != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void copyRow(int y, char[] dest) {
+        int tileRowStartIdx = (y >> TILE_Y_SHIFT) * tilesPerRow;
+        int cellRowStartIdx = (y & TILE_Y_MASK) << TILE_X_SHIFT;
+        for (int x = 0; x < width; x = x + TILE_WIDTH) {
+            char[] tile = tiles[tileRowStartIdx + (x >> TILE_X_SHIFT)];
+            int segmentLength = Math.min(width - x, TILE_WIDTH);
+            if (tile == null) {
+                System.arraycopy(BLANK_TILE_ROW, 0, dest, x, segmentLength);
+            }
+            else {
+                System.arraycopy(tile, cellRowStartIdx, dest, x, segmentLength);
+            }
+        }
+    }
+
+    @Override
+    public void appendRow(int y, StringBuilder sb) {
+        if (rowBuffer == null) {
+            rowBuffer = new char[width];
+        }
+        copyRow(y, rowBuffer);
+        sb.append(new String(rowBuffer));
+    }
+
+}
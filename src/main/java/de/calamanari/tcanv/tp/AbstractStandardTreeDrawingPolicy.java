@@ -20,19 +20,24 @@
 package de.calamanari.tcanv.tp;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.function.BinaryOperator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import de.calamanari.tcanv.BoxConnectionPoint;
+import de.calamanari.tcanv.BoxStyle;
+import de.calamanari.tcanv.CanvasFormat;
+import de.calamanari.tcanv.CanvasStorage;
+import de.calamanari.tcanv.CharConflictResolver;
+import de.calamanari.tcanv.ConnectorEndType;
+import de.calamanari.tcanv.ConnectorSpec;
+import de.calamanari.tcanv.DisplayWidth;
 import de.calamanari.tcanv.FrameConfig;
+import de.calamanari.tcanv.LineGlyphSet;
 import de.calamanari.tcanv.TextAlignment;
 import de.calamanari.tcanv.TextCanvas;
 
-import static de.calamanari.tcanv.tp.NodeFormatInfo.MISSING_INFO;
-import static de.calamanari.tcanv.tp.NodeFormatInfo.MORE_INFO;
-import static de.calamanari.tcanv.tp.NodeFormatInfo.NULL_INFO;
-
 /**
  * Base functionality for tree drawing policies with the ability to cache information about the nodes to be displayed.
  * 
@@ -41,21 +46,44 @@ import static de.calamanari.tcanv.tp.NodeFormatInfo.NULL_INFO;
 public abstract class AbstractStandardTreeDrawingPolicy implements TreeDrawingPolicy {
 
     /**
-     * Character conflict resolver that avoids replacing '|' with '-' and vice-versa. Crossings will be represented by '+'.
+     * Character conflict resolver that avoids replacing '|' with '-' and vice-versa. Crossings will be represented by '+' (see {@link LineGlyphSet#ASCII}).
+     */
+    protected static final CharConflictResolver DEFAULT_LINE_CROSSING_RESOLVER = LineGlyphSet.ASCII;
+
+    /**
+     * Tells whether a node class overrides any of the decorator methods
+     * ({@link PrintableTreeNode#decorateNode(SiblingParentRelation, TextCanvas, int, int, int, int)},
+     * {@link PrintableTreeNode#decorateParentConnector(SiblingParentRelation, TextCanvas, BoxConnectionPoint, BoxConnectionPoint)})
      */
-    protected static final BinaryOperator<Character> DEFAULT_LINE_CROSSING_RESOLVER = (characterFound, characterToBeWritten) -> {
-        switch (characterFound) {
-        case '+':
-            return '+';
-        case '|':
-            return characterToBeWritten == '-' ? '+' : characterToBeWritten;
-        case '-':
-            return characterToBeWritten == '|' ? '+' : characterToBeWritten;
-        default:
-            return characterToBeWritten;
+    private static final ClassValue<Boolean> DECORATING_NODE_CLASS = new ClassValue<>() {
+
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("decorateNode", SiblingParentRelation.class, TextCanvas.class, int.class, int.class, int.class, int.class)
+                        .getDeclaringClass() != PrintableTreeNode.class
+                        || type.getMethod("decorateParentConnector", SiblingParentRelation.class, TextCanvas.class, BoxConnectionPoint.class,
+                                BoxConnectionPoint.class).getDeclaringClass() != PrintableTreeNode.class;
+            }
+            catch (NoSuchMethodException ex) {
+                // not a PrintableTreeNode, treat it as decorating to be on the safe side
+                return Boolean.TRUE;
+            }
         }
     };
 
+    /**
+     * Number of nodes ({@value}) a task of a parallel scan measures at most, larger ranges of nodes will be split into sub-tasks, see
+     * {@link #scan(PrintableTreeNode, int, ForkJoinPool)}
+     */
+    protected static final int PARALLEL_SCAN_THRESHOLD = 256;
+
+    /**
+     * Number of nodes ({@value}) a task of a parallel drawing writes at most, larger ranges of nodes will be split into sub-tasks, see
+     * {@link #draw(TextCanvas, ForkJoinPool)}
+     */
+    protected static final int PARALLEL_DRAW_THRESHOLD = 1024;
+
     /**
      * Required to compute the dimensions of the canvas and the absolute positions
      */
@@ -67,9 +95,15 @@ public abstract class AbstractStandardTreeDrawingPolicy implements TreeDrawingPo
     protected final TreeLayoutConfig treeLayoutConfig;
 
     /**
-     * Stores dimensional information about all the nodes in the tree to be drawn, see {@link #scan(PrintableTreeNode, int)}
+     * Stores dimensional information about all the nodes in the tree to be drawn (by node id), see {@link #scan(PrintableTreeNode, int)}. Sub-classes outside
+     * this package can read the information with {@link #getNodeFormatInfo(int)}.
+     */
+    final LayoutArena layoutArena = new LayoutArena();
+
+    /**
+     * Canvases to prepare node representations (one per thread to support parallel scans), see {@link #getTempCanvas()}
      */
-    protected final Map<NodeKey, NodeFormatInfo> nodeFormatInfoCache = new HashMap<>();
+    private final ThreadLocal<TextCanvas> tempCanvases;
 
     /**
      * Canvas to prepare node representations
@@ -77,9 +111,54 @@ public abstract class AbstractStandardTreeDrawingPolicy implements TreeDrawingPo
      * The problem is that we need to render a node to determine its exact dimensions required to compute the canvas to later insert the node representation.
      * Instead of rendering the node twice, we render it into the temp canvas and extract/cache the representation until we can copy it into the target canvas
      * at the final position.
+     * 
+     * @deprecated this is only the canvas of the thread that created the policy, parallel scans render into one canvas per thread, use
+     *             {@link #getTempCanvas()}
      */
+    @Deprecated
     protected final TextCanvas tempCanvas;
 
+    /**
+     * Connectors collected during the drawing phase, see {@link #addConnector(TextCanvas, int, int, int, int, ConnectorEndType, ConnectorEndType)}
+     */
+    private final List<ConnectorSpec> pendingConnectors = new ArrayList<>();
+
+    /**
+     * If the tree contains nodes with decorators, the nodes, connectors and decorations will be drawn immediately in drawing order instead of being collected,
+     * see {@link #handleDefaults(TextCanvas)}
+     */
+    private boolean drawingSequentially = false;
+
+    /**
+     * Nodes collected during the drawing phase (id, x, y), see {@link #addNode(TextCanvas, int, int, int)}
+     */
+    private int[] pendingNodes = new int[48];
+
+    /**
+     * Number of nodes collected during the drawing phase
+     */
+    private int pendingNodeCount = 0;
+
+    /**
+     * Diagram collecting the texts and connectors instead of a canvas, see {@link #layout(PrintableTreeNode, int, LineGlyphSet)}
+     */
+    private TreeDiagram recordingDiagram = null;
+
+    /**
+     * Pool to measure the nodes in parallel or null to scan sequentially, see {@link #scan(PrintableTreeNode, int, ForkJoinPool)}
+     */
+    private ForkJoinPool scanPool = null;
+
+    /**
+     * Pool to write the node texts in parallel or null to draw sequentially, see {@link #draw(TextCanvas, ForkJoinPool)}
+     */
+    private ForkJoinPool drawPool = null;
+
+    /**
+     * Cache for the node representations or null to render each node, see {@link #setNodeRepresentationCache(NodeRepresentationCache)}
+     */
+    private NodeRepresentationCache nodeRepresentationCache = null;
+
     /**
      * Creates a custom policy from the given settings
      * 
@@ -93,35 +172,184 @@ public abstract class AbstractStandardTreeDrawingPolicy implements TreeDrawingPo
         }
         this.frameConfig = frameConfig;
         this.treeLayoutConfig = treeLayoutConfig;
-        this.tempCanvas = new TextCanvas(treeLayoutConfig.maxNodeWidth(), treeLayoutConfig.maxNodeHeight());
+        this.tempCanvases = ThreadLocal.withInitial(() -> new TextCanvas(treeLayoutConfig.maxNodeWidth(), treeLayoutConfig.maxNodeHeight()));
+        this.tempCanvas = tempCanvases.get();
+    }
+
+    /**
+     * Scans the tree like {@link #scan(PrintableTreeNode, int)} but measures the nodes (box style, print size and node representation) in parallel.
+     * <p>
+     * The structure of the tree will be collected first, then the nodes get measured by tasks of up to {@value #PARALLEL_SCAN_THRESHOLD} nodes each. The sizes
+     * of the sub-trees are computed afterwards, sequentially. Thus the result is exactly the same as the result of the sequential scan.
+     * <p>
+     * <b>Important:</b> The methods {@link PrintableTreeNode#getNodeLabel()}, {@link PrintableTreeNode#getBoxStyle(SiblingParentRelation)},
+     * {@link PrintableTreeNode#getPrintWidth(SiblingParentRelation, int)} and {@link PrintableTreeNode#getPrintHeight(SiblingParentRelation, int)} will be
+     * called concurrently.
+     * 
+     * @param rootNode node to start with
+     * @param maxDepth maximum number of levels to be fully drawn
+     * @param pool to run the tasks, <code>null</code> to scan sequentially
+     * @return dimensions of the canvas required to draw the graph
+     */
+    @Override
+    public CanvasFormat scan(PrintableTreeNode rootNode, int maxDepth, ForkJoinPool pool) {
+        this.scanPool = pool;
+        try {
+            return scan(rootNode, maxDepth);
+        }
+        finally {
+            this.scanPool = null;
+        }
+    }
+
+    /**
+     * Draws the tree like {@link #draw(TextCanvas)} but writes the texts of the nodes in parallel.
+     * <p>
+     * The nodes will be collected in drawing order (pre-order) first, then tasks of up to {@value #PARALLEL_DRAW_THRESHOLD} nodes each write their texts
+     * through separate views of the canvas (see {@link TextCanvas#createView()}). The texts of different nodes never overlap, so the tasks write into disjoint
+     * areas of the canvas without any locking. The connectors (they cross the areas of the sub-trees) will be drawn afterwards, sequentially. Thus the result
+     * is exactly the same as the result of the sequential drawing.
+     * <p>
+     * The nodes will be drawn sequentially if the canvas' storage does not {@link CanvasStorage#supportsConcurrentWrites()} or if any node has decorators.
+     * 
+     * @param canvas target
+     * @param pool to run the tasks, <code>null</code> to draw sequentially
+     */
+    @Override
+    public void draw(TextCanvas canvas, ForkJoinPool pool) {
+        this.drawPool = pool;
+        try {
+            draw(canvas);
+        }
+        finally {
+            this.drawPool = null;
+        }
+    }
+
+    /**
+     * Scans the tree and records the layout (texts and connectors at their final positions) in a row index instead of drawing it into a canvas. Any row of
+     * the returned diagram will be rasterized on demand, see {@link TreeDiagram#lines()}.
+     * <p>
+     * The drawing methods of the policy receive <code>null</code> instead of a canvas during the recording, see
+     * {@link #writeText(TextCanvas, int, int, String)}. Decorators won't be called.
+     * 
+     * @param rootNode to start at
+     * @param maxDepth maxiumum number of levels to be fully drawn
+     * @param lineGlyphSet glyphs for the connector lines or <code>null</code> for the classic mode
+     * @return diagram with the recorded layout
+     */
+    public TreeDiagram layout(PrintableTreeNode rootNode, int maxDepth, LineGlyphSet lineGlyphSet) {
+        CanvasFormat format = scan(rootNode, maxDepth);
+        TreeDiagram diagram = new TreeDiagram(format, frameConfig.boxStyle(), lineGlyphSet);
+        recordingDiagram = diagram;
+        try {
+            draw(null);
+        }
+        finally {
+            recordingDiagram = null;
+        }
+        diagram.complete();
+        return diagram;
     }
 
     /**
      * Creates a rectangular node representation (set of lines, padded with spaces) of the given node based on the label, the box style and the configured
      * limits.
+     * <p>
+     * Obtains box style and size from the node and delegates to {@link #createNodeRepresentation(PrintableTreeNode, BoxStyle, int, int)}.
      * 
      * @param node
      * @param siblingParentRelation
      * @return node representation to be printed later
      */
     protected List<String> createNodeRepresentation(PrintableTreeNode node, SiblingParentRelation siblingParentRelation) {
-        int simpleNodeWidth = Math.min(treeLayoutConfig.maxNodeWidth(), node.getPrintWidth(siblingParentRelation, treeLayoutConfig.maxNodeWidth()));
-        int simpleNodeHeight = Math.min(treeLayoutConfig.maxNodeHeight(), node.getPrintHeight(siblingParentRelation, treeLayoutConfig.maxNodeHeight()));
+        return createNodeRepresentation(node, node.getBoxStyle(siblingParentRelation),
+                node.getPrintWidth(siblingParentRelation, treeLayoutConfig.maxNodeWidth()),
+                node.getPrintHeight(siblingParentRelation, treeLayoutConfig.maxNodeHeight()));
+    }
+
+    /**
+     * Creates a rectangular node representation (set of lines, padded with spaces) of the given node from the already obtained box style and size.
+     * <p>
+     * The scan obtains box style and size of each node only once and calls this method (not
+     * {@link #createNodeRepresentation(PrintableTreeNode, SiblingParentRelation)}), so custom representations must be implemented here.
+     * 
+     * @param node
+     * @param boxStyle the node's box style
+     * @param printWidth width reported by the node, will be limited to the configured maximum
+     * @param printHeight height reported by the node, will be limited to the configured maximum
+     * @return node representation to be printed later
+     */
+    protected List<String> createNodeRepresentation(PrintableTreeNode node, BoxStyle boxStyle, int printWidth, int printHeight) {
+        int simpleNodeWidth = Math.min(treeLayoutConfig.maxNodeWidth(), printWidth);
+        int simpleNodeHeight = Math.min(treeLayoutConfig.maxNodeHeight(), printHeight);
+        String label = node.getNodeLabel();
+        NodeRepresentationCache cache = this.nodeRepresentationCache;
+        if (cache == null) {
+            return renderNodeRepresentation(label, boxStyle, simpleNodeWidth, simpleNodeHeight);
+        }
+        return cache.computeIfAbsent(label, simpleNodeWidth, simpleNodeHeight, getTextAlignment(), boxStyle,
+                () -> renderNodeRepresentation(label, boxStyle, simpleNodeWidth, simpleNodeHeight));
+    }
+
+    /**
+     * Draws the box with the label into the temporary canvas and reads the lines back
+     * 
+     * @param label
+     * @param boxStyle
+     * @param simpleNodeWidth
+     * @param simpleNodeHeight
+     * @return node representation
+     */
+    private List<String> renderNodeRepresentation(String label, BoxStyle boxStyle, int simpleNodeWidth, int simpleNodeHeight) {
+        TextCanvas tempCanvas = getTempCanvas();
         tempCanvas.clear();
-        tempCanvas.drawBox(node.getBoxStyle(siblingParentRelation), simpleNodeWidth, simpleNodeHeight, node.getNodeLabel(), getTextAlignment());
+        tempCanvas.drawBox(boxStyle, simpleNodeWidth, simpleNodeHeight, label, getTextAlignment());
         List<String> res = new ArrayList<>(simpleNodeHeight);
         StringBuilder sb = new StringBuilder();
         for (int y = 0; y < simpleNodeHeight; y++) {
             sb.setLength(0);
             tempCanvas.setCursor(0, y);
             for (int x = 0; x < simpleNodeWidth; x++) {
-                sb.append((char) tempCanvas.read(true));
+                char ch = (char) tempCanvas.read(true);
+                // the lines are plain text, the canvas the representation will be written to determines the cells
+                if (ch != DisplayWidth.WIDE_CHAR_CONTINUATION) {
+                    sb.append(ch);
+                }
             }
             res.add(sb.toString());
         }
         return res;
     }
 
+    /**
+     * Sets a cache for the node representations, so equal labels (same box size and style) will only be rendered once.
+     * <p>
+     * The cache may be shared with other policies and survives any number of scans. Caching is disabled by default. The cached representations are
+     * immutable, hence custom implementations must not modify the results of {@link #createNodeRepresentation(PrintableTreeNode, BoxStyle, int, int)}.
+     * 
+     * @param nodeRepresentationCache cache or <code>null</code> to render each node
+     */
+    public void setNodeRepresentationCache(NodeRepresentationCache nodeRepresentationCache) {
+        this.nodeRepresentationCache = nodeRepresentationCache;
+    }
+
+    /**
+     * @return cache for the node representations or <code>null</code> if not set
+     */
+    public NodeRepresentationCache getNodeRepresentationCache() {
+        return nodeRepresentationCache;
+    }
+
+    /**
+     * Returns the canvas to prepare node representations, each thread gets its own canvas to support parallel scans.
+     * 
+     * @return temporary canvas of the current thread (maximum node width and height)
+     */
+    protected TextCanvas getTempCanvas() {
+        return tempCanvases.get();
+    }
+
     /**
      * @return text alignment used for label formatting
      */
@@ -130,45 +358,233 @@ public abstract class AbstractStandardTreeDrawingPolicy implements TreeDrawingPo
     }
 
     /**
-     * Creates a list of the keys of this node's sibling node keys, this will later allow traversal for drawing without bothering the node again
+     * Scans the node with the given id unless it has already been scanned: allocates the ids of all nodes of the sub-tree, measures the nodes and computes
+     * the sizes of the sub-trees.
+     * <p>
+     * The sub-tree gets walked with explicit stacks, the sizes are computed post-order, so all siblings of a node are scanned before the node itself. Hence,
+     * the calls from {@link #computeSubTreeWidth(int, PrintableTreeNode, SiblingParentRelation, int)} and
+     * {@link #computeSubTreeHeight(int, PrintableTreeNode, SiblingParentRelation, int)} to the sibling's
+     * {@link #getSubTreeWidth(int, PrintableTreeNode, SiblingParentRelation, int)} resp.
+     * {@link #getSubTreeHeight(int, PrintableTreeNode, SiblingParentRelation, int)} return the cached results, and the depth of the tree is not limited by
+     * the stack size of the current thread.
      * 
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param node
-     * @return list of sibling node keys
+     * @param siblingParentRelation
+     * @param maxDepth maximum level of the tree to be fully drawn
      */
-    protected NodeKey[] createSiblingNodeKeyList(NodeKey key, PrintableTreeNode node) {
-        int numberOfSiblings = node.getNumberOfSiblings();
-        if (numberOfSiblings == 0) {
-            return new NodeKey[0];
+    protected void scanNode(int nodeId, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        if (layoutArena.isScanned(nodeId)) {
+            return;
         }
-        NodeKey[] res = new NodeKey[numberOfSiblings];
-        for (int i = 0; i < numberOfSiblings; i++) {
-            res[i] = key.sibling(i);
+        int fromId = layoutArena.size();
+        allocateSubTree(nodeId, node, maxDepth);
+        measureNode(nodeId, siblingParentRelation);
+        if (scanPool != null && layoutArena.size() - fromId > PARALLEL_SCAN_THRESHOLD) {
+            scanPool.invoke(new MeasureTask(fromId, layoutArena.size()));
+        }
+        else {
+            measureNodes(fromId, layoutArena.size());
+        }
+
+        // entries: id, index of the next sibling to be visited
+        IntStack stack = new IntStack();
+        stack.push(nodeId);
+        stack.push(0);
+        while (!stack.isEmpty()) {
+            int siblingIdx = stack.pop();
+            int id = stack.peek();
+            if (layoutArena.hasSiblingIds(id) && siblingIdx < layoutArena.numberOfSiblings(id)) {
+                stack.push(siblingIdx + 1);
+                int siblingId = layoutArena.siblingId(id, siblingIdx);
+                if (!layoutArena.isMissing(siblingId) && !layoutArena.isScanned(siblingId)) {
+                    stack.push(siblingId);
+                    stack.push(0);
+                }
+            }
+            else {
+                stack.pop();
+                completeNode(id, id == nodeId ? siblingParentRelation : createSiblingParentRelation(id), maxDepth);
+            }
         }
-        return res;
     }
 
     /**
-     * Obtains the node info from the cache or creates it if not present
+     * Allocates the ids of all nodes in the sub-tree of the given node (pre-order), missing siblings will be marked.
+     * 
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @param node
+     * @param maxDepth maximum level of the tree to be fully drawn
+     */
+    private void allocateSubTree(int nodeId, PrintableTreeNode node, int maxDepth) {
+        IntStack stack = new IntStack();
+        layoutArena.initNode(nodeId, node, layoutArena.depth(nodeId) < maxDepth);
+        stack.push(nodeId);
+        while (!stack.isEmpty()) {
+            int id = stack.pop();
+            if (layoutArena.hasSiblingIds(id)) {
+                PrintableTreeNode parent = layoutArena.node(id);
+                for (int i = layoutArena.numberOfSiblings(id) - 1; i >= 0; i--) {
+                    PrintableTreeNode sibling = parent.getSiblingNode(i);
+                    int siblingId = layoutArena.siblingId(id, i);
+                    if (sibling == PrintableTreeNode.MISSING_SIBLING) {
+                        layoutArena.markMissing(siblingId);
+                    }
+                    else if (!layoutArena.isScanned(siblingId)) {
+                        layoutArena.initNode(siblingId, sibling, layoutArena.depth(siblingId) < maxDepth);
+                        stack.push(siblingId);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures the nodes in the given range of ids (except for the missing ones), must not be called for the start node of a scan
+     * 
+     * @param fromId first id (inclusive)
+     * @param toId last id (exclusive)
+     */
+    private void measureNodes(int fromId, int toId) {
+        for (int id = fromId; id < toId; id++) {
+            if (!layoutArena.isMissing(id)) {
+                measureNode(id, createSiblingParentRelation(id));
+            }
+        }
+    }
+
+    /**
+     * Determines box style, size and representation of the given node (thread-safe for different ids)
+     * 
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @param siblingParentRelation
+     */
+    private void measureNode(int nodeId, SiblingParentRelation siblingParentRelation) {
+        PrintableTreeNode node = layoutArena.node(nodeId);
+        BoxStyle boxStyle = node.getBoxStyle(siblingParentRelation);
+        int printWidth = node.getPrintWidth(siblingParentRelation, treeLayoutConfig.maxNodeWidth());
+        int printHeight = node.getPrintHeight(siblingParentRelation, treeLayoutConfig.maxNodeHeight());
+        layoutArena.measureNode(nodeId, boxStyle, printWidth, printHeight, createNodeRepresentation(node, boxStyle, printWidth, printHeight));
+    }
+
+    /**
+     * Computes the size of the sub-tree of a measured node, all siblings must have been scanned before.
+     * 
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @param siblingParentRelation
+     * @param maxDepth maximum level of the tree to be fully drawn
+     */
+    private void completeNode(int nodeId, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        PrintableTreeNode node = layoutArena.node(nodeId);
+        int totalWidth = computeSubTreeWidth(nodeId, node, siblingParentRelation, maxDepth);
+        int totalHeight = computeSubTreeHeight(nodeId, node, siblingParentRelation, maxDepth);
+        boolean drawPlaceholderAppendix = node.getNumberOfSiblings() > 0 && layoutArena.depth(nodeId) == maxDepth;
+        layoutArena.completeNode(nodeId, totalWidth, totalHeight, drawPlaceholderAppendix);
+    }
+
+    /**
+     * @param nodeId id of a node (not the root) in the {@link #layoutArena}
+     * @return relation of the node to its parent
+     */
+    private SiblingParentRelation createSiblingParentRelation(int nodeId) {
+        return new DefaultSiblingParentRelation(layoutArena.numberOfSiblings(layoutArena.parentId(nodeId)), layoutArena.siblingSelector(nodeId));
+    }
+
+    /**
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @return relation of the node to its parent, {@link DefaultParentRelation#NONE} for the root
+     */
+    protected ParentRelation createParentRelation(int nodeId) {
+        if (nodeId == LayoutArena.ROOT) {
+            return DefaultParentRelation.NONE;
+        }
+        int parentId = layoutArena.parentId(nodeId);
+        return new DefaultParentRelation(layoutArena.nodeKey(parentId), layoutArena.numberOfSiblings(parentId), layoutArena.siblingSelector(nodeId));
+    }
+
+    /**
+     * Discards the results of the previous scan and allocates the id of the root node. Sub-classes written against the {@link NodeKey}-based methods must call
+     * this method at the beginning of {@link #scan(PrintableTreeNode, int)} before scanning the root with
+     * {@link #getSubTreeWidth(NodeKey, PrintableTreeNode, SiblingParentRelation, int)}.
+     */
+    protected void clearLayout() {
+        layoutArena.initRoot();
+    }
+
+    /**
+     * @param nodeId id of the node
+     * @return key (path of sibling selectors) of the node
+     */
+    protected NodeKey getNodeKey(int nodeId) {
+        return layoutArena.nodeKey(nodeId);
+    }
+
+    /**
+     * @param key key (path of sibling selectors) of a node of the scanned tree
+     * @return id of the node
+     * @throws IllegalStateException if the node has not been reached by the scan (yet)
+     */
+    protected int getNodeId(NodeKey key) {
+        return layoutArena.nodeId(key);
+    }
+
+    /**
+     * Returns a snapshot of the information collected about the given node during the scan (read-only, the position is relative to the parent)
+     * 
+     * @param nodeId id of the node
+     * @return node info
+     */
+    protected NodeFormatInfo getNodeFormatInfo(int nodeId) {
+        return layoutArena.toNodeFormatInfo(nodeId);
+    }
+
+    /**
+     * Obtains the node info of a scanned node, see {@link #getNodeFormatInfo(int)}.
      * 
      * @param key
      * @param node
      * @param siblingParentRelation
      * @param maxDepth maximum level of the tree to be fully drawn
      * @return node info
+     * @deprecated the information is kept by node id, use {@link #getSubTreeWidth(int, PrintableTreeNode, SiblingParentRelation, int)} and
+     *             {@link #getNodeFormatInfo(int)}
      */
+    @Deprecated
     protected NodeFormatInfo getOrCreateNodeFormatInfo(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
-        NodeFormatInfo info = nodeFormatInfoCache.get(key);
-        if (info == null) {
-            int totalWidth = computeSubTreeWidth(key, node, siblingParentRelation, maxDepth);
-            int totalHeight = computeSubTreeHeight(key, node, siblingParentRelation, maxDepth);
-            boolean drawPlaceholderAppendix = node.getNumberOfSiblings() > 0 && key.length() == maxDepth;
+        int nodeId = getNodeId(key);
+        scanNode(nodeId, node, siblingParentRelation, maxDepth);
+        return getNodeFormatInfo(nodeId);
+    }
 
-            info = new NodeFormatInfo(node, node.getBoxStyle(siblingParentRelation), createNodeRepresentation(node, siblingParentRelation),
-                    createSiblingNodeKeyList(key, node), totalWidth, totalHeight, false, drawPlaceholderAppendix);
-            nodeFormatInfoCache.put(key, info);
+    /**
+     * Creates a list of the keys of this node's sibling node keys
+     * 
+     * @param key
+     * @param node
+     * @return list of sibling node keys
+     * @deprecated not called anymore, the keys of the siblings are part of the {@link #getNodeFormatInfo(int)}
+     */
+    @Deprecated
+    protected NodeKey[] createSiblingNodeKeyList(NodeKey key, PrintableTreeNode node) {
+        NodeKey[] res = new NodeKey[node.getNumberOfSiblings()];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = key.sibling(i);
         }
-        return info;
+        return res;
+    }
+
+    /**
+     * Obtains the width of the sub-tree below this node
+     * 
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @param node
+     * @param siblingParentRelation
+     * @param maxDepth maximum level of the tree to be fully drawn
+     * @return horizontal size of all siblings and sibling's siblings combined
+     */
+    protected int getSubTreeWidth(int nodeId, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        scanNode(nodeId, node, siblingParentRelation, maxDepth);
+        return layoutArena.totalWidth(nodeId);
     }
 
     /**
@@ -179,10 +595,25 @@ public abstract class AbstractStandardTreeDrawingPolicy implements TreeDrawingPo
      * @param siblingParentRelation
      * @param maxDepth maximum level of the tree to be fully drawn
      * @return horizontal size of all siblings and sibling's siblings combined
+     * @deprecated use {@link #getSubTreeWidth(int, PrintableTreeNode, SiblingParentRelation, int)}
      */
+    @Deprecated
     protected int getSubTreeWidth(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
-        NodeFormatInfo info = getOrCreateNodeFormatInfo(key, node, siblingParentRelation, maxDepth);
-        return info.totalWidth();
+        return getSubTreeWidth(getNodeId(key), node, siblingParentRelation, maxDepth);
+    }
+
+    /**
+     * Obtains the height of the sub-tree below this node
+     * 
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @param node
+     * @param siblingParentRelation
+     * @param maxDepth maximum level of the tree to be fully drawn
+     * @return vertical size of all siblings and sibling's siblings combined
+     */
+    protected int getSubTreeHeight(int nodeId, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        scanNode(nodeId, node, siblingParentRelation, maxDepth);
+        return layoutArena.totalHeight(nodeId);
     }
 
     /**
@@ -193,10 +624,23 @@ public abstract class AbstractStandardTreeDrawingPolicy implements TreeDrawingPo
      * @param siblingParentRelation
      * @param maxDepth maximum level of the tree to be fully drawn
      * @return vertical size of all siblings and sibling's siblings combined
+     * @deprecated use {@link #getSubTreeHeight(int, PrintableTreeNode, SiblingParentRelation, int)}
      */
+    @Deprecated
     protected int getSubTreeHeight(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
-        NodeFormatInfo info = getOrCreateNodeFormatInfo(key, node, siblingParentRelation, maxDepth);
-        return info.totalHeight();
+        return getSubTreeHeight(getNodeId(key), node, siblingParentRelation, maxDepth);
+    }
+
+    /**
+     * Draws the prepared node representation at the the given coordinates (upper left corner
+     * 
+     * @param canvas
+     * @param x
+     * @param y
+     * @param nodeId id of the node in the {@link #layoutArena}
+     */
+    protected void drawNodeRepresentation(TextCanvas canvas, int x, int y, int nodeId) {
+        drawNodeRepresentation(canvas, x, y, layoutArena.representation(nodeId));
     }
 
     /**
@@ -206,14 +650,76 @@ public abstract class AbstractStandardTreeDrawingPolicy implements TreeDrawingPo
      * @param x
      * @param y
      * @param info
+     * @deprecated use {@link #drawNodeRepresentation(TextCanvas, int, int, int)}
      */
+    @Deprecated
     protected void drawNodeRepresentation(TextCanvas canvas, int x, int y, NodeFormatInfo info) {
-        for (int i = 0; i < info.representation().size(); i++) {
-            canvas.setCursor(x, y + i);
-            canvas.write(info.representation().get(i));
+        drawNodeRepresentation(canvas, x, y, info.representation());
+    }
+
+    /**
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     * @param x
+     * @param y
+     * @param lines node representation
+     */
+    private void drawNodeRepresentation(TextCanvas canvas, int x, int y, List<String> lines) {
+        for (int i = 0; i < lines.size(); i++) {
+            writeText(canvas, x, y + i, lines.get(i));
+        }
+    }
+
+    /**
+     * Writes the given text at the given position into the canvas or records it if the policy is recording a {@link TreeDiagram}
+     * 
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     * @param x
+     * @param y
+     * @param text
+     */
+    protected void writeText(TextCanvas canvas, int x, int y, String text) {
+        if (recordingDiagram != null) {
+            recordingDiagram.addText(x, y, text);
+        }
+        else {
+            canvas.setCursor(x, y);
+            canvas.write(text, 0, text.length());
         }
     }
 
+    /**
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     * @return width of the canvas or the diagram being recorded
+     */
+    protected int getCanvasWidth(TextCanvas canvas) {
+        return recordingDiagram != null ? recordingDiagram.getWidth() : canvas.getWidth();
+    }
+
+    /**
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     * @return height of the canvas or the diagram being recorded
+     */
+    protected int getCanvasHeight(TextCanvas canvas) {
+        return recordingDiagram != null ? recordingDiagram.getHeight() : canvas.getHeight();
+    }
+
+    /**
+     * Computes the width of the sub-tree below this node
+     * <p>
+     * Sub-classes must override this method. The default implementation calls the deprecated
+     * {@link #computeSubTreeWidth(NodeKey, PrintableTreeNode, SiblingParentRelation, int)} for sub-classes written against the {@link NodeKey}-based methods.
+     * 
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @param node
+     * @param siblingParentRelation
+     * @param maxDepth maximum level of the tree to be fully drawn
+     * @return horizontal size of all siblings and sibling's siblings combined
+     */
+    @SuppressWarnings("deprecation")
+    protected int computeSubTreeWidth(int nodeId, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        return computeSubTreeWidth(getNodeKey(nodeId), node, siblingParentRelation, maxDepth);
+    }
+
     /**
      * Computes the width of the sub-tree below this node
      * 
@@ -222,8 +728,31 @@ public abstract class AbstractStandardTreeDrawingPolicy implements TreeDrawingPo
      * @param siblingParentRelation
      * @param maxDepth maximum level of the tree to be fully drawn
      * @return horizontal size of all siblings and sibling's siblings combined
+     * @throws UnsupportedOperationException unless overridden
+     * @deprecated override {@link #computeSubTreeWidth(int, PrintableTreeNode, SiblingParentRelation, int)}
      */
-    protected abstract int computeSubTreeWidth(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth);
+    @Deprecated
+    protected int computeSubTreeWidth(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        throw new UnsupportedOperationException(
+                String.format("expected: %s overrides computeSubTreeWidth(int, ...), given: key=%s", getClass().getSimpleName(), key));
+    }
+
+    /**
+     * Computes the height of the sub-tree below this node
+     * <p>
+     * Sub-classes must override this method. The default implementation calls the deprecated
+     * {@link #computeSubTreeHeight(NodeKey, PrintableTreeNode, SiblingParentRelation, int)} for sub-classes written against the {@link NodeKey}-based methods.
+     * 
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @param node
+     * @param siblingParentRelation
+     * @param maxDepth maximum level of the tree to be fully drawn
+     * @return vertical size of all siblings and sibling's siblings combined
+     */
+    @SuppressWarnings("deprecation")
+    protected int computeSubTreeHeight(int nodeId, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        return computeSubTreeHeight(getNodeKey(nodeId), node, siblingParentRelation, maxDepth);
+    }
 
     /**
      * Computes the height of the sub-tree below this node
@@ -233,8 +762,14 @@ public abstract class AbstractStandardTreeDrawingPolicy implements TreeDrawingPo
      * @param siblingParentRelation
      * @param maxDepth maximum level of the tree to be fully drawn
      * @return vertical size of all siblings and sibling's siblings combined
+     * @throws UnsupportedOperationException unless overridden
+     * @deprecated override {@link #computeSubTreeHeight(int, PrintableTreeNode, SiblingParentRelation, int)}
      */
-    protected abstract int computeSubTreeHeight(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth);
+    @Deprecated
+    protected int computeSubTreeHeight(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        throw new UnsupportedOperationException(
+                String.format("expected: %s overrides computeSubTreeHeight(int, ...), given: key=%s", getClass().getSimpleName(), key));
+    }
 
     /**
      * Tells whether we need to add extra space before this element.
@@ -243,40 +778,340 @@ public abstract class AbstractStandardTreeDrawingPolicy implements TreeDrawingPo
      * The first condition avoids unnecessary initial indentation, the second rule takes into account that if there is just one sibling then we don't need extra
      * indentation.
      * 
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param parentNumberOfSiblings
      * @return true if we need to insert some whitespace before the current node and the node before
      */
-    protected boolean isSpacingRequired(NodeKey key, int parentNumberOfSiblings) {
-        if (key.isPathOfZeros()) {
+    protected boolean isSpacingRequired(int nodeId, int parentNumberOfSiblings) {
+        if (layoutArena.isPathOfZeros(nodeId)) {
             return false;
         }
         return parentNumberOfSiblings > 1;
     }
 
+    /**
+     * Tells whether we need to add extra space before this element, see {@link #isSpacingRequired(int, int)}
+     * 
+     * @param key
+     * @param parentNumberOfSiblings
+     * @return true if we need to insert some whitespace before the current node and the node before
+     * @deprecated use {@link #isSpacingRequired(int, int)}
+     */
+    @Deprecated
+    protected boolean isSpacingRequired(NodeKey key, int parentNumberOfSiblings) {
+        return isSpacingRequired(getNodeId(key), parentNumberOfSiblings);
+    }
+
+    /**
+     * Adds a connector to be drawn by {@link #drawPendingConnectors(TextCanvas)}, the connector will be drawn with the
+     * {@link #DEFAULT_LINE_CROSSING_RESOLVER}. If the tree contains nodes with decorators, the connector will be drawn immediately.
+     * 
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     * @param fromX
+     * @param fromY
+     * @param toX
+     * @param toY
+     * @param connectorFrom
+     * @param connectorTo
+     */
+    protected void addConnector(TextCanvas canvas, int fromX, int fromY, int toX, int toY, ConnectorEndType connectorFrom, ConnectorEndType connectorTo) {
+        if (drawingSequentially) {
+            canvas.drawLine(fromX, fromY, toX, toY, connectorFrom, connectorTo, DEFAULT_LINE_CROSSING_RESOLVER);
+            return;
+        }
+        pendingConnectors.add(new ConnectorSpec(fromX, fromY, toX, toY, connectorFrom, connectorTo, DEFAULT_LINE_CROSSING_RESOLVER));
+    }
+
+    /**
+     * Adds a node to be drawn by {@link #drawPendingNodes(TextCanvas)} at the given position. If the tree contains nodes with decorators, the texts of the
+     * node will be written immediately, see {@link #drawNodeTexts(TextCanvas, int, int, int)}.
+     * 
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @param x upper left corner's X of the node representation
+     * @param y upper left corner's Y of the node representation
+     */
+    protected void addNode(TextCanvas canvas, int nodeId, int x, int y) {
+        if (drawingSequentially) {
+            drawNodeTexts(canvas, nodeId, x, y);
+        }
+        else {
+            addPendingNode(nodeId, x, y);
+        }
+    }
+
+    /**
+     * Adds the placeholder appendix of a node to be drawn by {@link #drawPendingNodes(TextCanvas)}, see
+     * {@link #drawNodeAppendix(TextCanvas, int, int, int)}. The appendix must be added after the node's decoration (see {@link #addDecoration(Runnable)}),
+     * so a decoration cannot cover it.
+     * 
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @param x upper left corner's X of the node representation
+     * @param y upper left corner's Y of the node representation
+     */
+    protected void addNodeAppendix(TextCanvas canvas, int nodeId, int x, int y) {
+        if (drawingSequentially) {
+            drawNodeAppendix(canvas, nodeId, x, y);
+        }
+        else {
+            // negative ids mark the appendix entries
+            addPendingNode(~nodeId, x, y);
+        }
+    }
+
+    /**
+     * @param id node id, complement of the node id for an appendix
+     * @param x upper left corner's X of the node representation
+     * @param y upper left corner's Y of the node representation
+     */
+    private void addPendingNode(int id, int x, int y) {
+        int idx = pendingNodeCount * 3;
+        if (idx == pendingNodes.length) {
+            pendingNodes = Arrays.copyOf(pendingNodes, idx * 2);
+        }
+        pendingNodes[idx] = id;
+        pendingNodes[idx + 1] = x;
+        pendingNodes[idx + 2] = y;
+        pendingNodeCount++;
+    }
+
+    /**
+     * Writes the texts of a single node collected during the drawing phase, see {@link #drawPendingNodes(TextCanvas)}.
+     * <p>
+     * The default implementation draws the node representation, sub-classes may add further texts. <b>Important:</b> All texts must be written with
+     * {@link #writeText(TextCanvas, int, int, String)} and must not leave the area of the node's sub-tree, because this method may run concurrently for
+     * different nodes.
+     * 
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @param x upper left corner's X of the node representation
+     * @param y upper left corner's Y of the node representation
+     */
+    protected void drawNodeTexts(TextCanvas canvas, int nodeId, int x, int y) {
+        drawNodeRepresentation(canvas, x, y, nodeId);
+    }
+
+    /**
+     * Writes the placeholder appendix of a node (visualizing further siblings below the maximum depth), see
+     * {@link #addNodeAppendix(TextCanvas, int, int, int)}.
+     * <p>
+     * The default implementation does nothing. The same restrictions apply as for {@link #drawNodeTexts(TextCanvas, int, int, int)}.
+     * 
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     * @param nodeId id of the node in the {@link #layoutArena}
+     * @param x upper left corner's X of the node representation
+     * @param y upper left corner's Y of the node representation
+     */
+    protected void drawNodeAppendix(TextCanvas canvas, int nodeId, int x, int y) {
+        // no-op by default
+    }
+
+    /**
+     * Writes the texts of all the nodes collected during the drawing phase in the order they were added (in parallel if there is a pool, see
+     * {@link #draw(TextCanvas, ForkJoinPool)}). This must happen before {@link #drawPendingConnectors(TextCanvas)}.
+     * 
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     */
+    protected void drawPendingNodes(TextCanvas canvas) {
+        try {
+            if (drawPool != null && recordingDiagram == null && canvas.getStorage().supportsConcurrentWrites()
+                    && pendingNodeCount > PARALLEL_DRAW_THRESHOLD) {
+                drawPool.invoke(new DrawNodesTask(canvas, 0, pendingNodeCount));
+            }
+            else {
+                drawNodes(canvas, 0, pendingNodeCount);
+            }
+        }
+        finally {
+            pendingNodeCount = 0;
+        }
+    }
+
+    /**
+     * Writes the texts of the given range of the collected nodes
+     * 
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     * @param fromIdx index of the first node (inclusive)
+     * @param toIdx index of the last node (exclusive)
+     */
+    private void drawNodes(TextCanvas canvas, int fromIdx, int toIdx) {
+        for (int idx = fromIdx * 3; idx < toIdx * 3; idx = idx + 3) {
+            int id = pendingNodes[idx];
+            if (id >= 0) {
+                drawNodeTexts(canvas, id, pendingNodes[idx + 1], pendingNodes[idx + 2]);
+            }
+            else {
+                drawNodeAppendix(canvas, ~id, pendingNodes[idx + 1], pendingNodes[idx + 2]);
+            }
+        }
+    }
+
+    /**
+     * Executes a decorator call (see {@link PrintableTreeNode#decorateNode(SiblingParentRelation, TextCanvas, int, int, int, int)} and
+     * {@link PrintableTreeNode#decorateParentConnector(SiblingParentRelation, TextCanvas, BoxConnectionPoint, BoxConnectionPoint)}) at its position in the
+     * drawing order.
+     * <p>
+     * Decorators may read and overwrite anything drawn before, and anything drawn afterwards may overwrite the decoration. Thus, if the tree contains nodes
+     * with decorators, all nodes, connectors and decorations will be drawn immediately in drawing order. Otherwise all decorator calls are no-ops and will be
+     * skipped (also while recording a {@link TreeDiagram}).
+     * 
+     * @param decoration
+     */
+    protected void addDecoration(Runnable decoration) {
+        if (drawingSequentially) {
+            decoration.run();
+        }
+    }
+
+    /**
+     * Draws all the connectors collected during the drawing phase as a single batch (see {@link TextCanvas#drawLines(java.util.Collection)}). While recording
+     * a {@link TreeDiagram} the connectors will be added to the diagram.
+     * 
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
+     */
+    protected void drawPendingConnectors(TextCanvas canvas) {
+        try {
+            if (recordingDiagram != null) {
+                recordingDiagram.addConnectors(pendingConnectors);
+                return;
+            }
+            canvas.drawLines(pendingConnectors);
+        }
+        finally {
+            pendingConnectors.clear();
+        }
+    }
+
+    /**
+     * @return true if any node of the scanned tree overrides a decorator method
+     */
+    private boolean hasDecorators() {
+        for (int nodeId = 0; nodeId < layoutArena.size(); nodeId++) {
+            PrintableTreeNode node = layoutArena.node(nodeId);
+            if (node != null && node != PrintableTreeNode.MISSING_SIBLING && DECORATING_NODE_CLASS.get(node.getClass()).booleanValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Handles default drawing, for example root node was missing or null
+     * <p>
+     * Otherwise this method prepares drawing the scanned tree, nodes with decorators require drawing sequentially (see {@link #addDecoration(Runnable)}).
      * 
-     * @param canvas
+     * @param canvas target, <code>null</code> while recording (see {@link #layout(PrintableTreeNode, int, LineGlyphSet)})
      * @return true if this is a default scenario, nothing further to be drawn
      */
     protected boolean handleDefaults(TextCanvas canvas) {
-        canvas.drawBox(frameConfig.boxStyle(), canvas.getWidth(), canvas.getHeight());
-        NodeFormatInfo rootNodeInfo = nodeFormatInfoCache.get(NodeKey.root());
-        if (rootNodeInfo == null || rootNodeInfo == NULL_INFO) {
-            canvas.setCursor(frameConfig.indentLeft(), frameConfig.indentTop());
-            canvas.write("<null>");
+        pendingConnectors.clear();
+        pendingNodeCount = 0;
+        drawingSequentially = false;
+        if (recordingDiagram == null) {
+            // the diagram draws the frame itself
+            canvas.drawBox(frameConfig.boxStyle(), canvas.getWidth(), canvas.getHeight());
+        }
+        int pseudoRoot = layoutArena.size() == 0 ? LayoutArena.PSEUDO_ROOT_NULL : layoutArena.pseudoRoot();
+        if (pseudoRoot == LayoutArena.PSEUDO_ROOT_NULL) {
+            writeText(canvas, frameConfig.indentLeft(), frameConfig.indentTop(), "<null>");
             return true;
         }
-        else if (rootNodeInfo == MORE_INFO) {
-            canvas.setCursor(frameConfig.indentLeft(), frameConfig.indentTop());
-            canvas.write("...");
+        else if (pseudoRoot == LayoutArena.PSEUDO_ROOT_MORE) {
+            writeText(canvas, frameConfig.indentLeft(), frameConfig.indentTop(), "...");
             return true;
         }
-        else if (rootNodeInfo == MISSING_INFO) {
+        else if (pseudoRoot == LayoutArena.PSEUDO_ROOT_MISSING) {
             return true;
         }
+        drawingSequentially = recordingDiagram == null && hasDecorators();
         return false;
     }
 
+    /**
+     * Measures a range of nodes, splits the range into sub-tasks if it exceeds the {@link #PARALLEL_SCAN_THRESHOLD}
+     */
+    private final class MeasureTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 6052392165413584384L;
+
+        /**
+         * first id (inclusive)
+         */
+        private final int fromId;
+
+        /**
+         * last id (exclusive)
+         */
+        private final int toId;
+
+        /**
+         * @param fromId first id (inclusive)
+         * @param toId last id (exclusive)
+         */
+        MeasureTask(int fromId, int toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        protected void compute() {
+            if (toId - fromId <= PARALLEL_SCAN_THRESHOLD) {
+                measureNodes(fromId, toId);
+            }
+            else {
+                int midId = (fromId + toId) >>> 1;
+                invokeAll(new MeasureTask(fromId, midId), new MeasureTask(midId, toId));
+            }
+        }
+
+    }
+
+    /**
+     * Writes the texts of a range of collected nodes through a separate view of the canvas, splits the range into sub-tasks if it exceeds the
+     * {@link #PARALLEL_DRAW_THRESHOLD}
+     */
+    private final class DrawNodesTask extends RecursiveAction {
+
+        private static final long serialVersionUID = -3319203826453410386L;
+
+        /**
+         * target
+         */
+        private final transient TextCanvas canvas;
+
+        /**
+         * index of the first node (inclusive)
+         */
+        private final int fromIdx;
+
+        /**
+         * index of the last node (exclusive)
+         */
+        private final int toIdx;
+
+        /**
+         * @param canvas target
+         * @param fromIdx index of the first node (inclusive)
+         * @param toIdx index of the last node (exclusive)
+         */
+        DrawNodesTask(TextCanvas canvas, int fromIdx, int toIdx) {
+            this.canvas = canvas;
+            this.fromIdx = fromIdx;
+            this.toIdx = toIdx;
+        }
+
+        @Override
+        protected void compute() {
+            if (toIdx - fromIdx <= PARALLEL_DRAW_THRESHOLD) {
+                drawNodes(canvas.createView(), fromIdx, toIdx);
+            }
+            else {
+                int midIdx = (fromIdx + toIdx) >>> 1;
+                invokeAll(new DrawNodesTask(canvas, fromIdx, midIdx), new DrawNodesTask(canvas, midIdx, toIdx));
+            }
+        }
+
+    }
+
 }
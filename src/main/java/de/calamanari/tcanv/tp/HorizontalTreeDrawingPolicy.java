@@ -19,10 +19,6 @@
 
 package de.calamanari.tcanv.tp;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
-
 import de.calamanari.tcanv.BoxConnectionPoint;
 import de.calamanari.tcanv.BoxSide;
 import de.calamanari.tcanv.CanvasFormat;
@@ -30,10 +26,6 @@ import de.calamanari.tcanv.DefaultConnectorEndType;
 import de.calamanari.tcanv.FrameConfig;
 import de.calamanari.tcanv.TextCanvas;
 
-import static de.calamanari.tcanv.tp.NodeFormatInfo.MISSING_INFO;
-import static de.calamanari.tcanv.tp.NodeFormatInfo.MORE_INFO;
-import static de.calamanari.tcanv.tp.NodeFormatInfo.NULL_INFO;
-
 /**
  * A {@link HorizontalTreeDrawingPolicy} draws a tree into a canvas.
  * <p>
@@ -62,9 +54,10 @@ import static de.calamanari.tcanv.tp.NodeFormatInfo.NULL_INFO;
 public class HorizontalTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy {
 
     /**
-     * For a clean layout all nodes of a level are vertically aligned. Therefore, this list stores the effective maximum height of each level of the tree.
+     * For a clean layout all nodes of a level are vertically aligned. Therefore, this field stores the effective maximum width of each level of the tree
+     * and the resulting level offsets.
      */
-    private final List<Integer> levelMaxSimpleNodeWidth = new ArrayList<>();
+    private final LevelSizes levelMaxSimpleNodeWidth = new LevelSizes();
 
     /**
      * This flag controls whether we draw the tree from the left to the right (default, <code>false</code>) or vice-versa (<code>true</code>).
@@ -90,78 +83,71 @@ public class HorizontalTreeDrawingPolicy extends AbstractStandardTreeDrawingPoli
      * @param simpleNodeWidth current node's width
      */
     private void updateMaxSimpleNodeWidth(int level, int simpleNodeWidth) {
-        // ensure capacity
-        while (levelMaxSimpleNodeWidth.size() <= level) {
-            levelMaxSimpleNodeWidth.add(0);
-        }
-        levelMaxSimpleNodeWidth.set(level, Math.max(levelMaxSimpleNodeWidth.get(level), simpleNodeWidth));
+        levelMaxSimpleNodeWidth.update(level, simpleNodeWidth);
     }
 
     /**
      * Computes the width of the sub-tree below this node
      * 
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param node
      * @param siblingParentRelation
      * @param maxDepth maximum level of the tree to be fully drawn
      * @return horizontal size of all siblings and sibling's siblings combined
      */
     @Override
-    protected int computeSubTreeWidth(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
-        int simpleNodeWidth = node.getPrintWidth(siblingParentRelation, treeLayoutConfig.maxNodeWidth());
+    protected int computeSubTreeWidth(int nodeId, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        int simpleNodeWidth = layoutArena.printWidth(nodeId);
         int numberOfSiblings = node.getNumberOfSiblings();
+        int depth = layoutArena.depth(nodeId);
         int subWidth = 0;
-        if (numberOfSiblings > 0 && key.length() < maxDepth) {
+        if (numberOfSiblings > 0 && depth < maxDepth) {
             for (int i = 0; i < numberOfSiblings; i++) {
                 PrintableTreeNode sibling = node.getSiblingNode(i);
                 if (sibling != PrintableTreeNode.MISSING_SIBLING) {
-                    subWidth = Math.max(subWidth, getSubTreeWidth(key.sibling(i), sibling, new DefaultSiblingParentRelation(numberOfSiblings, i), maxDepth));
+                    subWidth = Math.max(subWidth,
+                            getSubTreeWidth(layoutArena.siblingId(nodeId, i), sibling, new DefaultSiblingParentRelation(numberOfSiblings, i), maxDepth));
                 }
             }
         }
         else if (numberOfSiblings > 0) {
             // appendix width
             subWidth = 2;
-            updateMaxSimpleNodeWidth(key.length() - 1, simpleNodeWidth + 2);
+            updateMaxSimpleNodeWidth(depth - 1, simpleNodeWidth + 2);
         }
-        updateMaxSimpleNodeWidth(key.length() - 1, simpleNodeWidth);
+        updateMaxSimpleNodeWidth(depth - 1, simpleNodeWidth);
         return simpleNodeWidth + subWidth + treeLayoutConfig.horizontalSpacing();
     }
 
     /**
-     * Creates a standard horizontal gap to be displayed for a missing node
+     * Computes the height of the standard vertical gap to be displayed for a missing node
      * 
      * @param numberOfSiblings
      * @param simpleNodeHeight
-     * @return gap
+     * @return gap height
      */
-    private List<String> createVerticalGap(int numberOfSiblings, int simpleNodeHeight) {
-        int len = numberOfSiblings == 2 ? simpleNodeHeight * 2 : 3;
-        List<String> gap = new ArrayList<>(len);
-        for (int i = 0; i < len; i++) {
-            gap.add(" ");
-        }
-        return gap;
+    private int computeVerticalGapHeight(int numberOfSiblings, int simpleNodeHeight) {
+        return numberOfSiblings == 2 ? simpleNodeHeight * 2 : 3;
     }
 
     /**
      * Computes the height of the sub-tree below this node
      * 
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param node
      * @param siblingParentRelation
      * @param maxDepth maximum level of the tree to be fully drawn
      * @return vertical size of all siblings and sibling's siblings combined
      */
     @Override
-    protected int computeSubTreeHeight(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
-        int simpleNodeHeight = node.getPrintHeight(siblingParentRelation, treeLayoutConfig.maxNodeHeight());
+    protected int computeSubTreeHeight(int nodeId, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        int simpleNodeHeight = layoutArena.printHeight(nodeId);
         int numberOfSiblings = node.getNumberOfSiblings();
         int subHeight = 0;
 
-        if (numberOfSiblings > 0 && key.length() < maxDepth) {
+        if (numberOfSiblings > 0 && layoutArena.depth(nodeId) < maxDepth) {
             for (int i = 0; i < numberOfSiblings; i++) {
-                subHeight = updateSubTreeHeight(key, node, numberOfSiblings, i, simpleNodeHeight, subHeight, maxDepth);
+                subHeight = updateSubTreeHeight(nodeId, node, numberOfSiblings, i, simpleNodeHeight, subHeight, maxDepth);
             }
         }
         else if (numberOfSiblings > 0) {
@@ -174,7 +160,7 @@ public class HorizontalTreeDrawingPolicy extends AbstractStandardTreeDrawingPoli
     /**
      * Considers this sibling in total height computation (recursively)
      * 
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param node
      * @param numberOfSiblings
      * @param siblingIdx
@@ -183,25 +169,23 @@ public class HorizontalTreeDrawingPolicy extends AbstractStandardTreeDrawingPoli
      * @param maxDepth
      * @return updated current total height
      */
-    private int updateSubTreeHeight(NodeKey key, PrintableTreeNode node, int numberOfSiblings, int siblingIdx, int simpleParentHeight, int currentSubHeight,
+    private int updateSubTreeHeight(int nodeId, PrintableTreeNode node, int numberOfSiblings, int siblingIdx, int simpleParentHeight, int currentSubHeight,
             int maxDepth) {
         PrintableTreeNode sibling = node.getSiblingNode(siblingIdx);
-        NodeKey siblingKey = key.sibling(siblingIdx);
-        if (sibling != PrintableTreeNode.MISSING_SIBLING && siblingKey.length() <= maxDepth) {
-            int subTreeHeight = getSubTreeHeight(siblingKey, sibling, new DefaultSiblingParentRelation(numberOfSiblings, siblingIdx), maxDepth)
+        int siblingId = layoutArena.siblingId(nodeId, siblingIdx);
+        if (sibling != PrintableTreeNode.MISSING_SIBLING && layoutArena.depth(siblingId) <= maxDepth) {
+            int subTreeHeight = getSubTreeHeight(siblingId, sibling, new DefaultSiblingParentRelation(numberOfSiblings, siblingIdx), maxDepth)
                     + (siblingIdx > 0 ? 1 : 0);
-            int relativePositionY = computeRelativeVerticalPosition(siblingKey, numberOfSiblings, simpleParentHeight, currentSubHeight, subTreeHeight);
+            int relativePositionY = computeRelativeVerticalPosition(siblingId, numberOfSiblings, simpleParentHeight, currentSubHeight, subTreeHeight);
             currentSubHeight = currentSubHeight + subTreeHeight;
-            if (isSpacingRequired(siblingKey, numberOfSiblings)) {
+            if (isSpacingRequired(siblingId, numberOfSiblings)) {
                 currentSubHeight = currentSubHeight + (treeLayoutConfig.verticalSpacing() / 2);
             }
-            NodeFormatInfo info = nodeFormatInfoCache.get(siblingKey);
-            nodeFormatInfoCache.put(siblingKey, info.withPositionY(relativePositionY));
+            layoutArena.setPositionY(siblingId, relativePositionY);
         }
         else {
-            List<String> gap = createVerticalGap(numberOfSiblings, simpleParentHeight);
-            nodeFormatInfoCache.put(key.sibling(siblingIdx), NodeFormatInfo.gapInfo(gap, 0, currentSubHeight));
-            currentSubHeight = currentSubHeight + gap.size() - (siblingIdx < numberOfSiblings - 1 ? 1 : 0);
+            layoutArena.markMissing(siblingId);
+            currentSubHeight = currentSubHeight + computeVerticalGapHeight(numberOfSiblings, simpleParentHeight) - (siblingIdx < numberOfSiblings - 1 ? 1 : 0);
         }
         return currentSubHeight;
     }
@@ -209,16 +193,16 @@ public class HorizontalTreeDrawingPolicy extends AbstractStandardTreeDrawingPoli
     /**
      * Derives the relative Y-position from the current sub height and the tree height
      * 
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param parentNumberOfSiblings
      * @param simpleParentHeight
      * @param currentSubHeight
      * @param subTreeHeight
      * @return relative vertical position (from the begin of the current element)
      */
-    private int computeRelativeVerticalPosition(NodeKey key, int parentNumberOfSiblings, int simpleParentHeight, int currentSubHeight, int subTreeHeight) {
+    private int computeRelativeVerticalPosition(int nodeId, int parentNumberOfSiblings, int simpleParentHeight, int currentSubHeight, int subTreeHeight) {
         int relativePositionY = currentSubHeight;
-        if (isSpacingRequired(key, parentNumberOfSiblings)) {
+        if (isSpacingRequired(nodeId, parentNumberOfSiblings)) {
             relativePositionY = relativePositionY + (treeLayoutConfig.verticalSpacing() / 2);
         }
         if (parentNumberOfSiblings == 1) {
@@ -243,131 +227,150 @@ public class HorizontalTreeDrawingPolicy extends AbstractStandardTreeDrawingPoli
         if (rightToLeft) {
             int absX = absParentX - 1;
             int absY = absParentY + (parentHeight / 2);
-            canvas.setCursor(absX, absY);
-            canvas.write("-");
+            writeText(canvas, absX, absY, "-");
             for (int i = -1; i < 2; i++) {
-                canvas.setCursor(absX - 1, absY + i);
-                canvas.write(".");
+                writeText(canvas, absX - 1, absY + i, ".");
             }
         }
         else {
             int absX = absParentX + parentWidth;
             int absY = absParentY + (parentHeight / 2);
-            canvas.setCursor(absX, absY);
-            canvas.write("-");
+            writeText(canvas, absX, absY, "-");
             for (int i = -1; i < 2; i++) {
-                canvas.setCursor(absX + 1, absY + i);
-                canvas.write(".");
+                writeText(canvas, absX + 1, absY + i, ".");
             }
         }
     }
 
     /**
-     * Draws the sub-tree starting at the given node
+     * Draws the tree starting at the root node.
+     * <p>
+     * The tree gets walked with an explicit stack (pre-order), so the depth of the tree is not limited by the stack size of the current thread.
+     * The texts of the nodes will be written afterwards, see {@link #drawPendingNodes(TextCanvas)}.
+     * 
+     * @param canvas
+     */
+    private void drawTree(TextCanvas canvas) {
+        // entries: id, vertical offset
+        IntStack stack = new IntStack();
+        stack.push(LayoutArena.ROOT);
+        stack.push(frameConfig.indentTop());
+        while (!stack.isEmpty()) {
+            int heightOffset = stack.pop();
+            int nodeId = stack.pop();
+            drawNode(canvas, stack, nodeId, createParentRelation(nodeId), heightOffset);
+        }
+    }
+
+    /**
+     * Adds the given node and its parent connector to be drawn (see {@link #addNode(TextCanvas, int, int, int)}) and puts its siblings on the stack
      * 
      * @param canvas
-     * @param key
+     * @param stack nodes to be drawn
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param parentRelation
-     * @param maxDepth maximum level of the tree to be fully drawn
      * @param heightOffset vertical offset (depends on the remainder of the tree)
      */
-    private void drawSubTree(TextCanvas canvas, NodeKey key, ParentRelation parentRelation, int heightOffset) {
-        int widthOffset = computeAbsPositionX(canvas, key);
+    private void drawNode(TextCanvas canvas, IntStack stack, int nodeId, ParentRelation parentRelation, int heightOffset) {
+        int widthOffset = computeAbsPositionX(canvas, nodeId);
 
-        NodeFormatInfo info = nodeFormatInfoCache.get(key);
-        int absTotalX = widthOffset + info.positionX();
-        int absTotalY = heightOffset + (isSpacingRequired(key, parentRelation.parentNumberOfSiblings()) ? (treeLayoutConfig.verticalSpacing() / 2) : 0)
-                + info.positionY();
-        int absLocalY = absTotalY + (info.totalHeight() / 2) - (info.simpleHeight() / 2);
+        int simpleWidth = layoutArena.simpleWidth(nodeId);
+        int simpleHeight = layoutArena.simpleHeight(nodeId);
+        int absTotalX = widthOffset + layoutArena.positionX(nodeId);
+        int absTotalY = heightOffset + (isSpacingRequired(nodeId, parentRelation.parentNumberOfSiblings()) ? (treeLayoutConfig.verticalSpacing() / 2) : 0)
+                + layoutArena.positionY(nodeId);
+        int absLocalY = absTotalY + (layoutArena.totalHeight(nodeId) / 2) - (simpleHeight / 2);
 
-        drawNodeRepresentation(canvas, absTotalX, absLocalY, info);
+        addNode(canvas, nodeId, absTotalX, absLocalY);
 
-        if (parentRelation.parentKey().isValid()) {
-            drawParentConnector(canvas, key, info, parentRelation, widthOffset, heightOffset);
+        if (nodeId != LayoutArena.ROOT) {
+            drawParentConnector(canvas, nodeId, parentRelation, widthOffset, heightOffset);
         }
-        info.node().decorateNode(parentRelation, canvas, absTotalX, absLocalY, info.simpleWidth(), info.simpleHeight());
+        PrintableTreeNode node = layoutArena.node(nodeId);
+        addDecoration(() -> node.decorateNode(parentRelation, canvas, absTotalX, absLocalY, simpleWidth, simpleHeight));
 
-        if (info.drawPlaceholderAppendix()) {
-            drawPlaceholderAppendix(canvas, absTotalX, absLocalY, info.simpleWidth(), info.simpleHeight());
+        if (layoutArena.drawPlaceholderAppendix(nodeId)) {
+            addNodeAppendix(canvas, nodeId, absTotalX, absLocalY);
         }
-        else if (info.hasSiblings()) {
-            drawSiblings(canvas, key, info, absTotalY);
+        else if (layoutArena.hasSiblings(nodeId)) {
+            pushSiblings(stack, nodeId, absTotalY);
         }
     }
 
+    @Override
+    protected void drawNodeAppendix(TextCanvas canvas, int nodeId, int x, int y) {
+        drawPlaceholderAppendix(canvas, x, y, layoutArena.simpleWidth(nodeId), layoutArena.simpleHeight(nodeId));
+    }
+
     /**
      * Connects any node - except for the start node - to its parent.
      * 
      * @param canvas
-     * @param key
-     * @param info
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param parentRelation
-     * @param maxDepth maximum level of the tree to be fully drawn
      * @param widthOffset horizontal offset (depends on the remainder of the tree)
      * @param heightOffset vertical offset (depends on the remainder of the tree)
      */
-    private final void drawParentConnector(TextCanvas canvas, NodeKey key, NodeFormatInfo info, ParentRelation parentRelation, int widthOffset,
-            int heightOffset) {
-        NodeFormatInfo parentInfo = nodeFormatInfoCache.get(parentRelation.parentKey());
+    private final void drawParentConnector(TextCanvas canvas, int nodeId, ParentRelation parentRelation, int widthOffset, int heightOffset) {
+        int parentId = layoutArena.parentId(nodeId);
+        int simpleHeight = layoutArena.simpleHeight(nodeId);
+        int parentSimpleHeight = layoutArena.simpleHeight(parentId);
 
-        int absTotalY = heightOffset + (isSpacingRequired(key, parentRelation.parentNumberOfSiblings()) ? (treeLayoutConfig.verticalSpacing() / 2) : 0)
-                + info.positionY();
-        int absLocalY = absTotalY + (info.totalHeight() / 2) - (info.simpleHeight() / 2);
+        int absTotalY = heightOffset + (isSpacingRequired(nodeId, parentRelation.parentNumberOfSiblings()) ? (treeLayoutConfig.verticalSpacing() / 2) : 0)
+                + layoutArena.positionY(nodeId);
+        int absLocalY = absTotalY + (layoutArena.totalHeight(nodeId) / 2) - (simpleHeight / 2);
 
-        int absParentNodeRightStartY = heightOffset + (parentInfo.totalHeight() / 2) - (parentInfo.simpleHeight() / 2);
-        int absParentNodeRightMidY = absParentNodeRightStartY + (parentInfo.simpleHeight() / 2);
+        int absParentNodeRightStartY = heightOffset + (layoutArena.totalHeight(parentId) / 2) - (parentSimpleHeight / 2);
+        int absParentNodeRightMidY = absParentNodeRightStartY + (parentSimpleHeight / 2);
         int lineStartY = absParentNodeRightMidY;
-        int lineStartX = computeConnectorStartX(canvas, parentRelation.parentKey(), parentInfo);
-        int lineEndX = computeConnectorEndX(widthOffset, info);
-        int lineEndY = absLocalY + (info.simpleHeight() / 2);
+        int lineStartX = computeConnectorStartX(canvas, parentId);
+        int lineEndX = computeConnectorEndX(widthOffset, nodeId);
+        int lineEndY = absLocalY + (simpleHeight / 2);
 
         if (parentRelation.parentNumberOfSiblings() == 1) {
             lineStartY = lineEndY;
         }
-        canvas.drawLine(lineStartX, lineStartY, lineEndX, lineEndY, DefaultConnectorEndType.RIGHT_PLAIN, DefaultConnectorEndType.LEFT_PLAIN,
-                DEFAULT_LINE_CROSSING_RESOLVER);
-        if (rightToLeft) {
-            info.node().decorateParentConnector(parentRelation, canvas, new BoxConnectionPoint(BoxSide.LEFT, lineStartX, lineStartY),
-                    new BoxConnectionPoint(BoxSide.RIGHT, lineEndX, lineEndY));
-        }
-        else {
-            info.node().decorateParentConnector(parentRelation, canvas, new BoxConnectionPoint(BoxSide.RIGHT, lineStartX, lineStartY),
-                    new BoxConnectionPoint(BoxSide.LEFT, lineEndX, lineEndY));
-        }
+        addConnector(canvas, lineStartX, lineStartY, lineEndX, lineEndY, DefaultConnectorEndType.RIGHT_PLAIN, DefaultConnectorEndType.LEFT_PLAIN);
+
+        BoxConnectionPoint from = new BoxConnectionPoint(rightToLeft ? BoxSide.LEFT : BoxSide.RIGHT, lineStartX, lineStartY);
+        BoxConnectionPoint to = new BoxConnectionPoint(rightToLeft ? BoxSide.RIGHT : BoxSide.LEFT, lineEndX, lineEndY);
+        PrintableTreeNode node = layoutArena.node(nodeId);
+        addDecoration(() -> node.decorateParentConnector(parentRelation, canvas, from, to));
     }
 
     /**
-     * Draws the sibling nodes recursively.
+     * Puts the siblings of the given node on the stack to be drawn (outer siblings first).
      * 
-     * @param canvas
-     * @param key
-     * @param node
+     * @param stack nodes to be drawn
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param heightOffset vertical offset (depends on the remainder of the tree)
      */
-    private final void drawSiblings(TextCanvas canvas, NodeKey key, NodeFormatInfo info, int heightOffset) {
-        int numberOfSiblings = info.siblingNodeKeys().length;
-        for (int i = 0; i < numberOfSiblings / 2; i++) {
-            NodeKey siblingKey = key.sibling(i);
-            NodeFormatInfo siblingInfo = nodeFormatInfoCache.get(siblingKey);
-            PrintableTreeNode sibling = siblingInfo.node();
-            if (sibling != PrintableTreeNode.MISSING_SIBLING) {
-                drawSubTree(canvas, key.sibling(i), new DefaultParentRelation(key, numberOfSiblings, i), heightOffset);
-            }
+    private final void pushSiblings(IntStack stack, int nodeId, int heightOffset) {
+        int numberOfSiblings = layoutArena.numberOfSiblings(nodeId);
+        int mid = numberOfSiblings / 2;
+        // reverse order: the last sibling pushed will be drawn first
+        pushSibling(stack, nodeId, mid, heightOffset);
+        for (int i = mid + 1; i < numberOfSiblings; i++) {
+            pushSibling(stack, nodeId, i, heightOffset);
         }
-        for (int i = numberOfSiblings - 1; i > (numberOfSiblings / 2); i--) {
-            NodeKey siblingKey = key.sibling(i);
-            NodeFormatInfo siblingInfo = nodeFormatInfoCache.get(siblingKey);
-            PrintableTreeNode sibling = siblingInfo.node();
-            if (sibling != PrintableTreeNode.MISSING_SIBLING) {
-                drawSubTree(canvas, key.sibling(i), new DefaultParentRelation(key, numberOfSiblings, i), heightOffset);
-            }
+        for (int i = mid - 1; i >= 0; i--) {
+            pushSibling(stack, nodeId, i, heightOffset);
         }
-        int mid = numberOfSiblings / 2;
-        NodeKey siblingKey = key.sibling(mid);
-        NodeFormatInfo siblingInfo = nodeFormatInfoCache.get(siblingKey);
-        PrintableTreeNode sibling = siblingInfo.node();
-        if (sibling != PrintableTreeNode.MISSING_SIBLING) {
-            drawSubTree(canvas, key.sibling(mid), new DefaultParentRelation(key, numberOfSiblings, mid), heightOffset);
+    }
+
+    /**
+     * Puts the sibling with the given index on the stack unless the sibling is missing
+     * 
+     * @param stack nodes to be drawn
+     * @param nodeId id of the parent node in the {@link #layoutArena}
+     * @param siblingIdx
+     * @param heightOffset vertical offset (depends on the remainder of the tree)
+     */
+    private void pushSibling(IntStack stack, int nodeId, int siblingIdx, int heightOffset) {
+        int siblingId = layoutArena.siblingId(nodeId, siblingIdx);
+        if (!layoutArena.isMissing(siblingId)) {
+            stack.push(siblingId);
+            stack.push(heightOffset);
         }
     }
 
@@ -375,16 +378,15 @@ public class HorizontalTreeDrawingPolicy extends AbstractStandardTreeDrawingPoli
      * Computes the horizontal position of the connector start between parent and sibling
      * 
      * @param canvas
-     * @param parentKey
-     * @param parentInfo
+     * @param parentId id of the parent node in the {@link #layoutArena}
      * @return horizontal position to place the line start point of the connector
      */
-    private final int computeConnectorStartX(TextCanvas canvas, NodeKey parentKey, NodeFormatInfo parentInfo) {
+    private final int computeConnectorStartX(TextCanvas canvas, int parentId) {
         if (rightToLeft) {
-            return computeAbsPositionX(canvas, parentKey) - 1;
+            return computeAbsPositionX(canvas, parentId) - 1;
         }
         else {
-            return computeAbsPositionX(canvas, parentKey) + parentInfo.positionX() + parentInfo.simpleWidth();
+            return computeAbsPositionX(canvas, parentId) + layoutArena.positionX(parentId) + layoutArena.simpleWidth(parentId);
         }
     }
 
@@ -392,15 +394,15 @@ public class HorizontalTreeDrawingPolicy extends AbstractStandardTreeDrawingPoli
      * Computes the horizontal position of the connector end between parent and sibling
      * 
      * @param widthOffset
-     * @param info
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @return horizontal position to place the line end point of the connector
      */
-    private final int computeConnectorEndX(int widthOffset, NodeFormatInfo info) {
+    private final int computeConnectorEndX(int widthOffset, int nodeId) {
         if (rightToLeft) {
-            return widthOffset + info.positionX() + info.simpleWidth();
+            return widthOffset + layoutArena.positionX(nodeId) + layoutArena.simpleWidth(nodeId);
         }
         else {
-            return widthOffset + info.positionX() - 1;
+            return widthOffset + layoutArena.positionX(nodeId) - 1;
         }
     }
 
@@ -408,17 +410,14 @@ public class HorizontalTreeDrawingPolicy extends AbstractStandardTreeDrawingPoli
      * Computes the node's absolute upper left corner's horizontal position
      * 
      * @param canvas
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @return absolute X of the upper left corner
      */
-    private int computeAbsPositionX(TextCanvas canvas, NodeKey key) {
-        int res = 0;
-        for (int i = 0; i < key.length() - 1; i++) {
-            res = res + levelMaxSimpleNodeWidth.get(i) + treeLayoutConfig.horizontalSpacing();
-        }
+    private int computeAbsPositionX(TextCanvas canvas, int nodeId) {
+        int res = levelMaxSimpleNodeWidth.offset(layoutArena.depth(nodeId) - 1);
         if (rightToLeft) {
-            int drawingWidth = canvas.getWidth() - frameConfig.indentLeft() - frameConfig.indentRight();
-            res = drawingWidth - res - nodeFormatInfoCache.get(key).simpleWidth();
+            int drawingWidth = getCanvasWidth(canvas) - frameConfig.indentLeft() - frameConfig.indentRight();
+            res = drawingWidth - res - layoutArena.simpleWidth(nodeId);
         }
         res = res + frameConfig.indentLeft();
         return res;
@@ -428,9 +427,7 @@ public class HorizontalTreeDrawingPolicy extends AbstractStandardTreeDrawingPoli
      * @return width of the canvas to draw the tree
      */
     public int computeCanvasWidth() {
-        return (levelMaxSimpleNodeWidth.isEmpty() ? 1
-                : levelMaxSimpleNodeWidth.stream().collect(Collectors.summingInt(i -> i))
-                        + ((levelMaxSimpleNodeWidth.size() - 1) * treeLayoutConfig.horizontalSpacing()))
+        return (levelMaxSimpleNodeWidth.isEmpty() ? 1 : levelMaxSimpleNodeWidth.totalSize())
                 + frameConfig.indentLeft() + frameConfig.indentRight();
     }
 
@@ -438,36 +435,39 @@ public class HorizontalTreeDrawingPolicy extends AbstractStandardTreeDrawingPoli
      * @return height of the canvas to draw the tree
      */
     public int computeCanvasHeight() {
-        return (!nodeFormatInfoCache.containsKey(NodeKey.root()) ? 1 : nodeFormatInfoCache.get(NodeKey.root()).totalHeight()) + frameConfig.indentTop()
-                + frameConfig.indentBottom();
+        return (layoutArena.size() == 0 ? 1 : layoutArena.totalHeight(LayoutArena.ROOT)) + frameConfig.indentTop() + frameConfig.indentBottom();
     }
 
     @Override
     public CanvasFormat scan(PrintableTreeNode rootNode, int maxDepth) {
-        this.nodeFormatInfoCache.clear();
+        this.layoutArena.clear();
         this.levelMaxSimpleNodeWidth.clear();
         if (rootNode == null) {
-            nodeFormatInfoCache.put(NodeKey.root(), NULL_INFO);
+            layoutArena.initPseudoRoot(LayoutArena.PSEUDO_ROOT_NULL);
             updateMaxSimpleNodeWidth(0, 6);
         }
         else if (rootNode == PrintableTreeNode.MISSING_SIBLING) {
-            nodeFormatInfoCache.put(NodeKey.root(), MISSING_INFO);
+            layoutArena.initPseudoRoot(LayoutArena.PSEUDO_ROOT_MISSING);
             updateMaxSimpleNodeWidth(0, 1);
         }
         else if (maxDepth == 0) {
-            nodeFormatInfoCache.put(NodeKey.root(), MORE_INFO);
+            layoutArena.initPseudoRoot(LayoutArena.PSEUDO_ROOT_MORE);
             updateMaxSimpleNodeWidth(0, 3);
         }
         else {
-            getOrCreateNodeFormatInfo(NodeKey.root(), rootNode, DefaultParentRelation.NONE, maxDepth);
+            layoutArena.initRoot();
+            scanNode(LayoutArena.ROOT, rootNode, DefaultParentRelation.NONE, maxDepth);
         }
+        levelMaxSimpleNodeWidth.computeOffsets(treeLayoutConfig.horizontalSpacing());
         return new CanvasFormat(computeCanvasWidth(), computeCanvasHeight());
     }
 
     @Override
     public void draw(TextCanvas canvas) {
         if (!handleDefaults(canvas)) {
-            drawSubTree(canvas, NodeKey.root(), DefaultParentRelation.NONE, frameConfig.indentTop());
+            drawTree(canvas);
+            drawPendingNodes(canvas);
+            drawPendingConnectors(canvas);
         }
     }
 
@@ -19,8 +19,7 @@
 
 package de.calamanari.tcanv.tp;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 
 import de.calamanari.tcanv.BoxConnectionPoint;
 import de.calamanari.tcanv.BoxSide;
@@ -28,13 +27,10 @@ import de.calamanari.tcanv.BoxStyle;
 import de.calamanari.tcanv.CanvasFormat;
 import de.calamanari.tcanv.DefaultConnectorEndType;
 import de.calamanari.tcanv.FrameConfig;
+import de.calamanari.tcanv.LineGlyphSet;
 import de.calamanari.tcanv.TextAlignment;
 import de.calamanari.tcanv.TextCanvas;
 
-import static de.calamanari.tcanv.tp.NodeFormatInfo.MISSING_INFO;
-import static de.calamanari.tcanv.tp.NodeFormatInfo.MORE_INFO;
-import static de.calamanari.tcanv.tp.NodeFormatInfo.NULL_INFO;
-
 /**
  * The {@link IndexTreeDrawingPolicy} draws the tree in the form of an index (or directory) from left to right, top down.
  * <p>
@@ -83,7 +79,7 @@ public class IndexTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy {
      * @return width of the canvas to draw the tree
      */
     public int computeCanvasWidth() {
-        return (!nodeFormatInfoCache.containsKey(NodeKey.root()) ? 1 : nodeFormatInfoCache.get(NodeKey.root()).totalWidth()) + frameConfig.indentLeft()
+        return (layoutArena.size() == 0 ? 1 : layoutArena.totalWidth(LayoutArena.ROOT)) + frameConfig.indentLeft()
                 + frameConfig.indentRight();
     }
 
@@ -91,24 +87,25 @@ public class IndexTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy {
      * @return height of the canvas to draw the tree
      */
     public int computeCanvasHeight() {
-        return (!nodeFormatInfoCache.containsKey(NodeKey.root()) ? 1 : nodeFormatInfoCache.get(NodeKey.root()).totalHeight()) + frameConfig.indentTop()
+        return (layoutArena.size() == 0 ? 1 : layoutArena.totalHeight(LayoutArena.ROOT)) + frameConfig.indentTop()
                 + frameConfig.indentBottom();
     }
 
     @Override
     public CanvasFormat scan(PrintableTreeNode rootNode, int maxDepth) {
-        this.nodeFormatInfoCache.clear();
+        this.layoutArena.clear();
         if (rootNode == null) {
-            nodeFormatInfoCache.put(NodeKey.root(), NULL_INFO);
+            layoutArena.initPseudoRoot(LayoutArena.PSEUDO_ROOT_NULL);
         }
         else if (rootNode == PrintableTreeNode.MISSING_SIBLING) {
-            nodeFormatInfoCache.put(NodeKey.root(), MISSING_INFO);
+            layoutArena.initPseudoRoot(LayoutArena.PSEUDO_ROOT_MISSING);
         }
         else if (maxDepth == 0) {
-            nodeFormatInfoCache.put(NodeKey.root(), MORE_INFO);
+            layoutArena.initPseudoRoot(LayoutArena.PSEUDO_ROOT_MORE);
         }
         else {
-            getOrCreateNodeFormatInfo(NodeKey.root(), rootNode, DefaultParentRelation.NONE, maxDepth);
+            layoutArena.initRoot();
+            scanNode(LayoutArena.ROOT, rootNode, DefaultParentRelation.NONE, maxDepth);
         }
         return new CanvasFormat(computeCanvasWidth(), computeCanvasHeight());
     }
@@ -116,20 +113,47 @@ public class IndexTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy {
     @Override
     public void draw(TextCanvas canvas) {
         if (!handleDefaults(canvas)) {
-            drawSubTree(canvas, NodeKey.root(), DefaultParentRelation.NONE, frameConfig.indentLeft(), frameConfig.indentTop(), 0);
+            drawTree(canvas);
+            drawPendingConnectors(canvas);
         }
     }
 
+    /**
+     * Writes the tree row by row to the given target without scanning the tree in advance and without creating a canvas. The tree is walked only once, the
+     * memory consumption is proportional to the depth of the tree (not to its size).
+     * <p>
+     * The rows are the same as the rows of the canvas created by {@link TreePrinter#print(PrintableTreeNode, int)} exported with trimmed trailing whitespace,
+     * except for the following differences:
+     * <ul>
+     * <li>The frame border (see {@link FrameConfig#boxStyle()}) will be omitted because its size is unknown until the last row has been written, the
+     * indentation is preserved.</li>
+     * <li>The decorators ({@link PrintableTreeNode#decorateNode(SiblingParentRelation, TextCanvas, int, int, int, int)},
+     * {@link PrintableTreeNode#decorateParentConnector(SiblingParentRelation, TextCanvas, BoxConnectionPoint, BoxConnectionPoint)}) won't be called because
+     * there is no canvas.</li>
+     * </ul>
+     * This method does not affect the results of a previous {@link #scan(PrintableTreeNode, int)}.
+     * 
+     * @param rootNode to start at
+     * @param maxDepth maxiumum number of levels to be fully drawn
+     * @param lineGlyphSet glyphs for the connector lines or <code>null</code> for the classic mode
+     * @param out target
+     * @throws IOException if writing to the target failed
+     */
+    public void render(PrintableTreeNode rootNode, int maxDepth, LineGlyphSet lineGlyphSet, Appendable out) throws IOException {
+        new IndexTreeStreamRenderer(this, frameConfig, treeLayoutConfig, suppressConnectors, lineGlyphSet, out).render(rootNode, maxDepth);
+    }
+
     @Override
-    protected int computeSubTreeWidth(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
-        int simpleNodeWidth = node.getPrintWidth(siblingParentRelation, treeLayoutConfig.maxNodeWidth());
+    protected int computeSubTreeWidth(int nodeId, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        int simpleNodeWidth = layoutArena.printWidth(nodeId);
         int numberOfSiblings = node.getNumberOfSiblings();
         int subWidth = (siblingParentRelation.parentSiblingSelector() >= 0 ? (2 * treeLayoutConfig.horizontalSpacing()) : 0);
-        if (numberOfSiblings > 0 && key.length() < maxDepth) {
+        if (numberOfSiblings > 0 && layoutArena.depth(nodeId) < maxDepth) {
             for (int i = 0; i < numberOfSiblings; i++) {
                 PrintableTreeNode sibling = node.getSiblingNode(i);
                 if (sibling != PrintableTreeNode.MISSING_SIBLING) {
-                    subWidth = Math.max(subWidth, getSubTreeWidth(key.sibling(i), sibling, new DefaultSiblingParentRelation(numberOfSiblings, i), maxDepth));
+                    subWidth = Math.max(subWidth, getSubTreeWidth(layoutArena.siblingId(nodeId, i), sibling, new DefaultSiblingParentRelation(numberOfSiblings, i),
+                            maxDepth));
                 }
             }
         }
@@ -141,38 +165,29 @@ public class IndexTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy {
     }
 
     /**
-     * Creates a standard horizontal gap to be displayed for a missing node
-     * 
-     * @return gap
+     * @return height of the gap to be displayed for a missing node
      */
-    private List<String> createVerticalGap() {
-        int vSize = Math.min(1, treeLayoutConfig.verticalSpacing());
-        List<String> gap = new ArrayList<>(vSize);
-        for (int i = 0; i < vSize; i++) {
-            gap.add(" ");
-        }
-        return gap;
+    private int computeVerticalGapHeight() {
+        return Math.min(1, treeLayoutConfig.verticalSpacing()) + 1;
     }
 
     @Override
-    protected int computeSubTreeHeight(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
-        int simpleNodeHeight = node.getPrintHeight(siblingParentRelation, treeLayoutConfig.maxNodeHeight());
+    protected int computeSubTreeHeight(int nodeId, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        int simpleNodeHeight = layoutArena.printHeight(nodeId);
         int numberOfSiblings = node.getNumberOfSiblings();
         int subHeight = 0;
-        if (numberOfSiblings > 0 && key.length() < maxDepth) {
+        if (numberOfSiblings > 0 && layoutArena.depth(nodeId) < maxDepth) {
             for (int i = 0; i < numberOfSiblings; i++) {
                 PrintableTreeNode sibling = node.getSiblingNode(i);
-                NodeKey siblingKey = key.sibling(i);
+                int siblingId = layoutArena.siblingId(nodeId, i);
                 int relativePositionY = subHeight;
                 if (sibling != PrintableTreeNode.MISSING_SIBLING) {
-                    subHeight = subHeight + getSubTreeHeight(key.sibling(i), sibling, new DefaultSiblingParentRelation(numberOfSiblings, i), maxDepth);
-                    NodeFormatInfo info = nodeFormatInfoCache.get(siblingKey);
-                    nodeFormatInfoCache.put(siblingKey, info.withPositionY(relativePositionY));
+                    subHeight = subHeight + getSubTreeHeight(siblingId, sibling, new DefaultSiblingParentRelation(numberOfSiblings, i), maxDepth);
+                    layoutArena.setPositionY(siblingId, relativePositionY);
                 }
                 else {
-                    List<String> gap = createVerticalGap();
-                    nodeFormatInfoCache.put(key.sibling(i), NodeFormatInfo.gapInfo(gap, 0, subHeight));
-                    subHeight = subHeight + gap.size() + 1;
+                    layoutArena.markMissing(siblingId);
+                    subHeight = subHeight + computeVerticalGapHeight();
                 }
             }
         }
@@ -184,66 +199,98 @@ public class IndexTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy {
     }
 
     /**
-     * Recursively draws the sub-tree starting at the given node
+     * Draws the tree starting at the root node.
+     * <p>
+     * The tree gets walked with an explicit stack (pre-order), so the depth of the tree is not limited by the stack size of the current thread.
      * 
      * @param canvas
-     * @param key
+     */
+    private void drawTree(TextCanvas canvas) {
+        // entries: id, horizontal offset, vertical offset, vertical position of the parent
+        IntStack stack = new IntStack();
+        stack.push(LayoutArena.ROOT);
+        stack.push(frameConfig.indentLeft());
+        stack.push(frameConfig.indentTop());
+        stack.push(0);
+        while (!stack.isEmpty()) {
+            int absParentY = stack.pop();
+            int heightOffset = stack.pop();
+            int widthOffset = stack.pop();
+            int nodeId = stack.pop();
+            drawNode(canvas, stack, nodeId, createParentRelation(nodeId), widthOffset, heightOffset, absParentY);
+        }
+    }
+
+    /**
+     * Draws the given node and puts its siblings on the stack
+     * 
+     * @param canvas
+     * @param stack nodes to be drawn
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param parentRelation
      * @param widthOffset
      * @param heightOffset
      * @param absParentY vertical position of the parent (for drawing the connection between sibling and parent)
      */
-    private void drawSubTree(TextCanvas canvas, NodeKey key, ParentRelation parentRelation, int widthOffset, int heightOffset, int absParentY) {
+    private void drawNode(TextCanvas canvas, IntStack stack, int nodeId, ParentRelation parentRelation, int widthOffset, int heightOffset, int absParentY) {
 
-        NodeFormatInfo info = nodeFormatInfoCache.get(key);
-        int absX = widthOffset + info.positionX();
-        int absY = heightOffset + info.positionY();
+        int absX = widthOffset + layoutArena.positionX(nodeId);
+        int absY = heightOffset + layoutArena.positionY(nodeId);
+        int simpleWidth = layoutArena.simpleWidth(nodeId);
+        int simpleHeight = layoutArena.simpleHeight(nodeId);
 
-        drawNodeRepresentation(canvas, absX, absY, info);
+        drawNodeRepresentation(canvas, absX, absY, nodeId);
 
-        BoxStyle boxStyle = info.boxStyle();
-        if (!suppressConnectors && parentRelation.parentKey().isValid()) {
-            int absSiblingX = widthOffset + info.positionX() - 1;
-            int absSiblingY = heightOffset + info.positionY();
+        BoxStyle boxStyle = layoutArena.boxStyle(nodeId);
+        if (!suppressConnectors && nodeId != LayoutArena.ROOT) {
+            int absSiblingX = absX - 1;
+            int absSiblingY = absY;
             if (boxStyle.hasSideLine(BoxSide.TOP) && boxStyle.hasSideLine(BoxSide.BOTTOM)) {
-                absSiblingY = absSiblingY + ((info.simpleHeight() - 1) / 2);
+                absSiblingY = absSiblingY + ((simpleHeight - 1) / 2);
             }
-            drawParentConnector(canvas, key, parentRelation, absSiblingX, absSiblingY, absParentY);
+            drawParentConnector(canvas, nodeId, parentRelation, absSiblingX, absSiblingY, absParentY);
 
         }
-        info.node().decorateNode(parentRelation, canvas, absX, absY, info.simpleWidth(), info.simpleHeight());
+        PrintableTreeNode node = layoutArena.node(nodeId);
+        addDecoration(() -> node.decorateNode(parentRelation, canvas, absX, absY, simpleWidth, simpleHeight));
 
-        if (info.drawPlaceholderAppendix()) {
-            drawPlaceholderAppendix(canvas, absX, absY, info.simpleWidth(), info.simpleHeight());
+        if (layoutArena.drawPlaceholderAppendix(nodeId)) {
+            drawPlaceholderAppendix(canvas, absX, absY, simpleWidth, simpleHeight);
         }
-        else if (info.hasSiblings()) {
-            drawSiblings(canvas, key, info, absX, absY);
+        else if (layoutArena.hasSiblings(nodeId)) {
+            pushSiblings(stack, nodeId, absX, absY);
         }
     }
 
     /**
      * Draws the connecting line between a sibling and its parent
+     * <p>
+     * The siblings are drawn top-down, so the connector of each sibling only extends the trunk below the parent drawn so far by the gap to the previous sibling
+     * and adds the stub to the sibling (see {@link TextCanvas#drawLines(java.util.Collection)}). Hence, the trunk gets drawn once from the parent down to the
+     * last sibling.
      * 
      * @param canvas
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param parentRelation
      * @param absSiblingX upper left corner of the sibling to be connected
      * @param absSiblingY upper left corner of the sibling to be connected
      * @param absParentY vertical position of the parent
      */
-    private void drawParentConnector(TextCanvas canvas, NodeKey key, ParentRelation parentRelation, int absSiblingX, int absSiblingY, int absParentY) {
+    private void drawParentConnector(TextCanvas canvas, int nodeId, ParentRelation parentRelation, int absSiblingX, int absSiblingY, int absParentY) {
 
-        NodeFormatInfo info = nodeFormatInfoCache.get(key);
-        NodeFormatInfo parentInfo = nodeFormatInfoCache.get(key.parent());
+        PrintableTreeNode node = layoutArena.node(nodeId);
+        int parentId = layoutArena.parentId(nodeId);
 
         int absParentBottomX = absSiblingX - (2 * treeLayoutConfig.horizontalSpacing())
-                + Math.min((parentInfo.simpleWidth() + 1) / 2, treeLayoutConfig.horizontalSpacing());
-        int absParentBottomY = absParentY + parentInfo.simpleHeight();
+                + Math.min((layoutArena.simpleWidth(parentId) + 1) / 2, treeLayoutConfig.horizontalSpacing());
+        int absParentBottomY = absParentY + layoutArena.simpleHeight(parentId);
 
-        canvas.drawLine(absSiblingX, absSiblingY, absParentBottomX, absParentBottomY, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.BOTTOM_PLAIN,
-                DEFAULT_LINE_CROSSING_RESOLVER);
-        info.node().decorateParentConnector(parentRelation, canvas, new BoxConnectionPoint(BoxSide.LEFT, absSiblingX, absSiblingY),
-                new BoxConnectionPoint(BoxSide.BOTTOM, absParentBottomX, absParentBottomY));
+        addConnector(canvas, absSiblingX, absSiblingY, absParentBottomX, absParentBottomY, DefaultConnectorEndType.LEFT_PLAIN,
+                DefaultConnectorEndType.BOTTOM_PLAIN);
+
+        BoxConnectionPoint from = new BoxConnectionPoint(BoxSide.LEFT, absSiblingX, absSiblingY);
+        BoxConnectionPoint to = new BoxConnectionPoint(BoxSide.BOTTOM, absParentBottomX, absParentBottomY);
+        addDecoration(() -> node.decorateParentConnector(parentRelation, canvas, from, to));
     }
 
     /**
@@ -264,36 +311,34 @@ public class IndexTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy {
         int endY = startY + treeLayoutConfig.verticalSpacing();
 
         if (!suppressConnectors) {
-            canvas.drawLine(startX, startY, endX, endY, DefaultConnectorEndType.BOTTOM_PLAIN, DefaultConnectorEndType.LEFT_PLAIN,
-                    DEFAULT_LINE_CROSSING_RESOLVER);
+            addConnector(canvas, startX, startY, endX, endY, DefaultConnectorEndType.BOTTOM_PLAIN, DefaultConnectorEndType.LEFT_PLAIN);
         }
 
-        canvas.setCursor(endX + 1, endY);
-        canvas.write("...");
+        writeText(canvas, endX + 1, endY, "...");
 
     }
 
     /**
-     * Draws the siblings of the given node, recursively, left below, top-down.
+     * Puts the siblings of the given node on the stack to be drawn left below, top-down.
      * 
-     * @param canvas
-     * @param key
-     * @param info
+     * @param stack nodes to be drawn
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param absX upper left corner of the node to draw the siblings for
      * @param absY upper left corner of the node to draw the siblings for
      */
-    private void drawSiblings(TextCanvas canvas, NodeKey key, NodeFormatInfo info, int absX, int absY) {
+    private void pushSiblings(IntStack stack, int nodeId, int absX, int absY) {
 
         int widthOffset = absX + (2 * treeLayoutConfig.horizontalSpacing());
-        int heightOffset = absY + info.simpleHeight() + treeLayoutConfig.verticalSpacing();
-
-        int numberOfSiblings = info.siblingNodeKeys().length;
-        for (int i = 0; i < numberOfSiblings; i++) {
-            NodeKey siblingKey = key.sibling(i);
-            NodeFormatInfo siblingInfo = nodeFormatInfoCache.get(siblingKey);
-            PrintableTreeNode sibling = siblingInfo.node();
-            if (sibling != PrintableTreeNode.MISSING_SIBLING) {
-                drawSubTree(canvas, key.sibling(i), new DefaultParentRelation(key, numberOfSiblings, i), widthOffset, heightOffset, absY);
+        int heightOffset = absY + layoutArena.simpleHeight(nodeId) + treeLayoutConfig.verticalSpacing();
+
+        // reverse order: the last sibling pushed will be drawn first
+        for (int i = layoutArena.numberOfSiblings(nodeId) - 1; i >= 0; i--) {
+            int siblingId = layoutArena.siblingId(nodeId, i);
+            if (!layoutArena.isMissing(siblingId)) {
+                stack.push(siblingId);
+                stack.push(widthOffset);
+                stack.push(heightOffset);
+                stack.push(absY);
             }
         }
 
@@ -0,0 +1,487 @@
+//@formatter:off
+/*
+ * IndexTreeStreamRenderer
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv.tp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.calamanari.tcanv.BoxSide;
+import de.calamanari.tcanv.BoxStyle;
+import de.calamanari.tcanv.DisplayWidth;
+import de.calamanari.tcanv.FrameConfig;
+import de.calamanari.tcanv.LineGlyphSet;
+
+/**
+ * The {@link IndexTreeStreamRenderer} writes a tree in the layout of an {@link IndexTreeDrawingPolicy} row by row to an {@link Appendable} while walking the
+ * tree (single pass, no scan, no canvas).
+ * <p>
+ * In the index layout every node occupies its own rows (depth-first, top-down). The only elements spanning the rows of several nodes are the trunks below the
+ * parents down to their last sibling. The trunks of the current path are kept in a prefix stack (one entry per level), so any row can be written as soon as
+ * the node it belongs to has been reached. The memory consumption is proportional to the depth of the tree and the width of a row.
+ * <p>
+ * The connectivity of the line cells gets combined like in a batch of connectors (see {@link de.calamanari.tcanv.TextCanvas#drawLines(java.util.Collection)}),
+ * so the rows are the same as the rows of the canvas drawn by the policy with trailing whitespace removed.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class IndexTreeStreamRenderer {
+
+    /**
+     * State of a node whose siblings are currently being written (entry of the prefix stack)
+     */
+    private static final class Level {
+
+        /**
+         * node with siblings
+         */
+        final PrintableTreeNode node;
+
+        /**
+         * length of the node's key (root = 1)
+         */
+        final int depth;
+
+        /**
+         * horizontal position of the node
+         */
+        final int absX;
+
+        /**
+         * number of siblings of the node
+         */
+        final int numberOfSiblings;
+
+        /**
+         * horizontal position of the trunk below the node
+         */
+        final int trunkX;
+
+        /**
+         * first row of the trunk (below the node)
+         */
+        final int trunkTopY;
+
+        /**
+         * last row of the trunk, {@link Integer#MAX_VALUE} until the last sibling has been reached
+         */
+        int trunkBottomY = Integer.MAX_VALUE;
+
+        /**
+         * index of the next sibling to be written
+         */
+        int nextIdx = 0;
+
+        /**
+         * index of the next sibling that is not missing or {@link #numberOfSiblings} if there is none
+         */
+        int presentIdx;
+
+        /**
+         * the sibling at {@link #presentIdx} or null
+         */
+        PrintableTreeNode present;
+
+        /**
+         * @param node
+         * @param depth
+         * @param absX
+         * @param trunkX
+         * @param trunkTopY
+         */
+        Level(PrintableTreeNode node, int depth, int absX, int trunkX, int trunkTopY) {
+            this.node = node;
+            this.depth = depth;
+            this.absX = absX;
+            this.numberOfSiblings = node.getNumberOfSiblings();
+            this.trunkX = trunkX;
+            this.trunkTopY = trunkTopY;
+            findPresent(0);
+        }
+
+        /**
+         * Looks ahead for the next sibling that is not missing
+         *
+         * @param fromIdx
+         */
+        void findPresent(int fromIdx) {
+            present = null;
+            for (presentIdx = fromIdx; presentIdx < numberOfSiblings; presentIdx++) {
+                PrintableTreeNode sibling = node.getSiblingNode(presentIdx);
+                if (sibling != PrintableTreeNode.MISSING_SIBLING) {
+                    present = sibling;
+                    break;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * policy providing the layout settings and the node representations
+     */
+    private final IndexTreeDrawingPolicy policy;
+
+    /**
+     * layout settings
+     */
+    private final FrameConfig frameConfig;
+
+    /**
+     * layout settings
+     */
+    private final TreeLayoutConfig treeLayoutConfig;
+
+    /**
+     * if true, no lines will be written between parents and siblings
+     */
+    private final boolean suppressConnectors;
+
+    /**
+     * glyphs to display the combined connectivity of a cell
+     */
+    private final LineGlyphSet glyphs;
+
+    /**
+     * classic mode: corners are always '+'
+     */
+    private final boolean classic;
+
+    /**
+     * target
+     */
+    private final Appendable out;
+
+    /**
+     * prefix stack
+     */
+    private final List<Level> levels = new ArrayList<>();
+
+    /**
+     * connectivity of the cells of the current row
+     */
+    private byte[] masks = new byte[64];
+
+    /**
+     * highest position in {@link #masks} with a connectivity
+     */
+    private int maxMaskX = -1;
+
+    /**
+     * characters of the current row
+     */
+    private char[] rowBuffer = new char[64];
+
+    /**
+     * the row to be written next
+     */
+    private int currentY = 0;
+
+    /**
+     * @param policy
+     * @param frameConfig
+     * @param treeLayoutConfig
+     * @param suppressConnectors
+     * @param lineGlyphSet glyphs or null for classic mode
+     * @param out
+     */
+    IndexTreeStreamRenderer(IndexTreeDrawingPolicy policy, FrameConfig frameConfig, TreeLayoutConfig treeLayoutConfig, boolean suppressConnectors,
+            LineGlyphSet lineGlyphSet, Appendable out) {
+        this.policy = policy;
+        this.frameConfig = frameConfig;
+        this.treeLayoutConfig = treeLayoutConfig;
+        this.suppressConnectors = suppressConnectors;
+        this.glyphs = lineGlyphSet == null ? LineGlyphSet.ASCII : lineGlyphSet;
+        this.classic = lineGlyphSet == null;
+        this.out = out;
+    }
+
+    /**
+     * Walks the tree and writes the rows
+     *
+     * @param rootNode
+     * @param maxDepth maximum level of the tree to be fully drawn
+     * @throws IOException if writing to the target failed
+     */
+    void render(PrintableTreeNode rootNode, int maxDepth) throws IOException {
+        writeBlankRows(frameConfig.indentTop());
+        if (rootNode == null) {
+            writeRow("<null>", frameConfig.indentLeft());
+        }
+        else if (rootNode == PrintableTreeNode.MISSING_SIBLING) {
+            writeBlankRows(1);
+        }
+        else if (maxDepth == 0) {
+            writeRow("...", frameConfig.indentLeft());
+        }
+        else {
+            writeNode(rootNode, DefaultParentRelation.NONE, 1, frameConfig.indentLeft(), null, maxDepth);
+            while (!levels.isEmpty()) {
+                Level level = levels.get(levels.size() - 1);
+                if (level.nextIdx == level.numberOfSiblings) {
+                    levels.remove(levels.size() - 1);
+                }
+                else {
+                    writeNextSibling(level, maxDepth);
+                }
+            }
+        }
+        writeBlankRows(frameConfig.indentBottom());
+    }
+
+    /**
+     * Writes the next sibling of the given level (either a gap for a missing sibling or the node's rows)
+     *
+     * @param level
+     * @param maxDepth
+     * @throws IOException
+     */
+    private void writeNextSibling(Level level, int maxDepth) throws IOException {
+        int idx = level.nextIdx;
+        level.nextIdx++;
+        if (idx < level.presentIdx) {
+            writeBlankRows(Math.min(1, treeLayoutConfig.verticalSpacing()) + 1);
+        }
+        else {
+            PrintableTreeNode sibling = level.present;
+            level.findPresent(idx + 1);
+            writeNode(sibling, new DefaultSiblingParentRelation(level.numberOfSiblings, idx), level.depth + 1,
+                    level.absX + (2 * treeLayoutConfig.horizontalSpacing()), level, maxDepth);
+        }
+    }
+
+    /**
+     * Writes the rows of the node itself, pushes a new level if the node has siblings to be written
+     *
+     * @param node
+     * @param relation
+     * @param depth length of the node's key
+     * @param absX horizontal position
+     * @param parent level of the parent or null for the root
+     * @param maxDepth
+     * @throws IOException
+     */
+    private void writeNode(PrintableTreeNode node, SiblingParentRelation relation, int depth, int absX, Level parent, int maxDepth) throws IOException {
+        BoxStyle boxStyle = node.getBoxStyle(relation);
+        List<String> representation = policy.createNodeRepresentation(node, boxStyle, node.getPrintWidth(relation, treeLayoutConfig.maxNodeWidth()),
+                node.getPrintHeight(relation, treeLayoutConfig.maxNodeHeight()));
+        int simpleWidth = representation.isEmpty() ? 0 : DisplayWidth.of(representation.get(0));
+        int simpleHeight = representation.size();
+        int absY = currentY;
+        int siblingY = Integer.MIN_VALUE;
+        if (parent != null && !suppressConnectors) {
+            siblingY = absY;
+            if (boxStyle.hasSideLine(BoxSide.TOP) && boxStyle.hasSideLine(BoxSide.BOTTOM)) {
+                siblingY = siblingY + ((simpleHeight - 1) / 2);
+            }
+            if (parent.present == null) {
+                parent.trunkBottomY = siblingY;
+            }
+        }
+        for (int i = 0; i < simpleHeight; i++) {
+            if (currentY == siblingY) {
+                addParentConnector(parent, absX - 1, siblingY);
+            }
+            writeRow(representation.get(i), absX);
+        }
+        int numberOfSiblings = node.getNumberOfSiblings();
+        int horizontalSpacing = treeLayoutConfig.horizontalSpacing();
+        int verticalSpacing = treeLayoutConfig.verticalSpacing();
+        if (numberOfSiblings > 0 && depth == maxDepth) {
+            writePlaceholderAppendix(absX, simpleWidth);
+            writeBlankRows(verticalSpacing);
+        }
+        else if (numberOfSiblings > 0) {
+            int trunkX = absX - 1 + Math.min((simpleWidth + 1) / 2, horizontalSpacing);
+            Level level = new Level(node, depth, absX, trunkX, absY + simpleHeight);
+            if (level.present == null || suppressConnectors) {
+                level.trunkBottomY = Integer.MIN_VALUE;
+            }
+            levels.add(level);
+            writeBlankRows(verticalSpacing);
+        }
+        else {
+            writeBlankRows(verticalSpacing);
+        }
+    }
+
+    /**
+     * Adds the horizontal part of the connector between a sibling and its parent to the current row, the vertical part belongs to the trunk of the parent.
+     *
+     * @param parent
+     * @param siblingX position of the connector end left to the sibling
+     * @param siblingY
+     */
+    private void addParentConnector(Level parent, int siblingX, int siblingY) {
+        int parentX = parent.trunkX;
+        addMask(siblingX, LineGlyphSet.LEFT | LineGlyphSet.RIGHT);
+        for (int x = parentX; x <= siblingX; x++) {
+            addMask(x, segmentMask(x, parentX, siblingX, LineGlyphSet.RIGHT, LineGlyphSet.LEFT));
+        }
+        addCorner(parentX, (siblingX > parentX ? LineGlyphSet.RIGHT : 0) | (siblingY > parent.trunkTopY ? LineGlyphSet.UP : 0));
+    }
+
+    /**
+     * Writes the rows visualizing the existence of further siblings below the maximum depth
+     *
+     * @param absParentX horizontal position of the node
+     * @param parentWidth width of the node
+     * @throws IOException
+     */
+    private void writePlaceholderAppendix(int absParentX, int parentWidth) throws IOException {
+        int horizontalSpacing = treeLayoutConfig.horizontalSpacing();
+        int startX = absParentX + Math.min((parentWidth + 1) / 2, horizontalSpacing);
+        int startY = currentY;
+        int endX = absParentX + Math.max(0, (2 * horizontalSpacing) - 1);
+        int endY = startY + treeLayoutConfig.verticalSpacing();
+        for (int y = startY; y <= endY; y++) {
+            if (!suppressConnectors) {
+                addMask(startX, segmentMask(y, startY, endY, LineGlyphSet.DOWN, LineGlyphSet.UP) | (y == startY ? LineGlyphSet.UP | LineGlyphSet.DOWN : 0));
+            }
+            if (y < endY) {
+                writeRow(null, 0);
+            }
+        }
+        if (!suppressConnectors) {
+            for (int x = startX; x <= endX; x++) {
+                addMask(x, segmentMask(x, startX, endX, LineGlyphSet.RIGHT, LineGlyphSet.LEFT));
+            }
+            addMask(endX, LineGlyphSet.LEFT | LineGlyphSet.RIGHT);
+            addCorner(startX, (endY > startY ? LineGlyphSet.UP : 0) | (endX > startX ? LineGlyphSet.RIGHT : 0));
+        }
+        writeRow("...", endX + 1);
+    }
+
+    /**
+     * @param pos position of the cell
+     * @param start first cell of the line segment
+     * @param end last cell of the line segment
+     * @param forward
+     * @param backward
+     * @return connectivity of the cell
+     */
+    private static int segmentMask(int pos, int start, int end, int forward, int backward) {
+        if (start == end) {
+            return forward | backward;
+        }
+        else if (pos == start) {
+            return forward;
+        }
+        else if (pos == end) {
+            return backward;
+        }
+        return forward | backward;
+    }
+
+    /**
+     * Adds a corner to the current row, in classic mode corners are always '+'
+     *
+     * @param x
+     * @param mask connectivity of the corner
+     */
+    private void addCorner(int x, int mask) {
+        if (classic) {
+            addMask(x, LineGlyphSet.ALL);
+        }
+        else if (mask != 0) {
+            addMask(x, mask);
+        }
+    }
+
+    /**
+     * Adds connectivity to a cell of the current row
+     *
+     * @param x
+     * @param mask
+     */
+    private void addMask(int x, int mask) {
+        if (x < 0) {
+            return;
+        }
+        if (x >= masks.length) {
+            masks = Arrays.copyOf(masks, Math.max(x + 1, masks.length * 2));
+        }
+        masks[x] |= (byte) mask;
+        maxMaskX = Math.max(maxMaskX, x);
+    }
+
+    /**
+     * Adds the trunks of the prefix stack covering the current row
+     */
+    private void addTrunks() {
+        for (int i = 0; i < levels.size(); i++) {
+            Level level = levels.get(i);
+            if (currentY >= level.trunkTopY && currentY <= level.trunkBottomY) {
+                addMask(level.trunkX, (currentY == level.trunkBottomY && currentY > level.trunkTopY) ? LineGlyphSet.UP : LineGlyphSet.UP | LineGlyphSet.DOWN);
+            }
+        }
+    }
+
+    /**
+     * @param count number of rows without any content (except for trunks)
+     * @throws IOException
+     */
+    private void writeBlankRows(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            writeRow(null, 0);
+        }
+    }
+
+    /**
+     * Writes the current row with the given content, the trunks and the connectivity collected for this row, trailing whitespace will be omitted.
+     *
+     * @param content text or null
+     * @param contentX position of the text
+     * @throws IOException
+     */
+    private void writeRow(String content, int contentX) throws IOException {
+        addTrunks();
+        int contentLength = content == null ? 0 : DisplayWidth.of(content);
+        int length = Math.max(maxMaskX + 1, contentX + contentLength);
+        if (rowBuffer.length < length) {
+            rowBuffer = new char[Math.max(length, rowBuffer.length * 2)];
+        }
+        Arrays.fill(rowBuffer, 0, length, ' ');
+        if (contentLength > 0) {
+            DisplayWidth.toCells(content, 0, content.length(), rowBuffer, contentX);
+        }
+        for (int x = 0; x <= maxMaskX; x++) {
+            if (masks[x] != 0) {
+                rowBuffer[x] = glyphs.glyph(glyphs.mask(rowBuffer[x]) | masks[x]);
+                masks[x] = 0;
+            }
+        }
+        maxMaskX = -1;
+        while (length > 0 && Character.isWhitespace(rowBuffer[length - 1])) {
+            length--;
+        }
+        if (currentY > 0) {
+            out.append('\n');
+        }
+        for (int x = 0; x < length; x++) {
+            if (rowBuffer[x] != DisplayWidth.WIDE_CHAR_CONTINUATION) {
+                out.append(rowBuffer[x]);
+            }
+        }
+        currentY++;
+    }
+
+}
@@ -0,0 +1,82 @@
+//@formatter:off
+/*
+ * IntStack
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv.tp;
+
+import java.util.Arrays;
+
+/**
+ * Simple growing stack of primitive integers to walk a tree without recursion. Entries consisting of multiple values must be popped in reverse order.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class IntStack {
+
+    /**
+     * stack elements, the top is at <code>size - 1</code>
+     */
+    private int[] elements = new int[64];
+
+    /**
+     * number of elements on the stack
+     */
+    private int size = 0;
+
+    /**
+     * @param value to be put on top of the stack
+     */
+    void push(int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        elements[size] = value;
+        size++;
+    }
+
+    /**
+     * @return the top element (removed from the stack)
+     * @throws IllegalStateException if the stack is empty
+     */
+    int pop() {
+        if (size == 0) {
+            throw new IllegalStateException("Stack is empty.");
+        }
+        size--;
+        return elements[size];
+    }
+
+    /**
+     * @return the top element (stays on the stack)
+     * @throws IllegalStateException if the stack is empty
+     */
+    int peek() {
+        if (size == 0) {
+            throw new IllegalStateException("Stack is empty.");
+        }
+        return elements[size - 1];
+    }
+
+    /**
+     * @return true if there are no elements on the stack
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+}
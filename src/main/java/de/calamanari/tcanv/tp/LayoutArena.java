@@ -0,0 +1,654 @@
+//@formatter:off
+/*
+ * LayoutArena
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv.tp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.calamanari.tcanv.BoxStyle;
+import de.calamanari.tcanv.DefaultBoxStyle;
+import de.calamanari.tcanv.DisplayWidth;
+
+/**
+ * The {@link LayoutArena} stores the information collected about the nodes of a tree during the scan (see {@link TreeDrawingPolicy#scan(PrintableTreeNode, int)})
+ * for the drawing phase.
+ * <p>
+ * Every node gets a dense int id, the root is {@link #ROOT}. The siblings of a node get consecutive ids (allocated when the node gets scanned), so the id of
+ * the sibling <code>i</code> of a node is <code>firstSiblingId + i</code>. All properties are kept in parallel arrays (one entry per id), so the scan neither
+ * hashes any keys nor allocates any objects per node except for the node representation.
+ * <p>
+ * Missing siblings ({@link PrintableTreeNode#MISSING_SIBLING}) get an id as well, they are marked with {@link #isMissing(int)}.
+ * <p>
+ * <b>Important:</b> Instances are <b>not</b> thread-safe.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class LayoutArena {
+
+    /**
+     * Id of the root node
+     */
+    static final int ROOT = 0;
+
+    /**
+     * Regular root node
+     */
+    static final int PSEUDO_ROOT_NONE = 0;
+
+    /**
+     * The root node was <code>null</code>, displayed as <code>&lt;null&gt;</code>
+     */
+    static final int PSEUDO_ROOT_NULL = 1;
+
+    /**
+     * The root node was {@link PrintableTreeNode#MISSING_SIBLING}, displayed as a gap
+     */
+    static final int PSEUDO_ROOT_MISSING = 2;
+
+    /**
+     * The maximum depth was 0, displayed as <code>...</code>
+     */
+    static final int PSEUDO_ROOT_MORE = 3;
+
+    /**
+     * node has been scanned completely
+     */
+    private static final byte FLAG_SCANNED = 1;
+
+    /**
+     * node is a missing sibling
+     */
+    private static final byte FLAG_MISSING = 2;
+
+    /**
+     * node is at the maximum depth but has siblings
+     */
+    private static final byte FLAG_PLACEHOLDER_APPENDIX = 4;
+
+    /**
+     * all sibling selectors on the path from the root to the node are 0 (outer left)
+     */
+    private static final byte FLAG_PATH_OF_ZEROS = 8;
+
+    /**
+     * marks a node without any parent
+     */
+    private static final int NO_PARENT = -1;
+
+    /**
+     * marks a node without any sibling ids
+     */
+    private static final int NO_SIBLINGS = -1;
+
+    /**
+     * number of ids in use
+     */
+    private int size = 0;
+
+    /**
+     * kind of root, see {@link #PSEUDO_ROOT_NONE}
+     */
+    private int pseudoRoot = PSEUDO_ROOT_NONE;
+
+    /**
+     * original nodes by id
+     */
+    private PrintableTreeNode[] nodes = new PrintableTreeNode[0];
+
+    /**
+     * box styles by id
+     */
+    private BoxStyle[] boxStyles = new BoxStyle[0];
+
+    /**
+     * node representations by id
+     */
+    private List<?>[] representations = new List<?>[0];
+
+    /**
+     * keys by id, created on demand, see {@link #nodeKey(int)}
+     */
+    private NodeKey[] nodeKeys = new NodeKey[0];
+
+    /**
+     * parent ids by id
+     */
+    private int[] parentIds = new int[0];
+
+    /**
+     * position of the node in its parent's list of siblings by id
+     */
+    private int[] siblingSelectors = new int[0];
+
+    /**
+     * number of nodes on the path from the root to the node (incl.) by id
+     */
+    private int[] depths = new int[0];
+
+    /**
+     * id of the first sibling by id
+     */
+    private int[] firstSiblingIds = new int[0];
+
+    /**
+     * number of siblings by id
+     */
+    private int[] numberOfSiblings = new int[0];
+
+    /**
+     * horizontal size of the node including its sub-tree by id
+     */
+    private int[] totalWidths = new int[0];
+
+    /**
+     * vertical size of the node including its sub-tree by id
+     */
+    private int[] totalHeights = new int[0];
+
+    /**
+     * relative horizontal position of the node by id
+     */
+    private int[] positionsX = new int[0];
+
+    /**
+     * relative vertical position of the node by id
+     */
+    private int[] positionsY = new int[0];
+
+    /**
+     * width of the node representation by id
+     */
+    private int[] simpleWidths = new int[0];
+
+    /**
+     * height of the node representation by id
+     */
+    private int[] simpleHeights = new int[0];
+
+    /**
+     * width of the node as reported by {@link PrintableTreeNode#getPrintWidth(SiblingParentRelation, int)} by id
+     */
+    private int[] printWidths = new int[0];
+
+    /**
+     * height of the node as reported by {@link PrintableTreeNode#getPrintHeight(SiblingParentRelation, int)} by id
+     */
+    private int[] printHeights = new int[0];
+
+    /**
+     * flags by id
+     */
+    private byte[] flags = new byte[0];
+
+    /**
+     * Resets the arena (keeps the capacity)
+     */
+    void clear() {
+        Arrays.fill(nodes, 0, size, null);
+        Arrays.fill(boxStyles, 0, size, null);
+        Arrays.fill(representations, 0, size, null);
+        Arrays.fill(nodeKeys, 0, size, null);
+        size = 0;
+        pseudoRoot = PSEUDO_ROOT_NONE;
+    }
+
+    /**
+     * @return number of ids in use, 0 if no tree has been scanned
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Clears the arena and allocates the id of the root node ({@link #ROOT})
+     */
+    void initRoot() {
+        clear();
+        allocate(1);
+        parentIds[ROOT] = NO_PARENT;
+        siblingSelectors[ROOT] = 0;
+        depths[ROOT] = 1;
+        flags[ROOT] = FLAG_PATH_OF_ZEROS;
+        nodeKeys[ROOT] = NodeKey.root();
+    }
+
+    /**
+     * Clears the arena and initializes a root that replaces the tree (special case)
+     *
+     * @param kind {@link #PSEUDO_ROOT_NULL}, {@link #PSEUDO_ROOT_MISSING} or {@link #PSEUDO_ROOT_MORE}
+     */
+    void initPseudoRoot(int kind) {
+        initRoot();
+        String placeholder = null;
+        switch (kind) {
+        case PSEUDO_ROOT_NULL:
+            placeholder = "      ";
+            break;
+        case PSEUDO_ROOT_MISSING:
+            placeholder = " ";
+            break;
+        case PSEUDO_ROOT_MORE:
+            placeholder = "   ";
+            break;
+        default:
+            throw new IllegalArgumentException(String.format("expected: PSEUDO_ROOT_NULL, PSEUDO_ROOT_MISSING or PSEUDO_ROOT_MORE, given: kind=%d", kind));
+        }
+        this.pseudoRoot = kind;
+        markMissing(ROOT);
+        measureNode(ROOT, DefaultBoxStyle.NONE, placeholder.length(), 1, Collections.singletonList(placeholder));
+        completeNode(ROOT, placeholder.length(), 1, false);
+    }
+
+    /**
+     * @return kind of the root, {@link #PSEUDO_ROOT_NONE} for a regular tree
+     */
+    int pseudoRoot() {
+        return pseudoRoot;
+    }
+
+    /**
+     * Assigns the node to the given id and allocates the ids of its siblings
+     *
+     * @param nodeId
+     * @param node
+     * @param allocateSiblings if false, no ids will be assigned to the siblings (e.g., maximum depth reached)
+     */
+    void initNode(int nodeId, PrintableTreeNode node, boolean allocateSiblings) {
+        nodes[nodeId] = node;
+        int count = node.getNumberOfSiblings();
+        numberOfSiblings[nodeId] = count;
+        firstSiblingIds[nodeId] = NO_SIBLINGS;
+        if (count > 0 && allocateSiblings) {
+            int firstSiblingId = size;
+            allocate(count);
+            firstSiblingIds[nodeId] = firstSiblingId;
+            boolean pathOfZeros = isPathOfZeros(nodeId);
+            for (int i = 0; i < count; i++) {
+                int siblingId = firstSiblingId + i;
+                parentIds[siblingId] = nodeId;
+                siblingSelectors[siblingId] = i;
+                depths[siblingId] = depths[nodeId] + 1;
+                flags[siblingId] = (pathOfZeros && i == 0) ? FLAG_PATH_OF_ZEROS : 0;
+            }
+        }
+    }
+
+    /**
+     * Stores the measurements of the node, see {@link #completeNode(int, int, int, boolean)}.
+     * <p>
+     * Different ids can be measured concurrently as long as no ids are being allocated at the same time.
+     *
+     * @param nodeId
+     * @param boxStyle layout for this node's box
+     * @param printWidth width reported by the node
+     * @param printHeight height reported by the node
+     * @param representation the exact textual representation of this node (a rectangle, all lines of the same length, optional surrounding box included)
+     */
+    void measureNode(int nodeId, BoxStyle boxStyle, int printWidth, int printHeight, List<String> representation) {
+        boxStyles[nodeId] = boxStyle;
+        printWidths[nodeId] = printWidth;
+        printHeights[nodeId] = printHeight;
+        representations[nodeId] = representation;
+        simpleWidths[nodeId] = representation.isEmpty() ? 0 : DisplayWidth.of(representation.get(0));
+        simpleHeights[nodeId] = representation.size();
+    }
+
+    /**
+     * Stores the scan results of the measured node and marks it as scanned
+     *
+     * @param nodeId
+     * @param totalWidth the horizontal size of the node including the size of its sub-tree
+     * @param totalHeight the vertical size of the node including the size of its sub-tree
+     * @param drawPlaceholderAppendix if true this tree could not be drawn completely (max depth reached) and the node has further siblings that should be
+     *            depicted as '...'
+     */
+    void completeNode(int nodeId, int totalWidth, int totalHeight, boolean drawPlaceholderAppendix) {
+        totalWidths[nodeId] = totalWidth;
+        totalHeights[nodeId] = totalHeight;
+        flags[nodeId] |= FLAG_SCANNED;
+        if (drawPlaceholderAppendix) {
+            flags[nodeId] |= FLAG_PLACEHOLDER_APPENDIX;
+        }
+    }
+
+    /**
+     * Marks the given id as a missing sibling (gap)
+     *
+     * @param nodeId
+     */
+    void markMissing(int nodeId) {
+        nodes[nodeId] = PrintableTreeNode.MISSING_SIBLING;
+        flags[nodeId] |= FLAG_MISSING;
+    }
+
+    /**
+     * @param nodeId
+     * @return true if the node has been scanned completely
+     */
+    boolean isScanned(int nodeId) {
+        return (flags[nodeId] & FLAG_SCANNED) != 0;
+    }
+
+    /**
+     * @param nodeId
+     * @return true if this is a missing sibling that should be drawn as a gap
+     */
+    boolean isMissing(int nodeId) {
+        return (flags[nodeId] & FLAG_MISSING) != 0;
+    }
+
+    /**
+     * @param nodeId
+     * @return true if this tree could not be drawn completely (max depth reached) and the node has further siblings that should be depicted as '...'
+     */
+    boolean drawPlaceholderAppendix(int nodeId) {
+        return (flags[nodeId] & FLAG_PLACEHOLDER_APPENDIX) != 0;
+    }
+
+    /**
+     * Tells whether the path only contains '0's, means this is the current outer left sibling
+     *
+     * @param nodeId
+     * @return true if all sibling selectors on the path from the root to this node are 0
+     */
+    boolean isPathOfZeros(int nodeId) {
+        return (flags[nodeId] & FLAG_PATH_OF_ZEROS) != 0;
+    }
+
+    /**
+     * @param nodeId
+     * @return reference to the original node (for accessing the decoration callbacks)
+     */
+    PrintableTreeNode node(int nodeId) {
+        return nodes[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return layout for this node's box
+     */
+    BoxStyle boxStyle(int nodeId) {
+        return boxStyles[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return the exact textual representation of this node (a rectangle, all lines of the same length, optional surrounding box included)
+     */
+    @SuppressWarnings("unchecked")
+    List<String> representation(int nodeId) {
+        return (List<String>) representations[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return id of the parent node, -1 for the root
+     */
+    int parentId(int nodeId) {
+        return parentIds[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return the position of the node in its parent's list of siblings
+     */
+    int siblingSelector(int nodeId) {
+        return siblingSelectors[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return number of nodes on the path from the root to this node (incl.), 1 for the root
+     */
+    int depth(int nodeId) {
+        return depths[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return total number of siblings of the node (including missing siblings)
+     */
+    int numberOfSiblings(int nodeId) {
+        return numberOfSiblings[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return true if this node has sibling nodes
+     */
+    boolean hasSiblings(int nodeId) {
+        return numberOfSiblings[nodeId] > 0;
+    }
+
+    /**
+     * @param nodeId
+     * @return true if ids have been allocated for the siblings of this node (see {@link #initNode(int, PrintableTreeNode, boolean)})
+     */
+    boolean hasSiblingIds(int nodeId) {
+        return firstSiblingIds[nodeId] != NO_SIBLINGS;
+    }
+
+    /**
+     * @param nodeId
+     * @param siblingSelector position of the sibling
+     * @return id of the sibling
+     * @throws IllegalStateException if no ids have been allocated for the siblings of the node
+     */
+    int siblingId(int nodeId, int siblingSelector) {
+        int firstSiblingId = firstSiblingIds[nodeId];
+        if (firstSiblingId == NO_SIBLINGS) {
+            throw new IllegalStateException(String.format("expected: node with allocated siblings, given: nodeId=%d", nodeId));
+        }
+        return firstSiblingId + siblingSelector;
+    }
+
+    /**
+     * @param nodeId
+     * @return the horizontal size of the node including the size of its sub-tree
+     */
+    int totalWidth(int nodeId) {
+        return totalWidths[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return the vertical size of the node including the size of its sub-tree
+     */
+    int totalHeight(int nodeId) {
+        return totalHeights[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return relative horizontal position of the node considering its neighbors (earlier printed siblings, related to the same parent node)
+     */
+    int positionX(int nodeId) {
+        return positionsX[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @param positionX relative horizontal position of the node considering its neighbors (earlier printed siblings, related to the same parent node)
+     */
+    void setPositionX(int nodeId, int positionX) {
+        positionsX[nodeId] = positionX;
+    }
+
+    /**
+     * @param nodeId
+     * @return relative vertical position of the node considering its neighbors (earlier printed siblings, related to the same parent node)
+     */
+    int positionY(int nodeId) {
+        return positionsY[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @param positionY relative vertical position of the node considering its neighbors (earlier printed siblings, related to the same parent node)
+     */
+    void setPositionY(int nodeId, int positionY) {
+        positionsY[nodeId] = positionY;
+    }
+
+    /**
+     * @param nodeId
+     * @return width of the textual representation of the node, optional surrounding box included
+     */
+    int simpleWidth(int nodeId) {
+        return simpleWidths[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return height of the textual representation of the node, optional surrounding box included
+     */
+    int simpleHeight(int nodeId) {
+        return simpleHeights[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return width reported by the node, see {@link PrintableTreeNode#getPrintWidth(SiblingParentRelation, int)}
+     */
+    int printWidth(int nodeId) {
+        return printWidths[nodeId];
+    }
+
+    /**
+     * @param nodeId
+     * @return height reported by the node, see {@link PrintableTreeNode#getPrintHeight(SiblingParentRelation, int)}
+     */
+    int printHeight(int nodeId) {
+        return printHeights[nodeId];
+    }
+
+    /**
+     * Returns the key of the given node, keys are created on demand and linked to the key of the parent.
+     * <p>
+     * When the tree gets drawn top-down, the parent's key is always known, so this method takes constant time.
+     * 
+     * @param nodeId
+     * @return key (path of sibling selectors) of the node
+     */
+    NodeKey nodeKey(int nodeId) {
+        NodeKey key = nodeKeys[nodeId];
+        if (key == null) {
+            int steps = 0;
+            int ancestorId = nodeId;
+            while (nodeKeys[ancestorId] == null) {
+                ancestorId = parentIds[ancestorId];
+                steps++;
+            }
+            int[] pathIds = new int[steps];
+            for (int id = nodeId, i = steps - 1; i >= 0; id = parentIds[id], i--) {
+                pathIds[i] = id;
+            }
+            key = nodeKeys[ancestorId];
+            for (int i = 0; i < steps; i++) {
+                key = key.sibling(siblingSelectors[pathIds[i]]);
+                nodeKeys[pathIds[i]] = key;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Returns the id of the node with the given key, the ids of all nodes on the path must have been allocated.
+     * 
+     * @param key key (path of sibling selectors) of a node, starting with the root
+     * @return id of the node
+     * @throws IllegalStateException if the ids on the path have not been allocated (yet)
+     */
+    int nodeId(NodeKey key) {
+        int[] path = key.path();
+        if (path.length == 0 || size == 0) {
+            throw new IllegalStateException(String.format("expected: valid key of a scanned tree, given: key=%s, size=%d", key, size));
+        }
+        int nodeId = ROOT;
+        for (int i = 1; i < path.length; i++) {
+            nodeId = siblingId(nodeId, path[i]);
+        }
+        return nodeId;
+    }
+
+    /**
+     * Creates a snapshot of the information about the given node, e.g., for debugging
+     *
+     * @param nodeId
+     * @return node info
+     */
+    NodeFormatInfo toNodeFormatInfo(int nodeId) {
+        NodeKey[] siblingNodeKeys = new NodeKey[numberOfSiblings[nodeId]];
+        if (siblingNodeKeys.length > 0) {
+            NodeKey key = nodeKey(nodeId);
+            for (int i = 0; i < siblingNodeKeys.length; i++) {
+                siblingNodeKeys[i] = key.sibling(i);
+            }
+        }
+        return new NodeFormatInfo(nodes[nodeId], boxStyles[nodeId], representation(nodeId), siblingNodeKeys, totalWidths[nodeId], totalHeights[nodeId],
+                positionsX[nodeId], positionsY[nodeId], isMissing(nodeId), drawPlaceholderAppendix(nodeId));
+    }
+
+    /**
+     * Allocates the given number of consecutive ids (properties initialized with 0)
+     *
+     * @param count
+     */
+    private void allocate(int count) {
+        int required = size + count;
+        if (required > nodes.length) {
+            int capacity = Math.max(required, Math.max(16, nodes.length + (nodes.length >> 1)));
+            nodes = Arrays.copyOf(nodes, capacity);
+            boxStyles = Arrays.copyOf(boxStyles, capacity);
+            representations = Arrays.copyOf(representations, capacity);
+            nodeKeys = Arrays.copyOf(nodeKeys, capacity);
+            parentIds = Arrays.copyOf(parentIds, capacity);
+            siblingSelectors = Arrays.copyOf(siblingSelectors, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            firstSiblingIds = Arrays.copyOf(firstSiblingIds, capacity);
+            numberOfSiblings = Arrays.copyOf(numberOfSiblings, capacity);
+            totalWidths = Arrays.copyOf(totalWidths, capacity);
+            totalHeights = Arrays.copyOf(totalHeights, capacity);
+            positionsX = Arrays.copyOf(positionsX, capacity);
+            positionsY = Arrays.copyOf(positionsY, capacity);
+            simpleWidths = Arrays.copyOf(simpleWidths, capacity);
+            simpleHeights = Arrays.copyOf(simpleHeights, capacity);
+            printWidths = Arrays.copyOf(printWidths, capacity);
+            printHeights = Arrays.copyOf(printHeights, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        for (int id = size; id < required; id++) {
+            firstSiblingIds[id] = NO_SIBLINGS;
+            numberOfSiblings[id] = 0;
+            totalWidths[id] = 0;
+            totalHeights[id] = 0;
+            positionsX[id] = 0;
+            positionsY[id] = 0;
+            simpleWidths[id] = 0;
+            simpleHeights[id] = 0;
+            printWidths[id] = 0;
+            printHeights[id] = 0;
+            flags[id] = 0;
+        }
+        size = required;
+    }
+
+}
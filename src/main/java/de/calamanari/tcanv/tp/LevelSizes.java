@@ -0,0 +1,112 @@
+//@formatter:off
+/*
+ * LevelSizes
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv.tp;
+
+import java.util.Arrays;
+
+/**
+ * {@link LevelSizes} collects the maximum node size (width or height, depending on the layout) per level of the tree during the scan. Afterwards, the start
+ * offsets of all levels get computed once (prefix sums), so the position of a level can be obtained in constant time independent of the depth of the tree.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class LevelSizes {
+
+    /**
+     * maximum node size per level
+     */
+    private int[] maxSizes = new int[16];
+
+    /**
+     * start offset per level plus the end offset of the last level (plus spacing)
+     */
+    private int[] offsets = new int[0];
+
+    /**
+     * number of levels
+     */
+    private int numberOfLevels = 0;
+
+    /**
+     * spacing between two levels
+     */
+    private int spacing = 0;
+
+    /**
+     * Removes all levels
+     */
+    void clear() {
+        numberOfLevels = 0;
+        offsets = new int[0];
+    }
+
+    /**
+     * Determines the maximum node size of the given level
+     * 
+     * @param level tree level (0 for the root level)
+     * @param size current node's size
+     */
+    void update(int level, int size) {
+        if (level >= maxSizes.length) {
+            maxSizes = Arrays.copyOf(maxSizes, Math.max(level + 1, maxSizes.length * 2));
+        }
+        if (level >= numberOfLevels) {
+            Arrays.fill(maxSizes, numberOfLevels, level + 1, 0);
+            numberOfLevels = level + 1;
+        }
+        maxSizes[level] = Math.max(maxSizes[level], size);
+    }
+
+    /**
+     * Computes the start offsets of the levels, to be called after the last {@link #update(int, int)}
+     * 
+     * @param spacing distance between two levels
+     */
+    void computeOffsets(int spacing) {
+        this.spacing = spacing;
+        this.offsets = new int[numberOfLevels + 1];
+        for (int i = 0; i < numberOfLevels; i++) {
+            offsets[i + 1] = offsets[i] + maxSizes[i] + spacing;
+        }
+    }
+
+    /**
+     * @return true if no level was recorded
+     */
+    boolean isEmpty() {
+        return numberOfLevels == 0;
+    }
+
+    /**
+     * @param level tree level (0 for the root level)
+     * @return offset of the level relative to the root level
+     */
+    int offset(int level) {
+        return offsets[level];
+    }
+
+    /**
+     * @return size of all levels including the spacing between them
+     */
+    int totalSize() {
+        return numberOfLevels == 0 ? 0 : offsets[numberOfLevels] - spacing;
+    }
+
+}
@@ -26,6 +26,7 @@ import java.util.Objects;
 
 import de.calamanari.tcanv.BoxStyle;
 import de.calamanari.tcanv.DefaultBoxStyle;
+import de.calamanari.tcanv.DisplayWidth;
 
 /**
  * A {@link NodeFormatInfo} contains initially collected information about a node to be drawn.
@@ -115,7 +116,7 @@ public record NodeFormatInfo(PrintableTreeNode node, BoxStyle boxStyle, List<Str
      * @return width of the textual representation of the node, optional surrounding box included
      */
     public int simpleWidth() {
-        return representation.isEmpty() ? 0 : representation.get(0).length();
+        return representation.isEmpty() ? 0 : DisplayWidth.of(representation.get(0));
     }
 
     /**
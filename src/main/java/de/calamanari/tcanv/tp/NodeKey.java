@@ -19,44 +19,129 @@
 
 package de.calamanari.tcanv.tp;
 
-import java.util.Arrays;
-import java.util.stream.Collectors;
-
 /**
  * A {@link NodeKey} is a wrapper around the current sibling path (starting with the {@link #root()}). In other words, the key of a node is the sequence of
  * selectors starting with the root node. Hence, the root's key is an empty path. This creates unique keys for all nodes independent of the source nodes'
  * identities for caching temporary information to layout the tree graph.
  * <p>
  * Equality is defined on the members of the path and their order.
+ * <p>
+ * Keys are linked to their parent keys, so {@link #sibling(int)}, {@link #parent()}, {@link #length()}, {@link #isPathOfZeros()} and {@link #hashCode()}
+ * take constant time independent of the depth of the node. The hash code is the same as {@link java.util.Arrays#hashCode(int[])} of the {@link #path()}.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
-public record NodeKey(int[] path) {
+public final class NodeKey {
+
+    /**
+     * key of length 0
+     */
+    private static final NodeKey NONE = new NodeKey(null, 0);
+
+    /**
+     * key with the single path element 0
+     */
+    private static final NodeKey ROOT = NONE.sibling(0);
+
+    /**
+     * key without the last path element, null for {@link #NONE}
+     */
+    private final NodeKey parentKey;
+
+    /**
+     * last path element
+     */
+    private final int siblingSelector;
+
+    /**
+     * number of path elements
+     */
+    private final int length;
+
+    /**
+     * cached hash code
+     */
+    private final int hash;
+
+    /**
+     * true if the path is valid and only contains zero
+     */
+    private final boolean pathOfZeros;
 
     /**
      * @return key with the single path element 0
      */
     public static NodeKey root() {
-        return new NodeKey(new int[] { 0 });
+        return ROOT;
     }
 
     /**
      * @return key of length 0 (invalid key)
      */
     public static NodeKey none() {
-        return new NodeKey(new int[0]);
+        return NONE;
+    }
+
+    /**
+     * @param parentKey key without the last path element, null to create the key of length 0
+     * @param siblingSelector last path element
+     */
+    private NodeKey(NodeKey parentKey, int siblingSelector) {
+        this.parentKey = parentKey;
+        if (parentKey == null) {
+            this.siblingSelector = 0;
+            this.length = 0;
+            this.hash = 1;
+            this.pathOfZeros = false;
+        }
+        else {
+            this.siblingSelector = siblingSelector;
+            this.length = parentKey.length + 1;
+            this.hash = 31 * parentKey.hash + siblingSelector;
+            this.pathOfZeros = siblingSelector == 0 && (parentKey.length == 0 || parentKey.pathOfZeros);
+        }
     }
 
     /**
-     * @param path to be wrapped (by reference!)
+     * @param path to be converted into a key, null means empty path
      */
     public NodeKey(int[] path) {
-        this.path = (path != null ? path : new int[0]);
+        this(createParentKey(path), (path == null || path.length == 0) ? 0 : path[path.length - 1]);
+    }
+
+    /**
+     * @param path
+     * @return key of the given path without its last element or null if the path is empty
+     */
+    private static NodeKey createParentKey(int[] path) {
+        if (path == null || path.length == 0) {
+            return null;
+        }
+        NodeKey key = NONE;
+        for (int i = 0; i < path.length - 1; i++) {
+            key = key.sibling(path[i]);
+        }
+        return key;
+    }
+
+    /**
+     * Creates the path, this operation takes linear time with the length of the key.
+     * 
+     * @return new array with the selectors starting with the root node
+     */
+    public int[] path() {
+        int[] path = new int[length];
+        NodeKey key = this;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = key.siblingSelector;
+            key = key.parentKey;
+        }
+        return path;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(path);
+        return hash;
     }
 
     @Override
@@ -70,46 +155,52 @@ public record NodeKey(int[] path) {
         if (getClass() != obj.getClass()) {
             return false;
         }
+        NodeKey key = this;
         NodeKey other = (NodeKey) obj;
-        return Arrays.equals(path, other.path);
+        while (key != other) {
+            if (key.length != other.length || key.hash != other.hash || key.siblingSelector != other.siblingSelector) {
+                return false;
+            }
+            key = key.parentKey;
+            other = other.parentKey;
+        }
+        return true;
     }
 
     /**
      * Creates a new extended key with the given sibling selector appended to the path
      * 
      * @param siblingSelector
-     * @return new instance with copy of the path plus the given sibling
+     * @return new instance linked to this key
      */
     public NodeKey sibling(int siblingSelector) {
-        int[] siblingPath = Arrays.copyOf(path, path.length + 1);
-        siblingPath[path.length] = siblingSelector;
-        return new NodeKey(siblingPath);
+        return new NodeKey(this, siblingSelector);
     }
 
     /**
      * Returns the direct parent key (subtracts the last path element)
      * 
-     * @return new instance with parent path
+     * @return parent key
      */
     public NodeKey parent() {
-        if (path.length < 2) {
+        if (length < 2) {
             throw new IllegalStateException("Node does not have a parent: " + this);
         }
-        return new NodeKey(Arrays.copyOf(path, path.length - 1));
+        return parentKey;
     }
 
     /**
      * @return number of path elements including root
      */
     public int length() {
-        return path.length;
+        return length;
     }
 
     /**
      * @return true if this key identifies a node, otherwise it is a dummy
      */
     public boolean isValid() {
-        return length() > 0;
+        return length > 0;
     }
 
     /**
@@ -118,20 +209,20 @@ public record NodeKey(int[] path) {
      * @return true if the path is valid and only contains zero
      */
     public boolean isPathOfZeros() {
-        if (isValid()) {
-            for (int i = 0; i < path.length; i++) {
-                if (path[i] != 0) {
-                    return false;
-                }
-            }
-            return true;
-        }
-        return false;
+        return pathOfZeros;
     }
 
     @Override
     public String toString() {
-        return this.getClass().getSimpleName() + "(" + Arrays.stream(path).mapToObj(Integer::toString).collect(Collectors.joining("/")) + ")";
+        StringBuilder sb = new StringBuilder();
+        int[] path = path();
+        for (int i = 0; i < path.length; i++) {
+            if (i > 0) {
+                sb.append('/');
+            }
+            sb.append(path[i]);
+        }
+        return this.getClass().getSimpleName() + "(" + sb + ")";
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,189 @@
+//@formatter:off
+/*
+ * NodeRepresentationCache
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+
+package de.calamanari.tcanv.tp;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import de.calamanari.tcanv.BoxStyle;
+import de.calamanari.tcanv.TextAlignment;
+
+/**
+ * A {@link NodeRepresentationCache} keeps the rendered node representations (lines of a node's box incl. the aligned label) of recently printed labels, so
+ * labels occurring many times in a tree (or in many trees) only get rendered once.
+ * <p>
+ * The key is the combination of label, size of the box, alignment and box style. The number of entries is limited, the least recently used entry will be
+ * evicted when the limit is exceeded. The cached representations are immutable.
+ * <p>
+ * Instances are thread-safe, a single cache can be shared by any number of policies (see
+ * {@link AbstractStandardTreeDrawingPolicy#setNodeRepresentationCache(NodeRepresentationCache)}) resp. printers (see
+ * {@link TreePrinter#TreePrinter(TreeDrawingPolicy, long, de.calamanari.tcanv.LineGlyphSet, NodeRepresentationCache)}) running concurrently.
+ * <p>
+ * <b>Important:</b> Custom {@link BoxStyle}s must be immutable and either be singletons or implement {@link Object#equals(Object)} and
+ * {@link Object#hashCode()}, otherwise they won't produce any cache hits.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public final class NodeRepresentationCache {
+
+    /**
+     * Default maximum number of entries: {@value}
+     */
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    /**
+     * maximum number of entries
+     */
+    private final int maxSize;
+
+    /**
+     * entries in access order (least recently used first), guarded by this
+     */
+    private final LinkedHashMap<Key, List<String>> entries;
+
+    /**
+     * number of lookups that found an entry, guarded by this
+     */
+    private long hitCount = 0;
+
+    /**
+     * number of lookups that did not find an entry, guarded by this
+     */
+    private long missCount = 0;
+
+    /**
+     * Creates a cache with the given limit
+     * 
+     * @param maxSize maximum number of entries, <code>&gt;0</code>
+     */
+    public NodeRepresentationCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException(String.format("expected: maxSize > 0, given: maxSize=%d", maxSize));
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -4326380218151734283L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<String>> eldest) {
+                return size() > NodeRepresentationCache.this.maxSize;
+            }
+
+        };
+    }
+
+    /**
+     * Creates a cache with up to {@value #DEFAULT_MAX_SIZE} entries
+     */
+    public NodeRepresentationCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Returns the cached representation for the given combination or renders and caches it if not present.
+     * <p>
+     * The rendering happens outside the lock, so two threads may render the same representation concurrently, the later result will be cached.
+     * 
+     * @param label label of the node
+     * @param width width of the box
+     * @param height height of the box
+     * @param alignment alignment of the label inside the box
+     * @param boxStyle style of the box
+     * @param renderer to create the representation on a cache miss
+     * @return immutable representation
+     */
+    public List<String> computeIfAbsent(String label, int width, int height, TextAlignment alignment, BoxStyle boxStyle, Supplier<List<String>> renderer) {
+        Key key = new Key(label, width, height, alignment, boxStyle);
+        synchronized (this) {
+            List<String> res = entries.get(key);
+            if (res != null) {
+                hitCount++;
+                return res;
+            }
+            missCount++;
+        }
+        List<String> res = List.copyOf(renderer.get());
+        synchronized (this) {
+            entries.put(key, res);
+        }
+        return res;
+    }
+
+    /**
+     * @return maximum number of entries
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return current number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of lookups that found a cached representation
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of lookups that had to render the representation
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Removes all entries and resets the counters
+     */
+    public synchronized void clear() {
+        entries.clear();
+        hitCount = 0;
+        missCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return this.getClass().getSimpleName() + " [maxSize=" + maxSize + ", size=" + entries.size() + ", hitCount=" + hitCount + ", missCount=" + missCount
+                + "]";
+    }
+
+    /**
+     * Cache key
+     * 
+     * @param label
+     * @param width
+     * @param height
+     * @param alignment
+     * @param boxStyle
+     */
+    private record Key(String label, int width, int height, TextAlignment alignment, BoxStyle boxStyle) {
+        // key only
+    }
+
+}
@@ -119,28 +119,34 @@ public interface PrintableTreeNode {
 
     /**
      * Returns the height of this node based on the box style and the node's label, considering the maximum dimensions per node
+     * <p>
+     * The default implementation only scans the label until the limit has been reached, see {@link TextAlignment#measureTrimmedDimensions(String, int, int)}.
      * 
      * @param siblingParentRelation relation or {@link DefaultParentRelation#NONE} if this node has no parent or the parent is not being printed
      * @param maxHeight limit (incl.)
      * @return vertical size of the node in characters
      */
     default int getPrintHeight(SiblingParentRelation siblingParentRelation, int maxHeight) {
-        int borderOverhead = (getBoxStyle(siblingParentRelation).hasSideLine(BoxSide.TOP) ? 1 : 0)
-                + (getBoxStyle(siblingParentRelation).hasSideLine(BoxSide.BOTTOM) ? 1 : 0);
-        return Math.min(maxHeight, TextAlignment.computeTrimmedDimensions(getNodeLabel())[1] + borderOverhead);
+        BoxStyle boxStyle = getBoxStyle(siblingParentRelation);
+        int borderOverhead = (boxStyle.hasSideLine(BoxSide.TOP) ? 1 : 0) + (boxStyle.hasSideLine(BoxSide.BOTTOM) ? 1 : 0);
+        long dimensions = TextAlignment.measureTrimmedDimensions(getNodeLabel(), 0, Math.max(0, maxHeight - borderOverhead));
+        return Math.min(maxHeight, TextAlignment.trimmedHeight(dimensions) + borderOverhead);
     }
 
     /**
      * Returns the width of this node based on the box style and the node's label, considering the maximum dimensions per node
+     * <p>
+     * The default implementation only scans the label until the limit has been reached, see {@link TextAlignment#measureTrimmedDimensions(String, int, int)}.
      * 
      * @param siblingParentRelation relation or {@link DefaultParentRelation#NONE} if this node has no parent or the parent is not being printed
      * @param maxWidth limit (incl.)
      * @return horizontal size of the node in characters
      */
     default int getPrintWidth(SiblingParentRelation siblingParentRelation, int maxWidth) {
-        int borderOverhead = (getBoxStyle(siblingParentRelation).hasSideLine(BoxSide.LEFT) ? 1 : 0)
-                + (getBoxStyle(siblingParentRelation).hasSideLine(BoxSide.RIGHT) ? 1 : 0);
-        return Math.min(maxWidth, TextAlignment.computeTrimmedDimensions(getNodeLabel())[0] + borderOverhead);
+        BoxStyle boxStyle = getBoxStyle(siblingParentRelation);
+        int borderOverhead = (boxStyle.hasSideLine(BoxSide.LEFT) ? 1 : 0) + (boxStyle.hasSideLine(BoxSide.RIGHT) ? 1 : 0);
+        long dimensions = TextAlignment.measureTrimmedDimensions(getNodeLabel(), Math.max(0, maxWidth - borderOverhead), 0);
+        return Math.min(maxWidth, TextAlignment.trimmedWidth(dimensions) + borderOverhead);
     }
 
     /**
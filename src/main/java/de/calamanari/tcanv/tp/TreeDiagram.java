@@ -0,0 +1,386 @@
+//@formatter:off
+/*
+ * TreeDiagram
+ * Copyright 2026 Karl Eilebrecht
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.tcanv.tp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import de.calamanari.tcanv.BoxStyle;
+import de.calamanari.tcanv.CanvasBoundCheckStrategy;
+import de.calamanari.tcanv.CanvasFormat;
+import de.calamanari.tcanv.ConnectorSpec;
+import de.calamanari.tcanv.LineGlyphSet;
+import de.calamanari.tcanv.TextCanvas;
+
+/**
+ * A {@link TreeDiagram} is the layout of a tree (texts and connectors at their final positions) kept in a row index, so any row of the diagram can be
+ * rasterized on demand without ever allocating the full canvas.
+ * <p>
+ * The rows are the same as the rows of the canvas created by {@link TreePrinter#print(PrintableTreeNode, int)}, except that decorators
+ * ({@link PrintableTreeNode#decorateNode(SiblingParentRelation, TextCanvas, int, int, int, int)},
+ * {@link PrintableTreeNode#decorateParentConnector(SiblingParentRelation, TextCanvas, de.calamanari.tcanv.BoxConnectionPoint, de.calamanari.tcanv.BoxConnectionPoint)})
+ * won't be called because there is no canvas.
+ * <p>
+ * The memory consumption is proportional to the layout (number of nodes and connectors) plus a single row per iteration, not to the area of the diagram.
+ * Instances are immutable, multiple iterations may run concurrently.
+ *
+ * @see TreePrinter#layout(PrintableTreeNode, int)
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public final class TreeDiagram {
+
+    /**
+     * Connectors may leave the rectangle spanned by their end points by this number of rows (U-shaped connectors)
+     */
+    private static final int CONNECTOR_MARGIN = 2;
+
+    /**
+     * dimensions of the diagram
+     */
+    private final CanvasFormat format;
+
+    /**
+     * glyphs for the connector lines or null for classic mode
+     */
+    private final LineGlyphSet lineGlyphSet;
+
+    /**
+     * rows of the frame: top, middle (repeated), bottom, empty array if there is no frame
+     */
+    private final String[] frameRows;
+
+    /**
+     * horizontal positions of the texts, sorted by row after {@link #complete()}
+     */
+    private int[] textX = new int[64];
+
+    /**
+     * vertical positions of the texts, sorted by row after {@link #complete()}
+     */
+    private int[] textY = new int[64];
+
+    /**
+     * texts to be written, sorted by row after {@link #complete()}
+     */
+    private String[] texts = new String[64];
+
+    /**
+     * number of texts
+     */
+    private int textCount = 0;
+
+    /**
+     * connectors, sorted by {@link #connectorMinY} after {@link #complete()}
+     */
+    private ConnectorSpec[] connectors = new ConnectorSpec[0];
+
+    /**
+     * first row potentially affected by the connector with the same index
+     */
+    private int[] connectorMinY = new int[0];
+
+    /**
+     * last row potentially affected by the connector with the same index
+     */
+    private int[] connectorMaxY = new int[0];
+
+    /**
+     * collects the connectors until {@link #complete()}
+     */
+    private List<ConnectorSpec> connectorList = new ArrayList<>();
+
+    /**
+     * @param format dimensions of the diagram
+     * @param frameStyle style of the frame around the diagram
+     * @param lineGlyphSet glyphs for the connector lines or null for classic mode
+     */
+    TreeDiagram(CanvasFormat format, BoxStyle frameStyle, LineGlyphSet lineGlyphSet) {
+        this.format = format;
+        this.lineGlyphSet = lineGlyphSet;
+        TextCanvas frameCanvas = new TextCanvas(format.width(), Math.min(3, format.height()));
+        frameCanvas.drawBox(frameStyle, frameCanvas.getWidth(), frameCanvas.getHeight());
+        String[] rows = frameCanvas.export().split("\n", -1);
+        this.frameRows = rows[0].isBlank() && rows[rows.length - 1].isBlank() && rows[(rows.length - 1) / 2].isBlank() ? new String[0] : rows;
+    }
+
+    /**
+     * Adds a text to be written at the given position (recording phase)
+     *
+     * @param x
+     * @param y
+     * @param text
+     */
+    void addText(int x, int y, String text) {
+        if (textCount == texts.length) {
+            textX = Arrays.copyOf(textX, textCount * 2);
+            textY = Arrays.copyOf(textY, textCount * 2);
+            texts = Arrays.copyOf(texts, textCount * 2);
+        }
+        textX[textCount] = x;
+        textY[textCount] = y;
+        texts[textCount] = text;
+        textCount++;
+    }
+
+    /**
+     * Adds connectors to be drawn after all texts (recording phase)
+     *
+     * @param connectorSpecs
+     */
+    void addConnectors(Collection<ConnectorSpec> connectorSpecs) {
+        connectorList.addAll(connectorSpecs);
+    }
+
+    /**
+     * Builds the row index, no further elements can be added afterwards
+     */
+    void complete() {
+        // the texts of a row must be written in the order they were added, later texts may overwrite earlier ones
+        long[] textOrder = new long[textCount];
+        for (int i = 0; i < textCount; i++) {
+            textOrder[i] = (((long) textY[i]) << 32) | i;
+        }
+        Arrays.sort(textOrder);
+        int[] sortedX = new int[textCount];
+        int[] sortedY = new int[textCount];
+        String[] sortedTexts = new String[textCount];
+        for (int i = 0; i < textCount; i++) {
+            int idx = (int) textOrder[i];
+            sortedX[i] = textX[idx];
+            sortedY[i] = textY[idx];
+            sortedTexts[i] = texts[idx];
+        }
+        textX = sortedX;
+        textY = sortedY;
+        texts = sortedTexts;
+
+        int connectorCount = connectorList.size();
+        long[] connectorOrder = new long[connectorCount];
+        for (int i = 0; i < connectorCount; i++) {
+            ConnectorSpec connector = connectorList.get(i);
+            connectorOrder[i] = (((long) (Math.min(connector.fromY(), connector.toY()) - CONNECTOR_MARGIN)) << 32) | i;
+        }
+        Arrays.sort(connectorOrder);
+        connectors = new ConnectorSpec[connectorCount];
+        connectorMinY = new int[connectorCount];
+        connectorMaxY = new int[connectorCount];
+        for (int i = 0; i < connectorCount; i++) {
+            ConnectorSpec connector = connectorList.get((int) connectorOrder[i]);
+            connectors[i] = connector;
+            connectorMinY[i] = Math.min(connector.fromY(), connector.toY()) - CONNECTOR_MARGIN;
+            connectorMaxY[i] = Math.max(connector.fromY(), connector.toY()) + CONNECTOR_MARGIN;
+        }
+        connectorList = null;
+    }
+
+    /**
+     * @return width of the diagram (number of characters per row)
+     */
+    public int getWidth() {
+        return format.width();
+    }
+
+    /**
+     * @return height of the diagram (number of rows)
+     */
+    public int getHeight() {
+        return format.height();
+    }
+
+    /**
+     * @return glyphs for the connector lines or null for classic mode
+     */
+    public LineGlyphSet getLineGlyphSet() {
+        return lineGlyphSet;
+    }
+
+    /**
+     * Returns an iterator over all rows of the diagram, each row will be rasterized when it is requested.
+     *
+     * @return rows top-down, each row has the full width of the diagram
+     */
+    public Iterator<CharSequence> lines() {
+        return lines(0);
+    }
+
+    /**
+     * Returns an iterator over the rows of the diagram starting with the given row, each row will be rasterized when it is requested.
+     * <p>
+     * This allows paging through a diagram or printing its tail without rasterizing the rows above.
+     *
+     * @param fromRow first row to be returned, <code>0 &lt;= fromRow &lt;= {@link #getHeight()}</code>
+     * @return rows top-down, each row has the full width of the diagram
+     * @throws IllegalArgumentException if the row was out of range
+     */
+    public Iterator<CharSequence> lines(int fromRow) {
+        if (fromRow < 0 || fromRow > format.height()) {
+            throw new IllegalArgumentException(String.format("expected: 0 <= fromRow <= %d, given: fromRow=%d", format.height(), fromRow));
+        }
+        return new RowIterator(fromRow);
+    }
+
+    /**
+     * @param y row
+     * @return the row of the frame to be drawn into the given row or null if there is no frame
+     */
+    private String frameRow(int y) {
+        if (frameRows.length == 0) {
+            return null;
+        }
+        else if (y == 0 || frameRows.length < 3) {
+            return frameRows[y];
+        }
+        return y == format.height() - 1 ? frameRows[2] : frameRows[1];
+    }
+
+    /**
+     * @param y row
+     * @return index of the first text in the given row or below
+     */
+    private int findFirstText(int y) {
+        int low = 0;
+        int high = textCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (textY[mid] < y) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sweeps over the rows, keeping the connectors touching the current row active
+     */
+    private final class RowIterator implements Iterator<CharSequence> {
+
+        /**
+         * canvas to rasterize a single row
+         */
+        private final TextCanvas rowCanvas;
+
+        /**
+         * connectors touching the current row, translated to the row canvas
+         */
+        private final List<ConnectorSpec> rowConnectors = new ArrayList<>();
+
+        /**
+         * indexes of the connectors touching the current row
+         */
+        private int[] active = new int[16];
+
+        /**
+         * number of active connectors
+         */
+        private int activeCount = 0;
+
+        /**
+         * next connector to become active
+         */
+        private int nextConnector = 0;
+
+        /**
+         * next text to be written
+         */
+        private int nextText;
+
+        /**
+         * next row to be returned
+         */
+        private int y;
+
+        /**
+         * @param fromRow first row
+         */
+        RowIterator(int fromRow) {
+            this.y = fromRow;
+            this.nextText = findFirstText(fromRow);
+            this.rowCanvas = new TextCanvas(format.width(), 1, CanvasBoundCheckStrategy.CLIP);
+            this.rowCanvas.setLineGlyphSet(lineGlyphSet);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return y < format.height();
+        }
+
+        @Override
+        public CharSequence next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            rowCanvas.clear();
+            String frameRow = frameRow(y);
+            if (frameRow != null) {
+                rowCanvas.write(frameRow);
+            }
+            while (nextText < textCount && textY[nextText] == y) {
+                rowCanvas.setCursor(textX[nextText], 0);
+                rowCanvas.write(texts[nextText]);
+                nextText++;
+            }
+            updateActiveConnectors();
+            if (activeCount > 0) {
+                rowConnectors.clear();
+                for (int i = 0; i < activeCount; i++) {
+                    ConnectorSpec connector = connectors[active[i]];
+                    rowConnectors.add(new ConnectorSpec(connector.fromX(), connector.fromY() - y, connector.toX(), connector.toY() - y,
+                            connector.connectorFrom(), connector.connectorTo(), connector.conflictResolver()));
+                }
+                rowCanvas.drawLines(rowConnectors);
+            }
+            y++;
+            return rowCanvas.export();
+        }
+
+        /**
+         * Activates the connectors reaching the current row and removes the ones that ended above
+         */
+        private void updateActiveConnectors() {
+            int count = 0;
+            for (int i = 0; i < activeCount; i++) {
+                if (connectorMaxY[active[i]] >= y) {
+                    active[count] = active[i];
+                    count++;
+                }
+            }
+            activeCount = count;
+            while (nextConnector < connectors.length && connectorMinY[nextConnector] <= y) {
+                if (connectorMaxY[nextConnector] >= y) {
+                    if (activeCount == active.length) {
+                        active = Arrays.copyOf(active, activeCount * 2);
+                    }
+                    active[activeCount] = nextConnector;
+                    activeCount++;
+                }
+                nextConnector++;
+            }
+        }
+
+    }
+
+}
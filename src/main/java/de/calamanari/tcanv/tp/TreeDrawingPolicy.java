@@ -19,6 +19,8 @@
 
 package de.calamanari.tcanv.tp;
 
+import java.util.concurrent.ForkJoinPool;
+
 import de.calamanari.tcanv.CanvasFormat;
 import de.calamanari.tcanv.TextCanvas;
 
@@ -42,6 +44,20 @@ public interface TreeDrawingPolicy {
      */
     CanvasFormat scan(PrintableTreeNode rootNode, int maxDepth);
 
+    /**
+     * Analyzes the tree of nodes like {@link #scan(PrintableTreeNode, int)}, optionally using the given pool to perform parts of the work in parallel.
+     * <p>
+     * The result must be the same as the result of the sequential scan. The default implementation ignores the pool.
+     * 
+     * @param rootNode node to start with
+     * @param maxDepth maximum number of levels to be fully drawn
+     * @param pool to run parallel tasks, <code>null</code> to scan sequentially
+     * @return dimensions of the canvas required to draw the graph
+     */
+    default CanvasFormat scan(PrintableTreeNode rootNode, int maxDepth, ForkJoinPool pool) {
+        return scan(rootNode, maxDepth);
+    }
+
     /**
      * Draws the tree graph into the canvas based on the information collected during the scan.
      * 
@@ -49,4 +65,16 @@ public interface TreeDrawingPolicy {
      */
     void draw(TextCanvas canvas);
 
+    /**
+     * Draws the tree graph like {@link #draw(TextCanvas)}, optionally using the given pool to perform parts of the work in parallel.
+     * <p>
+     * The result must be the same as the result of the sequential drawing. The default implementation ignores the pool.
+     * 
+     * @param canvas target
+     * @param pool to run parallel tasks, <code>null</code> to draw sequentially
+     */
+    default void draw(TextCanvas canvas, ForkJoinPool pool) {
+        draw(canvas);
+    }
+
 }
\ No newline at end of file
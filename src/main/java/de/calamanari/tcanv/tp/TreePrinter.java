@@ -19,6 +19,13 @@
 
 package de.calamanari.tcanv.tp;
 
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import de.calamanari.tcanv.CanvasBoundCheckStrategy;
+import de.calamanari.tcanv.CanvasFormat;
+import de.calamanari.tcanv.CanvasStorage;
+import de.calamanari.tcanv.LineGlyphSet;
 import de.calamanari.tcanv.TextCanvas;
 
 /**
@@ -31,18 +38,85 @@ import de.calamanari.tcanv.TextCanvas;
  */
 public class TreePrinter {
 
+    /**
+     * Default number of cells ({@value}) a canvas may have before the printer switches to {@link CanvasStorage#SPARSE}
+     */
+    public static final long DEFAULT_SPARSE_CANVAS_THRESHOLD = 16_000_000L;
+
     /**
      * Drawing policy of this printer
      */
     private final TreeDrawingPolicy treeDrawingPolicy;
 
+    /**
+     * Canvases with more cells than this threshold will be created with {@link CanvasStorage#SPARSE}
+     */
+    private final long sparseCanvasThreshold;
+
+    /**
+     * Glyphs for the connector lines, <code>null</code> for classic mode
+     */
+    private final LineGlyphSet lineGlyphSet;
+
+    /**
+     * Creates a printer with the given custom policy, sparse canvas threshold, line glyphs and node representation cache.
+     * <p>
+     * The cache will be set on the policy (see {@link AbstractStandardTreeDrawingPolicy#setNodeRepresentationCache(NodeRepresentationCache)}), so the nodes
+     * printed by this printer (and all other printers sharing the same cache) with the same label, box size and box style will only be rendered once.
+     * 
+     * @param treeDrawingPolicy
+     * @param sparseCanvasThreshold number of cells (<code>width x height</code>) a canvas may have before the printer creates the canvas with
+     *            {@link CanvasStorage#SPARSE} instead of {@link CanvasStorage#COMPACT}, {@link Long#MAX_VALUE} to always use {@link CanvasStorage#COMPACT}
+     * @param lineGlyphSet glyphs for the connector lines or <code>null</code> for the classic mode, see {@link TextCanvas#setLineGlyphSet(LineGlyphSet)}
+     * @param nodeRepresentationCache cache to be shared or <code>null</code> to keep the policy's setting
+     * @throws IllegalArgumentException if a cache was given but the policy is not an {@link AbstractStandardTreeDrawingPolicy}
+     */
+    public TreePrinter(TreeDrawingPolicy treeDrawingPolicy, long sparseCanvasThreshold, LineGlyphSet lineGlyphSet,
+            NodeRepresentationCache nodeRepresentationCache) {
+        this(treeDrawingPolicy, sparseCanvasThreshold, lineGlyphSet);
+        if (nodeRepresentationCache != null) {
+            if (treeDrawingPolicy instanceof AbstractStandardTreeDrawingPolicy standardTreeDrawingPolicy) {
+                standardTreeDrawingPolicy.setNodeRepresentationCache(nodeRepresentationCache);
+            }
+            else {
+                throw new IllegalArgumentException(String.format("expected: AbstractStandardTreeDrawingPolicy, given: %s",
+                        treeDrawingPolicy == null ? null : treeDrawingPolicy.getClass().getSimpleName()));
+            }
+        }
+    }
+
+    /**
+     * Creates a printer with the given custom policy, sparse canvas threshold and line glyphs
+     * 
+     * @param treeDrawingPolicy
+     * @param sparseCanvasThreshold number of cells (<code>width x height</code>) a canvas may have before the printer creates the canvas with
+     *            {@link CanvasStorage#SPARSE} instead of {@link CanvasStorage#COMPACT}, {@link Long#MAX_VALUE} to always use {@link CanvasStorage#COMPACT}
+     * @param lineGlyphSet glyphs for the connector lines or <code>null</code> for the classic mode, see {@link TextCanvas#setLineGlyphSet(LineGlyphSet)}
+     */
+    public TreePrinter(TreeDrawingPolicy treeDrawingPolicy, long sparseCanvasThreshold, LineGlyphSet lineGlyphSet) {
+        this.treeDrawingPolicy = treeDrawingPolicy;
+        this.sparseCanvasThreshold = sparseCanvasThreshold;
+        this.lineGlyphSet = lineGlyphSet;
+    }
+
+    /**
+     * Creates a printer with the given custom policy and sparse canvas threshold
+     * 
+     * @param treeDrawingPolicy
+     * @param sparseCanvasThreshold number of cells (<code>width x height</code>) a canvas may have before the printer creates the canvas with
+     *            {@link CanvasStorage#SPARSE} instead of {@link CanvasStorage#COMPACT}, {@link Long#MAX_VALUE} to always use {@link CanvasStorage#COMPACT}
+     */
+    public TreePrinter(TreeDrawingPolicy treeDrawingPolicy, long sparseCanvasThreshold) {
+        this(treeDrawingPolicy, sparseCanvasThreshold, null);
+    }
+
     /**
      * Creates a printer with the given custom policy
      * 
      * @param treeDrawingPolicy
      */
     public TreePrinter(TreeDrawingPolicy treeDrawingPolicy) {
-        this.treeDrawingPolicy = treeDrawingPolicy;
+        this(treeDrawingPolicy, DEFAULT_SPARSE_CANVAS_THRESHOLD);
     }
 
     /**
@@ -54,6 +128,16 @@ public class TreePrinter {
         this(layout.createDrawingPolicy());
     }
 
+    /**
+     * Creates a printer with the given default layout and node representation cache (may be shared among printers)
+     * 
+     * @param layout
+     * @param nodeRepresentationCache cache or <code>null</code> to render each node
+     */
+    public TreePrinter(TreeLayout layout, NodeRepresentationCache nodeRepresentationCache) {
+        this(layout.createDrawingPolicy(), DEFAULT_SPARSE_CANVAS_THRESHOLD, null, nodeRepresentationCache);
+    }
+
     /**
      * Creates a printer with default settings: {@link TreeLayout#TOP_DOWN}
      */
@@ -79,9 +163,92 @@ public class TreePrinter {
      * @return canvas with the diagram
      */
     public TextCanvas print(PrintableTreeNode rootNode, int maxDepth) {
-        TextCanvas canvas = new TextCanvas(treeDrawingPolicy.scan(rootNode, maxDepth));
-        treeDrawingPolicy.draw(canvas);
+        return print(rootNode, maxDepth, null);
+    }
+
+    /**
+     * Creates a new canvas, draws the tree and returns the canvas, scan and drawing may be performed in parallel using the given pool.
+     * <p>
+     * The result is the same as the result of {@link #print(PrintableTreeNode, int)}, but the nodes will be accessed concurrently, see
+     * {@link AbstractStandardTreeDrawingPolicy#scan(PrintableTreeNode, int, ForkJoinPool)} and
+     * {@link AbstractStandardTreeDrawingPolicy#draw(TextCanvas, ForkJoinPool)}. With a pool the canvas will be created with {@link CanvasStorage#DENSE} instead
+     * of {@link CanvasStorage#COMPACT} to allow concurrent writes.
+     * 
+     * @param rootNode to start at
+     * @param maxDepth maxiumum number of levels to be fully drawn
+     * @param pool to scan and draw the tree in parallel, <code>null</code> to work sequentially
+     * @return canvas with the diagram
+     */
+    public TextCanvas print(PrintableTreeNode rootNode, int maxDepth, ForkJoinPool pool) {
+        CanvasFormat format = treeDrawingPolicy.scan(rootNode, maxDepth, pool);
+        TextCanvas canvas = new TextCanvas(format, CanvasBoundCheckStrategy.ERROR, selectCanvasStorage(format, pool != null));
+        canvas.setLineGlyphSet(lineGlyphSet);
+        treeDrawingPolicy.draw(canvas, pool);
         return canvas;
     }
 
+    /**
+     * Scans the tree and returns its layout without creating a canvas (full depth), see {@link #layout(PrintableTreeNode, int)}.
+     * 
+     * @param rootNode
+     * @return diagram to be rasterized row by row on demand
+     * @throws UnsupportedOperationException if the policy of this printer is not an {@link AbstractStandardTreeDrawingPolicy}
+     */
+    public TreeDiagram layout(PrintableTreeNode rootNode) {
+        return layout(rootNode, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Scans the tree and returns its layout without creating a canvas. The rows of the diagram will be rasterized on demand (see {@link TreeDiagram#lines()}),
+     * so large diagrams can be paged through or tailed with a memory consumption proportional to the layout instead of the area of the diagram.
+     * 
+     * @param rootNode to start at
+     * @param maxDepth maxiumum number of levels to be fully drawn
+     * @return diagram to be rasterized row by row on demand
+     * @throws UnsupportedOperationException if the policy of this printer is not an {@link AbstractStandardTreeDrawingPolicy}
+     */
+    public TreeDiagram layout(PrintableTreeNode rootNode, int maxDepth) {
+        if (treeDrawingPolicy instanceof AbstractStandardTreeDrawingPolicy standardTreeDrawingPolicy) {
+            return standardTreeDrawingPolicy.layout(rootNode, maxDepth, lineGlyphSet);
+        }
+        else {
+            throw new UnsupportedOperationException(
+                    String.format("expected: AbstractStandardTreeDrawingPolicy, given: %s", treeDrawingPolicy.getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     * Writes the tree row by row to the given target without creating a canvas, see
+     * {@link IndexTreeDrawingPolicy#render(PrintableTreeNode, int, LineGlyphSet, Appendable)}.
+     * <p>
+     * This is only supported for the index layouts ({@link IndexTreeDrawingPolicy}), where the rows of a node do not depend on the nodes below.
+     * 
+     * @param rootNode to start at
+     * @param maxDepth maxiumum number of levels to be fully drawn
+     * @param out target
+     * @throws IOException if writing to the target failed
+     * @throws UnsupportedOperationException if the policy of this printer is not an {@link IndexTreeDrawingPolicy}
+     */
+    public void printStreaming(PrintableTreeNode rootNode, int maxDepth, Appendable out) throws IOException {
+        if (treeDrawingPolicy instanceof IndexTreeDrawingPolicy indexTreeDrawingPolicy) {
+            indexTreeDrawingPolicy.render(rootNode, maxDepth, lineGlyphSet, out);
+        }
+        else {
+            throw new UnsupportedOperationException(String.format("expected: IndexTreeDrawingPolicy, given: %s", treeDrawingPolicy.getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     * @param format dimensions of the canvas to be created
+     * @param concurrentWrites true if the canvas should support concurrent writes (see {@link CanvasStorage#supportsConcurrentWrites()})
+     * @return {@link CanvasStorage#SPARSE} if the number of cells exceeds the configured threshold (or the capacity of a single array), otherwise
+     *         {@link CanvasStorage#DENSE} for concurrent writes or {@link CanvasStorage#COMPACT}
+     */
+    private CanvasStorage selectCanvasStorage(CanvasFormat format, boolean concurrentWrites) {
+        if (((long) format.width() * format.height()) > Math.min(sparseCanvasThreshold, CanvasStorage.MAX_ARRAY_CELLS)) {
+            return CanvasStorage.SPARSE;
+        }
+        return concurrentWrites ? CanvasStorage.DENSE : CanvasStorage.COMPACT;
+    }
+
 }
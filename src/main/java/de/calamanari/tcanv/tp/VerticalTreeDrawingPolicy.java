@@ -19,11 +19,6 @@
 
 package de.calamanari.tcanv.tp;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
-
 import de.calamanari.tcanv.BoxConnectionPoint;
 import de.calamanari.tcanv.BoxSide;
 import de.calamanari.tcanv.CanvasFormat;
@@ -31,10 +26,6 @@ import de.calamanari.tcanv.DefaultConnectorEndType;
 import de.calamanari.tcanv.FrameConfig;
 import de.calamanari.tcanv.TextCanvas;
 
-import static de.calamanari.tcanv.tp.NodeFormatInfo.MISSING_INFO;
-import static de.calamanari.tcanv.tp.NodeFormatInfo.MORE_INFO;
-import static de.calamanari.tcanv.tp.NodeFormatInfo.NULL_INFO;
-
 /**
  * A {@link VerticalTreeDrawingPolicy} draws a tree into a canvas.
  * <p>
@@ -61,9 +52,10 @@ import static de.calamanari.tcanv.tp.NodeFormatInfo.NULL_INFO;
 public class VerticalTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy {
 
     /**
-     * For a clean layout all nodes of a level are vertically aligned. Therefore, this list stores the effective maximum height of each level of the tree.
+     * For a clean layout all nodes of a level are vertically aligned. Therefore, this field stores the effective maximum height of each level of the tree
+     * and the resulting level offsets.
      */
-    private final List<Integer> levelMaxSimpleNodeHeight = new ArrayList<>();
+    private final LevelSizes levelMaxSimpleNodeHeight = new LevelSizes();
 
     /**
      * This flag controls whether we draw the tree from the top to the bottom (default, <code>false</code>) or vice-versa (<code>true</code>).
@@ -89,42 +81,37 @@ public class VerticalTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy
      * @param simpleNodeHeight current node's height
      */
     private void updateMaxSimpleNodeHeight(int level, int simpleNodeHeight) {
-        // ensure capacity
-        while (levelMaxSimpleNodeHeight.size() <= level) {
-            levelMaxSimpleNodeHeight.add(0);
-        }
-        levelMaxSimpleNodeHeight.set(level, Math.max(levelMaxSimpleNodeHeight.get(level), simpleNodeHeight));
+        levelMaxSimpleNodeHeight.update(level, simpleNodeHeight);
     }
 
     /**
-     * Creates a standard horizontal gap to be displayed for a missing node
+     * Computes the width of the standard horizontal gap to be displayed for a missing node
      * 
      * @param numberOfSiblings
      * @param simpleNodeWidth
-     * @return gap
+     * @return gap width
      */
-    private List<String> createHorizontalGap(int numberOfSiblings, int simpleNodeWidth) {
-        String format = "%" + (numberOfSiblings == 2 ? simpleNodeWidth * 2 : 3) + "s";
-        return Arrays.asList(String.format(format, ""));
+    private int computeHorizontalGapWidth(int numberOfSiblings, int simpleNodeWidth) {
+        return numberOfSiblings == 2 ? simpleNodeWidth * 2 : 3;
     }
 
     /**
      * Computes the width of the sub-tree below this node recursively
      * 
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param node
      * @param siblingParentRelation
      * @param maxDepth maximum level of the tree to be fully drawn
      * @return horizontal size of all siblings and sibling's siblings combined
      */
     @Override
-    protected int computeSubTreeWidth(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
-        int simpleNodeWidth = node.getPrintWidth(siblingParentRelation, treeLayoutConfig.maxNodeWidth());
+    protected int computeSubTreeWidth(int nodeId, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        int simpleNodeWidth = layoutArena.printWidth(nodeId);
         int numberOfSiblings = node.getNumberOfSiblings();
         int subWidth = 0;
-        if (numberOfSiblings > 0 && key.length() < maxDepth) {
+        if (numberOfSiblings > 0 && layoutArena.depth(nodeId) < maxDepth) {
             for (int i = 0; i < numberOfSiblings; i++) {
-                subWidth = updateSubTreeWidth(key, node, numberOfSiblings, i, simpleNodeWidth, subWidth, maxDepth);
+                subWidth = updateSubTreeWidth(nodeId, node, numberOfSiblings, i, simpleNodeWidth, subWidth, maxDepth);
             }
             if (numberOfSiblings > 1) {
                 subWidth = subWidth + (treeLayoutConfig.horizontalSpacing() / 2);
@@ -140,7 +127,7 @@ public class VerticalTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy
     /**
      * Considers this sibling in total width computation (recursively)
      * 
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param node
      * @param numberOfSiblings
      * @param siblingIdx
@@ -149,28 +136,26 @@ public class VerticalTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy
      * @param maxDepth maximum level of the tree to be fully drawn
      * @return updated current total width
      */
-    private int updateSubTreeWidth(NodeKey key, PrintableTreeNode node, int numberOfSiblings, int siblingIdx, int simpleParentWidth, int currentSubWidth,
+    private int updateSubTreeWidth(int nodeId, PrintableTreeNode node, int numberOfSiblings, int siblingIdx, int simpleParentWidth, int currentSubWidth,
             int maxDepth) {
         PrintableTreeNode sibling = node.getSiblingNode(siblingIdx);
-        NodeKey siblingKey = key.sibling(siblingIdx);
-        if (sibling != PrintableTreeNode.MISSING_SIBLING && siblingKey.length() <= maxDepth) {
-            int subTreeWidth = getSubTreeWidth(siblingKey, sibling, new DefaultSiblingParentRelation(numberOfSiblings, siblingIdx), maxDepth)
+        int siblingId = layoutArena.siblingId(nodeId, siblingIdx);
+        if (sibling != PrintableTreeNode.MISSING_SIBLING && layoutArena.depth(siblingId) <= maxDepth) {
+            int subTreeWidth = getSubTreeWidth(siblingId, sibling, new DefaultSiblingParentRelation(numberOfSiblings, siblingIdx), maxDepth)
                     + (siblingIdx > 0 ? 1 : 0);
             int relativePositionX = currentSubWidth;
             if (subTreeWidth < simpleParentWidth && numberOfSiblings == 1) {
                 relativePositionX = relativePositionX + ((simpleParentWidth - subTreeWidth) / 2) + (treeLayoutConfig.horizontalSpacing() / 2);
             }
-            else if (isSpacingRequired(siblingKey, numberOfSiblings)) {
+            else if (isSpacingRequired(siblingId, numberOfSiblings)) {
                 relativePositionX = relativePositionX + (treeLayoutConfig.horizontalSpacing() / 2);
             }
             currentSubWidth = currentSubWidth + subTreeWidth;
-            NodeFormatInfo info = nodeFormatInfoCache.get(siblingKey);
-            nodeFormatInfoCache.put(siblingKey, info.withPositionX(relativePositionX));
+            layoutArena.setPositionX(siblingId, relativePositionX);
         }
         else {
-            List<String> gap = createHorizontalGap(numberOfSiblings, simpleParentWidth);
-            nodeFormatInfoCache.put(key.sibling(siblingIdx), NodeFormatInfo.gapInfo(gap, currentSubWidth, 0));
-            currentSubWidth = currentSubWidth + gap.get(0).length() - (siblingIdx < numberOfSiblings - 1 ? 1 : 0);
+            layoutArena.markMissing(siblingId);
+            currentSubWidth = currentSubWidth + computeHorizontalGapWidth(numberOfSiblings, simpleParentWidth) - (siblingIdx < numberOfSiblings - 1 ? 1 : 0);
         }
         return currentSubWidth;
     }
@@ -178,31 +163,33 @@ public class VerticalTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy
     /**
      * Computes the height of the sub-tree below this node
      * 
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param node
      * @param siblingParentRelation
      * @param maxDepth maximum level of the tree to be fully drawn
      * @return vertical size of all siblings and sibling's siblings combined
      */
     @Override
-    protected int computeSubTreeHeight(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
-        int simpleNodeHeight = node.getPrintHeight(siblingParentRelation, treeLayoutConfig.maxNodeHeight());
+    protected int computeSubTreeHeight(int nodeId, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+        int simpleNodeHeight = layoutArena.printHeight(nodeId);
         int numberOfSiblings = node.getNumberOfSiblings();
+        int depth = layoutArena.depth(nodeId);
         int subHeight = 0;
-        if (numberOfSiblings > 0 && key.length() < maxDepth) {
+        if (numberOfSiblings > 0 && depth < maxDepth) {
             for (int i = 0; i < numberOfSiblings; i++) {
                 PrintableTreeNode sibling = node.getSiblingNode(i);
                 if (sibling != PrintableTreeNode.MISSING_SIBLING) {
-                    subHeight = Math.max(subHeight, getSubTreeHeight(key.sibling(i), sibling, new DefaultSiblingParentRelation(numberOfSiblings, i), maxDepth));
+                    subHeight = Math.max(subHeight,
+                            getSubTreeHeight(layoutArena.siblingId(nodeId, i), sibling, new DefaultSiblingParentRelation(numberOfSiblings, i), maxDepth));
                 }
             }
         }
         else if (numberOfSiblings > 0) {
             // appendix height
             subHeight = 2;
-            updateMaxSimpleNodeHeight(key.length() - 1, simpleNodeHeight + 2);
+            updateMaxSimpleNodeHeight(depth - 1, simpleNodeHeight + 2);
         }
-        updateMaxSimpleNodeHeight(key.length() - 1, simpleNodeHeight);
+        updateMaxSimpleNodeHeight(depth - 1, simpleNodeHeight);
         return simpleNodeHeight + subHeight + treeLayoutConfig.verticalSpacing();
     }
 
@@ -219,129 +206,150 @@ public class VerticalTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy
         if (bottomUp) {
             int absX = absParentX + (parentWidth / 2);
             int absY = absParentY - 1;
-            canvas.setCursor(absX, absY);
-            canvas.write("|");
-            canvas.setCursor(absX - 1, absY - 1);
-            canvas.write("...");
+            writeText(canvas, absX, absY, "|");
+            writeText(canvas, absX - 1, absY - 1, "...");
         }
         else {
             int absX = absParentX + (parentWidth / 2);
             int absY = absParentY + parentHeight;
-            canvas.setCursor(absX, absY);
-            canvas.write("|");
-            canvas.setCursor(absX - 1, absY + 1);
-            canvas.write("...");
+            writeText(canvas, absX, absY, "|");
+            writeText(canvas, absX - 1, absY + 1, "...");
+        }
+    }
+
+    /**
+     * Draws the tree starting at the root node.
+     * <p>
+     * The tree gets walked with an explicit stack (pre-order), so the depth of the tree is not limited by the stack size of the current thread.
+     * The texts of the nodes will be written afterwards, see {@link #drawPendingNodes(TextCanvas)}.
+     * 
+     * @param canvas
+     */
+    private void drawTree(TextCanvas canvas) {
+        // entries: id, horizontal offset
+        IntStack stack = new IntStack();
+        stack.push(LayoutArena.ROOT);
+        stack.push(frameConfig.indentLeft());
+        while (!stack.isEmpty()) {
+            int widthOffset = stack.pop();
+            int nodeId = stack.pop();
+            drawNode(canvas, stack, nodeId, createParentRelation(nodeId), widthOffset);
         }
     }
 
     /**
-     * Draws the sub-tree starting at the given node
+     * Adds the given node and its parent connector to be drawn (see {@link #addNode(TextCanvas, int, int, int)}) and puts its siblings on the stack
      * 
      * @param canvas
-     * @param key
+     * @param stack nodes to be drawn
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param parentRelation
-     * @param maxDepth maximum level of the tree to be fully drawn
      * @param widthOffset horizontal offset (depends on the remainder of the tree)
      */
-    private void drawSubTree(TextCanvas canvas, NodeKey key, ParentRelation parentRelation, int widthOffset) {
-        int heightOffset = computeAbsPositionY(canvas, key);
+    private void drawNode(TextCanvas canvas, IntStack stack, int nodeId, ParentRelation parentRelation, int widthOffset) {
+        int heightOffset = computeAbsPositionY(canvas, nodeId);
 
-        NodeFormatInfo info = nodeFormatInfoCache.get(key);
-        int absTotalX = widthOffset + (isSpacingRequired(key, parentRelation.parentNumberOfSiblings()) ? (treeLayoutConfig.horizontalSpacing() / 2) : 0)
-                + info.positionX();
-        int absLocalX = absTotalX + (info.totalWidth() / 2) - (info.simpleWidth() / 2);
-        int absTotalY = heightOffset + info.positionY();
+        int simpleWidth = layoutArena.simpleWidth(nodeId);
+        int simpleHeight = layoutArena.simpleHeight(nodeId);
+        int absTotalX = widthOffset + (isSpacingRequired(nodeId, parentRelation.parentNumberOfSiblings()) ? (treeLayoutConfig.horizontalSpacing() / 2) : 0)
+                + layoutArena.positionX(nodeId);
+        int absLocalX = absTotalX + (layoutArena.totalWidth(nodeId) / 2) - (simpleWidth / 2);
+        int absTotalY = heightOffset + layoutArena.positionY(nodeId);
 
-        drawNodeRepresentation(canvas, absLocalX, absTotalY, info);
+        addNode(canvas, nodeId, absLocalX, absTotalY);
 
-        if (parentRelation.parentKey().isValid()) {
-            drawParentConnector(canvas, key, info, parentRelation, widthOffset, heightOffset);
+        if (nodeId != LayoutArena.ROOT) {
+            drawParentConnector(canvas, nodeId, parentRelation, widthOffset, heightOffset);
         }
 
-        info.node().decorateNode(parentRelation, canvas, absLocalX, absTotalY, info.simpleWidth(), info.simpleHeight());
+        PrintableTreeNode node = layoutArena.node(nodeId);
+        addDecoration(() -> node.decorateNode(parentRelation, canvas, absLocalX, absTotalY, simpleWidth, simpleHeight));
 
-        if (info.drawPlaceholderAppendix()) {
-            drawPlaceholderAppendix(canvas, absLocalX, absTotalY, info.simpleWidth(), info.simpleHeight());
+        if (layoutArena.drawPlaceholderAppendix(nodeId)) {
+            addNodeAppendix(canvas, nodeId, absLocalX, absTotalY);
         }
-        else if (info.hasSiblings()) {
-            drawSiblings(canvas, key, info, absTotalX);
+        else if (layoutArena.hasSiblings(nodeId)) {
+            pushSiblings(stack, nodeId, absTotalX);
         }
     }
 
+    @Override
+    protected void drawNodeAppendix(TextCanvas canvas, int nodeId, int x, int y) {
+        drawPlaceholderAppendix(canvas, x, y, layoutArena.simpleWidth(nodeId), layoutArena.simpleHeight(nodeId));
+    }
+
     /**
      * Connects any node - except for the start node - to its parent.
      * 
      * @param canvas
-     * @param key
-     * @param info
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param parentRelation
-     * @param maxDepth maximum level of the tree to be fully drawn
      * @param widthOffset horizontal offset (depends on the remainder of the tree)
      * @param heightOffset vertical offset (depends on the remainder of the tree)
      */
-    private final void drawParentConnector(TextCanvas canvas, NodeKey key, NodeFormatInfo info, ParentRelation parentRelation, int widthOffset,
-            int heightOffset) {
-        NodeFormatInfo parentInfo = nodeFormatInfoCache.get(parentRelation.parentKey());
+    private final void drawParentConnector(TextCanvas canvas, int nodeId, ParentRelation parentRelation, int widthOffset, int heightOffset) {
+        int parentId = layoutArena.parentId(nodeId);
+        int simpleWidth = layoutArena.simpleWidth(nodeId);
+        int parentSimpleWidth = layoutArena.simpleWidth(parentId);
 
-        int absTotalX = widthOffset + (isSpacingRequired(key, parentRelation.parentNumberOfSiblings()) ? (treeLayoutConfig.horizontalSpacing() / 2) : 0)
-                + info.positionX();
-        int absLocalX = absTotalX + (info.totalWidth() / 2) - (info.simpleWidth() / 2);
+        int absTotalX = widthOffset + (isSpacingRequired(nodeId, parentRelation.parentNumberOfSiblings()) ? (treeLayoutConfig.horizontalSpacing() / 2) : 0)
+                + layoutArena.positionX(nodeId);
+        int absLocalX = absTotalX + (layoutArena.totalWidth(nodeId) / 2) - (simpleWidth / 2);
 
-        int absParentNodeBottomStartX = widthOffset + (parentInfo.totalWidth() / 2) - (parentInfo.simpleWidth() / 2);
-        int absParentNodeBottomMidX = absParentNodeBottomStartX + (parentInfo.simpleWidth() / 2);
+        int absParentNodeBottomStartX = widthOffset + (layoutArena.totalWidth(parentId) / 2) - (parentSimpleWidth / 2);
+        int absParentNodeBottomMidX = absParentNodeBottomStartX + (parentSimpleWidth / 2);
         int lineStartX = absParentNodeBottomMidX;
-        int lineStartY = computeConnectorStartY(canvas, parentRelation.parentKey(), parentInfo);
-        int lineEndX = absLocalX + (info.simpleWidth() / 2);
-        int lineEndY = computeConnectorEndY(heightOffset, info);
+        int lineStartY = computeConnectorStartY(canvas, parentId);
+        int lineEndX = absLocalX + (simpleWidth / 2);
+        int lineEndY = computeConnectorEndY(heightOffset, nodeId);
 
         if (parentRelation.parentNumberOfSiblings() == 1) {
             lineStartX = lineEndX;
         }
-        canvas.drawLine(lineStartX, lineStartY, lineEndX, lineEndY, DefaultConnectorEndType.BOTTOM_PLAIN, DefaultConnectorEndType.TOP_PLAIN,
-                DEFAULT_LINE_CROSSING_RESOLVER);
+        addConnector(canvas, lineStartX, lineStartY, lineEndX, lineEndY, DefaultConnectorEndType.BOTTOM_PLAIN, DefaultConnectorEndType.TOP_PLAIN);
 
-        if (bottomUp) {
-            info.node().decorateParentConnector(parentRelation, canvas, new BoxConnectionPoint(BoxSide.TOP, lineStartX, lineStartY),
-                    new BoxConnectionPoint(BoxSide.BOTTOM, lineEndX, lineEndY));
-        }
-        else {
-            info.node().decorateParentConnector(parentRelation, canvas, new BoxConnectionPoint(BoxSide.BOTTOM, lineStartX, lineStartY),
-                    new BoxConnectionPoint(BoxSide.TOP, lineEndX, lineEndY));
-        }
+        BoxConnectionPoint from = new BoxConnectionPoint(bottomUp ? BoxSide.TOP : BoxSide.BOTTOM, lineStartX, lineStartY);
+        BoxConnectionPoint to = new BoxConnectionPoint(bottomUp ? BoxSide.BOTTOM : BoxSide.TOP, lineEndX, lineEndY);
+        PrintableTreeNode node = layoutArena.node(nodeId);
+        addDecoration(() -> node.decorateParentConnector(parentRelation, canvas, from, to));
     }
 
     /**
-     * Draws the sibling nodes recursively.
+     * Puts the siblings of the given node on the stack to be drawn.
+     * <p>
+     * The outer siblings will be drawn first, so their connectors cover the full stem and bus below the parent, and the connectors of the inner siblings only
+     * add their drop lines (see {@link TextCanvas#drawLines(java.util.Collection)}).
      * 
-     * @param canvas
-     * @param key
-     * @param info
+     * @param stack nodes to be drawn
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @param widthOffset horizontal offset (depends on the remainder of the tree)
      */
-    private final void drawSiblings(TextCanvas canvas, NodeKey key, NodeFormatInfo info, int widthOffset) {
-        int numberOfSiblings = info.siblingNodeKeys().length;
-        for (int i = 0; i < numberOfSiblings / 2; i++) {
-            NodeKey siblingKey = key.sibling(i);
-            NodeFormatInfo siblingInfo = nodeFormatInfoCache.get(siblingKey);
-            PrintableTreeNode sibling = siblingInfo.node();
-            if (sibling != PrintableTreeNode.MISSING_SIBLING) {
-                drawSubTree(canvas, siblingKey, new DefaultParentRelation(key, numberOfSiblings, i), widthOffset);
-            }
+    private final void pushSiblings(IntStack stack, int nodeId, int widthOffset) {
+        int numberOfSiblings = layoutArena.numberOfSiblings(nodeId);
+        int mid = numberOfSiblings / 2;
+        // reverse order: the last sibling pushed will be drawn first
+        pushSibling(stack, nodeId, mid, widthOffset);
+        for (int i = mid + 1; i < numberOfSiblings; i++) {
+            pushSibling(stack, nodeId, i, widthOffset);
         }
-        for (int i = numberOfSiblings - 1; i > (numberOfSiblings / 2); i--) {
-            NodeKey siblingKey = key.sibling(i);
-            NodeFormatInfo siblingInfo = nodeFormatInfoCache.get(siblingKey);
-            PrintableTreeNode sibling = siblingInfo.node();
-            if (sibling != PrintableTreeNode.MISSING_SIBLING) {
-                drawSubTree(canvas, siblingKey, new DefaultParentRelation(key, numberOfSiblings, i), widthOffset);
-            }
+        for (int i = mid - 1; i >= 0; i--) {
+            pushSibling(stack, nodeId, i, widthOffset);
         }
-        int mid = numberOfSiblings / 2;
-        NodeKey siblingKey = key.sibling(mid);
-        NodeFormatInfo siblingInfo = nodeFormatInfoCache.get(siblingKey);
-        PrintableTreeNode sibling = siblingInfo.node();
-        if (sibling != PrintableTreeNode.MISSING_SIBLING) {
-            drawSubTree(canvas, siblingKey, new DefaultParentRelation(key, numberOfSiblings, mid), widthOffset);
+    }
+
+    /**
+     * Puts the sibling with the given index on the stack unless the sibling is missing
+     * 
+     * @param stack nodes to be drawn
+     * @param nodeId id of the parent node in the {@link #layoutArena}
+     * @param siblingIdx
+     * @param widthOffset horizontal offset (depends on the remainder of the tree)
+     */
+    private void pushSibling(IntStack stack, int nodeId, int siblingIdx, int widthOffset) {
+        int siblingId = layoutArena.siblingId(nodeId, siblingIdx);
+        if (!layoutArena.isMissing(siblingId)) {
+            stack.push(siblingId);
+            stack.push(widthOffset);
         }
     }
 
@@ -349,16 +357,15 @@ public class VerticalTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy
      * Computes the vertical position of the connector start between parent and sibling
      * 
      * @param canvas
-     * @param parentKey
-     * @param parentInfo
+     * @param parentId id of the parent node in the {@link #layoutArena}
      * @return vertical position to place the line start point of the connector
      */
-    private final int computeConnectorStartY(TextCanvas canvas, NodeKey parentKey, NodeFormatInfo parentInfo) {
+    private final int computeConnectorStartY(TextCanvas canvas, int parentId) {
         if (bottomUp) {
-            return computeAbsPositionY(canvas, parentKey) - 1;
+            return computeAbsPositionY(canvas, parentId) - 1;
         }
         else {
-            return computeAbsPositionY(canvas, parentKey) + parentInfo.positionY() + parentInfo.simpleHeight();
+            return computeAbsPositionY(canvas, parentId) + layoutArena.positionY(parentId) + layoutArena.simpleHeight(parentId);
         }
     }
 
@@ -366,15 +373,15 @@ public class VerticalTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy
      * Computes the vertical position of the connector end between parent and sibling
      * 
      * @param heightOffset
-     * @param info
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @return vertical position to place the line end point of the connector
      */
-    private final int computeConnectorEndY(int heightOffset, NodeFormatInfo info) {
+    private final int computeConnectorEndY(int heightOffset, int nodeId) {
         if (bottomUp) {
-            return heightOffset + info.positionY() + info.simpleHeight();
+            return heightOffset + layoutArena.positionY(nodeId) + layoutArena.simpleHeight(nodeId);
         }
         else {
-            return heightOffset + info.positionY() - 1;
+            return heightOffset + layoutArena.positionY(nodeId) - 1;
         }
     }
 
@@ -382,17 +389,14 @@ public class VerticalTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy
      * Computes the node's absolute upper left corner's vertical position
      * 
      * @param canvas
-     * @param key
+     * @param nodeId id of the node in the {@link #layoutArena}
      * @return absolute Y of the upper left corner
      */
-    private int computeAbsPositionY(TextCanvas canvas, NodeKey key) {
-        int res = 0;
-        for (int i = 0; i < key.length() - 1; i++) {
-            res = res + levelMaxSimpleNodeHeight.get(i) + treeLayoutConfig.verticalSpacing();
-        }
+    private int computeAbsPositionY(TextCanvas canvas, int nodeId) {
+        int res = levelMaxSimpleNodeHeight.offset(layoutArena.depth(nodeId) - 1);
         if (bottomUp) {
-            int drawingHeight = canvas.getHeight() - frameConfig.indentTop() - frameConfig.indentBottom();
-            res = drawingHeight - res - nodeFormatInfoCache.get(key).simpleHeight();
+            int drawingHeight = getCanvasHeight(canvas) - frameConfig.indentTop() - frameConfig.indentBottom();
+            res = drawingHeight - res - layoutArena.simpleHeight(nodeId);
         }
         res = res + frameConfig.indentTop();
         return res;
@@ -402,46 +406,47 @@ public class VerticalTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy
      * @return width of the canvas to draw the tree
      */
     private int computeCanvasWidth() {
-        return (!nodeFormatInfoCache.containsKey(NodeKey.root()) ? 1 : nodeFormatInfoCache.get(NodeKey.root()).totalWidth()) + frameConfig.indentLeft()
-                + frameConfig.indentRight();
+        return (layoutArena.size() == 0 ? 1 : layoutArena.totalWidth(LayoutArena.ROOT)) + frameConfig.indentLeft() + frameConfig.indentRight();
     }
 
     /**
      * @return height of the canvas to draw the tree
      */
     private int computeCanvasHeight() {
-        return (levelMaxSimpleNodeHeight.isEmpty() ? 1
-                : levelMaxSimpleNodeHeight.stream().collect(Collectors.summingInt(i -> i))
-                        + ((levelMaxSimpleNodeHeight.size() - 1) * treeLayoutConfig.verticalSpacing()))
+        return (levelMaxSimpleNodeHeight.isEmpty() ? 1 : levelMaxSimpleNodeHeight.totalSize())
                 + frameConfig.indentTop() + frameConfig.indentBottom();
     }
 
     @Override
     public CanvasFormat scan(PrintableTreeNode rootNode, int maxDepth) {
-        this.nodeFormatInfoCache.clear();
+        this.layoutArena.clear();
         this.levelMaxSimpleNodeHeight.clear();
         if (rootNode == null) {
-            nodeFormatInfoCache.put(NodeKey.root(), NULL_INFO);
+            layoutArena.initPseudoRoot(LayoutArena.PSEUDO_ROOT_NULL);
             updateMaxSimpleNodeHeight(0, 1);
         }
         else if (rootNode == PrintableTreeNode.MISSING_SIBLING) {
-            nodeFormatInfoCache.put(NodeKey.root(), MISSING_INFO);
+            layoutArena.initPseudoRoot(LayoutArena.PSEUDO_ROOT_MISSING);
             updateMaxSimpleNodeHeight(0, 1);
         }
         else if (maxDepth == 0) {
-            nodeFormatInfoCache.put(NodeKey.root(), MORE_INFO);
+            layoutArena.initPseudoRoot(LayoutArena.PSEUDO_ROOT_MORE);
             updateMaxSimpleNodeHeight(0, 1);
         }
         else {
-            getOrCreateNodeFormatInfo(NodeKey.root(), rootNode, DefaultParentRelation.NONE, maxDepth);
+            layoutArena.initRoot();
+            scanNode(LayoutArena.ROOT, rootNode, DefaultParentRelation.NONE, maxDepth);
         }
+        levelMaxSimpleNodeHeight.computeOffsets(treeLayoutConfig.verticalSpacing());
         return new CanvasFormat(computeCanvasWidth(), computeCanvasHeight());
     }
 
     @Override
     public void draw(TextCanvas canvas) {
         if (!handleDefaults(canvas)) {
-            drawSubTree(canvas, NodeKey.root(), DefaultParentRelation.NONE, frameConfig.indentLeft());
+            drawTree(canvas);
+            drawPendingNodes(canvas);
+            drawPendingConnectors(canvas);
         }
     }
 
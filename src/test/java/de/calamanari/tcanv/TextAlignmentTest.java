@@ -19,6 +19,8 @@
 
 package de.calamanari.tcanv;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -26,6 +28,7 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
@@ -70,6 +73,81 @@ class TextAlignmentTest {
 
     }
 
+    @Test
+    void testMeasureTrimmedDimensions() {
+
+        assertMeasuredDimensions(0, 0, "", 5, 5);
+        assertMeasuredDimensions(4, 1, null, 5, 5);
+        assertMeasuredDimensions(4, 2, "  abba  \n  baba", 5, 5);
+        assertMeasuredDimensions(8, 2, "  abba  \r\n\n \t \n  ali baba\n\r", 10, 5);
+        assertMeasuredDimensions(3, 2, "  abba  \n  ali baba", 3, 5);
+        assertMeasuredDimensions(8, 1, "  abba  \n  ali baba", 10, 1);
+        assertMeasuredDimensions(0, 2, "  abba  \n  ali baba", 0, 5);
+        assertMeasuredDimensions(4, 0, "  abba  \n  ali baba", 4, 0);
+
+        // only a small prefix is relevant for the limits
+        String payload = "x".repeat(100_000) + "\n" + "y".repeat(100_000);
+        assertMeasuredDimensions(25, 2, payload, 25, 5);
+        assertMeasuredDimensions(25, 1, payload, 25, 1);
+        assertMeasuredDimensions(100_000, 2, payload, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        assertArrayEquals(new int[] { 100_000, 2 }, TextAlignment.computeTrimmedDimensions(payload));
+
+        assertThrows(IllegalArgumentException.class, () -> TextAlignment.measureTrimmedDimensions("a", -1, 1));
+        assertThrows(IllegalArgumentException.class, () -> TextAlignment.measureTrimmedDimensions("a", 1, -1));
+
+    }
+
+    @Test
+    void testDisplayWidth() {
+
+        assertEquals(1, DisplayWidth.of('a'));
+        assertEquals(1, DisplayWidth.of('\u00e9'));
+        assertEquals(1, DisplayWidth.of('\u2500'));
+        assertEquals(2, DisplayWidth.of('\u65e5'));
+        assertEquals(2, DisplayWidth.of('\uac00'));
+        assertEquals(2, DisplayWidth.of('\uff21'));
+        assertEquals(2, DisplayWidth.of(0x1F600));
+        assertEquals(0, DisplayWidth.of(0x0301));
+        assertEquals(0, DisplayWidth.of(0x3099));
+        assertEquals(0, DisplayWidth.of(0x200D));
+        assertEquals(0, DisplayWidth.of(0xFE0F));
+
+        assertEquals(0, DisplayWidth.of(""));
+        assertEquals(11, DisplayWidth.of("ASCII label"));
+        assertEquals(7, DisplayWidth.of("Cafe\u0301 \u65e5"));
+        assertEquals(4, DisplayWidth.of("\ud83d\ude00\u65e5"));
+        assertEquals(2, DisplayWidth.of("x\u65e5y", 1, 2));
+
+        char[] cells = new char[6];
+        assertEquals(6, DisplayWidth.toCells("e\u0301\u65e5\u304b\u3099\u200Dx", 0, 7, cells, 0));
+        assertEquals("\u00e9\u65e5\uffff\u304c\uffffx", new String(cells));
+
+        assertMeasuredDimensions(6, 2, "\u65e5\u672c\u8a9e\n ab \u0301", 10, 5);
+        assertMeasuredDimensions(4, 1, "\u65e5\u672c\u8a9e\n ab", 4, 1);
+        assertArrayEquals(new int[] { 3, 2 }, TextAlignment.computeTrimmedDimensions("\ud83d\ude00x\n\uac00"));
+
+        assertEquals(Arrays.asList("\u65e5\u672c", "\u8a9e\u65e5", "\u672c\u8a9e"), TextAlignment.CENTER_CENTER.apply("\u65e5\u672c\u8a9e\u65e5\u672c\u8a9e", 5, 3));
+        assertEquals(Arrays.asList(" e\u0301 \u65e5  "), TextAlignment.CENTER_TOP.apply("e\u0301 \u65e5", 7, 1));
+        assertEquals(Arrays.asList("\u65e5\u672c   "), TextAlignment.LEFT_TOP.apply("\u65e5\u672c", 7, 1));
+
+        // a wide character that does not fit into a line at all will be skipped
+        assertEquals(Arrays.asList("", "x", ""), TextAlignment.LEFT_TOP.apply("\u65e5x", 1, 3));
+
+        assertEquals("\u65e5\u672c ", TextAlignment.center("\u65e5\u672c\u8a9e", 5));
+        assertEquals("  \u65e5\u672c", TextAlignment.rightAlign("\u65e5\u672c", 6));
+
+        char[] buffer = new char[10];
+        TextAlignment.LEFT_TOP.apply("\u65e5\u672c\u8a9e", 5, 2, buffer);
+        assertEquals("\u65e5\uffff\u672c\uffff \u8a9e\uffff   ", new String(buffer));
+
+    }
+
+    private static void assertMeasuredDimensions(int expectedWidth, int expectedHeight, String s, int maxWidth, int maxHeight) {
+        long dimensions = TextAlignment.measureTrimmedDimensions(s, maxWidth, maxHeight);
+        assertEquals(expectedWidth, TextAlignment.trimmedWidth(dimensions));
+        assertEquals(expectedHeight, TextAlignment.trimmedHeight(dimensions));
+    }
+
     @Test
     void testLabelAlignment() {
 
@@ -185,6 +263,54 @@ class TextAlignmentTest {
 
     }
 
+    @Test
+    void testLineScanning() {
+
+        assertEquals(List.of("ab", "cd"), TextAlignment.LEFT_TOP.apply("ab\r\ncd\r\n\n\r", 2, 2));
+        assertEquals(List.of("ab", "  ", "cd"), TextAlignment.LEFT_TOP.apply("ab\r\rcd", 2, 3));
+        assertEquals(List.of("  ", "  "), TextAlignment.LEFT_BOTTOM.apply("\n\n\n", 2, 2));
+        assertEquals(List.of("    ", "a   "), TextAlignment.LEFT_TOP.apply(" \n a", 4, 2));
+        assertEquals(List.of("abc", "de", "f  "), TextAlignment.LEFT_TOP.apply("abc  de f", 3, 3));
+        assertEquals(List.of("a", "b", ""), TextAlignment.LEFT_TOP.apply("ab", 1, 3));
+        assertEquals(List.of("nul", " l "), TextAlignment.CENTER_TOP.apply(null, 3, 2));
+        assertEquals(List.of("    ", " a  ", "    ", "    "), TextAlignment.CENTER_CENTER.apply("a", 4, 4));
+
+        // a single remaining space character won't be padded
+        assertEquals(List.of("   ", "ab", "   "), TextAlignment.CENTER_CENTER.apply("ab", 3, 3));
+        assertEquals(List.of("ab", "abc"), TextAlignment.RIGHT_TOP.apply("ab\nabc", 3, 2));
+
+        assertThrows(IllegalArgumentException.class, () -> TextAlignment.LEFT_TOP.apply("ab", -1, 1));
+        assertEquals(List.of(), TextAlignment.LEFT_TOP.apply("ab", -1, 0));
+
+    }
+
+    @Test
+    void testApplyToBuffer() {
+
+        String label = "Fluffy, Tuffy, and Muffy\nwent to town.\nThey all died\n  in a terrible accident.";
+        for (TextAlignment alignment : TextAlignment.values()) {
+            char[] buffer = new char[25 * 10 + 1];
+            Arrays.fill(buffer, '#');
+            alignment.apply(label, 25, 10, buffer);
+            StringBuilder sb = new StringBuilder();
+            for (String line : alignment.apply(label, 25, 10)) {
+                sb.append(line).append(" ".repeat(25 - line.length()));
+            }
+            assertEquals(sb.append('#').toString(), new String(buffer));
+
+            List<String> lines = new ArrayList<>();
+            alignment.apply(label, 25, 10, (lineIdx, text, from, to, offset, length) -> {
+                assertEquals(lines.size(), lineIdx);
+                assertSame(label, text);
+                lines.add(" ".repeat(offset) + text.substring(from, to) + " ".repeat(length - offset - (to - from)));
+            });
+            assertEquals(alignment.apply(label, 25, 10), lines);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> TextAlignment.LEFT_TOP.apply("ab", 3, 3, new char[8]));
+
+    }
+
     private static String combine(List<String> lines) {
         return lines.stream().collect(Collectors.joining("\n")).replace(' ', '_');
     }
@@ -19,6 +19,23 @@
 
 package de.calamanari.tcanv;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,7 +50,10 @@ import static de.calamanari.tcanv.TextAlignment.RIGHT_BOTTOM;
 import static de.calamanari.tcanv.TextAlignment.RIGHT_CENTER;
 import static de.calamanari.tcanv.TextAlignment.RIGHT_TOP;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
@@ -395,6 +415,782 @@ class TextCanvasTest {
 
     }
 
+    @Test
+    void testFillSquarePartiallyOutside() {
+
+        TextCanvas canvas = new TextCanvas(6, 4, CanvasBoundCheckStrategy.IGNORE);
+
+        canvas.setCursor(3, 2);
+        canvas.fillSquare(5, 5, '#');
+
+        canvas.setCursor(-1, 0);
+        canvas.fillSquare(3, 2, 'X');
+
+        canvas.setCursor(0, 0);
+        canvas.write("ab");
+
+        assertEquals("""
+                ab....
+                ......
+                ...###
+                ...###""", canvas.export().replace(' ', '.'));
+
+        TextCanvas canvas2 = new TextCanvas(6, 4);
+        canvas2.setCursor(3, 2);
+        assertThrows(IndexOutOfBoundsException.class, () -> canvas2.fillSquare(5, 1, '#'));
+        assertThrows(IndexOutOfBoundsException.class, () -> canvas2.fillSquare(3, 3, '#'));
+
+        // nothing written, cursor unchanged
+        assertEquals(3, canvas2.getCursorX());
+        assertEquals(2, canvas2.getCursorY());
+        assertEquals("""
+                ......
+                ......
+                ......
+                ......""", canvas2.export().replace(' ', '.'));
+
+    }
+
+    @Test
+    void testDrawBoxCursor() {
+
+        TextCanvas canvas = new TextCanvas(10, 5, CanvasBoundCheckStrategy.IGNORE);
+
+        canvas.setCursor(1, 1);
+        canvas.drawBox(DefaultBoxStyle.THIN, 4, 3, null);
+        assertEquals(5, canvas.getCursorX());
+        assertEquals(2, canvas.getCursorY());
+
+        canvas.setCursor(6, 3);
+        canvas.drawBox(DefaultBoxStyle.THIN, 6, 2, null, true);
+        assertEquals(10, canvas.getCursorX());
+        assertEquals(4, canvas.getCursorY());
+
+        canvas.setCursor(-8, 1);
+        canvas.drawBox(DefaultBoxStyle.THIN, 5, 3, null);
+        assertEquals(-4, canvas.getCursorX());
+        assertEquals(2, canvas.getCursorY());
+
+        assertEquals("""
+                ..........
+                .+--+.....
+                .|..|.....
+                .+--+.+---
+                ......+---""", canvas.export().replace(' ', '.'));
+
+    }
+
+    @Test
+    void testDrawLinePartiallyOutside() {
+
+        TextCanvas canvas = new TextCanvas(24, 5, CanvasBoundCheckStrategy.IGNORE);
+        canvas.drawLine(1, -4, 5, 1, DefaultConnectorEndType.RIGHT_PLAIN, DefaultConnectorEndType.LEFT_ARROW, CharacterConflictResolver.OVERWRITE);
+        canvas.drawLine(-3, -2, 30, -2, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.RIGHT_PLAIN);
+        canvas.drawLine(-3, 3, 30, 3, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.RIGHT_PLAIN);
+        canvas.drawLine(20, 2, 30, 2, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.RIGHT_ARROW);
+        canvas.drawLine(26, 4, 30, 4, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.RIGHT_PLAIN);
+
+        assertEquals("""
+                ...|....................
+                ...+->..................
+                ....................----
+                ------------------------
+                ........................""", canvas.export().replace(' ', '.'));
+
+        TextCanvas canvas2 = new TextCanvas(13, 8, CanvasBoundCheckStrategy.IGNORE);
+        canvas2.drawLine(8, 7, 0, -1, DefaultConnectorEndType.BOTTOM_PLUS, DefaultConnectorEndType.LEFT_PLUS);
+
+        assertEquals("""
+                ........|....
+                ........|....
+                ........|....
+                ........|....
+                ........|....
+                ........|....
+                ........|....
+                ........+....""", canvas2.export().replace(' ', '.'));
+
+        TextCanvas canvas3 = new TextCanvas(10, 3, CanvasBoundCheckStrategy.ERROR);
+        assertThrowsExactly(IndexOutOfBoundsException.class,
+                () -> canvas3.drawLine(12, 2, 15, 2, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.RIGHT_PLAIN));
+        assertThrowsExactly(IndexOutOfBoundsException.class,
+                () -> canvas3.drawLine(3, 1, 15, 1, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.RIGHT_PLAIN));
+
+        assertEquals("""
+                ..........
+                ...-......
+                ..........""", canvas3.export().replace(' ', '.'));
+
+    }
+
+    @Test
+    void testBulkWrite() {
+
+        TextCanvas canvas = new TextCanvas(8, 4, CanvasBoundCheckStrategy.IGNORE);
+
+        canvas.fill(-2, -1, 5, 3, '#');
+        canvas.fill(6, 2, 5, 5, ':');
+        canvas.fill(4, 0, 0, 3, 'X');
+
+        canvas.setCursor(3, 1);
+        canvas.write("--abc--".toCharArray(), 2, 3);
+        assertEquals(6, canvas.getCursorX());
+        canvas.write(new StringBuilder("xyz"), 1, 3);
+        assertEquals(8, canvas.getCursorX());
+
+        canvas.setCursor(1, 3);
+        canvas.write("0123456789", 2, 10);
+        canvas.setCursor(-1, 2);
+        canvas.write("??", 0, 2);
+
+        assertEquals("""
+                ###.....
+                ###abcyz
+                ......::
+                .2345678""", canvas.export().replace(' ', '.'));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> canvas.write("abc", 2, 4));
+        assertThrows(IndexOutOfBoundsException.class, () -> canvas.write(new char[3], -1, 2));
+
+        TextCanvas canvas2 = new TextCanvas(8, 4);
+        canvas2.fill(0, 0, 8, 4, '.');
+        assertThrows(IndexOutOfBoundsException.class, () -> canvas2.fill(7, 0, 2, 1, '#'));
+        assertThrows(IndexOutOfBoundsException.class, () -> canvas2.fill(0, -1, 1, 1, '#'));
+        canvas2.setCursor(6, 0);
+        assertThrows(IndexOutOfBoundsException.class, () -> canvas2.write("abc".toCharArray(), 0, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> canvas2.write(new StringBuilder("abc"), 0, 3));
+        canvas2.write("abc", 1, 3);
+
+        assertEquals("""
+                ......bc
+                ........
+                ........
+                ........""", canvas2.export());
+
+    }
+
+    @Test
+    void testClipStrategy() {
+
+        TextCanvas clipped = new TextCanvas(10, 5, CanvasBoundCheckStrategy.CLIP);
+        TextCanvas ignored = new TextCanvas(10, 5, CanvasBoundCheckStrategy.IGNORE);
+
+        for (TextCanvas canvas : new TextCanvas[] { clipped, ignored }) {
+            canvas.setCursor(-3, 0);
+            canvas.write("abcdef");
+            assertEquals(canvas == clipped ? 3 : -3, canvas.getCursorX());
+            canvas.setCursor(-2, 1);
+            canvas.fillSquare(4, 2, '#');
+            canvas.setCursor(6, -1);
+            canvas.drawBox(DefaultBoxStyle.HASH, 6, 4, "X", TextAlignment.LEFT_BOTTOM);
+            canvas.drawLine(-1_000_000, 4, 1_000_000, 4, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.RIGHT_PLAIN);
+            canvas.drawLine(4, -1_000_000, 4, 1_000_000, DefaultConnectorEndType.TOP_PLAIN, DefaultConnectorEndType.BOTTOM_PLAIN,
+                    LineGlyphSet.ASCII);
+        }
+
+        assertEquals("""
+                def.|.#...
+                ##..|.#X..
+                ##..|.####
+                ....|.....
+                ----+-----""", clipped.export().replace(' ', '.'));
+
+        assertEquals("""
+                ....|.#...
+                ....|.#X..
+                ....|.####
+                ....|.....
+                ----+-----""", ignored.export().replace(' ', '.'));
+
+        clipped.setCursor(-5, 2);
+        clipped.write("12345678".toCharArray(), 0, 8);
+        clipped.setCursor(-1, 3);
+        clipped.write(new StringBuilder("xyz"), 0, 3);
+        assertEquals(2, clipped.getCursorX());
+
+        assertEquals("""
+                def.|.#...
+                ##..|.#X..
+                678.|.####
+                yz..|.....
+                ----+-----""", clipped.export().replace(' ', '.'));
+
+        // C-shape with its vertical line left of the canvas
+        TextCanvas canvas = new TextCanvas(6, 4, CanvasBoundCheckStrategy.ERROR);
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> canvas.drawLine(1, 0, 1, 3, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.LEFT_PLAIN));
+        assertEquals("""
+                .-....
+                ......
+                ......
+                .-....""", canvas.export().replace(' ', '.'));
+
+        ignored.clear();
+        ignored.drawLine(1, 0, 1, 3, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.LEFT_PLAIN);
+        assertEquals("""
+                --........
+                ..........
+                ..........
+                --........
+                ..........""", ignored.export().replace(' ', '.'));
+
+    }
+
+    @Test
+    void testCursorAfterDrawingOutside() {
+
+        TextCanvas canvas = new TextCanvas(10, 5, CanvasBoundCheckStrategy.IGNORE);
+
+        // the cursor ends up where writing the last line of the label would leave it
+        canvas.setCursor(12, 1);
+        canvas.drawLabel(3, 2, "ab", TextAlignment.CENTER_TOP);
+        assertEquals(12, canvas.getCursorX());
+        assertEquals(2, canvas.getCursorY());
+
+        canvas.setCursor(-10, 0);
+        canvas.drawBox(DefaultBoxStyle.THIN, 5, 4, "x", TextAlignment.RIGHT_CENTER, true);
+        assertEquals(-6, canvas.getCursorX());
+        assertEquals(2, canvas.getCursorY());
+
+        canvas.setCursor(2, 7);
+        canvas.drawBox(DefaultBoxStyle.THIN, 5, 4, "x");
+        assertEquals(3, canvas.getCursorX());
+        assertEquals(9, canvas.getCursorY());
+
+        // the cursor ends up at the last cell of the line, behind it if this cell is inside the canvas
+        canvas.drawLine(3, 1, 15, 1, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.RIGHT_PLAIN);
+        assertEquals(15, canvas.getCursorX());
+        assertEquals(1, canvas.getCursorY());
+
+        canvas.drawLine(8, -3, 8, 2, DefaultConnectorEndType.TOP_PLAIN, DefaultConnectorEndType.BOTTOM_PLAIN);
+        assertEquals(9, canvas.getCursorX());
+        assertEquals(2, canvas.getCursorY());
+
+        canvas.drawLine(-4, 4, 3, 4, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.RIGHT_PLAIN);
+        assertEquals(4, canvas.getCursorX());
+        assertEquals(4, canvas.getCursorY());
+
+        assertEquals("""
+                ........|.
+                ...-----|-
+                ........|.
+                ..........
+                ----......""", canvas.export().replace(' ', '.'));
+
+    }
+
+    @Test
+    void testDrawLines() {
+
+        DefaultConnectorEndType[] endTypes = new DefaultConnectorEndType[] { DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.RIGHT_PLAIN,
+                DefaultConnectorEndType.TOP_PLAIN, DefaultConnectorEndType.BOTTOM_PLAIN, DefaultConnectorEndType.LEFT_PLUS, DefaultConnectorEndType.TOP_PLUS };
+
+        Random rand = new Random(4711);
+        for (LineGlyphSet lineGlyphSet : new LineGlyphSet[] { null, LineGlyphSet.UNICODE_LIGHT }) {
+            for (int run = 0; run < 200; run++) {
+                List<ConnectorSpec> connectors = new ArrayList<>();
+                for (int i = 0; i < 12; i++) {
+                    connectors.add(new ConnectorSpec(rand.nextInt(-5, 45), rand.nextInt(-5, 25), rand.nextInt(-5, 45), rand.nextInt(-5, 25),
+                            endTypes[rand.nextInt(endTypes.length)], endTypes[rand.nextInt(endTypes.length)], LineGlyphSet.ASCII));
+                }
+                TextCanvas expected = new TextCanvas(40, 20, CanvasBoundCheckStrategy.IGNORE);
+                TextCanvas canvas = new TextCanvas(40, 20, CanvasBoundCheckStrategy.IGNORE);
+                for (TextCanvas c : new TextCanvas[] { expected, canvas }) {
+                    c.setLineGlyphSet(lineGlyphSet);
+                    c.setCursor(3, 7);
+                    c.drawBox(DefaultBoxStyle.THIN, 12, 4, "label");
+                }
+                for (ConnectorSpec connector : connectors) {
+                    expected.drawLine(connector.fromX(), connector.fromY(), connector.toX(), connector.toY(), connector.connectorFrom(),
+                            connector.connectorTo(), connector.conflictResolver());
+                }
+                canvas.setCursor(1, 2);
+                canvas.drawLines(connectors);
+                assertEquals(expected.export(), canvas.export());
+                assertEquals(1, canvas.getCursorX());
+                assertEquals(2, canvas.getCursorY());
+            }
+        }
+
+        // fan-outs share stems and buses
+        for (LineGlyphSet lineGlyphSet : new LineGlyphSet[] { null, LineGlyphSet.UNICODE_LIGHT }) {
+            for (int run = 0; run < 100; run++) {
+                List<ConnectorSpec> connectors = new ArrayList<>();
+                int parentX = rand.nextInt(5, 35);
+                for (int i = 0; i < 30; i++) {
+                    if (run % 3 == 0) {
+                        connectors.add(new ConnectorSpec(parentX, 1, rand.nextInt(0, 40), rand.nextInt(5, 8), DefaultConnectorEndType.BOTTOM_PLAIN,
+                                DefaultConnectorEndType.TOP_PLAIN, LineGlyphSet.ASCII));
+                    }
+                    else if (run % 3 == 1) {
+                        // index layout: trunk below the parent, stubs to the siblings
+                        connectors.add(new ConnectorSpec(parentX + 2, rand.nextInt(3, 20), parentX, 2, DefaultConnectorEndType.LEFT_PLAIN,
+                                DefaultConnectorEndType.BOTTOM_PLAIN, LineGlyphSet.ASCII));
+                    }
+                    else {
+                        connectors.add(new ConnectorSpec(2, parentX / 2, rand.nextInt(9, 12), rand.nextInt(0, 20), DefaultConnectorEndType.RIGHT_PLAIN,
+                                DefaultConnectorEndType.LEFT_PLAIN, LineGlyphSet.ASCII));
+                    }
+                }
+                TextCanvas expected = new TextCanvas(40, 20, CanvasBoundCheckStrategy.IGNORE);
+                TextCanvas canvas = new TextCanvas(40, 20, CanvasBoundCheckStrategy.IGNORE);
+                expected.setLineGlyphSet(lineGlyphSet);
+                canvas.setLineGlyphSet(lineGlyphSet);
+                for (ConnectorSpec connector : connectors) {
+                    expected.drawLine(connector.fromX(), connector.fromY(), connector.toX(), connector.toY(), connector.connectorFrom(),
+                            connector.connectorTo(), connector.conflictResolver());
+                }
+                canvas.drawLines(connectors);
+                assertEquals(expected.export(), canvas.export());
+            }
+        }
+
+        // order matters, drawn one by one
+        TextCanvas canvas = new TextCanvas(6, 3);
+        canvas.drawLines(List.of(new ConnectorSpec(0, 1, 5, 1, DefaultConnectorEndType.RIGHT_PLAIN, DefaultConnectorEndType.LEFT_PLAIN),
+                new ConnectorSpec(2, 0, 2, 2, DefaultConnectorEndType.BOTTOM_ARROW, DefaultConnectorEndType.TOP_ARROW)));
+        assertEquals("""
+                ..A...
+                --|---
+                ..V...""", canvas.export().replace(' ', '.'));
+
+        TextCanvas canvas2 = new TextCanvas(6, 3);
+        List<ConnectorSpec> outside = List.of(new ConnectorSpec(0, 1, 3, 1, DefaultConnectorEndType.RIGHT_PLAIN, DefaultConnectorEndType.LEFT_PLAIN,
+                LineGlyphSet.ASCII), new ConnectorSpec(4, 1, 8, 1, DefaultConnectorEndType.RIGHT_PLAIN, DefaultConnectorEndType.LEFT_PLAIN, LineGlyphSet.ASCII));
+        assertThrows(IndexOutOfBoundsException.class, () -> canvas2.drawLines(outside));
+        assertEquals("""
+                ......
+                -----.
+                ......""", canvas2.export().replace(' ', '.'));
+
+        assertThrows(IllegalArgumentException.class, () -> new ConnectorSpec(0, 0, 1, 1, null, DefaultConnectorEndType.LEFT_PLAIN));
+
+    }
+
+    @Test
+    void testConflictResolver() {
+
+        assertEquals('x', CharacterConflictResolver.PRESERVE.resolve('x', '-'));
+        assertEquals('-', CharacterConflictResolver.PRESERVE.resolve(' ', '-'));
+        assertEquals('-', CharacterConflictResolver.OVERWRITE.resolve('x', '-'));
+        assertEquals(Character.valueOf('x'), CharacterConflictResolver.PRESERVE.apply('x', '-'));
+
+        assertEquals(CharacterConflictResolver.PRESERVE, CharConflictResolver.of(CharacterConflictResolver.PRESERVE));
+        assertThrows(IllegalArgumentException.class, () -> CharConflictResolver.of(null));
+
+        BinaryOperator<Character> boxedResolver = (existingChar, updateChar) -> existingChar == '|' ? Character.valueOf('+') : updateChar;
+        CharConflictResolver primitiveResolver = (existingChar, updateChar) -> existingChar == '|' ? '+' : updateChar;
+        assertEquals('+', CharConflictResolver.of(boxedResolver).resolve('|', '-'));
+
+        TextCanvas canvas1 = new TextCanvas(7, 3);
+        TextCanvas canvas2 = new TextCanvas(7, 3);
+        canvas1.drawLine(3, 0, 3, 2, DefaultConnectorEndType.TOP_PLAIN, DefaultConnectorEndType.BOTTOM_PLAIN);
+        canvas2.drawLine(3, 0, 3, 2, DefaultConnectorEndType.TOP_PLAIN, DefaultConnectorEndType.BOTTOM_PLAIN);
+        canvas1.drawLine(0, 1, 6, 1, DefaultConnectorEndType.RIGHT_PLAIN, DefaultConnectorEndType.LEFT_ARROW, boxedResolver);
+        canvas2.drawLine(0, 1, 6, 1, DefaultConnectorEndType.RIGHT_PLAIN, DefaultConnectorEndType.LEFT_ARROW, primitiveResolver);
+
+        assertEquals("""
+                ...|...
+                ---+-->
+                ...|...""", canvas1.export().replace(' ', '.'));
+        assertEquals(canvas1.export(), canvas2.export());
+
+    }
+
+    @Test
+    void testSparseStorage() {
+
+        TextCanvas dense = new TextCanvas(new CanvasFormat(300, 70), CanvasBoundCheckStrategy.IGNORE, CanvasStorage.DENSE);
+        TextCanvas sparse = new TextCanvas(new CanvasFormat(300, 70), CanvasBoundCheckStrategy.IGNORE, CanvasStorage.SPARSE);
+
+        assertEquals(CanvasStorage.DENSE, dense.getStorage());
+        assertEquals(CanvasStorage.SPARSE, sparse.getStorage());
+
+        for (TextCanvas canvas : new TextCanvas[] { dense, sparse }) {
+            canvas.drawBox(DefaultBoxStyle.THIN, 300, 70, true);
+            canvas.setCursor(60, 10);
+            canvas.drawBox(DefaultBoxStyle.HASH, 80, 20, "Box 1\nacross tiles");
+            canvas.setCursor(200, 40);
+            canvas.fillSquare(95, 25, ':');
+            canvas.setCursor(210, 45);
+            canvas.drawBox(DefaultBoxStyle.DOUBLE, 30, 5, "Box 2", true);
+            canvas.drawLine(140, 20, 210, 47, DefaultConnectorEndType.RIGHT_ARROW, DefaultConnectorEndType.LEFT_PLAIN);
+            canvas.setCursor(290, 69);
+            canvas.write("overflowing text");
+            canvas.setCursor(5, 5);
+            assertEquals(' ', canvas.read(true));
+        }
+
+        assertEquals(dense.export(), sparse.export());
+
+        sparse.clear();
+        dense.clear();
+        assertEquals(dense.export(), sparse.export());
+
+        TiledCellBuffer buffer = new TiledCellBuffer(1000, 100);
+        buffer.fillSpan(0, 0, 1000, ' ');
+        buffer.copySpan(100, 50, "          ", 0, 10);
+        buffer.set(500, 99, ' ');
+        assertEquals(0, buffer.numberOfTiles());
+
+        buffer.copySpan(60, 50, "  ab  ", 0, 6);
+        assertEquals(1, buffer.numberOfTiles());
+        assertEquals('a', buffer.get(62, 50));
+        assertEquals('b', buffer.get(63, 50));
+        assertEquals(' ', buffer.get(64, 50));
+
+        buffer.fillSpan(0, 17, 1000, '-');
+        assertEquals(1 + (1000 + TiledCellBuffer.TILE_WIDTH - 1) / TiledCellBuffer.TILE_WIDTH, buffer.numberOfTiles());
+
+        buffer.clear();
+        assertEquals(0, buffer.numberOfTiles());
+        assertEquals(' ', buffer.get(62, 50));
+
+    }
+
+    @Test
+    void testCompactStorage() {
+
+        TextCanvas dense = new TextCanvas(new CanvasFormat(80, 20), CanvasBoundCheckStrategy.IGNORE, CanvasStorage.DENSE);
+        TextCanvas compact = new TextCanvas(new CanvasFormat(80, 20), CanvasBoundCheckStrategy.IGNORE, CanvasStorage.COMPACT);
+
+        assertEquals(CanvasStorage.COMPACT, compact.getStorage());
+
+        for (TextCanvas canvas : new TextCanvas[] { dense, compact }) {
+            canvas.drawBox(DefaultBoxStyle.THIN, 80, 20, true);
+            canvas.setCursor(5, 2);
+            canvas.drawBox(DefaultBoxStyle.DOUBLE, 30, 7, "Latin-1: \u00c4rger\nWide: 10 \u20ac");
+            canvas.setCursor(40, 12);
+            canvas.fillSquare(20, 3, '\u2592');
+            canvas.setCursor(60, 18);
+            canvas.write("\u00fcber \u2192 overflow");
+            canvas.setCursor(45, 13);
+            canvas.write("ok");
+            canvas.drawLine(34, 5, 40, 13, DefaultConnectorEndType.RIGHT_PLAIN, DefaultConnectorEndType.LEFT_ARROW);
+        }
+
+        assertEquals(dense.export(), compact.export());
+
+        CompactCellBuffer buffer = new CompactCellBuffer(100, 10);
+        buffer.clear();
+        buffer.copySpan(0, 1, "\u00c4\u00e4\u00d6\u00f6", 0, 4);
+        buffer.fillSpan(0, 2, 100, '\u00b7');
+        assertEquals(0, buffer.numberOfWideRows());
+        assertEquals('\u00c4', buffer.get(0, 1));
+        assertEquals('\u00b7', buffer.get(99, 2));
+
+        buffer.copySpan(10, 3, new char[] { 'a', 'b', '\u20ac', 'c' }, 0, 4);
+        buffer.set(50, 4, '\u2192');
+        assertEquals(2, buffer.numberOfWideRows());
+        assertEquals("ab\u20acc", String.valueOf(new char[] { buffer.get(10, 3), buffer.get(11, 3), buffer.get(12, 3), buffer.get(13, 3) }));
+        assertEquals('\u2192', buffer.get(50, 4));
+        assertEquals(' ', buffer.get(51, 4));
+
+        buffer.clear();
+        assertEquals(0, buffer.numberOfWideRows());
+        assertEquals(' ', buffer.get(50, 4));
+
+    }
+
+    @Test
+    void testOffHeapStorage() throws IOException {
+
+        CanvasFormat format = new CanvasFormat(120, 40);
+
+        try (Arena arena = Arena.ofConfined()) {
+            TextCanvas[] canvases = new TextCanvas[] { new TextCanvas(format, CanvasBoundCheckStrategy.IGNORE, CanvasStorage.DENSE),
+                    new TextCanvas(format, CanvasBoundCheckStrategy.IGNORE, CanvasStorage.OFF_HEAP),
+                    new TextCanvas(format, CanvasBoundCheckStrategy.IGNORE, CanvasStorage.MAPPED_FILE),
+                    new TextCanvas(format, CanvasBoundCheckStrategy.IGNORE, arena) };
+
+            assertEquals(CanvasStorage.OFF_HEAP, canvases[1].getStorage());
+            assertEquals(CanvasStorage.MAPPED_FILE, canvases[2].getStorage());
+            assertEquals(CanvasStorage.OFF_HEAP, canvases[3].getStorage());
+
+            for (TextCanvas canvas : canvases) {
+                canvas.drawBox(DefaultBoxStyle.THIN, 120, 40, true);
+                canvas.setCursor(10, 5);
+                canvas.drawBox(DefaultBoxStyle.DOUBLE, 40, 10, "Box 1\n\u00c4rger \u20ac \ud83d\ude00");
+                canvas.setCursor(70, 20);
+                canvas.fillSquare(60, 25, ':');
+                canvas.setCursor(75, 25);
+                canvas.drawBox(DefaultBoxStyle.HASH, 30, 5, "Box 2", true);
+                canvas.drawLine(49, 10, 75, 27, DefaultConnectorEndType.RIGHT_ARROW, DefaultConnectorEndType.LEFT_PLAIN);
+                canvas.setCursor(110, 39);
+                canvas.write("overflowing text");
+            }
+
+            String expected = canvases[0].export();
+            for (TextCanvas canvas : canvases) {
+                assertEquals(expected, canvas.export());
+
+                Path file = Files.createTempFile("TextCanvasTest-", ".txt");
+                try {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        canvas.export(channel);
+                    }
+                    assertEquals(expected, Files.readString(file, StandardCharsets.UTF_8));
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        canvas.export(channel, true);
+                    }
+                    assertEquals(expected.lines().map(String::stripTrailing).collect(Collectors.joining("\n")), Files.readString(file, StandardCharsets.UTF_8));
+                }
+                finally {
+                    Files.delete(file);
+                }
+
+                canvas.clear();
+                assertEquals(canvases[0].export(), canvas.export());
+            }
+        }
+
+        CanvasFormat hugeFormat = new CanvasFormat(50_000, 50_000);
+        assertThrows(IllegalArgumentException.class, () -> new TextCanvas(hugeFormat, CanvasBoundCheckStrategy.ERROR, (Arena) null));
+        assertThrows(IllegalArgumentException.class, () -> new SegmentCellBuffer(MemorySegment.ofArray(new char[10]), 10, 2));
+
+    }
+
+    @Test
+    void testLabelPadding() {
+
+        TextCanvas canvas = new TextCanvas(new CanvasFormat(12, 5), CanvasBoundCheckStrategy.IGNORE);
+        canvas.fill(0, 0, 12, 5, '.');
+
+        // opaque: the padding will be written
+        canvas.setCursor(0, 0);
+        canvas.drawLabel(5, 2, "ab", TextAlignment.CENTER_TOP);
+        assertEquals(5, canvas.getCursorX());
+        assertEquals(1, canvas.getCursorY());
+
+        // transparent: only the visible text will be written
+        canvas.setCursor(6, 0);
+        canvas.drawBox(DefaultBoxStyle.THIN, 6, 3, " x ", TextAlignment.RIGHT_CENTER, true);
+        assertEquals(11, canvas.getCursorX());
+        assertEquals(1, canvas.getCursorY());
+
+        // the box left of the canvas won't be filled, but the label will be written with its padding
+        canvas.setCursor(-1, 2);
+        canvas.drawBox(DefaultBoxStyle.THIN, 6, 3, "abcdef", TextAlignment.LEFT_CENTER);
+        assertEquals(4, canvas.getCursorX());
+        assertEquals(3, canvas.getCursorY());
+
+        assertEquals("""
+                 ab  .+----+
+                     .|...x|
+                ----+.+----+
+                abcd|.......
+                ----+.......""", canvas.export());
+
+    }
+
+    @Test
+    void testArrayStorageLimit() {
+
+        CanvasFormat largest = new CanvasFormat((int) (CanvasStorage.MAX_ARRAY_CELLS / 2), 2);
+        CanvasFormat tooLarge = new CanvasFormat(46341, 46341);
+
+        for (CanvasStorage storage : CanvasStorage.values()) {
+            assertTrue(storage.supports(largest));
+            assertEquals(storage != CanvasStorage.DENSE && storage != CanvasStorage.COMPACT, storage.supports(tooLarge));
+        }
+
+        // fails before allocating any memory, the default constructors fall back to OFF_HEAP instead
+        assertThrows(IllegalArgumentException.class, () -> new TextCanvas(tooLarge, CanvasBoundCheckStrategy.IGNORE, CanvasStorage.DENSE));
+        assertThrows(IllegalArgumentException.class, () -> new TextCanvas(tooLarge, CanvasBoundCheckStrategy.IGNORE, CanvasStorage.COMPACT));
+
+    }
+
+    @Test
+    void testCreateView() {
+
+        assertTrue(CanvasStorage.DENSE.supportsConcurrentWrites());
+        assertFalse(CanvasStorage.COMPACT.supportsConcurrentWrites());
+        assertFalse(CanvasStorage.SPARSE.supportsConcurrentWrites());
+        assertTrue(CanvasStorage.OFF_HEAP.supportsConcurrentWrites());
+        assertTrue(CanvasStorage.MAPPED_FILE.supportsConcurrentWrites());
+
+        for (CanvasStorage storage : CanvasStorage.values()) {
+            TextCanvas canvas = new TextCanvas(new CanvasFormat(20, 3), CanvasBoundCheckStrategy.ERROR, storage);
+            canvas.setLineGlyphSet(LineGlyphSet.UNICODE_LIGHT);
+            canvas.setCursor(5, 1);
+            TextCanvas view = canvas.createView();
+            assertEquals(canvas.getFormat(), view.getFormat());
+            assertEquals(storage, view.getStorage());
+            assertEquals(LineGlyphSet.UNICODE_LIGHT, view.getLineGlyphSet());
+            assertEquals(0, view.getCursorX());
+            assertEquals(0, view.getCursorY());
+            view.setCursor(1, 2);
+            view.write("view");
+            canvas.write("canvas");
+            assertEquals(11, canvas.getCursorX());
+            assertEquals(5, view.getCursorX());
+            String expected = "                    \n     canvas         \n view               ";
+            assertEquals(expected, canvas.export());
+            assertEquals(expected, view.export());
+            assertThrows(IndexOutOfBoundsException.class, () -> view.write("too long for the canvas"));
+        }
+
+    }
+
+    @Test
+    void testStreamingExport() throws IOException {
+
+        for (CanvasStorage storage : CanvasStorage.values()) {
+            TextCanvas canvas = new TextCanvas(new CanvasFormat(100, 12), CanvasBoundCheckStrategy.IGNORE, storage);
+            canvas.setCursor(2, 1);
+            canvas.drawBox(DefaultBoxStyle.THIN, 20, 5, "ASCII");
+            canvas.setCursor(40, 6);
+            canvas.drawBox(DefaultBoxStyle.DOUBLE, 30, 5, "\u00c4rger \u20ac");
+            canvas.drawLine(21, 3, 40, 8, DefaultConnectorEndType.LEFT_PLAIN, DefaultConnectorEndType.RIGHT_ARROW);
+
+            String expected = canvas.export();
+            String expectedTrimmed = expected.lines().map(String::stripTrailing).collect(Collectors.joining("\n"));
+
+            StringBuilder sb = new StringBuilder();
+            canvas.export(sb);
+            assertEquals(expected, sb.toString());
+
+            sb.setLength(0);
+            canvas.export(sb, true);
+            assertEquals(expectedTrimmed, sb.toString());
+
+            StringWriter sw = new StringWriter();
+            canvas.export(sw, true);
+            assertEquals(expectedTrimmed, sw.toString());
+
+            StringBuffer sbuf = new StringBuffer();
+            canvas.export(sbuf);
+            assertEquals(expected, sbuf.toString());
+
+            for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.US_ASCII, StandardCharsets.UTF_16 }) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                canvas.export(bos, charset);
+                assertEquals(new String(expected.getBytes(charset), charset), new String(bos.toByteArray(), charset));
+
+                bos.reset();
+                canvas.export(bos, charset, true);
+                assertEquals(new String(expectedTrimmed.getBytes(charset), charset), new String(bos.toByteArray(), charset));
+            }
+        }
+
+    }
+
+    @Test
+    void testWideCharacters() throws IOException {
+
+        for (CanvasStorage storage : CanvasStorage.values()) {
+            TextCanvas canvas = new TextCanvas(new CanvasFormat(10, 4), CanvasBoundCheckStrategy.CLIP, storage);
+
+            // the wide characters are written through a view, the canvas must still know about the continuation cells
+            TextCanvas view = canvas.createView();
+            view.write("a\u65e5b");
+            assertEquals(4, view.getCursorX());
+            view.setCursor(5, 0);
+            view.write("\u672c\u672c");
+            assertEquals(9, view.getCursorX());
+
+            // overwriting the first half of a wide character leaves a blank behind
+            canvas.setCursor(5, 0);
+            canvas.write('y');
+
+            // a wide character that does not fit completely will be replaced with a blank
+            canvas.setCursor(9, 1);
+            canvas.write("\u65e5");
+            assertEquals(10, canvas.getCursorX());
+            canvas.setCursor(-1, 1);
+            canvas.write("\u65e5x\ud83d\ude00");
+            assertEquals(4, canvas.getCursorX());
+
+            canvas.setCursor(0, 2);
+            canvas.drawBox(DefaultBoxStyle.THIN, 10, 2);
+
+            // combining marks will be composed with their base character if possible, zero-width characters take no cell
+            canvas.setCursor(1, 3);
+            canvas.write("e\u0301\u304b\u3099\u200d");
+            assertEquals(4, canvas.getCursorX());
+
+            canvas.setCursor(1, 0);
+            assertEquals('\u65e5', canvas.read(true));
+            assertEquals(DisplayWidth.WIDE_CHAR_CONTINUATION, canvas.read(false));
+
+            String expected = "a\u65e5b y \u672c \n x\ud83d\ude00      \n+--------+\n+\u00e9\u304c-----+";
+            assertEquals(expected, canvas.export());
+
+            String expectedTrimmed = expected.lines().map(String::stripTrailing).collect(Collectors.joining("\n"));
+            StringBuilder sb = new StringBuilder();
+            canvas.export(sb, true);
+            assertEquals(expectedTrimmed, sb.toString());
+
+            StringWriter sw = new StringWriter();
+            canvas.export(sw);
+            assertEquals(expected, sw.toString());
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            canvas.export(bos, StandardCharsets.UTF_8);
+            assertEquals(expected, bos.toString(StandardCharsets.UTF_8));
+
+            Path file = Files.createTempFile("TextCanvasTest-", ".txt");
+            try {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    canvas.export(channel);
+                }
+                assertEquals(expected, Files.readString(file, StandardCharsets.UTF_8));
+            }
+            finally {
+                Files.delete(file);
+            }
+
+            TextCanvas boxCanvas = new TextCanvas(new CanvasFormat(8, 4), CanvasBoundCheckStrategy.ERROR, storage);
+            boxCanvas.drawBox(DefaultBoxStyle.THIN, 8, 4, "\u65e5\u672c\u8a9e\u65e5\u672c");
+            assertEquals("+------+\n|\u65e5\u672c\u8a9e|\n| \u65e5\u672c |\n+------+", boxCanvas.export());
+            boxCanvas.setCursor(0, 3);
+            assertThrows(IndexOutOfBoundsException.class, () -> boxCanvas.write("1234567\u65e5"));
+            boxCanvas.setCursor(7, 3);
+            assertThrows(IndexOutOfBoundsException.class, () -> boxCanvas.write('\u65e5'));
+
+            // a single wide character takes two cells, copying the cells must skip the continuation
+            TextCanvas charCanvas = new TextCanvas(new CanvasFormat(6, 2), CanvasBoundCheckStrategy.IGNORE, storage);
+            charCanvas.write('\u65e5');
+            assertEquals(2, charCanvas.getCursorX());
+            charCanvas.write('x');
+            charCanvas.setCursor(5, 0);
+            charCanvas.write('\u672c');
+            assertEquals(6, charCanvas.getCursorX());
+            for (int x = 0; x < 6; x++) {
+                charCanvas.setCursor(x, 0);
+                int ch = charCanvas.read(false);
+                if (ch != DisplayWidth.WIDE_CHAR_CONTINUATION) {
+                    charCanvas.setCursor(x, 1);
+                    charCanvas.write((char) ch);
+                }
+            }
+            assertEquals("\u65e5x   \n\u65e5x   ", charCanvas.export());
+
+            // overwriting the second half of a wide character leaves a blank in front
+            TextCanvas cutCanvas = new TextCanvas(new CanvasFormat(4, 6), CanvasBoundCheckStrategy.CLIP, storage);
+            for (int y = 0; y < 6; y++) {
+                cutCanvas.setCursor(0, y);
+                cutCanvas.write("\u4e2d\u6587");
+            }
+            cutCanvas.setCursor(1, 0);
+            cutCanvas.write("x");
+            cutCanvas.setCursor(1, 1);
+            cutCanvas.write(new StringBuilder("x"), 0, 1);
+            cutCanvas.setCursor(1, 2);
+            cutCanvas.write(new char[] { 'x' }, 0, 1);
+            cutCanvas.setCursor(1, 3);
+            cutCanvas.write('x');
+            cutCanvas.setCursor(1, 4);
+            cutCanvas.write("\u2192");
+            cutCanvas.setCursor(1, 5);
+            cutCanvas.drawLabel(1, 1, "x", TextAlignment.LEFT_TOP);
+            cutCanvas.setCursor(3, 5);
+            cutCanvas.write('y');
+            assertEquals(" x\u6587\n x\u6587\n x\u6587\n x\u6587\n \u2192\u6587\n x y", cutCanvas.export());
+        }
+
+    }
+
     @Test
     void testTextAlignment() {
 
@@ -19,10 +19,18 @@
 
 package de.calamanari.tcanv.tp;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
@@ -30,8 +38,13 @@ import org.slf4j.LoggerFactory;
 
 import de.calamanari.tcanv.BoxConnectionPoint;
 import de.calamanari.tcanv.BoxStyle;
+import de.calamanari.tcanv.CanvasFormat;
+import de.calamanari.tcanv.CanvasStorage;
 import de.calamanari.tcanv.DefaultBoxStyle;
+import de.calamanari.tcanv.DisplayWidth;
 import de.calamanari.tcanv.FrameConfig;
+import de.calamanari.tcanv.LineGlyphSet;
+import de.calamanari.tcanv.TextAlignment;
 import de.calamanari.tcanv.TextCanvas;
 
 import static de.calamanari.tcanv.tp.TreeLayout.BOTTOM_UP;
@@ -41,8 +54,12 @@ import static de.calamanari.tcanv.tp.TreeLayout.INDEX_WIDE;
 import static de.calamanari.tcanv.tp.TreeLayout.LEFT_TO_RIGHT;
 import static de.calamanari.tcanv.tp.TreeLayout.RIGHT_TO_LEFT;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
@@ -2141,6 +2158,580 @@ class TreePrinterTest {
 
     }
 
+    @Test
+    void testSparseCanvasThreshold() {
+
+        TestTreeNode<?> root = setupTestTree(SimpleTreeNode.class);
+
+        for (TreeLayout layout : TreeLayout.values()) {
+            TextCanvas compactCanvas = new TreePrinter(layout.createDrawingPolicy(), Long.MAX_VALUE).print(root);
+            TextCanvas sparseCanvas = new TreePrinter(layout.createDrawingPolicy(), 0).print(root);
+            assertEquals(CanvasStorage.COMPACT, compactCanvas.getStorage());
+            assertEquals(CanvasStorage.SPARSE, sparseCanvas.getStorage());
+            assertEquals(compactCanvas.export(), sparseCanvas.export());
+        }
+
+        assertEquals(CanvasStorage.COMPACT, new TreePrinter(TreeLayout.TOP_DOWN).print(root).getStorage());
+
+    }
+
+    @Test
+    void testLineGlyphSets() {
+
+        SimpleTreeNode root = createTestNode(SimpleTreeNode.class, "root", createTestNode(SimpleTreeNode.class, "A"),
+                createTestNode(SimpleTreeNode.class, "B", createTestNode(SimpleTreeNode.class, "B1"), createTestNode(SimpleTreeNode.class, "B2")),
+                createTestNode(SimpleTreeNode.class, "C"));
+
+        for (TreeLayout layout : TreeLayout.values()) {
+            // ASCII glyphs must not change anything
+            assertEquals(new TreePrinter(layout.createDrawingPolicy()).print(root).export(),
+                    new TreePrinter(layout.createDrawingPolicy(), TreePrinter.DEFAULT_SPARSE_CANVAS_THRESHOLD, LineGlyphSet.ASCII).print(root).export());
+        }
+
+        String[] lines = new TreePrinter(TreeLayout.TOP_DOWN.createDrawingPolicy(), TreePrinter.DEFAULT_SPARSE_CANVAS_THRESHOLD, LineGlyphSet.UNICODE_LIGHT)
+                .print(root).export().split("\n");
+
+        assertEquals("|                  \u2502                 |", lines[4]);
+        assertEquals("|    \u250c\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u253c"
+                + "\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2500\u2510   |", lines[5]);
+        assertEquals("|              \u250c\u2500\u2500\u2500\u2534\u2500\u2500\u2510              |", lines[11]);
+
+        lines = new TreePrinter(TreeLayout.INDEX.createDrawingPolicy(), TreePrinter.DEFAULT_SPARSE_CANVAS_THRESHOLD, LineGlyphSet.UNICODE_HEAVY).print(root)
+                .export().split("\n");
+
+        assertEquals("|  \u2523\u2501\u2501|A|          |", lines[6]);
+        assertEquals("|  \u2503   \u2517\u2501\u2501|B2|     |", lines[18]);
+        assertEquals("|  \u2517\u2501\u2501|C|          |", lines[22]);
+
+        assertEquals('\u256c', LineGlyphSet.UNICODE_DOUBLE.resolve('\u2550', '\u2551'));
+        assertEquals('\u2569', LineGlyphSet.UNICODE_DOUBLE.resolve('\u255d', '\u255a'));
+        assertEquals('+', LineGlyphSet.ASCII.resolve('|', '-'));
+        assertEquals('+', LineGlyphSet.ASCII.resolve('+', 'x'));
+        assertEquals('x', LineGlyphSet.ASCII.resolve('-', 'x'));
+
+    }
+
+    @Test
+    void testPrintStreaming() throws IOException {
+
+        List<TreeLayoutConfig> configs = new ArrayList<>(Arrays.asList(TreeLayoutConfig.index(), TreeLayoutConfig.indexSlim(), TreeLayoutConfig.indexWide()));
+
+        Random rand = new Random(7);
+        for (int i = 0; i < 5; i++) {
+            configs.add(new TreeLayoutConfig(1 + rand.nextInt(5), rand.nextInt(4), 5 + rand.nextInt(20), 1 + rand.nextInt(5)));
+        }
+
+        List<TestTreeNode<?>> roots = new ArrayList<>();
+        roots.add(setupTestTree(SimpleTreeNode.class));
+        roots.add(setupTestTree(SpecialBoxStyleTreeNode.class));
+        roots.add(setupTestTree(NoBoxStyleTreeNode.class));
+        for (int i = 0; i < 30; i++) {
+            roots.add(createRandomTestTree(SimpleTreeNode.class, rand, 5));
+            roots.add(createRandomTestTree(SpecialBoxStyleTreeNode.class, rand, 5));
+            roots.add(createRandomTestTree(NoBoxStyleTreeNode.class, rand, 5));
+        }
+
+        for (TreeLayoutConfig config : configs) {
+            for (TestTreeNode<?> root : roots) {
+                FrameConfig frameConfig = new FrameConfig(DefaultBoxStyle.NONE, rand.nextInt(3), rand.nextInt(3), rand.nextInt(3), rand.nextInt(3));
+                boolean suppressConnectors = rand.nextInt(5) == 0;
+                LineGlyphSet lineGlyphSet = rand.nextBoolean() ? null : LineGlyphSet.UNICODE_LIGHT;
+                int maxDepth = rand.nextInt(3) == 0 ? 1 + rand.nextInt(4) : Integer.MAX_VALUE;
+                assertStreamingEqualsCanvas(new IndexTreeDrawingPolicy(frameConfig, config, suppressConnectors), lineGlyphSet, root, maxDepth);
+            }
+        }
+
+        IndexTreeDrawingPolicy policy = new IndexTreeDrawingPolicy(new FrameConfig(DefaultBoxStyle.NONE, 2, 1, 3, 2), TreeLayoutConfig.index(), false);
+        assertStreamingEqualsCanvas(policy, null, null, Integer.MAX_VALUE);
+        assertStreamingEqualsCanvas(policy, null, PrintableTreeNode.MISSING_SIBLING, Integer.MAX_VALUE);
+        assertStreamingEqualsCanvas(policy, null, roots.get(0), 0);
+
+        // the frame border of the default layout is omitted, the indentation is kept
+        StringBuilder sb = new StringBuilder();
+        new TreePrinter(TreeLayout.INDEX).printStreaming(createTestNode(SimpleTreeNode.class, "root", createTestNode(SimpleTreeNode.class, "A")),
+                Integer.MAX_VALUE, sb);
+        assertEquals("""
+
+                  +----+
+                  |root|
+                  +----+
+                   |
+                   |  +-+
+                   +--|A|
+                      +-+
+
+                """, sb.toString());
+
+        assertThrows(UnsupportedOperationException.class, () -> new TreePrinter(TreeLayout.TOP_DOWN).printStreaming(roots.get(0), Integer.MAX_VALUE, sb));
+
+    }
+
+    @Test
+    void testDeepTree() throws InterruptedException {
+
+        SimpleTreeNode root = new SimpleTreeNode("n");
+        SimpleTreeNode node = root;
+        for (int i = 1; i < 20_000; i++) {
+            SimpleTreeNode sibling = new SimpleTreeNode("n");
+            node.addSiblings(sibling);
+            node = sibling;
+        }
+
+        List<String> results = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+
+        // a small stack to ensure neither scan nor draw depend on the depth of the tree
+        Thread thread = new Thread(null, () -> {
+            try {
+                TextCanvas canvas = new TreePrinter(TreeLayout.TOP_DOWN).print(root, Integer.MAX_VALUE);
+                results.add(canvas.getWidth() + "x" + canvas.getHeight());
+                for (TreeLayout layout : TreeLayout.values()) {
+                    TreeDiagram diagram = new TreePrinter(layout).layout(root, Integer.MAX_VALUE);
+                    Iterator<CharSequence> lines = diagram.lines(diagram.getHeight() - 1);
+                    results.add(layout + ":" + diagram.getWidth() + "x" + diagram.getHeight() + ":" + lines.next().length());
+                }
+            }
+            catch (Throwable ex) {
+                errors.add(ex);
+            }
+        }, "deep-tree", 128 * 1024);
+        thread.start();
+        thread.join();
+
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals("[7x119999, TOP_DOWN:7x119999:7, BOTTOM_UP:7x119999:7, LEFT_TO_RIGHT:120001x5:120001, RIGHT_TO_LEFT:120001x5:120001, "
+                + "INDEX:80008x80002:80008, INDEX_SLIM:40006x60002:40006, INDEX_SLIM_NO_CONNECTORS:40006x60002:40006, INDEX_WIDE:200014x80002:200014]",
+                results.toString());
+
+    }
+
+    @Test
+    void testParallelScan() {
+
+        List<TestTreeNode<?>> roots = new ArrayList<>();
+        roots.add(createBroadTestTree(SimpleTreeNode.class, 3, 7));
+        roots.add(createBroadTestTree(SpecialBoxStyleTreeNode.class, 4, 5));
+        Random rand = new Random(19);
+        for (int i = 0; i < 4; i++) {
+            roots.add(createRandomTestTree(SimpleTreeNode.class, rand, 9));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (TreeLayout layout : TreeLayout.values()) {
+                TreePrinter printer = new TreePrinter(layout);
+                for (TestTreeNode<?> root : roots) {
+                    for (int maxDepth : new int[] { 3, Integer.MAX_VALUE }) {
+                        String expected = printer.print(root, maxDepth).export();
+                        assertEquals(expected, printer.print(root, maxDepth, pool).export());
+                        assertEquals(expected, printer.print(root, maxDepth, null).export());
+                    }
+                }
+                assertEquals(printer.print(null).export(), printer.print(null, Integer.MAX_VALUE, pool).export());
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+    }
+
+    @Test
+    void testParallelDraw() {
+
+        List<TestTreeNode<?>> roots = new ArrayList<>();
+        roots.add(createBroadTestTree(SimpleTreeNode.class, 3, 8));
+        roots.add(createBroadTestTree(NoBoxStyleTreeNode.class, 6, 5));
+        Random rand = new Random(23);
+        for (int i = 0; i < 2; i++) {
+            roots.add(createRandomTestTree(SpecialBoxStyleTreeNode.class, rand, 10));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (TreeLayout layout : Arrays.asList(TreeLayout.TOP_DOWN, BOTTOM_UP, LEFT_TO_RIGHT, RIGHT_TO_LEFT)) {
+                for (LineGlyphSet lineGlyphSet : Arrays.asList(null, LineGlyphSet.UNICODE_LIGHT)) {
+                    // the sparse canvas does not support concurrent writes, the nodes will be drawn sequentially
+                    for (long sparseCanvasThreshold : new long[] { Long.MAX_VALUE, 0L }) {
+                        TreePrinter printer = new TreePrinter(layout.createDrawingPolicy(), sparseCanvasThreshold, lineGlyphSet);
+                        for (TestTreeNode<?> root : roots) {
+                            for (int maxDepth : new int[] { 5, Integer.MAX_VALUE }) {
+                                TextCanvas canvas = printer.print(root, maxDepth, pool);
+                                assertEquals(sparseCanvasThreshold == 0L ? CanvasStorage.SPARSE : CanvasStorage.DENSE, canvas.getStorage());
+                                assertEquals(printer.print(root, maxDepth).export(), canvas.export());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+    }
+
+    @Test
+    void testOverlappingDecorations() {
+
+        OverlappingDecoratedTreeNode root = createTestNode(OverlappingDecoratedTreeNode.class, "root",
+                createTestNode(OverlappingDecoratedTreeNode.class, "A", createTestNode(OverlappingDecoratedTreeNode.class, "A1"),
+                        createTestNode(OverlappingDecoratedTreeNode.class, "A2")),
+                createTestNode(OverlappingDecoratedTreeNode.class, "B"));
+
+        // decorations will be drawn in drawing order, anything drawn afterwards (nodes, connectors, appendix) can overwrite them
+        assertEquals("""
+                +---------------------+
+                |                     |
+                |                +--+ |
+                |              +-|A1|*|
+                |              | +--+ |
+                |          +-+ |   #  |
+                |        +-|A|@+      |
+                |        | +-+ |      |
+                | +----+ |  #  | +--+ |
+                | |root|@+     +-|A2|*|
+                | +----+ |       +--+ |
+                |    #   |         #  |
+                |        |            |
+                |        |            |
+                |        |            |
+                |        | +-+        |
+                |        +-|B|*       |
+                |          +-+        |
+                +-----------#---------+""", new TreePrinter(LEFT_TO_RIGHT).print(root).export());
+
+        assertEquals("""
+                +----------------+
+                |                |
+                |          +-+ . |
+                |        +-|A|-. |
+                |        | +-+ . |
+                | +----+ |  #    |
+                | |root|@+       |
+                | +----+ |       |
+                |    #   | +-+   |
+                |        +-|B|*  |
+                |          +-+   |
+                +-----------#----+""", new TreePrinter(LEFT_TO_RIGHT).print(root, 2).export());
+
+        assertEquals("""
+                +----------------+
+                |     +----+     |
+                |     |root|*    |
+                |     +----+     |
+                |        @       |
+                |    +---+---+   |
+                |    |       |   |
+                |   +-+     +-+  |
+                |   |A|*    |B|* |
+                |   +-+     +-+  |
+                |    |       #   |
+                |   ...          |
+                +----------------+""", new TreePrinter(TreeLayout.TOP_DOWN).print(root, 2).export());
+
+        assertEquals("""
+                +-----------------+
+                | +----+          |
+                | |root|*         |
+                | +----+          |
+                |  | #            |
+                |  |  +-+         |
+                |  +-@|A|*        |
+                |  |  +-+         |
+                |  |   #|         |
+                |  |    +-...     |
+                |  |              |
+                |  |  +-+         |
+                |  +-@|B|*        |
+                |     +-+         |
+                |      #          |
+                +-----------------+""", new TreePrinter(INDEX).print(root, 2).export());
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (TreeLayout layout : TreeLayout.values()) {
+                TreePrinter printer = new TreePrinter(layout);
+                assertEquals(printer.print(root).export(), printer.print(root, Integer.MAX_VALUE, pool).export());
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+    }
+
+    @Test
+    void testNodeRepresentationCache() {
+
+        List<TestTreeNode<?>> roots = new ArrayList<>();
+        roots.add(createBroadTestTree(SimpleTreeNode.class, 3, 6));
+        roots.add(createBroadTestTree(SpecialBoxStyleTreeNode.class, 3, 5));
+        Random rand = new Random(29);
+        for (int i = 0; i < 4; i++) {
+            roots.add(createRandomTestTree(NoBoxStyleTreeNode.class, rand, 6));
+        }
+
+        NodeRepresentationCache cache = new NodeRepresentationCache(64);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (TreeLayout layout : TreeLayout.values()) {
+                TreePrinter printer = new TreePrinter(layout);
+                TreePrinter cachingPrinter = new TreePrinter(layout, cache);
+                for (TestTreeNode<?> root : roots) {
+                    String expected = printer.print(root).export();
+                    assertEquals(expected, cachingPrinter.print(root).export());
+                    assertEquals(expected, cachingPrinter.print(root, Integer.MAX_VALUE, pool).export());
+                    assertLayoutEqualsCanvas(cachingPrinter, root, 3);
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        assertTrue(cache.getHitCount() > cache.getMissCount());
+        assertTrue(cache.size() <= 64);
+
+        // shared among printers: the second printer does not render anything
+        cache.clear();
+        assertEquals(0, cache.size());
+        TestTreeNode<?> root = roots.get(0);
+        new TreePrinter(TreeLayout.TOP_DOWN, cache).print(root);
+        long missCount = cache.getMissCount();
+        // labels N1 .. N6
+        assertEquals(6, missCount);
+        assertEquals(6, cache.size());
+        new TreePrinter(TreeLayout.BOTTOM_UP, cache).print(root);
+        assertEquals(missCount, cache.getMissCount());
+
+        // least recently used entries get evicted
+        NodeRepresentationCache smallCache = new NodeRepresentationCache(2);
+        String expected = new TreePrinter(TreeLayout.TOP_DOWN).print(root).export();
+        assertEquals(expected, new TreePrinter(TreeLayout.TOP_DOWN, smallCache).print(root).export());
+        assertEquals(2, smallCache.size());
+        assertTrue(smallCache.getMissCount() > 6);
+
+        List<String> representation = cache.computeIfAbsent("x", 1, 1, TextAlignment.CENTER_CENTER, DefaultBoxStyle.NONE,
+                () -> new ArrayList<>(Arrays.asList("x")));
+        assertEquals(Arrays.asList("x"), representation);
+        assertThrows(UnsupportedOperationException.class, () -> representation.add("y"));
+        assertThrows(IllegalArgumentException.class, () -> new NodeRepresentationCache(0));
+
+        TreeDrawingPolicy customPolicy = new TreeDrawingPolicy() {
+
+            @Override
+            public CanvasFormat scan(PrintableTreeNode rootNode, int maxDepth) {
+                return new CanvasFormat(1, 1);
+            }
+
+            @Override
+            public void draw(TextCanvas canvas) {
+                // no-op
+            }
+        };
+        assertThrows(IllegalArgumentException.class, () -> new TreePrinter(customPolicy, Long.MAX_VALUE, null, cache));
+
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void testMeasureNodesOnce() throws IOException {
+        CountingTreeNode root = createBroadTestTree(CountingTreeNode.class, 3, 5);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (TreeLayout layout : TreeLayout.values()) {
+                new TreePrinter(layout).print(root);
+                assertMeasuredOnce(root);
+                new TreePrinter(layout).print(root, Integer.MAX_VALUE, pool);
+                assertMeasuredOnce(root);
+            }
+            new TreePrinter(TreeLayout.INDEX).printStreaming(root, Integer.MAX_VALUE, new StringBuilder());
+            assertMeasuredOnce(root);
+
+            // one temp canvas per thread
+            VerticalTreeDrawingPolicy policy = new VerticalTreeDrawingPolicy(FrameConfig.frame10x5(), TreeLayoutConfig.getDefault(), false);
+            assertSame(policy.tempCanvas, policy.getTempCanvas());
+            assertNotSame(policy.getTempCanvas(), pool.submit(policy::getTempCanvas).join());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertMeasuredOnce(CountingTreeNode node) {
+        assertEquals(1, node.printWidthCount.getAndSet(0));
+        assertEquals(1, node.printHeightCount.getAndSet(0));
+        for (CountingTreeNode sibling : node.siblings) {
+            if (sibling != null) {
+                assertMeasuredOnce(sibling);
+            }
+        }
+    }
+
+    @Test
+    void testLayout() {
+
+        List<TestTreeNode<?>> roots = new ArrayList<>();
+        roots.add(setupTestTree(SimpleTreeNode.class));
+        roots.add(setupTestTree(SpecialBoxStyleTreeNode.class));
+        roots.add(setupTestTree(NoBoxStyleTreeNode.class));
+        Random rand = new Random(11);
+        for (int i = 0; i < 10; i++) {
+            roots.add(createRandomTestTree(SimpleTreeNode.class, rand, 5));
+            roots.add(createRandomTestTree(SpecialBoxStyleTreeNode.class, rand, 5));
+        }
+
+        for (TreeLayout layout : TreeLayout.values()) {
+            for (LineGlyphSet lineGlyphSet : Arrays.asList(null, LineGlyphSet.UNICODE_LIGHT, LineGlyphSet.UNICODE_DOUBLE)) {
+                TreePrinter printer = new TreePrinter(layout.createDrawingPolicy(), Long.MAX_VALUE, lineGlyphSet);
+                for (TestTreeNode<?> root : roots) {
+                    int maxDepth = rand.nextInt(3) == 0 ? 1 + rand.nextInt(4) : Integer.MAX_VALUE;
+                    assertLayoutEqualsCanvas(printer, root, maxDepth);
+                }
+                assertLayoutEqualsCanvas(printer, null, Integer.MAX_VALUE);
+                assertLayoutEqualsCanvas(printer, PrintableTreeNode.MISSING_SIBLING, Integer.MAX_VALUE);
+                assertLayoutEqualsCanvas(printer, roots.get(0), 0);
+            }
+        }
+
+        TreeDiagram diagram = new TreePrinter(TreeLayout.TOP_DOWN).layout(roots.get(0));
+        String[] expectedLines = new TreePrinter(TreeLayout.TOP_DOWN).print(roots.get(0)).export().split("\n");
+        assertEquals(expectedLines.length, diagram.getHeight());
+        assertEquals(expectedLines[0].length(), diagram.getWidth());
+
+        // tail
+        Iterator<CharSequence> it = diagram.lines(diagram.getHeight() - 7);
+        for (int i = expectedLines.length - 7; i < expectedLines.length; i++) {
+            assertEquals(expectedLines[i], it.next().toString());
+        }
+        assertFalse(it.hasNext());
+        assertThrows(NoSuchElementException.class, it::next);
+        assertFalse(diagram.lines(diagram.getHeight()).hasNext());
+        assertThrows(IllegalArgumentException.class, () -> diagram.lines(-1));
+        assertThrows(IllegalArgumentException.class, () -> diagram.lines(diagram.getHeight() + 1));
+
+        TreeDrawingPolicy customPolicy = new TreeDrawingPolicy() {
+
+            @Override
+            public CanvasFormat scan(PrintableTreeNode rootNode, int maxDepth) {
+                return new CanvasFormat(1, 1);
+            }
+
+            @Override
+            public void draw(TextCanvas canvas) {
+                // no-op
+            }
+        };
+        TreePrinter customPrinter = new TreePrinter(customPolicy);
+        TestTreeNode<?> root = roots.get(0);
+        assertThrows(UnsupportedOperationException.class, () -> customPrinter.layout(root));
+
+    }
+
+    @Test
+    void testWideLabels() throws IOException {
+
+        String[] labels = new String[] { "\u65e5\u672c\u8a9e", "Caf\u00e9 \u2615", "\uac00\ub098\n\ub2e4", "e\u0301x\u0301", "\ud83d\ude00 smile",
+                "\uff21\uff22\uff23\uff24\uff25\uff26\uff27\uff28\uff29\uff2a\uff2b\uff2c\uff2d\uff2e\uff2f\uff30\uff31\uff32\uff33\uff34" };
+
+        List<TestTreeNode<?>> roots = new ArrayList<>();
+        Random rand = new Random(31);
+        for (int i = 0; i < 5; i++) {
+            roots.add(createWideTestTree(SimpleTreeNode.class, rand, labels, 4));
+            roots.add(createWideTestTree(SpecialBoxStyleTreeNode.class, rand, labels, 4));
+            roots.add(createWideTestTree(NoBoxStyleTreeNode.class, rand, labels, 4));
+        }
+
+        for (TreeLayout layout : TreeLayout.values()) {
+            TreePrinter printer = new TreePrinter(layout.createDrawingPolicy(), Long.MAX_VALUE, LineGlyphSet.UNICODE_LIGHT);
+            for (TestTreeNode<?> root : roots) {
+                TextCanvas canvas = printer.print(root);
+                // all rows must occupy the same number of terminal columns
+                for (String line : canvas.export().split("\n")) {
+                    assertEquals(canvas.getWidth(), DisplayWidth.of(line));
+                }
+                assertLayoutEqualsCanvas(printer, root, Integer.MAX_VALUE);
+            }
+        }
+
+        IndexTreeDrawingPolicy policy = new IndexTreeDrawingPolicy(new FrameConfig(DefaultBoxStyle.NONE, 1, 1, 2, 1), TreeLayoutConfig.index(), false);
+        for (TestTreeNode<?> root : roots) {
+            assertStreamingEqualsCanvas(policy, null, root, Integer.MAX_VALUE);
+            assertStreamingEqualsCanvas(policy, LineGlyphSet.UNICODE_LIGHT, root, Integer.MAX_VALUE);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        new TreePrinter(TreeLayout.TOP_DOWN).print(createTestNode(SimpleTreeNode.class, "\u65e5\u672c", createTestNode(SimpleTreeNode.class, "A"),
+                createTestNode(SimpleTreeNode.class, "\u8a9e"))).export(sb, true);
+        assertEquals("""
+                +-----------------+
+                |     +----+      |
+                |     |\u65e5\u672c|      |
+                |     +----+      |
+                |        |        |
+                |    +---+---+    |
+                |    |       |    |
+                |   +-+    +--+   |
+                |   |A|    |\u8a9e|   |
+                |   +-+    +--+   |
+                +-----------------+""", sb.toString());
+
+    }
+
+    private static void assertLayoutEqualsCanvas(TreePrinter printer, PrintableTreeNode root, int maxDepth) {
+        String expected = printer.print(root, maxDepth).export();
+        TreeDiagram diagram = printer.layout(root, maxDepth);
+        StringBuilder sb = new StringBuilder();
+        for (Iterator<CharSequence> it = diagram.lines(); it.hasNext();) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(it.next());
+        }
+        assertEquals(expected, sb.toString());
+    }
+
+    private static void assertStreamingEqualsCanvas(IndexTreeDrawingPolicy policy, LineGlyphSet lineGlyphSet, PrintableTreeNode root, int maxDepth)
+            throws IOException {
+        StringBuilder expected = new StringBuilder();
+        new TreePrinter(policy, Long.MAX_VALUE, lineGlyphSet).print(root, maxDepth).export(expected, true);
+        StringBuilder streamed = new StringBuilder();
+        new TreePrinter(policy, Long.MAX_VALUE, lineGlyphSet).printStreaming(root, maxDepth, streamed);
+        assertEquals(expected.toString(), streamed.toString());
+    }
+
+    private static <T extends TestTreeNode<T>> T createRandomTestTree(Class<T> clazz, Random rand, int depth) {
+        T res = createTestNode(clazz, "N" + rand.nextInt(1000) + (rand.nextInt(4) == 0 ? "\nline" : ""));
+        if (depth > 1) {
+            int numberOfSiblings = rand.nextInt(5) - 1;
+            for (int i = 0; i < numberOfSiblings; i++) {
+                res.siblings.add(rand.nextInt(6) == 0 ? null : createRandomTestTree(clazz, rand, depth - 1));
+            }
+        }
+        return res;
+    }
+
+    private static <T extends TestTreeNode<T>> T createWideTestTree(Class<T> clazz, Random rand, String[] labels, int depth) {
+        T res = createTestNode(clazz, labels[rand.nextInt(labels.length)]);
+        if (depth > 1) {
+            int numberOfSiblings = rand.nextInt(4);
+            for (int i = 0; i < numberOfSiblings; i++) {
+                res.siblings.add(createWideTestTree(clazz, rand, labels, depth - 1));
+            }
+        }
+        return res;
+    }
+
+    private static <T extends TestTreeNode<T>> T createBroadTestTree(Class<T> clazz, int numberOfSiblings, int depth) {
+        T res = createTestNode(clazz, "N" + depth);
+        if (depth > 1) {
+            for (int i = 0; i < numberOfSiblings; i++) {
+                res.siblings.add(i == 1 && depth % 3 == 0 ? null : createBroadTestTree(clazz, numberOfSiblings, depth - 1));
+            }
+        }
+        return res;
+    }
+
     @Test
     void testSpecialCases() {
         assertThrows(UnsupportedOperationException.class, PrintableTreeNode.MISSING_SIBLING::getNodeLabel);
@@ -2183,6 +2774,83 @@ class TreePrinterTest {
 
         assertThrows(IllegalStateException.class, root::parent);
 
+        assertEquals(key, root.sibling(2).sibling(3));
+        assertEquals(Arrays.hashCode(new int[] { 1, 2, 3 }), key.hashCode());
+        assertEquals(key.hashCode(), root.sibling(2).sibling(3).hashCode());
+        assertNotEquals(key, root.sibling(3).sibling(2));
+        assertEquals("[1, 2, 3]", Arrays.toString(key.path()));
+        assertEquals(3, key.length());
+        assertTrue(NodeKey.root().sibling(0).isPathOfZeros());
+        assertFalse(key.isPathOfZeros());
+        assertFalse(NodeKey.none().isPathOfZeros());
+        assertEquals(NodeKey.none(), new NodeKey(null));
+        assertEquals("NodeKey()", NodeKey.none().toString());
+
+        LayoutArena arena = new LayoutArena();
+        arena.initRoot();
+        SimpleTreeNode parent = new SimpleTreeNode("foo");
+        parent.addSiblings("bar", "baz");
+        arena.initNode(LayoutArena.ROOT, parent, true);
+        assertEquals(3, arena.size());
+        int siblingId = arena.siblingId(LayoutArena.ROOT, 1);
+        assertEquals(new NodeKey(new int[] { 0, 1 }), arena.nodeKey(siblingId));
+        assertEquals(LayoutArena.ROOT, arena.parentId(siblingId));
+        assertEquals(2, arena.depth(siblingId));
+        assertTrue(arena.isPathOfZeros(arena.siblingId(LayoutArena.ROOT, 0)));
+        assertFalse(arena.isPathOfZeros(siblingId));
+
+        arena.initNode(siblingId, parent.getSiblingNode(1), false);
+        assertThrows(IllegalStateException.class, () -> arena.siblingId(LayoutArena.ROOT + 2, 0));
+
+        arena.initPseudoRoot(LayoutArena.PSEUDO_ROOT_MORE);
+        assertEquals(1, arena.size());
+        assertEquals(NodeFormatInfo.MORE_INFO, arena.toNodeFormatInfo(LayoutArena.ROOT));
+        assertThrows(IllegalArgumentException.class, () -> arena.initPseudoRoot(LayoutArena.PSEUDO_ROOT_NONE));
+
+    }
+
+    @Test
+    void testLegacyNodeKeyPolicy() {
+        NoBoxStyleTreeNode root = createTestNode(NoBoxStyleTreeNode.class, "root", createTestNode(NoBoxStyleTreeNode.class, "A"),
+                createTestNode(NoBoxStyleTreeNode.class, "B"));
+        root.siblings.get(0).addSiblings("A1", "A2 Long Label");
+
+        LegacyIndentTreeDrawingPolicy policy = new LegacyIndentTreeDrawingPolicy();
+        assertEquals("""
+                root
+                  A
+                    A1
+                    A2 Long Label
+                  B""", new TreePrinter(policy).print(root).export().lines().map(String::stripTrailing).collect(Collectors.joining("\n")));
+
+        NodeKey key = NodeKey.root().sibling(0).sibling(1);
+        assertEquals(key, policy.getNodeKey(policy.getNodeId(key)));
+        assertEquals(13, policy.getNodeFormatInfo(policy.getNodeId(key)).totalWidth());
+        assertThrows(IllegalStateException.class, () -> policy.getNodeId(key.sibling(0)));
+
+        // the same tree a second time (state of the previous scan discarded)
+        assertEquals("""
+                root
+                  A
+                    A1
+                    A2 Long Label
+                  B""", new TreePrinter(policy).print(root).export().lines().map(String::stripTrailing).collect(Collectors.joining("\n")));
+
+        AbstractStandardTreeDrawingPolicy incompletePolicy = new AbstractStandardTreeDrawingPolicy(FrameConfig.frame10x5(), TreeLayoutConfig.index()) {
+
+            @Override
+            public CanvasFormat scan(PrintableTreeNode rootNode, int maxDepth) {
+                clearLayout();
+                return new CanvasFormat(getSubTreeWidth(getNodeId(NodeKey.root()), rootNode, DefaultParentRelation.NONE, maxDepth), 1);
+            }
+
+            @Override
+            public void draw(TextCanvas canvas) {
+                // no-op
+            }
+        };
+        assertThrows(UnsupportedOperationException.class, () -> incompletePolicy.scan(root, Integer.MAX_VALUE));
+
     }
 
     private static <T extends TestTreeNode<T>> T setupTestTree(Class<T> clazz) {
@@ -2268,6 +2936,74 @@ class TreePrinterTest {
         }
     }
 
+    /**
+     * Policy written against the former {@link NodeKey}-based methods, lists the nodes indented by level
+     */
+    @SuppressWarnings("deprecation")
+    static class LegacyIndentTreeDrawingPolicy extends AbstractStandardTreeDrawingPolicy {
+
+        private PrintableTreeNode rootNode;
+
+        private int maxDepth;
+
+        LegacyIndentTreeDrawingPolicy() {
+            super(new FrameConfig(DefaultBoxStyle.NONE, 0, 0, 0, 0), TreeLayoutConfig.index());
+        }
+
+        @Override
+        public CanvasFormat scan(PrintableTreeNode rootNode, int maxDepth) {
+            this.rootNode = rootNode;
+            this.maxDepth = maxDepth;
+            clearLayout();
+            NodeKey key = NodeKey.root();
+            return new CanvasFormat(getSubTreeWidth(key, rootNode, DefaultParentRelation.NONE, maxDepth),
+                    getSubTreeHeight(key, rootNode, DefaultParentRelation.NONE, maxDepth));
+        }
+
+        @Override
+        protected int computeSubTreeWidth(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+            int res = Math.min(treeLayoutConfig.maxNodeWidth(), node.getPrintWidth(siblingParentRelation, treeLayoutConfig.maxNodeWidth()));
+            if (key.length() < maxDepth) {
+                for (int i = 0; i < node.getNumberOfSiblings(); i++) {
+                    res = Math.max(res, 2 + getSubTreeWidth(key.sibling(i), node.getSiblingNode(i),
+                            new DefaultParentRelation(key, node.getNumberOfSiblings(), i), maxDepth));
+                }
+            }
+            return res;
+        }
+
+        @Override
+        protected int computeSubTreeHeight(NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int maxDepth) {
+            int res = Math.min(treeLayoutConfig.maxNodeHeight(), node.getPrintHeight(siblingParentRelation, treeLayoutConfig.maxNodeHeight()));
+            if (key.length() < maxDepth) {
+                for (int i = 0; i < node.getNumberOfSiblings(); i++) {
+                    res = res + getSubTreeHeight(key.sibling(i), node.getSiblingNode(i), new DefaultParentRelation(key, node.getNumberOfSiblings(), i),
+                            maxDepth);
+                }
+            }
+            return res;
+        }
+
+        @Override
+        public void draw(TextCanvas canvas) {
+            drawNode(canvas, NodeKey.root(), rootNode, DefaultParentRelation.NONE, 0);
+        }
+
+        private int drawNode(TextCanvas canvas, NodeKey key, PrintableTreeNode node, SiblingParentRelation siblingParentRelation, int y) {
+            NodeFormatInfo info = getOrCreateNodeFormatInfo(key, node, siblingParentRelation, maxDepth);
+            drawNodeRepresentation(canvas, 2 * (key.length() - 1), y, info);
+            int res = y + info.representation().size();
+            NodeKey[] siblingNodeKeys = createSiblingNodeKeyList(key, node);
+            if (key.length() < maxDepth) {
+                for (int i = 0; i < siblingNodeKeys.length; i++) {
+                    res = drawNode(canvas, siblingNodeKeys[i], node.getSiblingNode(i), new DefaultParentRelation(key, siblingNodeKeys.length, i), res);
+                }
+            }
+            return res;
+        }
+
+    }
+
     abstract static class TestTreeNode<T extends TestTreeNode<T>> implements PrintableTreeNode {
 
         @Override
@@ -2405,6 +3141,64 @@ class TreePrinterTest {
 
     }
 
+    static class OverlappingDecoratedTreeNode extends TestTreeNode<OverlappingDecoratedTreeNode> {
+
+        public OverlappingDecoratedTreeNode() {
+            //
+        }
+
+        public OverlappingDecoratedTreeNode(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public void decorateNode(SiblingParentRelation siblingParentRelation, TextCanvas canvas, int upperLeftCornerX, int upperLeftCornerY, int width,
+                int height) {
+            // right of the box and below the box, where connectors and other texts may follow
+            canvas.setCursor(upperLeftCornerX + width, upperLeftCornerY + (height / 2));
+            if (canvas.isCursorPositionValid()) {
+                canvas.write('*');
+            }
+            canvas.setCursor(upperLeftCornerX + (width / 2), upperLeftCornerY + height);
+            if (canvas.isCursorPositionValid()) {
+                canvas.write('#');
+            }
+        }
+
+        @Override
+        public void decorateParentConnector(SiblingParentRelation siblingParentRelation, TextCanvas canvas, BoxConnectionPoint from, BoxConnectionPoint to) {
+            canvas.setCursor(from.x(), from.y());
+            if (canvas.isCursorPositionValid()) {
+                canvas.write('@');
+            }
+        }
+
+    }
+
+    static class CountingTreeNode extends TestTreeNode<CountingTreeNode> {
+
+        final AtomicInteger printWidthCount = new AtomicInteger();
+
+        final AtomicInteger printHeightCount = new AtomicInteger();
+
+        public CountingTreeNode() {
+            //
+        }
+
+        @Override
+        public int getPrintWidth(SiblingParentRelation siblingParentRelation, int maxWidth) {
+            printWidthCount.incrementAndGet();
+            return super.getPrintWidth(siblingParentRelation, maxWidth);
+        }
+
+        @Override
+        public int getPrintHeight(SiblingParentRelation siblingParentRelation, int maxHeight) {
+            printHeightCount.incrementAndGet();
+            return super.getPrintHeight(siblingParentRelation, maxHeight);
+        }
+
+    }
+
     static class NoBoxStyleTreeNode extends TestTreeNode<NoBoxStyleTreeNode> {
 
         public NoBoxStyleTreeNode() {